@@ -178,7 +178,7 @@ export function useChatSession() {
     currentAbort = new AbortController()
 
     try {
-      for await (const token of chatStream(sessionId.value, text, currentAbort.signal)) {
+      for await (const token of chatStream(sessionId.value, text, roleId, currentAbort.signal)) {
         if (token.type === 'thinking') {
           assistantMsg.thinking = (assistantMsg.thinking || '') + token.text
         } else {
@@ -28,14 +28,16 @@ export function closeChatSession(sessionId: string) {
 /**
  * 流式聊天（SSE），返回 EventSource 风格的流读取器。
  * 由于 SSE 需要用原生 fetch（axios 不支持流式读取），这里不走 http 封装。
+ * roleId 用于会话在后端过期后的透明续接。
  */
 export async function* chatStream(
   sessionId: string,
   text: string,
+  roleId: number,
   signal?: AbortSignal
 ): AsyncGenerator<ChatToken> {
   const userStore = useUserStore()
-  const url = `${BASE_URL}/chat/stream?sessionId=${encodeURIComponent(sessionId)}&text=${encodeURIComponent(text)}`
+  const url = `${BASE_URL}/chat/stream?sessionId=${encodeURIComponent(sessionId)}&text=${encodeURIComponent(text)}&roleId=${roleId}`
 
   const response = await fetch(url, {
     method: 'GET',
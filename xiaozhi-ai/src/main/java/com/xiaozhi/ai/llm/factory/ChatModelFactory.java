@@ -12,6 +12,8 @@ import org.springframework.util.Assert;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -23,6 +25,9 @@ import lombok.extern.slf4j.Slf4j;
  * - 通过ChatModelProvider接口定义统一的创建策略
  * - 每个LLM提供商实现独立的Provider
  * - 工厂类通过Spring自动注入所有Provider,自动路由到对应实现
+ *
+ * 无状态的ChatModel按 (provider, configId, endpoint, apiKey, model, 思考模式, temperature, topP) 缓存，
+ * 各会话共享同一实例及其连接池；EmbeddingModel 同样按配置缓存，配置变更时由 {@link #removeCache(ConfigBO)} 一并清除。
  */
 @Slf4j
 @Component
@@ -36,6 +41,12 @@ public class ChatModelFactory {
      */
     private final Map<String, ChatModelProvider> providers;
 
+    // 可共享的ChatModel缓存，键格式见 createCacheKey
+    private final Map<String, ChatModel> modelCache = new ConcurrentHashMap<>();
+
+    // 可共享的EmbeddingModel缓存，键格式见 createEmbeddingCacheKey
+    private final Map<String, EmbeddingModel> embeddingCache = new ConcurrentHashMap<>();
+
     @Autowired
     private ObservationRegistry registry;
     /**
@@ -84,12 +95,16 @@ public class ChatModelFactory {
         Assert.notNull(config, "未配置向量模型");
         String providerName = config.getProvider().toLowerCase();
         ChatModelProvider provider = providers.get(providerName);
-        if (provider != null) {
-            return provider.createEmbeddingModel(config);
+        if (provider == null) {
+            provider = providers.get("openai");
         }
-        provider = providers.get("openai");
         if (provider != null) {
-            return provider.createEmbeddingModel(config);
+            if (!provider.isCacheable()) {
+                return provider.createEmbeddingModel(config);
+            }
+            ChatModelProvider target = provider;
+            return embeddingCache.computeIfAbsent(createEmbeddingCacheKey(config),
+                    k -> target.createEmbeddingModel(config));
         }
         throw new IllegalArgumentException(
                 String.format("不支持的Provider: %s, 可用的Providers: %s", providerName, providers.keySet()));
@@ -108,22 +123,51 @@ public class ChatModelFactory {
         // 从providers Map中获取对应的Provider
         ChatModelProvider provider = providers.get(providerName);
         
-        if (provider != null) {
-            return provider.createChatModel(config, role);
+        if (provider == null) {
+            // 如果没有找到对应的Provider,尝试使用OpenAI Provider作为默认(兼容OpenAI协议)
+            provider = providers.get("openai");
         }
         
-        // 如果没有找到对应的Provider,尝试使用OpenAI Provider作为默认(兼容OpenAI协议)
-        provider = providers.get("openai");
-        
-        if (provider != null) {
+        if (provider == null) {
+            // 如果连OpenAI Provider都没有,抛出异常
+            throw new IllegalArgumentException(
+                    String.format("不支持的Provider: %s, 可用的Providers: %s", 
+                            providerName, 
+                            providers.keySet())
+            );
+        }
+
+        if (!provider.isCacheable()) {
             return provider.createChatModel(config, role);
         }
-        
-        // 如果连OpenAI Provider都没有,抛出异常
-        throw new IllegalArgumentException(
-                String.format("不支持的Provider: %s, 可用的Providers: %s", 
-                        providerName, 
-                        providers.keySet())
-        );
+        ChatModelProvider target = provider;
+        return modelCache.computeIfAbsent(createCacheKey(config, role),
+                k -> target.createChatModel(config, role));
+    }
+
+    /**
+     * 清除某个配置对应的所有ChatModel缓存，配置变更时调用
+     */
+    public void removeCache(ConfigBO config) {
+        if (config == null || config.getConfigId() == null) {
+            return;
+        }
+        String prefix = config.getProvider().toLowerCase() + ":" + config.getConfigId() + ":";
+        modelCache.keySet().removeIf(key -> key.startsWith(prefix));
+        embeddingCache.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    // 创建缓存键：provider:configId:endpoint:apiKey哈希:model:思考模式:temperature:topP
+    private String createCacheKey(ConfigBO config, RoleBO role) {
+        return config.getProvider().toLowerCase() + ":" + config.getConfigId() + ":" + config.getApiUrl() + ":"
+                + Objects.hashCode(config.getApiKey()) + ":" + config.getConfigName() + ":"
+                + Boolean.TRUE.equals(config.getEnableThinking()) + ":"
+                + role.getTemperature() + ":" + role.getTopP();
+    }
+
+    // 向量模型缓存键：provider:configId:endpoint:apiKey哈希:model
+    private String createEmbeddingCacheKey(ConfigBO config) {
+        return config.getProvider().toLowerCase() + ":" + config.getConfigId() + ":" + config.getApiUrl() + ":"
+                + Objects.hashCode(config.getApiKey()) + ":" + config.getConfigName();
     }
 }
@@ -34,6 +34,15 @@ public interface ChatModelProvider {
         throw new UnsupportedOperationException(getProviderName() + " 不支持 Embedding 模型");
     }
 
+    /**
+     * 创建的ChatModel是否无状态、可被多个会话共享。
+     * 可共享的ChatModel由工厂按配置和角色参数缓存复用，连接池随之复用；
+     * 持有会话状态（如第三方平台的对话ID）的实现应保持默认的 false。
+     */
+    default boolean isCacheable() {
+        return false;
+    }
+
     /**
      * 是否支持该提供商
      * @param provider 提供商名称(小写)
@@ -32,6 +32,11 @@ public class OllamaModelProvider implements ChatModelProvider {
         return "ollama";
     }
     
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public ChatModel createChatModel(ConfigBO config, RoleBO role) {
         String endpoint = config.getApiUrl();
@@ -15,7 +15,9 @@ import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.openai.OpenAiEmbeddingOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.http.client.reactive.JdkClientHttpConnector;
@@ -35,6 +37,8 @@ import lombok.extern.slf4j.Slf4j;
  * 支持: OpenAI, Azure OpenAI, 各种兼容OpenAI的本地模型等。
  * <p>
  * 通过配置 {@code enableThinking} 控制是否启用推理模式（{@code reasoningEffort}）。
+ * <p>
+ * 所有模型实例共享同一个 HttpClient，不同会话、不同模型访问同一端点时复用 TCP/TLS 连接。
  */
 @Slf4j
 @Component
@@ -46,12 +50,37 @@ public class OpenAiModelProvider implements ChatModelProvider {
 
     @Autowired
     private ObservationRegistry observationRegistry;
+
+    /**
+     * 是否使用 HTTP/2。LM Studio 等本地服务不支持 HTTP/2，默认强制 HTTP/1.1
+     */
+    @Value("${xiaozhi.llm.http2-enabled:false}")
+    private boolean http2Enabled;
+
+    // 共享的 HTTP 传输，内部维护连接池
+    private HttpClient httpClient;
+    private JdkClientHttpRequestFactory requestFactory;
+
+    @PostConstruct
+    public void init() {
+        httpClient = HttpClient.newBuilder()
+                .version(http2Enabled ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofSeconds(30));
+    }
     
     @Override
     public String getProviderName() {
         return "openai";
     }
     
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public ChatModel createChatModel(ConfigBO config, RoleBO role) {
         String endpoint = config.getApiUrl();
@@ -63,20 +92,15 @@ public class OpenAiModelProvider implements ChatModelProvider {
         MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
         headers.add("Content-Type", "application/json");
         
-        // LM Studio不支持Http/2，所以需要强制使用HTTP/1.1
         var openAiApi = OpenAiApi.builder()
                 .apiKey(StringUtils.hasText(apiKey) ? new SimpleApiKey(apiKey) : new NoopApiKey())
                 .baseUrl(endpoint)
                 .completionsPath("/chat/completions")
                 .headers(headers)
                 .webClientBuilder(WebClient.builder()
-                        // Force HTTP/1.1 for streaming
-                        .clientConnector(new JdkClientHttpConnector(HttpClient.newBuilder()
-                                .version(HttpClient.Version.HTTP_1_1)
-                                .connectTimeout(Duration.ofSeconds(30))
-                                .build())))
+                        .clientConnector(new JdkClientHttpConnector(httpClient)))
                 .restClientBuilder(RestClient.builder()
-                        .requestFactory(createRequestFactory()))
+                        .requestFactory(requestFactory))
                 .build();
         
         boolean enableThinking = Boolean.TRUE.equals(config.getEnableThinking());
@@ -117,25 +141,13 @@ public class OpenAiModelProvider implements ChatModelProvider {
                 .embeddingsPath("/embeddings")
                 .headers(headers)
                 .webClientBuilder(WebClient.builder()
-                        .clientConnector(new JdkClientHttpConnector(HttpClient.newBuilder()
-                                .version(HttpClient.Version.HTTP_1_1)
-                                .connectTimeout(Duration.ofSeconds(30))
-                                .build())))
+                        .clientConnector(new JdkClientHttpConnector(httpClient)))
                 .restClientBuilder(RestClient.builder()
-                        .requestFactory(createRequestFactory()))
+                        .requestFactory(requestFactory))
                 .build();
         var options = OpenAiEmbeddingOptions.builder().model(config.getConfigName()).build();
         log.debug("创建 OpenAI EmbeddingModel: model={}, endpoint={}", config.getConfigName(), config.getApiUrl());
         return new OpenAiEmbeddingModel(openAiApi, MetadataMode.EMBED, options);
     }
-
-    private JdkClientHttpRequestFactory createRequestFactory() {
-        var factory = new JdkClientHttpRequestFactory(HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .connectTimeout(Duration.ofSeconds(30))
-                .build());
-        factory.setReadTimeout(Duration.ofSeconds(30));
-        return factory;
-    }
 }
 
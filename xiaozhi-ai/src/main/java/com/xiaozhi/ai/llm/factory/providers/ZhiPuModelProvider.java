@@ -40,6 +40,11 @@ public class ZhiPuModelProvider implements ChatModelProvider {
         return "zhipu";
     }
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public ChatModel createChatModel(ConfigBO config, RoleBO role) {
         String endpoint = config.getApiUrl();
@@ -1,6 +1,7 @@
 package com.xiaozhi.ai.llm.memory;
 
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.messages.*;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -17,7 +18,11 @@ import java.util.*;
  *
  * Conversation 也不再负责消息的存储持久化。
  *
+ * 消息存放在只追加的 {@link MessageLog} 中，UserMessage 在加入时装配一次；
+ * 系统提示词只在其输入（位置、摘要）变化时重建。每轮返回的 Prompt 消息列表是不复制元素的不可变视图，
+ * 历史消息与系统提示词在轮次之间保持不变，便于 LLM 服务端的前缀缓存命中。
  */
+@Slf4j
 public class Conversation extends ConversationIdentifier {
 
     @Getter
@@ -26,7 +31,14 @@ public class Conversation extends ConversationIdentifier {
     private final Integer userId;
     private final String sessionId;
 
-    protected List<Message> messages = new ArrayList<>();
+    protected final MessageLog messages = new MessageLog();
+
+    // 历史消息在首次使用时加载，构造时不访问数据库
+    private boolean historyLoaded;
+
+    // 角色系统提示词缓存，位置变化时重建
+    private String cachedLocation;
+    private List<Message> cachedRolePrefix;
 
     /**
      * @param ownerId   聊天参与者标识（设备场景: deviceId, Web 场景: userId）
@@ -50,11 +62,27 @@ public class Conversation extends ConversationIdentifier {
     }
 
     public Optional<SystemMessage> roleSystemMessage(ConversationContext context) {
+        List<Message> prefix = rolePrefix(context);
+        return prefix.isEmpty() ? Optional.empty() : Optional.of((SystemMessage) prefix.getFirst());
+    }
+
+    /**
+     * 角色系统提示词（0 或 1 条），输入不变时返回同一个列表对象
+     */
+    protected synchronized List<Message> rolePrefix(ConversationContext context) {
+        String location = context != null ? context.location() : null;
+        if (cachedRolePrefix == null || !Objects.equals(cachedLocation, location)) {
+            cachedLocation = location;
+            cachedRolePrefix = buildRoleSystemMessage(location).<List<Message>>map(List::of).orElse(List.of());
+        }
+        return cachedRolePrefix;
+    }
+
+    private Optional<SystemMessage> buildRoleSystemMessage(String location) {
         StringBuilder msgBuilder = new StringBuilder();
         if(StringUtils.hasText(roleDesc)) {
             msgBuilder.append( "角色描述：" ).append(roleDesc).append(System.lineSeparator());
         }
-        String location = context != null ? context.location() : null;
         if (StringUtils.hasText(location)) {
             msgBuilder.append("当前位置：").append(location)
                     .append("。如果用户提及现在在哪里，则以新地方为准。")
@@ -82,12 +110,13 @@ public class Conversation extends ConversationIdentifier {
     /**
      * 带运行时上下文的消息列表（子类覆写此方法以注入系统提示词）。
      * <p>
-     * 对每条消息走一次 {@link UserMessageAssembler#assemble(Message)}：
+     * 每条消息在加入时已走过一次 {@link UserMessageAssembler#assemble(Message)}：
      * UserMessage 按其 metadata 装配带前缀的副本送给 LLM，非 UserMessage 原样透传。
-     * in-memory 的消息始终是"裸文本 + 结构化 metadata"。
+     * in-memory 的原始消息始终是"裸文本 + 结构化 metadata"。
      */
     public synchronized List<Message> messages(ConversationContext context) {
-        return messages.stream().map(UserMessageAssembler::assemble).toList();
+        ensureHistoryLoaded();
+        return messages.prompt();
     }
 
     /**
@@ -98,11 +127,34 @@ public class Conversation extends ConversationIdentifier {
     }
 
     /**
-     * 返回原始消息列表（不触发任何投影副作用，文本保持"裸文本"，metadata 未拼前缀）。
+     * 返回原始消息列表的不可变快照（不触发任何投影副作用，文本保持"裸文本"，metadata 未拼前缀）。
      * 用于工具路由的 FC 上下文检测。
      */
     public synchronized List<Message> rawMessages() {
-        return messages;
+        ensureHistoryLoaded();
+        return messages.raw();
+    }
+
+    /**
+     * 加载历史消息，子类覆写以从存储读取。只在首次读写消息时调用一次，避免建立会话时阻塞在数据库查询上。
+     */
+    protected List<Message> loadHistory() {
+        return List.of();
+    }
+
+    /**
+     * 确保历史消息已加载，加载失败时以空历史继续，不再重试
+     */
+    protected synchronized void ensureHistoryLoaded() {
+        if (historyLoaded) {
+            return;
+        }
+        historyLoaded = true;
+        try {
+            messages.addAll(loadHistory());
+        } catch (Exception e) {
+            log.error("加载对话历史失败 - ownerId: {}, roleId: {}", getOwnerId(), getRoleId(), e);
+        }
     }
 
     /**
@@ -110,10 +162,13 @@ public class Conversation extends ConversationIdentifier {
      * 对于某些具体的子类实现，清理也可能是指删除当前Covnersation的消息。
      */
     public synchronized void clear(){
+        // 清空后不再需要加载历史
+        historyLoaded = true;
         messages.clear();
     }
 
     public synchronized void add(Message message) {
+        ensureHistoryLoaded();
 
         if(message instanceof UserMessage userMsg){
             messages.add(userMsg);
@@ -134,6 +189,7 @@ public class Conversation extends ConversationIdentifier {
      * 将工具调用链（模型的 tool_call 请求 + 工具执行结果）作为原子操作添加到消息列表
      */
     public synchronized void addToolCallChain(AssistantMessage toolCallMsg, ToolResponseMessage toolResponse) {
+        ensureHistoryLoaded();
         messages.add(toolCallMsg);
         messages.add(toolResponse);
     }
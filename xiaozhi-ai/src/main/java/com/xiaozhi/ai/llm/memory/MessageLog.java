@@ -0,0 +1,195 @@
+package com.xiaozhi.ai.llm.memory;
+
+import com.xiaozhi.common.model.bo.MessageMetadataBO;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Conversation 的消息存储：只在尾部追加、从头部裁剪的数组日志。
+ *
+ * 每条消息在追加时同时保存原始消息与 {@link UserMessageAssembler} 装配后的副本，之后每轮构建 Prompt 不再重复装配。
+ * UserMessage 的时间戳可能在追加之后才写入 metadata（如 DialogueTurn#injectInstants），
+ * 因此同时记下装配时使用的时间戳与 {@link MessageMetadataBO}，{@link #prompt()} 发现两者变化时重新装配该条。
+ * 已写入的槽位不会被改写：裁剪只移动头指针，空间不足或需要重新装配时整体复制到新数组。
+ * 因此 {@link #raw()} / {@link #prompt()} 返回的不可变视图可以直接引用底层数组，创建开销与消息条数无关，
+ * 后续的追加和裁剪也不会影响已经交给 LLM 的视图。
+ *
+ * 非线程安全，由所属 Conversation 加锁访问。
+ */
+final class MessageLog {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Message[] raw = new Message[INITIAL_CAPACITY];
+    private Message[] prompt = new Message[INITIAL_CAPACITY];
+    // 装配 prompt[i] 时 raw[i] 的时间戳与元数据，按引用比较判断是否过期
+    private Object[] assembledTime = new Object[INITIAL_CAPACITY];
+    private Object[] assembledMeta = new Object[INITIAL_CAPACITY];
+    private int head;
+    private int tail;
+
+    void add(Message message) {
+        if (tail == raw.length) {
+            compact();
+        }
+        raw[tail] = message;
+        assemble(tail);
+        tail++;
+    }
+
+    void addAll(Collection<? extends Message> messages) {
+        for (Message message : messages) {
+            add(message);
+        }
+    }
+
+    int size() {
+        return tail - head;
+    }
+
+    boolean isEmpty() {
+        return tail == head;
+    }
+
+    /**
+     * 第 index 条原始消息
+     */
+    Message get(int index) {
+        Objects.checkIndex(index, size());
+        return raw[head + index];
+    }
+
+    /**
+     * 移除最早的 count 条消息
+     */
+    void removeFirst(int count) {
+        head += Math.min(Math.max(count, 0), size());
+    }
+
+    void clear() {
+        raw = new Message[INITIAL_CAPACITY];
+        prompt = new Message[INITIAL_CAPACITY];
+        assembledTime = new Object[INITIAL_CAPACITY];
+        assembledMeta = new Object[INITIAL_CAPACITY];
+        head = 0;
+        tail = 0;
+    }
+
+    /**
+     * 原始消息（裸文本 + 结构化 metadata）的不可变视图
+     */
+    List<Message> raw() {
+        return new View(raw, head, tail);
+    }
+
+    /**
+     * 装配后送给 LLM 的消息的不可变视图
+     */
+    List<Message> prompt() {
+        boolean copied = false;
+        for (int i = head; i < tail; i++) {
+            if (!isStale(i)) {
+                continue;
+            }
+            if (!copied) {
+                // 旧数组仍由已发出的视图持有，复制后再改写
+                prompt = prompt.clone();
+                assembledTime = assembledTime.clone();
+                assembledMeta = assembledMeta.clone();
+                copied = true;
+            }
+            assemble(i);
+        }
+        return new View(prompt, head, tail);
+    }
+
+    /**
+     * 把系统消息前缀与消息视图拼接为一个不可变列表，不复制元素
+     */
+    static List<Message> concat(List<Message> prefix, List<Message> messages) {
+        if (prefix.isEmpty()) {
+            return messages;
+        }
+        return new Concat(prefix, messages);
+    }
+
+    private void assemble(int index) {
+        Message message = raw[index];
+        prompt[index] = UserMessageAssembler.assemble(message);
+        if (message instanceof UserMessage) {
+            assembledTime[index] = message.getMetadata().get(ChatMemory.TIME_MILLIS_KEY);
+            assembledMeta[index] = message.getMetadata().get(MessageMetadataBO.METADATA_KEY);
+        }
+    }
+
+    private boolean isStale(int index) {
+        if (!(raw[index] instanceof UserMessage message)) {
+            return false;
+        }
+        return message.getMetadata().get(ChatMemory.TIME_MILLIS_KEY) != assembledTime[index]
+                || message.getMetadata().get(MessageMetadataBO.METADATA_KEY) != assembledMeta[index];
+    }
+
+    // 复制存活区间到新数组，旧数组仍由已发出的视图持有
+    private void compact() {
+        int size = size();
+        int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+        raw = Arrays.copyOfRange(raw, head, head + capacity);
+        prompt = Arrays.copyOfRange(prompt, head, head + capacity);
+        assembledTime = Arrays.copyOfRange(assembledTime, head, head + capacity);
+        assembledMeta = Arrays.copyOfRange(assembledMeta, head, head + capacity);
+        head = 0;
+        tail = size;
+    }
+
+    private static final class View extends AbstractList<Message> implements RandomAccess {
+        private final Message[] array;
+        private final int from;
+        private final int to;
+
+        View(Message[] array, int from, int to) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Message get(int index) {
+            Objects.checkIndex(index, to - from);
+            return array[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    private static final class Concat extends AbstractList<Message> implements RandomAccess {
+        private final List<Message> prefix;
+        private final List<Message> messages;
+
+        Concat(List<Message> prefix, List<Message> messages) {
+            this.prefix = prefix;
+            this.messages = messages;
+        }
+
+        @Override
+        public Message get(int index) {
+            int prefixSize = prefix.size();
+            return index < prefixSize ? prefix.get(index) : messages.get(index - prefixSize);
+        }
+
+        @Override
+        public int size() {
+            return prefix.size() + messages.size();
+        }
+    }
+}
@@ -9,10 +9,13 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * 限定消息条数（消息窗口）的Conversation实现。根据不同的策略，可实现聊天会话的持久化、加载、清除等功能。
  * 短期记忆，只能记住当前对话有限的消息条数（多轮）。
+ * 历史消息在首次使用时加载。
  */
 @Slf4j
 public class MessageWindowConversation extends Conversation {
     private final int maxMessages;
+    private final ChatMemory chatMemory;
+    private final boolean sessionScoped;
     /**
      * 可切换加载维度的构造器。由 Lombok {@link Builder} 生成静态工厂 {@code builder()} 与链式 setter。
      * <ul>
@@ -25,17 +28,23 @@ public class MessageWindowConversation extends Conversation {
                                       int maxMessages, ChatMemory chatMemory, boolean sessionScoped){
         super(ownerId, roleId, sessionId, roleDesc, userId);
         this.maxMessages = maxMessages;
+        this.chatMemory = chatMemory;
+        this.sessionScoped = sessionScoped;
+    }
 
+    @Override
+    protected List<Message> loadHistory() {
         List<Message> history = sessionScoped
-                ? chatMemory.find(sessionId, maxMessages)
-                : chatMemory.find(ownerId, roleId, maxMessages);
+                ? chatMemory.find(sessionId(), maxMessages)
+                : chatMemory.find(getOwnerId(), getRoleId(), maxMessages);
         log.info("加载对话历史: sessionScoped={}, ownerId={}, sessionId={}, size={}",
-                sessionScoped, ownerId, sessionId, history.size());
-        super.messages.addAll(history);
+                sessionScoped, getOwnerId(), sessionId(), history.size());
+        return history;
     }
 
     @Override
     public synchronized void add(Message message) {
+        ensureHistoryLoaded();
         if (message instanceof UserMessage || message instanceof AssistantMessage || message instanceof ToolResponseMessage) {
             messages.add(message);
         } else {
@@ -44,35 +53,24 @@ public class MessageWindowConversation extends Conversation {
     }
 
     /**
-     * 返回带系统提示词的消息列表，接受运行时上下文（位置、声纹等）
+     * 返回带系统提示词的消息列表，接受运行时上下文（位置、声纹等）。
+     * 返回的是不复制元素的不可变视图，系统提示词仅在位置变化时重建。
      */
     public synchronized List<Message> messages(ConversationContext context) {
+        ensureHistoryLoaded();
         // 按对话组裁剪：简单组=[User,Assistant](2条)，工具组=[User,Assistant(toolCall),Tool,Assistant(final)](4条)
         while (messages.size() > maxMessages + 1) {
-            if (messages.size() >= 2 && messages.get(1) instanceof AssistantMessage am
-                    && am.getToolCalls() != null && !am.getToolCalls().isEmpty()
-                    && messages.size() >= 4) {
+            if (messages.size() >= 4 && messages.get(1) instanceof AssistantMessage am
+                    && am.getToolCalls() != null && !am.getToolCalls().isEmpty()) {
                 // 工具对话组：移除 4 条 [User, Assistant(toolCall), Tool, Assistant(final)]
-                for (int i = 0; i < 4 && !messages.isEmpty(); i++) {
-                    messages.remove(0);
-                }
+                messages.removeFirst(4);
             } else {
                 // 简单对话组：移除 2 条 [User, Assistant]
-                messages.remove(0);
-                if (!messages.isEmpty()) {
-                    messages.remove(0);
-                }
+                messages.removeFirst(2);
             }
         }
-        // 新消息列表对象，避免使用过程中污染原始列表对象
-        List<Message> historyMessages = new ArrayList<>();
-        var roleSystemMessage = roleSystemMessage(context);
-        if(roleSystemMessage.isPresent()){
-            historyMessages.add(roleSystemMessage.get());
-        }
-        historyMessages.addAll(messages);
-        // UserMessage 按 metadata 装配带前缀的副本供 LLM 使用
-        return historyMessages.stream().map(UserMessageAssembler::assemble).toList();
+        // UserMessage 已在加入时按 metadata 装配带前缀的副本，metadata 之后变化的由 MessageLog 重新装配
+        return MessageLog.concat(rolePrefix(context), messages.prompt());
     }
 
     @Override
@@ -14,7 +14,6 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -47,7 +46,10 @@ public class SummaryConversation extends Conversation {
     private final PromptTemplate againSummarizerPromptTemplate ;
     private final ChatMemory chatMemory;
     private final ChatClient chatClient;
+    private final SummaryScheduler summaryScheduler;
     private final Object summaryLock = new Object();
+    // 提交给调度器的任务，保持同一实例以便调度器合并重复请求
+    private final Runnable summaryJob = this::summaryMessages;
     // 运行时不应该发生变化，避免计算错误
 
     private final int maxMessages ;
@@ -56,12 +58,17 @@ public class SummaryConversation extends Conversation {
 
     // 消息摘要
     private SummaryBO lastSummary = null;
+    // 摘要对应的系统消息，只在摘要更新时重建
+    private List<Message> summaryPrefix = List.of();
     private boolean summarizing = false;
+    // 加载历史时发现上一段对话已过期，需要在首次使用时压缩上下文
+    private boolean compactOnLoad = false;
 
     @Builder
     public SummaryConversation(String ownerId, Integer roleId, String sessionId, String roleDesc, Integer userId,
                                PromptTemplate initSummarizerPromptTemplate, PromptTemplate againSummarizerPromptTemplate,
-                               ChatMemory chatMemory, ChatModel chatModel, int maxMessages, int batchSize){
+                               ChatMemory chatMemory, ChatModel chatModel, SummaryScheduler summaryScheduler,
+                               int maxMessages, int batchSize){
         super(ownerId, roleId, sessionId, roleDesc, userId);
         Assert.notNull(initSummarizerPromptTemplate, "initSummarizerPromptTemplate must not be null");
         this.initSummarizerPromptTemplate = initSummarizerPromptTemplate;
@@ -78,38 +85,57 @@ public class SummaryConversation extends Conversation {
         Assert.notNull(chatMemory, "chatMemory must not be null");
         this.chatMemory = chatMemory;
 
+        Assert.notNull(summaryScheduler, "summaryScheduler must not be null");
+        this.summaryScheduler = summaryScheduler;
+
         Assert.notNull(chatModel, "chatModel must not be null");
         this.chatClient = ChatClient.builder(chatModel)
                 .defaultAdvisors()
                 .build();
+    }
 
-        // 在新建Conversation时，可以加载以前的已有的Summary。
-        this.lastSummary = chatMemory.findLastSummary(getOwnerId(), getRoleId());
+    /**
+     * 首次使用时加载以前的已有的Summary与未被摘要的消息。
+     * 在 Conversation 的对象锁内调用，这里不获取 summaryLock，需要压缩时只记录标记，由 {@link #load()} 在锁外提交。
+     */
+    @Override
+    protected List<Message> loadHistory() {
+        setLastSummary(chatMemory.findLastSummary(getOwnerId(), getRoleId()));
         if(lastSummary == null){
             List<Message> history = chatMemory.find(getOwnerId(), getRoleId(), maxMessages);
             log.info("当前{}还没有历史summary,加载{}条普通消息进入对话上下文", getOwnerId(), history.size());
-            synchronized (summaryLock) {
-                super.messages.addAll(history);
-            }
             // 如果最后一条消息距今超过1小时且消息数足够，则生成summary以压缩上下文
             if (history.size() >= 2) {
                 Instant lastMessageTime = MessageTimeMetadata.getTimeMillis(history.getLast());
                 if (Duration.between(lastMessageTime, Instant.now()).toHours() >= CONVERSATION_INTERVAL_HOURS) {
                     log.info("{}的最后一条消息已超过{}小时，生成summary压缩上下文", getOwnerId(), CONVERSATION_INTERVAL_HOURS);
-                    summarize(true);
+                    compactOnLoad = true;
                 }
             }
-        }else {
-            List<Message> history = chatMemory.find(getOwnerId(), getRoleId(), lastSummary.getLastMessageTimestamp());
-            log.info("加载{}的{}条未被摘要的消息作为对话历史", getOwnerId(), history.size());
-            synchronized (summaryLock) {
-                super.messages.addAll(history);
-            }
-            if (Duration.between(lastSummary.getLastMessageTimestamp(), Instant.now()).toHours() >= CONVERSATION_INTERVAL_HOURS
-                    && history.size() >= 2) {
-                log.info("{}的last summary已超过1小时，但还有一些剩余消息没有summarize,重新生成summary", getOwnerId());
-                summarize(true);
-            }
+            return history;
+        }
+        List<Message> history = chatMemory.find(getOwnerId(), getRoleId(), lastSummary.getLastMessageTimestamp());
+        log.info("加载{}的{}条未被摘要的消息作为对话历史", getOwnerId(), history.size());
+        if (Duration.between(lastSummary.getLastMessageTimestamp(), Instant.now()).toHours() >= CONVERSATION_INTERVAL_HOURS
+                && history.size() >= 2) {
+            log.info("{}的last summary已超过1小时，但还有一些剩余消息没有summarize,重新生成summary", getOwnerId());
+            compactOnLoad = true;
+        }
+        return history;
+    }
+
+    /**
+     * 确保历史已加载，锁顺序固定为 summaryLock -> 对象锁
+     */
+    private void load() {
+        boolean compact;
+        synchronized (summaryLock) {
+            ensureHistoryLoaded();
+            compact = compactOnLoad;
+            compactOnLoad = false;
+        }
+        if (compact) {
+            summarize(true);
         }
     }
 
@@ -120,6 +146,7 @@ public class SummaryConversation extends Conversation {
      */
     @Override
     public void add(Message message) {
+        load();
         synchronized (summaryLock) {
             super.add(message);
         }
@@ -133,27 +160,47 @@ public class SummaryConversation extends Conversation {
         summarize(false);
     }
 
+    /**
+     * 提交摘要请求到调度器。消息已达到窗口上限的会话为紧急请求，优先执行；
+     * 加载时的过期压缩为普通请求，按 (设备, 角色) 去抖，避免重连风暴集中调用大模型。
+     */
     private void summarize(boolean force) {
-        List<Message> needSummaryMessages;
-        int size;
-        int actualBatchSize;
+        boolean urgent;
         synchronized (summaryLock) {
             if (summarizing) {
                 return;
             }
-            size = messages.size();
+            int size = messages.size();
             if (size == 0 || (!force && size < maxMessages)) {
                 return;
             }
-            actualBatchSize = Math.min(batchSize, size);
+            urgent = size >= maxMessages;
+            summarizing = true;
+        }
+        if (!summaryScheduler.request(getOwnerId() + ":" + getRoleId(), urgent, summaryJob)) {
+            synchronized (summaryLock) {
+                summarizing = false;
+            }
+        }
+    }
+
+    /**
+     * 由调度器执行，在执行时截取待摘要的消息批次
+     */
+    protected void summaryMessages() {
+        List<Message> needSummaryMessages;
+        synchronized (summaryLock) {
+            int size = messages.size();
+            int actualBatchSize = Math.min(batchSize, size);
             if (actualBatchSize <= 0) {
+                summarizing = false;
                 return;
             }
-            needSummaryMessages = new ArrayList<>(messages.subList(0, actualBatchSize));
-            summarizing = true;
+            log.info("current conversation message size:{}, batch size to summary:{}", size, actualBatchSize);
+            // 原始消息视图不可变，后续追加和裁剪不影响它
+            needSummaryMessages = messages.raw().subList(0, actualBatchSize);
         }
-        log.info("current conversation message size:{}, batch size to summary:{}", size, actualBatchSize);
-        Thread.startVirtualThread(() -> summaryMessages(needSummaryMessages));
+        summaryMessages(needSummaryMessages);
     }
 
     protected void summaryMessages(List<Message> needSummaryMessages) {
@@ -198,9 +245,12 @@ public class SummaryConversation extends Conversation {
             chatMemory.save(newSummary);
 
             synchronized (summaryLock) {
-                // 5. 移除已处理的消息
-                messages.removeAll(needSummaryMessages);
-                this.lastSummary = newSummary;
+                // 5. 移除已处理的消息（摘要期间可能被 clear，确认头部仍是这批消息）
+                if (messages.size() >= needSummaryMessages.size()
+                        && messages.get(0) == needSummaryMessages.getFirst()) {
+                    messages.removeFirst(needSummaryMessages.size());
+                }
+                setLastSummary(newSummary);
                 summarizing = false;
             }
             summarize();
@@ -212,26 +262,35 @@ public class SummaryConversation extends Conversation {
         }
     }
 
+    /**
+     * 记录最新摘要并重建摘要系统消息，调用方持有 summaryLock 或处于历史加载阶段
+     */
+    private void setLastSummary(SummaryBO summary) {
+        this.lastSummary = summary;
+        if (summary != null && StringUtils.hasText(summary.getSummary())) {
+            // 多条SystemMessage在主流模型（OpenAI、Qwen、DeepSeek）中均已验证可用
+            summaryPrefix = List.of(new SystemMessage("下面是你与用户最近聊天内容的摘要：\n" + summary.getSummary()));
+        } else {
+            summaryPrefix = List.of();
+        }
+    }
+
+    /**
+     * 返回 [角色系统消息, 摘要系统消息, 未摘要的消息] 的不可变视图，两条系统消息只在输入变化时重建
+     */
     public List<Message> messages(ConversationContext context) {
+        load();
         List<Message> messageSnapshot;
-        SummaryBO summarySnapshot;
+        List<Message> summarySnapshot;
         synchronized (summaryLock) {
-            messageSnapshot = new ArrayList<>(messages);
-            summarySnapshot = lastSummary;
+            messageSnapshot = messages.prompt();
+            summarySnapshot = summaryPrefix;
         }
-        // 新消息列表对象，避免使用过程中污染原始列表对象
-        List<Message> historyMessages = new ArrayList<>();
-        var roleSystemMessage = roleSystemMessage(context);
-        if(roleSystemMessage.isPresent()){
-            historyMessages.add(roleSystemMessage.get());
-        }
-        if(summarySnapshot != null && StringUtils.hasText(summarySnapshot.getSummary())){
-            // 多条SystemMessage在主流模型（OpenAI、Qwen、DeepSeek）中均已验证可用
-            historyMessages.add(new SystemMessage("下面是你与用户最近聊天内容的摘要：\n" + summarySnapshot.getSummary()));
+        List<Message> systemMessages = rolePrefix(context);
+        if (!summarySnapshot.isEmpty()) {
+            systemMessages = MessageLog.concat(systemMessages, summarySnapshot);
         }
-        historyMessages.addAll(messageSnapshot);
-        // UserMessage 按 metadata 装配带前缀的副本供 LLM 使用
-        return historyMessages.stream().map(UserMessageAssembler::assemble).toList();
+        return MessageLog.concat(systemMessages, messageSnapshot);
     }
 
     @Override
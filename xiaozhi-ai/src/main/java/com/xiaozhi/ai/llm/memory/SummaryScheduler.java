@@ -0,0 +1,215 @@
+package com.xiaozhi.ai.llm.memory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+/**
+ * 对话摘要的集中调度器。
+ *
+ * 摘要需要调用大模型并写库，重连风暴时大量会话同时触发会同时压垮 MySQL 和 LLM 配额，因此统一在这里排队：
+ * - 按 (设备, 角色) 去抖：窗口期内的多次请求合并为一次，同一任务重复提交只执行一次
+ * - 固定数量的工作线程，限制同时进行的摘要调用
+ * - 消息即将超出窗口的会话标记为紧急，跳过去抖并优先执行
+ * - 同一个键同一时刻只执行一个任务
+ * - 积压、执行中任务数与延迟以 xiaozhi.summary.* 指标暴露
+ */
+@Slf4j
+@Component
+public class SummaryScheduler implements MeterBinder {
+
+    @Value("${conversation.summary.concurrency:2}")
+    private int concurrency;
+
+    /**
+     * 去抖窗口，窗口内的重复请求合并
+     */
+    @Value("${conversation.summary.debounce-ms:5000}")
+    private long debounceMs;
+
+    /**
+     * 待执行任务（按键计）的上限，超出后丢弃非紧急请求
+     */
+    @Value("${conversation.summary.capacity:1000}")
+    private int capacity;
+
+    private final Map<String, Task> pending = new ConcurrentHashMap<>();
+    private final Set<String> runningKeys = ConcurrentHashMap.newKeySet();
+    private final PriorityBlockingQueue<Ready> ready = new PriorityBlockingQueue<>(64,
+            Comparator.comparing(Ready::urgent).reversed().thenComparingLong(Ready::requestedAt));
+    private ScheduledThreadPoolExecutor timer;
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // 延迟为首次请求到执行完成的时间
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+
+    private static final class Task {
+        final String key;
+        final long requestedAt = System.currentTimeMillis();
+        final AtomicBoolean queued = new AtomicBoolean(false);
+        // 只在 pending.compute 内修改，执行前移出 pending 后不再变化
+        final Set<Runnable> jobs = new LinkedHashSet<>();
+        volatile boolean urgent;
+
+        Task(String key, Runnable job, boolean urgent) {
+            this.key = key;
+            this.jobs.add(job);
+            this.urgent = urgent;
+        }
+    }
+
+    // 入队时固定优先级，避免队列中的元素排序键变化
+    private record Ready(Task task, boolean urgent, long requestedAt) {}
+
+    @PostConstruct
+    public void init() {
+        timer = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("summary-scheduler").daemon(true).factory());
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(Thread.ofVirtual().name("summary-worker-" + i).start(this::workLoop));
+        }
+        log.info("对话摘要调度器已启动 - 并发: {}, 去抖: {}ms", concurrency, debounceMs);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("xiaozhi.summary.pending", pending, Map::size)
+                .description("等待去抖或排队中的摘要任务数").register(registry);
+        Gauge.builder("xiaozhi.summary.ready", ready, PriorityBlockingQueue::size)
+                .description("去抖结束、等待工作线程的摘要任务数").register(registry);
+        Gauge.builder("xiaozhi.summary.running", running, AtomicInteger::get)
+                .description("执行中的摘要任务数").register(registry);
+        FunctionCounter.builder("xiaozhi.summary.requests", requested, AtomicLong::get).register(registry);
+        FunctionCounter.builder("xiaozhi.summary.jobs", completed, AtomicLong::get)
+                .tag("result", "completed").register(registry);
+        FunctionCounter.builder("xiaozhi.summary.jobs", failed, AtomicLong::get)
+                .tag("result", "failed").register(registry);
+        FunctionCounter.builder("xiaozhi.summary.dropped", dropped, AtomicLong::get)
+                .description("积压已满时丢弃的请求数").register(registry);
+        FunctionTimer.builder("xiaozhi.summary.latency", this,
+                        s -> s.executed.get(), s -> s.totalLatencyMs.get(), TimeUnit.MILLISECONDS)
+                .description("首次请求到执行完成的时间").register(registry);
+        TimeGauge.builder("xiaozhi.summary.latency.max", maxLatencyMs, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .register(registry);
+    }
+
+    /**
+     * 请求执行一次摘要，立即返回
+     *
+     * @param key    去抖键，一般为 设备:角色
+     * @param urgent 是否紧急（消息即将超出窗口），紧急请求不等待去抖窗口
+     * @param job    摘要任务，同一键下相同的任务合并为一次执行
+     * @return 是否已接受，积压已满时丢弃非紧急请求并返回 false
+     */
+    public boolean request(String key, boolean urgent, Runnable job) {
+        requested.incrementAndGet();
+        AtomicBoolean accepted = new AtomicBoolean(true);
+        pending.compute(key, (k, task) -> {
+            if (task == null) {
+                if (!urgent && pending.size() >= capacity) {
+                    dropped.incrementAndGet();
+                    accepted.set(false);
+                    log.warn("对话摘要积压已满，丢弃本次请求: {}", k);
+                    return null;
+                }
+                Task created = new Task(k, job, urgent);
+                schedule(created, urgent ? 0 : debounceMs);
+                return created;
+            }
+            task.jobs.add(job);
+            if (urgent && !task.urgent) {
+                task.urgent = true;
+                schedule(task, 0);
+            }
+            return task;
+        });
+        return accepted.get();
+    }
+
+    private void schedule(Task task, long delayMs) {
+        timer.schedule(() -> {
+            if (task.queued.compareAndSet(false, true)) {
+                ready.offer(new Ready(task, task.urgent, task.requestedAt));
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void workLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task task;
+            try {
+                task = ready.take().task();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!runningKeys.add(task.key)) {
+                // 同一键的上一个任务仍在执行，稍后再试
+                task.queued.set(false);
+                schedule(task, debounceMs);
+                continue;
+            }
+            // 先移出待执行表，执行期间的新请求会重新去抖；compute 内移除保证之后不再有任务并入
+            pending.computeIfPresent(task.key, (k, t) -> t == task ? null : t);
+            running.incrementAndGet();
+            try {
+                for (Runnable job : task.jobs) {
+                    try {
+                        job.run();
+                        completed.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        log.error("对话摘要任务失败: {}", task.key, e);
+                    }
+                }
+            } finally {
+                running.decrementAndGet();
+                runningKeys.remove(task.key);
+                long latency = System.currentTimeMillis() - task.requestedAt;
+                executed.incrementAndGet();
+                totalLatencyMs.addAndGet(latency);
+                maxLatencyMs.accumulateAndGet(latency, Math::max);
+                log.debug("对话摘要任务完成 - Key: {}, 延迟: {}ms, 积压: {}", task.key, latency, pending.size());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.forEach(Thread::interrupt);
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        log.info("对话摘要调度器已停止 - 积压: {}, 请求: {}, 完成: {}, 失败: {}, 丢弃: {}",
+                pending.size(), requested.get(), completed.get(), failed.get(), dropped.get());
+    }
+}
@@ -4,7 +4,19 @@ import org.springframework.ai.tool.metadata.ToolMetadata;
 
 /**
  * @param returnDirect 调用工具后直接返回工具调用结果，不再调用大语言模型
+ * @param serial 工具有会话级副作用（结束会话、切换角色、播放媒体等），同一轮的多个工具调用中按顺序单独执行，不与其他工具并发
  * @param disturbed 调用此工具的特定语言指令会污染对话上下文，标识从Conversation里剔除触发此工具调用的UserMessage。
  */
-public record XiaozhiToolMetadata(boolean returnDirect) implements ToolMetadata {
+public record XiaozhiToolMetadata(boolean returnDirect, boolean serial) implements ToolMetadata {
+
+    public XiaozhiToolMetadata(boolean returnDirect) {
+        this(returnDirect, false);
+    }
+
+    /**
+     * 工具是否需要串行执行，非 XiaozhiToolMetadata 的工具默认可并发
+     */
+    public static boolean isSerial(ToolMetadata metadata) {
+        return metadata instanceof XiaozhiToolMetadata xiaozhi && xiaozhi.serial();
+    }
 }
@@ -0,0 +1,22 @@
+package com.xiaozhi.ai.stt;
+
+/**
+ * STT 中间识别结果（识别过程中的假设文本）。
+ *
+ * <p>各字段说明：
+ * <ul>
+ *   <li>text - 截至当前的完整假设文本（非增量片段）</li>
+ *   <li>stable - 是否稳定。true 表示识别引擎已确认该文本（如 Vosk 分段结果、FunASR 2pass 离线修正），
+ *       后续只会在其后追加内容；false 表示实时假设，后续可能被修正</li>
+ * </ul>
+ */
+public record SttPartialResult(String text, boolean stable) {
+
+    public static SttPartialResult stable(String text) {
+        return new SttPartialResult(text, true);
+    }
+
+    public static SttPartialResult unstable(String text) {
+        return new SttPartialResult(text, false);
+    }
+}
@@ -2,6 +2,8 @@ package com.xiaozhi.ai.stt;
 
 import reactor.core.publisher.Flux;
 
+import java.util.function.Consumer;
+
 /**
  * STT服务接口
  */
@@ -20,4 +22,23 @@ public interface SttService {
    */
   SttResult stream(Flux<byte[]> audioSink);
 
+  /**
+   * 流式处理音频数据，并在识别过程中回调中间结果。
+   * 默认实现不产生中间结果，支持中间结果的 Provider 覆写此方法。
+   *
+   * @param audioSink       音频数据流
+   * @param partialListener 中间结果回调，在识别线程中调用，实现方不应阻塞
+   * @return 最终识别结果
+   */
+  default SttResult stream(Flux<byte[]> audioSink, Consumer<SttPartialResult> partialListener) {
+    return stream(audioSink);
+  }
+
+  /**
+   * 是否支持中间识别结果
+   */
+  default boolean supportsPartialResults() {
+    return false;
+  }
+
 }
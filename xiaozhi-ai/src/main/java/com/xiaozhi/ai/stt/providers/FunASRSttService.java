@@ -2,6 +2,7 @@ package com.xiaozhi.ai.stt.providers;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.xiaozhi.ai.stt.SttPartialResult;
 import com.xiaozhi.ai.stt.SttResult;
 import com.xiaozhi.ai.stt.SttService;
 import com.xiaozhi.common.model.bo.ConfigBO;
@@ -17,6 +18,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import lombok.extern.slf4j.Slf4j;
 /**
@@ -49,13 +51,25 @@ public class FunASRSttService implements SttService {
         return PROVIDER_NAME;
     }
 
+    @Override
+    public boolean supportsPartialResults() {
+        return true;
+    }
+
     @Override
     public SttResult stream(Flux<byte[]> audioSink) {
+        return stream(audioSink, null);
+    }
+
+    @Override
+    public SttResult stream(Flux<byte[]> audioSink, Consumer<SttPartialResult> partialListener) {
         // 使用阻塞队列存储音频数据
         BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>();
         AtomicBoolean isCompleted = new AtomicBoolean(false);
         // 拼接所有2pass-offline离线修正结果
         StringBuilder offlineResult = new StringBuilder();
+        // 上一次离线修正之后的2pass-online实时片段，离线修正到达后清空
+        StringBuilder onlineResult = new StringBuilder();
         AtomicReference<String> finalResult = new AtomicReference<>("");
         CountDownLatch recognitionLatch = new CountDownLatch(1);
         
@@ -116,7 +130,14 @@ public class FunASRSttService implements SttService {
                         if (text != null && !text.isEmpty()) {
                             offlineResult.append(text);
                         }
+                        onlineResult.setLength(0);
                         log.debug("FunASR 离线修正片段: {}", text);
+                        // 离线修正结果已确认，作为稳定假设回调
+                        notifyPartial(partialListener, SttPartialResult.stable(offlineResult.toString()));
+                    } else if ("2pass-online".equals(mode) && text != null && !text.isEmpty()) {
+                        // 实时识别片段是增量的，拼接在已确认文本之后作为实时假设
+                        onlineResult.append(text);
+                        notifyPartial(partialListener, SttPartialResult.unstable(offlineResult + onlineResult.toString()));
                     }
                 } catch (Exception e) {
                     log.error("解析FunASR响应失败", e);
@@ -161,4 +182,18 @@ public class FunASRSttService implements SttService {
         
         return SttResult.textOnly(finalResult.get());
     }
-}
\ No newline at end of file
+
+    /**
+     * 回调中间识别结果，回调异常不影响识别流程
+     */
+    private static void notifyPartial(Consumer<SttPartialResult> partialListener, SttPartialResult partial) {
+        if (partialListener == null || partial.text().isEmpty()) {
+            return;
+        }
+        try {
+            partialListener.accept(partial);
+        } catch (Exception e) {
+            log.warn("处理FunASR中间识别结果失败: {}", e.getMessage());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.xiaozhi.ai.stt.providers;
 
+import com.xiaozhi.ai.stt.SttPartialResult;
 import com.xiaozhi.ai.stt.SttResult;
 import com.xiaozhi.ai.stt.SttService;
 import com.xiaozhi.utils.AudioUtils;
@@ -22,6 +23,8 @@ import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import lombok.extern.slf4j.Slf4j;
 /**
@@ -116,8 +119,18 @@ public class VoskSttService implements SttService {
         return PROVIDER_NAME;
     }
 
+    @Override
+    public boolean supportsPartialResults() {
+        return true;
+    }
+
     @Override
     public SttResult stream(Flux<byte[]> audioSink) {
+        return stream(audioSink, null);
+    }
+
+    @Override
+    public SttResult stream(Flux<byte[]> audioSink, Consumer<SttPartialResult> partialListener) {
         if (!isModelLoaded()) {
             log.error("Vosk模型未加载，无法进行流式识别！");
             return null;
@@ -128,6 +141,8 @@ public class VoskSttService implements SttService {
         AtomicBoolean isCompleted = new AtomicBoolean(false);
         List<String> recognizedText = new ArrayList<>();
         StringBuilder finalResult = new StringBuilder();
+        // 上一次回调的中间结果，避免重复回调相同的假设文本
+        AtomicReference<String> lastPartial = new AtomicReference<>("");
 
         // 订阅Sink并将数据放入队列
         audioSink.subscribe(
@@ -155,6 +170,15 @@ public class VoskSttService implements SttService {
                                     String text = jsonResult.getString("text").replaceAll("\\s+", "");
                                     recognizedText.add(text);
                                     log.debug("Vosk识别中间结果: {}", text);
+                                    // 分段结果已被识别引擎确认，作为稳定假设回调
+                                    notifyPartial(partialListener, String.join("", recognizedText), true, lastPartial);
+                                }
+                            } else if (partialListener != null) {
+                                // 实时假设：已确认的分段 + 当前未确认的部分结果
+                                String partial = new JSONObject(recognizer.getPartialResult()).optString("partial", "")
+                                        .replaceAll("\\s+", "");
+                                if (!partial.isEmpty()) {
+                                    notifyPartial(partialListener, String.join("", recognizedText) + partial, false, lastPartial);
                                 }
                             }
                         }
@@ -202,4 +226,20 @@ public class VoskSttService implements SttService {
 
         return SttResult.textOnly(finalResult.toString());
     }
+
+    /**
+     * 回调中间识别结果，文本与上次相同时跳过
+     */
+    private static void notifyPartial(Consumer<SttPartialResult> partialListener, String text, boolean stable,
+                                      AtomicReference<String> lastPartial) {
+        if (partialListener == null || (!stable && text.equals(lastPartial.get()))) {
+            return;
+        }
+        lastPartial.set(text);
+        try {
+            partialListener.accept(new SttPartialResult(text, stable));
+        } catch (Exception e) {
+            log.warn("处理Vosk中间识别结果失败: {}", e.getMessage());
+        }
+    }
 }
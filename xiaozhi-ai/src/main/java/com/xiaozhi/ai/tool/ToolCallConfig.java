@@ -7,22 +7,40 @@ import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProces
 import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
 import org.springframework.ai.tool.resolution.ToolCallbackResolver;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class ToolCallConfig {
 
     private final ToolExecutionExceptionProcessor defaultToolExecutionExceptionProcessor
             = DefaultToolExecutionExceptionProcessor.builder().build();
 
+    /**
+     * 同一轮多个工具调用是否并发执行
+     */
+    @Value("${xiaozhi.tool.parallel.enabled:true}")
+    private boolean parallelEnabled;
+
+    /**
+     * 单个工具调用的超时时间
+     */
+    @Value("${xiaozhi.tool.call-timeout-ms:30000}")
+    private long toolTimeoutMs;
+
     @Bean
     public ToolCallingManager toolCallingManager(ObservationRegistry observationRegistry,
                                                  @Autowired(required = false) ToolCallbackResolver toolCallbackResolver,
                                                  @Autowired(required = false) ToolExecutionExceptionProcessor toolExecutionExceptionProcessor) {
-        return new XiaoZhiToolCallingManager(observationRegistry,
+        XiaoZhiToolCallingManager manager = new XiaoZhiToolCallingManager(observationRegistry,
                 toolCallbackResolver != null ? toolCallbackResolver : name -> null,
                 toolExecutionExceptionProcessor == null ? defaultToolExecutionExceptionProcessor : toolExecutionExceptionProcessor);
+        manager.setParallelEnabled(parallelEnabled);
+        manager.setToolTimeout(Duration.ofMillis(toolTimeoutMs));
+        return manager;
     }
 
     /**
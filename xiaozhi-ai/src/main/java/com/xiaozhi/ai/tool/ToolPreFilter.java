@@ -0,0 +1,212 @@
+package com.xiaozhi.ai.tool;
+
+import com.xiaozhi.ai.llm.factory.ChatModelFactory;
+import com.xiaozhi.common.model.bo.ConfigBO;
+import com.xiaozhi.common.port.ConfigLookup;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+/**
+ * 基于向量相似度的工具预筛选。
+ *
+ * 全局工具、会话工具与设备 MCP 工具较多时，每轮都把全部工具定义发给 LLM 会明显增加 prompt token 和首 Token 延迟。
+ * 这里用默认向量模型为用户输入与工具描述计算相似度，只保留最相关的 top-k 个工具及常驻工具：
+ * - 工具描述的向量按 (向量模型, 工具名, 描述) 缓存，只在首次出现或描述变化时计算
+ * - 工具数不超过 min-tools、未配置向量模型、向量计算失败或超时时，返回全部工具
+ * - 没有工具达到阈值时返回全部工具，避免相似度估计偏差让功能工具凭空消失
+ * 向量计算在每轮请求的关键路径上，默认关闭，工具很多的部署按需开启 xiaozhi.tool.prefilter.enabled
+ */
+@Slf4j
+@Component
+public class ToolPreFilter {
+
+    /**
+     * 向量缓存的条目上限，超出后整体清空重建
+     */
+    private static final int MAX_CACHED_VECTORS = 4096;
+
+    /**
+     * 默认向量模型配置的复查间隔，避免未配置时每轮都查询数据库
+     */
+    private static final long CONFIG_REFRESH_MS = 60_000;
+
+    @Value("${xiaozhi.tool.prefilter.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 工具数不超过此值时不筛选
+     */
+    @Value("${xiaozhi.tool.prefilter.min-tools:10}")
+    private int minTools;
+
+    @Value("${xiaozhi.tool.prefilter.top-k:6}")
+    private int topK;
+
+    /**
+     * 余弦相似度阈值，低于此值的工具不发送
+     */
+    @Value("${xiaozhi.tool.prefilter.threshold:0.3}")
+    private double threshold;
+
+    /**
+     * 常驻工具，无论相似度如何都会发送
+     */
+    @Value("${xiaozhi.tool.prefilter.pinned:exit_session,new_chat,change_role}")
+    private Set<String> pinned;
+
+    /**
+     * 向量计算的最长等待时间，超时后本轮返回全部工具
+     */
+    @Value("${xiaozhi.tool.prefilter.timeout-ms:1000}")
+    private long timeoutMs;
+
+    @Autowired
+    private ConfigLookup configLookup;
+
+    @Autowired
+    private ChatModelFactory chatModelFactory;
+
+    // 工具描述向量，键为 向量模型键:工具名:描述哈希
+    private final Map<String, float[]> toolVectors = new ConcurrentHashMap<>();
+
+    private volatile ConfigBO embeddingConfig;
+    private volatile long embeddingConfigCheckedAt;
+
+    /**
+     * 按用户输入筛选本轮发送给 LLM 的工具
+     *
+     * @param userText 用户输入
+     * @param tools    当前会话的全部工具
+     * @return 筛选后的工具，保持原有顺序
+     */
+    public List<ToolCallback> filter(String userText, List<ToolCallback> tools) {
+        if (!enabled || tools.size() <= minTools || !StringUtils.hasText(userText)) {
+            return tools;
+        }
+        ConfigBO config = currentEmbeddingConfig();
+        if (config == null) {
+            return tools;
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> select(config, userText, tools),
+                            Thread::startVirtualThread)
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("工具预筛选失败，发送全部工具 - 原因: {}", e.getMessage());
+            return tools;
+        }
+    }
+
+    private List<ToolCallback> select(ConfigBO config, String userText, List<ToolCallback> tools) {
+        EmbeddingModel embeddingModel = chatModelFactory.getEmbeddingModel(config);
+        String modelKey = config.getConfigId() + ":" + config.getConfigName() + ":" + config.getApiUrl();
+        float[][] vectors = toolVectors(embeddingModel, modelKey, tools);
+        float[] query = embeddingModel.embed(userText);
+
+        List<Integer> candidates = new ArrayList<>();
+        double[] scores = new double[tools.size()];
+        for (int i = 0; i < tools.size(); i++) {
+            scores[i] = cosine(query, vectors[i]);
+            if (scores[i] >= threshold && !pinned.contains(tools.get(i).getToolDefinition().name())) {
+                candidates.add(i);
+            }
+        }
+        if (candidates.isEmpty()) {
+            log.debug("工具预筛选没有达到阈值的工具，发送全部工具 - 全部: {}", tools.size());
+            return tools;
+        }
+        candidates.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+        Set<Integer> selected = new HashSet<>(candidates.subList(0, Math.min(topK, candidates.size())));
+
+        List<ToolCallback> result = new ArrayList<>();
+        for (int i = 0; i < tools.size(); i++) {
+            if (selected.contains(i) || pinned.contains(tools.get(i).getToolDefinition().name())) {
+                result.add(tools.get(i));
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("工具预筛选 - 全部: {}, 保留: {}", tools.size(),
+                    result.stream().map(t -> t.getToolDefinition().name()).toList());
+        }
+        return result;
+    }
+
+    /**
+     * 取出各工具描述的向量，缺失的合并为一次请求计算
+     */
+    private float[][] toolVectors(EmbeddingModel embeddingModel, String modelKey, List<ToolCallback> tools) {
+        float[][] vectors = new float[tools.size()][];
+        String[] keys = new String[tools.size()];
+        List<Integer> missing = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < tools.size(); i++) {
+            ToolDefinition definition = tools.get(i).getToolDefinition();
+            String text = definition.name() + ": " + Objects.toString(definition.description(), "");
+            keys[i] = modelKey + ":" + definition.name() + ":" + text.hashCode();
+            vectors[i] = toolVectors.get(keys[i]);
+            if (vectors[i] == null) {
+                missing.add(i);
+                texts.add(text);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<float[]> embedded = embeddingModel.embed(texts);
+            if (toolVectors.size() + missing.size() > MAX_CACHED_VECTORS) {
+                toolVectors.clear();
+            }
+            for (int j = 0; j < missing.size(); j++) {
+                int i = missing.get(j);
+                vectors[i] = embedded.get(j);
+                toolVectors.put(keys[i], vectors[i]);
+            }
+        }
+        return vectors;
+    }
+
+    private ConfigBO currentEmbeddingConfig() {
+        long now = System.currentTimeMillis();
+        if (now - embeddingConfigCheckedAt > CONFIG_REFRESH_MS) {
+            try {
+                embeddingConfig = configLookup.getDefaultConfig("llm", ConfigBO.ModelType.embedding.getValue());
+            } catch (Exception e) {
+                log.warn("获取默认向量模型配置失败: {}", e.getMessage());
+                embeddingConfig = null;
+            }
+            embeddingConfigCheckedAt = now;
+        }
+        return embeddingConfig;
+    }
+
+    static double cosine(float[] a, float[] b) {
+        if (a == null || b == null || a.length != b.length) {
+            return 0;
+        }
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0 || normB == 0) {
+            return 0;
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
@@ -1,9 +1,11 @@
 package com.xiaozhi.ai.tool;
 
+import com.xiaozhi.ai.llm.tool.XiaozhiToolMetadata;
 import com.xiaozhi.ai.tool.session.ToolSession;
 import com.xiaozhi.ai.tool.session.ToolSessionProvider;
 import com.xiaozhi.event.ToolCallCompletedEvent;
 
+import io.micrometer.observation.Observation;
 import io.micrometer.observation.ObservationRegistry;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
@@ -33,13 +35,23 @@ import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import lombok.extern.slf4j.Slf4j;
 /**
  * 自定义的工具调用管理器，用于处理工具调用和执行。
  * 基于Spring AI的DefaultToolCallingManager，增加了自定义的监控和元数据处理功能。
  * <p>
+ * 模型一次返回多个工具调用时，互不依赖的调用在虚拟线程上并发执行，共用一个从提交时起算的超时截止时间；
+ * 带会话副作用的工具通过 {@link XiaozhiToolMetadata#serial()} 声明串行执行，与单个调用一样在当前线程内联执行。
+ * <p>
  * 包含对流式工具调用分片合并的修复（Spring AI issue #4629, #4790）。
  * 该问题在 Spring AI 1.1.4 中仍未修复，mergeToolCalls 方法作为必要的修复保留。
  * <p>
@@ -50,6 +62,8 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
 
     private static ApplicationContext applicationContext;
 
+    private static volatile ToolSessionProvider cachedSessionProvider;
+
     // @formatter:off
 
     private static final ObservationRegistry DEFAULT_OBSERVATION_REGISTRY
@@ -73,6 +87,13 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
 
     private ToolCallingObservationConvention observationConvention = DEFAULT_OBSERVATION_CONVENTION;
 
+    // 工具调用在虚拟线程上执行，以便并发和超时控制
+    private final ExecutorService toolExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private boolean parallelEnabled = true;
+
+    private Duration toolTimeout = Duration.ofSeconds(30);
+
     public XiaoZhiToolCallingManager(ObservationRegistry observationRegistry, ToolCallbackResolver toolCallbackResolver,
                                      ToolExecutionExceptionProcessor toolExecutionExceptionProcessor) {
         Assert.notNull(observationRegistry, "observationRegistry cannot be null");
@@ -90,29 +111,30 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
     }
 
     /**
-     * 获取 ToolSessionProvider
+     * 获取 ToolSessionProvider，首次获取后缓存，避免每次工具调用都查找 Bean
      */
     private static ToolSessionProvider sessionProvider() {
-        if (applicationContext != null) {
+        ToolSessionProvider provider = cachedSessionProvider;
+        if (provider == null && applicationContext != null) {
             try {
-                return applicationContext.getBean(ToolSessionProvider.class);
+                provider = applicationContext.getBean(ToolSessionProvider.class);
+                cachedSessionProvider = provider;
             } catch (Exception e) {
                 log.debug("无法获取ToolSessionProvider: {}", e.getMessage());
             }
         }
-        return null;
+        return provider;
     }
 
     /**
      * 发布工具调用事件
      */
     private static void publishToolEvent(String sessionId, String toolName, String arguments,
-                                          String result, boolean success, long startTimeMs) {
+                                          String result, boolean success, long durationMs) {
         if (applicationContext == null) {
             return;
         }
         try {
-            long durationMs = startTimeMs > 0 ? System.currentTimeMillis() - startTimeMs : 0;
             applicationContext.publishEvent(new ToolCallCompletedEvent(
                     XiaoZhiToolCallingManager.class, sessionId, toolName, arguments, result, success, durationMs));
         } catch (Exception e) {
@@ -170,7 +192,13 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
                     .toolCalls(mergedToolCalls)
                     .build();
 
-        ToolContext toolContext = buildToolContext(prompt, assistantMessage);
+        // 带 toolName 元数据的 tool_call 消息，工具上下文与后续历史共用，只构建一次
+        AssistantMessage toolCallMessage = withToolNameMetadata(assistantMessage);
+        List<Message> preToolHistory = new ArrayList<>(prompt.getInstructions().size() + 2);
+        preToolHistory.addAll(prompt.getInstructions());
+        preToolHistory.add(toolCallMessage);
+
+        ToolContext toolContext = buildToolContext(prompt, preToolHistory);
 
         XiaoZhiToolCallingManager.ToolExecResult toolExecResult = executeToolCall(prompt, assistantMessage,
                 toolContext);
@@ -187,8 +215,10 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
             }
         }
 
-        List<Message> conversationHistory = buildPostToolHistory(prompt.getInstructions(),
-                assistantMessage, toolExecResult.toolResponseMessage());
+        // 工具上下文持有 preToolHistory 的只读视图，追加工具结果时另建列表
+        List<Message> conversationHistory = new ArrayList<>(preToolHistory.size() + 1);
+        conversationHistory.addAll(preToolHistory);
+        conversationHistory.add(toolExecResult.toolResponseMessage());
 
         return ToolExecutionResult.builder()
                 .conversationHistory(conversationHistory)
@@ -196,44 +226,33 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
                 .build();
     }
 
-    private static ToolContext buildToolContext(Prompt prompt, AssistantMessage assistantMessage) {
+    private static ToolContext buildToolContext(Prompt prompt, List<Message> preToolHistory) {
         Map<String, Object> toolContextMap = Map.of();
 
         if (prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions
                 && !CollectionUtils.isEmpty(toolCallingChatOptions.getToolContext())) {
             toolContextMap = new HashMap<>(toolCallingChatOptions.getToolContext());
 
-            toolContextMap.put(ToolContext.TOOL_CALL_HISTORY,
-                    buildPreToolHistory(prompt, assistantMessage));
+            toolContextMap.put(ToolContext.TOOL_CALL_HISTORY, Collections.unmodifiableList(preToolHistory));
         }
 
         return new ToolContext(toolContextMap);
     }
 
-    private static List<Message> buildPreToolHistory(Prompt prompt,
-                                                                             AssistantMessage assistantMessage) {
-        List<Message> messageHistory = new ArrayList<>(prompt.copy().getInstructions());
-
-        // 确保工具调用消息包含正确的元数据
-        if (!CollectionUtils.isEmpty(assistantMessage.getToolCalls())) {
-            Map<String, Object> metadata = new HashMap<>(assistantMessage.getMetadata());
-            String toolName = assistantMessage.getToolCalls().get(0).name();
-            metadata.put("toolName", toolName);
-            AssistantMessage updatedAssistantMessage = AssistantMessage.builder()
-                    .content(assistantMessage.getText())
-                    .properties(metadata)
-                    .toolCalls(assistantMessage.getToolCalls())
-                    .build();
-            messageHistory.add(updatedAssistantMessage);
-        } else {
-            messageHistory.add(AssistantMessage.builder()
-                    .content(assistantMessage.getText())
-                    .properties(assistantMessage.getMetadata())
-                    .toolCalls(assistantMessage.getToolCalls())
-                    .build());
+    /**
+     * 确保工具调用消息包含正确的元数据
+     */
+    private static AssistantMessage withToolNameMetadata(AssistantMessage assistantMessage) {
+        if (CollectionUtils.isEmpty(assistantMessage.getToolCalls())) {
+            return assistantMessage;
         }
-
-        return messageHistory;
+        Map<String, Object> metadata = new HashMap<>(assistantMessage.getMetadata());
+        metadata.put("toolName", assistantMessage.getToolCalls().get(0).name());
+        return AssistantMessage.builder()
+                .content(assistantMessage.getText())
+                .properties(metadata)
+                .toolCalls(assistantMessage.getToolCalls())
+                .build();
     }
 
     /**
@@ -319,7 +338,11 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
     }
 
     /**
-     * Execute the tool call and return the response message.
+     * 执行本轮全部工具调用。
+     * 可并发的工具同时提交到虚拟线程，共用提交时确定的截止时间，截止时仍未完成的调用被中断并返回超时结果；
+     * 标记为串行的工具在并发调用全部结束后，于当前线程按调用顺序逐个执行，不与并发批次重叠。
+     * 只有一个调用（或关闭并发）时直接在当前线程执行，不经过线程池，也不额外计时。
+     * 响应、调用详情和事件都按模型给出的调用顺序产生。
      */
     private XiaoZhiToolCallingManager.ToolExecResult executeToolCall(Prompt prompt, AssistantMessage assistantMessage,
                                                                                   ToolContext toolContext) {
@@ -328,85 +351,84 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
             toolCallbacks = toolCallingChatOptions.getToolCallbacks();
         }
 
-        List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>();
-
-        Boolean returnDirect = null;
+        // 通过 sessionId 获取 ToolSession（Persona 只传 sessionId 避免序列化问题）
+        String sessionId = toolContext.getContext().get("sessionId") instanceof String s ? s : null;
+        ToolSessionProvider provider = sessionId != null ? sessionProvider() : null;
+        ToolSession toolSession = provider != null ? provider.getSession(sessionId) : null;
+        Observation parentObservation = this.observationRegistry.getCurrentObservation();
 
-        for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        ToolCallback[] callbacks = new ToolCallback[toolCalls.size()];
+        ToolCallOutcome[] outcomes = new ToolCallOutcome[toolCalls.size()];
+        Future<?>[] futures = new Future<?>[toolCalls.size()];
 
-            String toolName = toolCall.name();
-            String toolInputArguments = toolCall.arguments();
+        Boolean returnDirect = null;
+        boolean concurrent = parallelEnabled && toolCalls.size() > 1;
+        long deadline = System.nanoTime() + toolTimeout.toNanos();
 
-            ToolCallback toolCallback = toolCallbacks.stream()
+        for (int i = 0; i < toolCalls.size(); i++) {
+            String toolName = toolCalls.get(i).name();
+            callbacks[i] = toolCallbacks.stream()
                     .filter(tool -> toolName.equals(tool.getToolDefinition().name()))
                     .findFirst()
                     .orElseGet(() -> this.toolCallbackResolver.resolve(toolName));
 
-            if (toolCallback == null) {
-                // 模型幻觉调用了未注册的工具，返回错误结果让模型自行总结回复，而不是崩掉整个流
-                log.error("模型调用了未注册的工具: {}", toolName);
-                toolResponses.add(new ToolResponseMessage.ToolResponse(
-                        toolCall.id(), toolName,
-                        "工具 '" + toolName + "' 不存在或未注册，请告知用户该功能当前不可用。"));
+            if (callbacks[i] == null) {
                 continue;
             }
-
             if (returnDirect == null) {
-                returnDirect = toolCallback.getToolMetadata().returnDirect();
+                returnDirect = callbacks[i].getToolMetadata().returnDirect();
             }
             else {
-                returnDirect = returnDirect && toolCallback.getToolMetadata().returnDirect();
+                returnDirect = returnDirect && callbacks[i].getToolMetadata().returnDirect();
             }
+            // 先提交全部可并发的调用
+            if (concurrent && !XiaozhiToolMetadata.isSerial(callbacks[i].getToolMetadata())) {
+                ToolCallback toolCallback = callbacks[i];
+                AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+                futures[i] = toolExecutor.submit(() -> invokeTool(toolCallback, toolCall.arguments(), toolContext,
+                        sessionId, parentObservation));
+            }
+        }
 
-            ToolCallingObservationContext observationContext = ToolCallingObservationContext.builder()
-                    .toolDefinition(toolCallback.getToolDefinition())
-                    .toolMetadata(toolCallback.getToolMetadata())
-                    .toolCallArguments(toolInputArguments)
-                    .build();
-            // 通过 sessionId 获取 ToolSession（Persona 只传 sessionId 避免序列化问题）
-            String sessionId = toolContext.getContext().get("sessionId") instanceof String s ? s : null;
-            ToolSession toolSession = null;
-            if (sessionId != null) {
-                toolSession = sessionProvider() != null ? sessionProvider().getSession(sessionId) : null;
-                observationContext.put("sessionId", sessionId);
+        for (int i = 0; i < toolCalls.size(); i++) {
+            if (futures[i] != null) {
+                outcomes[i] = await(futures[i], toolCalls.get(i).name(), deadline);
             }
+        }
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            if (callbacks[i] == null) {
+                // 模型幻觉调用了未注册的工具，返回错误结果让模型自行总结回复，而不是崩掉整个流
+                log.error("模型调用了未注册的工具: {}", toolCall.name());
+                continue;
+            }
+            if (futures[i] == null) {
+                // 串行或单个调用：在当前线程内联执行
+                outcomes[i] = invokeInline(callbacks[i], toolCall, toolContext, sessionId, parentObservation);
+            }
+        }
 
-            // 记录工具调用开始时间
-            final long[] startTimeRef = new long[]{System.currentTimeMillis()};
-            final boolean[] successRef = new boolean[]{true};
-
-            String toolCallResult = ToolCallingObservationDocumentation.TOOL_CALL
-                    .observation(this.observationConvention, DEFAULT_OBSERVATION_CONVENTION, () -> observationContext,
-                            this.observationRegistry)
-                    .observe(() -> {
-                        String toolResult;
-                        try {
-                            toolResult = toolCallback.call(toolInputArguments, toolContext);
-                        }
-                        catch (ToolExecutionException ex) {
-                            log.error("Tool execution exception: ", ex);
-                            toolResult = this.toolExecutionExceptionProcessor.process(ex);
-                            log.debug("Processed tool execution exception result: {}", toolResult);
-                            successRef[0] = false;
-                        }
-                        catch (Exception ex) {
-                            log.error("Unexpected exception during tool execution: ", ex);
-                            toolResult = "Error executing tool: " + ex.getMessage();
-                            successRef[0] = false;
-                        }
-                        observationContext.setToolCallResult(toolResult);
-
-                        return toolResult;
-                    });
+        List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            String toolName = toolCall.name();
+            if (outcomes[i] == null) {
+                toolResponses.add(new ToolResponseMessage.ToolResponse(
+                        toolCall.id(), toolName,
+                        "工具 '" + toolName + "' 不存在或未注册，请告知用户该功能当前不可用。"));
+                continue;
+            }
+            String toolCallResult = outcomes[i].result();
 
             // 记录工具调用详情到session
             if (toolSession != null) {
-                toolSession.addToolCallDetail(toolName, toolInputArguments, toolCallResult);
+                toolSession.addToolCallDetail(toolName, toolCall.arguments(), toolCallResult);
             }
 
             // 发布工具调用事件
-            publishToolEvent(sessionId, toolName, toolInputArguments, toolCallResult,
-                    successRef[0], startTimeRef[0]);
+            publishToolEvent(sessionId, toolName, toolCall.arguments(), toolCallResult,
+                    outcomes[i].success(), outcomes[i].durationMs());
 
             toolResponses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolName,
                     toolCallResult != null ? toolCallResult : ""));
@@ -416,27 +438,82 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
                 returnDirect != null && returnDirect);
     }
 
-    private List<Message> buildPostToolHistory(List<Message> previousMessages,
-                                                                     AssistantMessage assistantMessage, ToolResponseMessage toolResponseMessage) {
-        List<Message> messages = new ArrayList<>(previousMessages);
-
-        // 确保工具调用消息包含正确的元数据
-        if (!CollectionUtils.isEmpty(assistantMessage.getToolCalls())) {
-            Map<String, Object> metadata = new HashMap<>(assistantMessage.getMetadata());
-            String toolName = assistantMessage.getToolCalls().get(0).name();
-            metadata.put("toolName", toolName);
-            AssistantMessage updatedAssistantMessage = AssistantMessage.builder()
-                    .content(assistantMessage.getText())
-                    .properties(metadata)
-                    .toolCalls(assistantMessage.getToolCalls())
-                    .build();
-            messages.add(updatedAssistantMessage);
-        } else {
-            messages.add(assistantMessage);
+    private ToolCallOutcome invokeInline(ToolCallback toolCallback, AssistantMessage.ToolCall toolCall,
+                                         ToolContext toolContext, String sessionId, Observation parentObservation) {
+        try {
+            return invokeTool(toolCallback, toolCall.arguments(), toolContext, sessionId, parentObservation);
+        } catch (RuntimeException e) {
+            log.error("Unexpected exception during tool execution: ", e);
+            return new ToolCallOutcome("Error executing tool: " + e.getMessage(), false, 0);
+        }
+    }
+
+    /**
+     * 在观测上下文中执行单个工具
+     */
+    private ToolCallOutcome invokeTool(ToolCallback toolCallback, String toolInputArguments, ToolContext toolContext,
+                                       String sessionId, Observation parentObservation) {
+        ToolCallingObservationContext observationContext = ToolCallingObservationContext.builder()
+                .toolDefinition(toolCallback.getToolDefinition())
+                .toolMetadata(toolCallback.getToolMetadata())
+                .toolCallArguments(toolInputArguments)
+                .build();
+        if (sessionId != null) {
+            observationContext.put("sessionId", sessionId);
         }
 
-        messages.add(toolResponseMessage);
-        return messages;
+        long startTime = System.currentTimeMillis();
+        boolean[] successRef = new boolean[]{true};
+
+        String toolCallResult = ToolCallingObservationDocumentation.TOOL_CALL
+                .observation(this.observationConvention, DEFAULT_OBSERVATION_CONVENTION, () -> observationContext,
+                        this.observationRegistry)
+                .parentObservation(parentObservation)
+                .observe(() -> {
+                    String toolResult;
+                    try {
+                        toolResult = toolCallback.call(toolInputArguments, toolContext);
+                    }
+                    catch (ToolExecutionException ex) {
+                        log.error("Tool execution exception: ", ex);
+                        toolResult = this.toolExecutionExceptionProcessor.process(ex);
+                        log.debug("Processed tool execution exception result: {}", toolResult);
+                        successRef[0] = false;
+                    }
+                    catch (Exception ex) {
+                        log.error("Unexpected exception during tool execution: ", ex);
+                        toolResult = "Error executing tool: " + ex.getMessage();
+                        successRef[0] = false;
+                    }
+                    observationContext.setToolCallResult(toolResult);
+
+                    return toolResult;
+                });
+
+        return new ToolCallOutcome(toolCallResult, successRef[0], System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 等待工具调用完成，到达截止时间仍未完成则中断该调用并返回超时结果
+     *
+     * @param deadline 本轮并发调用共用的截止时间（System.nanoTime）
+     */
+    private ToolCallOutcome await(Future<?> future, String toolName, long deadline) {
+        try {
+            return (ToolCallOutcome) future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("工具执行超时: {}, 超时时间: {}ms", toolName, toolTimeout.toMillis());
+            return new ToolCallOutcome("工具 '" + toolName + "' 执行超时，请告知用户稍后再试。", false,
+                    toolTimeout.toMillis());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return new ToolCallOutcome("Error executing tool: interrupted", false, 0);
+        } catch (ExecutionException e) {
+            log.error("Unexpected exception during tool execution: ", e.getCause());
+            return new ToolCallOutcome("Error executing tool: " + e.getCause().getMessage(), false, 0);
+        }
     }
 
     public void setObservationConvention(ToolCallingObservationConvention observationConvention) {
@@ -447,9 +524,27 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager, Applicatio
         return new XiaoZhiToolCallingManager.Builder();
     }
 
+    /**
+     * 是否并发执行同一轮中可并发的工具调用，关闭后全部按顺序执行
+     */
+    public void setParallelEnabled(boolean parallelEnabled) {
+        this.parallelEnabled = parallelEnabled;
+    }
+
+    /**
+     * 同一轮并发工具调用的超时时间，从提交时起算、所有并发调用共用，内联执行的调用不受此限制
+     */
+    public void setToolTimeout(Duration toolTimeout) {
+        Assert.notNull(toolTimeout, "toolTimeout cannot be null");
+        this.toolTimeout = toolTimeout;
+    }
+
     private record ToolExecResult(ToolResponseMessage toolResponseMessage, boolean returnDirect) {
     }
 
+    private record ToolCallOutcome(String result, boolean success, long durationMs) {
+    }
+
     public final static class Builder {
 
         private ObservationRegistry observationRegistry = DEFAULT_OBSERVATION_REGISTRY;
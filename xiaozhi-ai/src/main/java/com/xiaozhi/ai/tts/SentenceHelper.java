@@ -7,8 +7,6 @@ import reactor.core.publisher.FluxSink;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 句子处理帮助类，统一分句逻辑。
@@ -24,29 +22,44 @@ public class SentenceHelper implements ChatConverter {
      * 分句结果，包含去除表情符号后的纯文本和提取的情绪词。
      */
     public record SentenceResult(String text, String mood) {}
-    // 句子结束标点符号模式（中英文句号、感叹号、问号）
-    private static final Pattern SENTENCE_END_PATTERN = Pattern.compile("[。！？!?]");
-
+    // 字符类别标志
+    // 句子结束标点（中英文句号、感叹号、问号）
+    private static final int END = 1;
     // 逗号、分号等停顿标点
-    private static final Pattern PAUSE_PATTERN = Pattern.compile("[，、；,;]");
-
+    private static final int PAUSE = 1 << 1;
     // 冒号和引号等特殊标点
-    private static final Pattern SPECIAL_PATTERN = Pattern.compile("[：:\"]");
-
+    private static final int SPECIAL = 1 << 2;
     // 换行符
-    private static final Pattern NEWLINE_PATTERN = Pattern.compile("[\n\r]");
-
-    // 数字模式（用于检测小数点是否在数字中）
-    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+\\.\\d+");
+    private static final int NEWLINE = 1 << 3;
+    // 表情符号
+    private static final int EMOJI = 1 << 4;
+    // 可能作为颜文字结尾的字符，只有追加这些字符时才可能出现新的颜文字
+    private static final int KAOMOJI_END = 1 << 5;
+    // 实义字符：非标点、非空白、非表情，用于快速排除不可能成句的缓冲
+    private static final int CONTENT = 1 << 6;
+
+    // BMP 字符类别表，类加载时预计算，逐字符分类只需一次查表
+    private static final byte[] BMP_CLASSES = new byte[Character.MAX_VALUE + 1];
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            BMP_CLASSES[c] = (byte) computeClass(c);
+        }
+    }
 
     // 最小句子长度（字符数）
     private static final int MIN_SENTENCE_LENGTH = 8;
 
-    // 上下文缓冲区最大长度（用于数字小数点检测等上下文判断）
-    private static final int CONTEXT_BUFFER_MAX_LENGTH = 20;
+    // 单个颜文字最长 12 个码点，增量检测只需检查缓冲尾部的这一段
+    private static final int KAOMOJI_WINDOW = 24;
 
     private final StringBuilder currentSentence = new StringBuilder();
-    private final StringBuilder contextBuffer = new StringBuilder();
+
+    // 当前缓冲中是否已出现颜文字。颜文字一旦出现，在缓冲清空前一直存在，因此只需增量检测
+    private boolean containsKaomoji = false;
+
+    // 当前缓冲中实义字符的 UTF-16 长度，是成句所需实义内容的上界
+    private int contentLength = 0;
 
     public SentenceHelper() {
     }
@@ -54,6 +67,7 @@ public class SentenceHelper implements ChatConverter {
     /**
      * 命令式分句：逐 token 输入，返回检测到的完整句子，未成句则返回空字符串。
      * 供 TTS Provider 内部 WebSocket 订阅回调使用。
+     * 单趟扫描：每个字符一次查表分类，颜文字只在可能出现新匹配时检查缓冲尾部，整体为线性时间。
      */
     public List<SentenceResult> take(String token) {
         List<SentenceResult> sentences = new ArrayList<>();
@@ -63,43 +77,35 @@ public class SentenceHelper implements ChatConverter {
 
         for (int i = 0; i < token.length();) {
             int codePoint = token.codePointAt(i);
-            String charStr = new String(Character.toChars(codePoint));
-
-            contextBuffer.append(charStr);
-            if (contextBuffer.length() > CONTEXT_BUFFER_MAX_LENGTH) {
-                contextBuffer.delete(0, contextBuffer.length() - CONTEXT_BUFFER_MAX_LENGTH);
+            int charCount = Character.charCount(codePoint);
+            int flags = classOf(codePoint);
+
+            int previousLength = currentSentence.length();
+            currentSentence.appendCodePoint(codePoint);
+            int length = currentSentence.length();
+            if ((flags & CONTENT) != 0) {
+                contentLength += charCount;
             }
 
-            currentSentence.append(charStr);
-
-            boolean isEndMark = SENTENCE_END_PATTERN.matcher(charStr).find();
-            boolean isPauseMark = PAUSE_PATTERN.matcher(charStr).find();
-            boolean isSpecialMark = SPECIAL_PATTERN.matcher(charStr).find();
-            boolean isNewline = NEWLINE_PATTERN.matcher(charStr).find();
-            boolean isEmoji = EmojiUtils.isEmoji(codePoint);
-
-            boolean containsKaomoji = false;
-            if (currentSentence.length() >= 3) {
-                containsKaomoji = EmojiUtils.containsKaomoji(currentSentence.toString());
-            }
-
-            if (isEndMark && charStr.equals(".")) {
-                String context = contextBuffer.toString();
-                Matcher numberMatcher = NUMBER_PATTERN.matcher(context);
-                if (numberMatcher.find() && numberMatcher.end() >= context.length() - 3) {
-                    isEndMark = false;
+            if (!containsKaomoji && length >= 3) {
+                if (previousLength < 3) {
+                    // 缓冲首次达到检测长度，检查此前积累的全部内容
+                    containsKaomoji = EmojiUtils.containsKaomoji(currentSentence, 0, length);
+                } else if ((flags & KAOMOJI_END) != 0) {
+                    containsKaomoji = EmojiUtils.containsKaomoji(currentSentence, Math.max(0, length - KAOMOJI_WINDOW), length);
                 }
             }
 
             boolean shouldSendSentence = false;
-            if (isEndMark || isNewline) {
+            if ((flags & (END | NEWLINE)) != 0) {
                 shouldSendSentence = true;
-            } else if ((isPauseMark || isSpecialMark || isEmoji || containsKaomoji)
-                    && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
+            } else if (((flags & (PAUSE | SPECIAL | EMOJI)) != 0 || containsKaomoji)
+                    && length >= MIN_SENTENCE_LENGTH) {
                 shouldSendSentence = true;
             }
 
-            if (shouldSendSentence && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
+            // 实义字符不足时清洗后也不可能成句，跳过清洗，避免长串标点/表情反复整句处理
+            if (shouldSendSentence && length >= MIN_SENTENCE_LENGTH && contentLength >= 2) {
                 String rawSentence = currentSentence.toString().trim();
                 List<String> moods = new ArrayList<>();
                 String cleanSentence = EmojiUtils.processSentence(rawSentence, moods);
@@ -107,10 +113,12 @@ public class SentenceHelper implements ChatConverter {
                     String mood = moods.isEmpty() ? null : moods.get(0);
                     sentences.add(new SentenceResult(cleanSentence, mood));
                     currentSentence.setLength(0);
+                    containsKaomoji = false;
+                    contentLength = 0;
                 }
             }
 
-            i += Character.charCount(codePoint);
+            i += charCount;
         }
 
         return sentences;
@@ -152,6 +160,51 @@ public class SentenceHelper implements ChatConverter {
                         () -> this.onComplete(sink)));
     }
 
+    private static int classOf(int codePoint) {
+        return codePoint <= Character.MAX_VALUE ? BMP_CLASSES[codePoint] : computeClass(codePoint);
+    }
+
+    private static int computeClass(int codePoint) {
+        int flags = 0;
+        switch (codePoint) {
+            case '。', '！', '？', '!', '?' -> flags |= END;
+            case '，', '、', '；', ',', ';' -> flags |= PAUSE;
+            case '：', ':', '"' -> flags |= SPECIAL;
+            case '\n', '\r' -> flags |= NEWLINE;
+            default -> { }
+        }
+        switch (codePoint) {
+            case ')', '）', '>', '＞', '\\', '¯', '*', '/', 'D', '(', '_' -> flags |= KAOMOJI_END;
+            default -> { }
+        }
+        if (EmojiUtils.isEmoji(codePoint)) {
+            flags |= EMOJI;
+        } else if (!isPunctuation(codePoint) && !isRegexWhitespace(codePoint)) {
+            flags |= CONTENT;
+        }
+        return flags;
+    }
+
+    /**
+     * 与正则 \p{P} 一致的标点判断
+     */
+    private static boolean isPunctuation(int codePoint) {
+        return switch (Character.getType(codePoint)) {
+            case Character.CONNECTOR_PUNCTUATION, Character.DASH_PUNCTUATION, Character.START_PUNCTUATION,
+                 Character.END_PUNCTUATION, Character.INITIAL_QUOTE_PUNCTUATION, Character.FINAL_QUOTE_PUNCTUATION,
+                 Character.OTHER_PUNCTUATION -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * 与正则 \s 一致的空白判断
+     */
+    private static boolean isRegexWhitespace(int codePoint) {
+        return codePoint == ' ' || codePoint == '\t' || codePoint == '\n'
+                || codePoint == 0x0B || codePoint == '\f' || codePoint == '\r';
+    }
+
     private boolean containsSubstantialContent(String text) {
         if (text == null || text.trim().length() < MIN_SENTENCE_LENGTH) {
             return false;
@@ -1,5 +1,8 @@
 package com.xiaozhi.ai.tts;
 
+import com.xiaozhi.utils.AudioUtils;
+import reactor.core.publisher.Flux;
+
 import java.nio.file.Path;
 import java.util.UUID;
 
@@ -7,7 +10,7 @@ import java.util.UUID;
  * TTS服务接口。
  * 与 Spring AI 的 {@link org.springframework.ai.audio.tts.TextToSpeechModel} 对齐关系：
  * <ul>
- *   <li>TtsService → TextToSpeechModel（call 模式） — 通过 {@link TtsServiceAdapter} 桥接</li>
+ *   <li>TtsService → TextToSpeechModel（call / stream 模式） — 通过 {@link TtsServiceAdapter} 桥接</li>
  *   <li>{@link XiaozhiTtsOptions} → TextToSpeechOptions — 直接实现</li>
  * </ul>
  *
@@ -71,5 +74,36 @@ public interface TtsService {
    */
   Path textToSpeech(String text) throws Exception;
 
+  /**
+   * 是否原生支持流式合成。
+   * 返回 true 时，{@link #streamTextToSpeech(String)} 会在合成过程中逐块输出音频，不写中间文件。
+   */
+  default boolean supportsStreaming() {
+    return false;
+  }
+
+  /**
+   * 流式语音合成，输出 16kHz 单声道 16bit 的 PCM 数据块。
+   * <p>
+   * 返回的 Flux 是惰性的，订阅时才开始合成。
+   * 默认实现为不支持流式的 Provider 提供适配：先调用 {@link #textToSpeech(String)} 生成完整音频文件，再分块读取为 PCM。
+   *
+   * @param text 要转换为语音的文本
+   * @return PCM 数据块流
+   */
+  default Flux<byte[]> streamTextToSpeech(String text) {
+    return Flux.defer(() -> {
+      try {
+        Path audioPath = textToSpeech(text);
+        if (audioPath == null) {
+          return Flux.error(new IllegalStateException("TTS服务返回空音频文件"));
+        }
+        return Flux.fromIterable(AudioUtils.readAsPcmChunks(audioPath.toString()));
+      } catch (Exception e) {
+        return Flux.error(e);
+      }
+    });
+  }
+
 
 }
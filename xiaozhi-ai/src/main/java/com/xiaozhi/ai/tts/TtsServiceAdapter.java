@@ -13,8 +13,8 @@ import java.nio.file.Path;
 import java.util.List;
 
 /**
- * 适配器：将项目的 {@link TtsService} / {@link StreamingTextToSpeech} 桥接到
- * Spring AI 的 {@link TextToSpeechModel} 标准接口。
+ * 适配器：将项目的 {@link TtsService} 桥接到 Spring AI 的 {@link TextToSpeechModel} 标准接口。
+ * call 模式对应 {@link TtsService#textToSpeech(String)}，stream 模式对应 {@link TtsService#streamTextToSpeech(String)}。
  * <p>
  * 使用方式：
  * <pre>
@@ -51,7 +51,10 @@ public class TtsServiceAdapter implements TextToSpeechModel {
 
     @Override
     public Flux<TextToSpeechResponse> stream(TextToSpeechPrompt prompt) {
-        throw new RuntimeException("TTS streaming failed");
+        String text = prompt.getInstructions().getText();
+        return ttsService.streamTextToSpeech(text)
+                .map(chunk -> new TextToSpeechResponse(List.of(new Speech(chunk))))
+                .doOnError(e -> log.error("TTS stream failed for provider {}: {}", ttsService.getProviderName(), e.getMessage(), e));
     }
 
     @Override
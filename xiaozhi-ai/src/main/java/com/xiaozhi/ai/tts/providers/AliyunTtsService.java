@@ -7,11 +7,14 @@ import com.alibaba.dashscope.aigc.multimodalconversation.MultiModalConversationR
 import com.alibaba.dashscope.audio.tts.SpeechSynthesisAudioFormat;
 import com.alibaba.dashscope.audio.tts.SpeechSynthesisParam;
 import com.alibaba.dashscope.audio.tts.SpeechSynthesizer;
+import com.alibaba.dashscope.audio.tts.SpeechSynthesisResult;
+import com.alibaba.dashscope.common.ResultCallback;
 import com.xiaozhi.ai.tts.TtsService;
 import com.xiaozhi.ai.tts.XiaozhiTtsOptions;
 import com.xiaozhi.common.model.bo.ConfigBO;
 import com.xiaozhi.utils.AudioUtils;
-
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
@@ -19,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.nio.file.Path;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -26,6 +30,7 @@ import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.HashMap;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
@@ -210,6 +215,101 @@ public class AliyunTtsService implements TtsService {
         return options;
     }
 
+    /**
+     * 仅 CosyVoice 模型走原生流式合成，Sambert 与千问模型仍使用文件模式
+     */
+    @Override
+    public boolean supportsStreaming() {
+        return isCosyvoice();
+    }
+
+    private boolean isCosyvoice() {
+        if (getVoiceName().contains("sambert")) {
+            return false;
+        }
+        String[] parsed = parseQwenVoiceParam(getVoiceName());
+        return VOICE_MAP.get(parsed[1]) == null;
+    }
+
+    @Override
+    public Flux<byte[]> streamTextToSpeech(String text) {
+        if (!isCosyvoice()) {
+            return TtsService.super.streamTextToSpeech(text);
+        }
+        // 流式合成尚未输出任何音频时失败（如并发超限），回退到带重试的文件模式
+        AtomicBoolean emitted = new AtomicBoolean(false);
+        Duration timeout = Duration.ofSeconds(TTS_TIMEOUT_SECONDS);
+        return streamCosyvoice(text)
+                // 与文件模式一致，等待首帧与相邻两帧的时间都不超过 TTS_TIMEOUT_SECONDS，避免合成卡住时播放器一直挂起
+                .timeout(Mono.delay(timeout), chunk -> Mono.delay(timeout))
+                .doOnNext(chunk -> emitted.set(true))
+                .onErrorResume(e -> {
+                    if (emitted.get()) {
+                        return Flux.error(e);
+                    }
+                    log.warn("语音合成aliyun - CosyVoice流式合成失败，回退到文件模式: {}", e.getMessage());
+                    return TtsService.super.streamTextToSpeech(text);
+                });
+    }
+
+    /**
+     * CosyVoice 流式合成：通过回调逐帧输出 16kHz PCM，不写中间文件
+     */
+    private Flux<byte[]> streamCosyvoice(String text) {
+        String[] parsed = parseCosyVoiceParam(getVoiceName());
+        String modelName = parsed[0];
+        String actualVoiceName = parsed[1];
+        return Flux.create(sink -> {
+            com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisParam param =
+                    com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisParam.builder()
+                            .apiKey(apiKey)
+                            .model(modelName)
+                            .voice(actualVoiceName)
+                            .speechRate(getSpeed().floatValue())
+                            .pitchRate(getPitch().floatValue())
+                            .format(com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisAudioFormat.PCM_16000HZ_MONO_16BIT)
+                            .build();
+
+            com.alibaba.dashscope.audio.ttsv2.SpeechSynthesizer synthesizer =
+                    new com.alibaba.dashscope.audio.ttsv2.SpeechSynthesizer(param, new ResultCallback<>() {
+                        @Override
+                        public void onEvent(SpeechSynthesisResult result) {
+                            ByteBuffer frame = result.getAudioFrame();
+                            if (frame != null && frame.hasRemaining()) {
+                                byte[] chunk = new byte[frame.remaining()];
+                                frame.get(chunk);
+                                sink.next(chunk);
+                            }
+                        }
+
+                        @Override
+                        public void onComplete() {
+                            sink.complete();
+                        }
+
+                        @Override
+                        public void onError(Exception e) {
+                            sink.error(e);
+                        }
+                    });
+
+            // 下游取消（如用户打断）或合成结束时，主动关闭WebSocket连接，避免僵尸连接占满连接池
+            sink.onDispose(() -> {
+                try {
+                    synthesizer.getDuplexApi().close(1000, "completed");
+                } catch (Exception e) {
+                    log.debug("关闭CosyVoice TTS连接时发生错误", e);
+                }
+            });
+
+            try {
+                synthesizer.call(text);
+            } catch (Exception e) {
+                sink.error(e);
+            }
+        });
+    }
+
     @Override
     public Path textToSpeech(String text) throws Exception {
         try {
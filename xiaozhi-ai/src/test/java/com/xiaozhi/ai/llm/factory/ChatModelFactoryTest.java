@@ -14,6 +14,7 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -87,4 +88,41 @@ class ChatModelFactoryTest {
         assertSame(stubModel, result);
         verify(configLookup).getDefaultConfig("llm", ConfigBO.ModelType.vision.getValue());
     }
+
+    @Test
+    void cacheableModelsAreReusedUntilConfigChanges() {
+        RoleBO role = new RoleBO();
+        role.setModelId(44);
+        ConfigBO config = new ConfigBO().setConfigId(44).setProvider("stub");
+        when(configLookup.getConfig(44)).thenReturn(config);
+        when(stubProvider.isCacheable()).thenReturn(true);
+        when(stubProvider.createChatModel(any(), any())).thenReturn(stubModel, fallbackModel);
+
+        assertSame(stubModel, chatModelFactory.getChatModel(role));
+        assertSame(stubModel, chatModelFactory.getChatModel(role));
+        verify(stubProvider, times(1)).createChatModel(config, role);
+
+        chatModelFactory.removeCache(config);
+
+        assertSame(fallbackModel, chatModelFactory.getChatModel(role));
+        verify(stubProvider, times(2)).createChatModel(config, role);
+    }
+
+    @Test
+    void cacheKeyIncludesRoleSamplingParameters() {
+        ConfigBO config = new ConfigBO().setConfigId(55).setProvider("stub");
+        when(configLookup.getConfig(55)).thenReturn(config);
+        when(stubProvider.isCacheable()).thenReturn(true);
+        when(stubProvider.createChatModel(any(), any())).thenReturn(stubModel, fallbackModel);
+
+        RoleBO warm = new RoleBO();
+        warm.setModelId(55);
+        warm.setTemperature(0.9);
+        RoleBO cold = new RoleBO();
+        cold.setModelId(55);
+        cold.setTemperature(0.1);
+
+        assertSame(stubModel, chatModelFactory.getChatModel(warm));
+        assertSame(fallbackModel, chatModelFactory.getChatModel(cold));
+    }
 }
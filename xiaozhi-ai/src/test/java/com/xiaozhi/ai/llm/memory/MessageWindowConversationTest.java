@@ -0,0 +1,143 @@
+package com.xiaozhi.ai.llm.memory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageWindowConversationTest {
+
+    @Test
+    void trimsWholeDialogueGroupsFromTheFront() {
+        MessageWindowConversation conversation = conversation(4);
+        addToolTurn(conversation, "天气");
+        addTurn(conversation, "你好");
+        addTurn(conversation, "再见");
+
+        List<Message> messages = conversation.messages(ConversationContext.EMPTY);
+
+        // 工具组 4 条整体移除，剩余两个简单组
+        assertEquals(5, messages.size());
+        assertInstanceOf(SystemMessage.class, messages.get(0));
+        assertTrue(messages.get(1).getText().endsWith("你好"));
+        assertEquals("你好的回复", messages.get(2).getText());
+        assertTrue(messages.get(3).getText().endsWith("再见"));
+    }
+
+    @Test
+    void keepsPrefixIdenticalAcrossTurns() {
+        MessageWindowConversation conversation = conversation(20);
+        addTurn(conversation, "第一轮");
+        List<Message> first = conversation.messages(ConversationContext.EMPTY);
+
+        addTurn(conversation, "第二轮");
+        List<Message> second = conversation.messages(ConversationContext.EMPTY);
+
+        assertEquals(3, first.size());
+        assertEquals(5, second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i), "index " + i);
+        }
+        // 带时间戳的 UserMessage 已装配前缀，原始消息保持裸文本
+        assertTrue(second.get(1).getText().startsWith("["));
+        assertEquals("第一轮", conversation.rawMessages().get(0).getText());
+    }
+
+    @Test
+    void earlierSnapshotIsNotAffectedByLaterChanges() {
+        MessageWindowConversation conversation = conversation(2);
+        addTurn(conversation, "第一轮");
+        List<Message> snapshot = conversation.messages(ConversationContext.EMPTY);
+
+        for (int i = 0; i < 40; i++) {
+            addTurn(conversation, "轮次" + i);
+            conversation.messages(ConversationContext.EMPTY);
+        }
+        conversation.clear();
+
+        assertEquals(3, snapshot.size());
+        assertTrue(snapshot.get(1).getText().endsWith("第一轮"));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(new UserMessage("x")));
+    }
+
+    @Test
+    void assemblesTimestampSetAfterAdd() {
+        MessageWindowConversation conversation = conversation(20);
+        UserMessage message = new UserMessage("唤醒");
+        conversation.add(message);
+        List<Message> before = conversation.messages(ConversationContext.EMPTY);
+
+        // 与 Persona 一致：先加入对话，回复结束后才写入时间戳
+        MessageTimeMetadata.setTimeMillis(message, Instant.parse("2026-01-01T00:00:00Z"));
+        List<Message> after = conversation.messages(ConversationContext.EMPTY);
+
+        assertTrue(after.get(1).getText().startsWith("["));
+        assertTrue(after.get(1).getText().endsWith("唤醒"));
+        // 已发出的视图不受重新装配影响
+        assertEquals("唤醒", before.get(1).getText());
+    }
+
+    @Test
+    void rebuildsRoleSystemMessageOnlyWhenLocationChanges() {
+        MessageWindowConversation conversation = conversation(20);
+        Message beijing = conversation.messages(new ConversationContext("北京")).getFirst();
+
+        assertSame(beijing, conversation.messages(new ConversationContext("北京")).getFirst());
+        Message shanghai = conversation.messages(new ConversationContext("上海")).getFirst();
+        assertNotSame(beijing, shanghai);
+        assertTrue(shanghai.getText().contains("上海"));
+    }
+
+    private static MessageWindowConversation conversation(int maxMessages) {
+        ChatMemory chatMemory = mock(ChatMemory.class);
+        when(chatMemory.find(anyString(), anyInt(), anyInt())).thenReturn(List.of());
+        return MessageWindowConversation.builder()
+                .ownerId("device-1")
+                .roleId(1)
+                .sessionId("session-1")
+                .roleDesc("测试角色")
+                .maxMessages(maxMessages)
+                .chatMemory(chatMemory)
+                .build();
+    }
+
+    private static void addTurn(Conversation conversation, String text) {
+        conversation.add(userMessage(text));
+        conversation.add(new AssistantMessage(text + "的回复"));
+    }
+
+    private static void addToolTurn(Conversation conversation, String text) {
+        conversation.add(userMessage(text));
+        AssistantMessage toolCall = AssistantMessage.builder()
+                .content("")
+                .toolCalls(List.of(new AssistantMessage.ToolCall("call_1", "function", "get_weather", "{}")))
+                .build();
+        ToolResponseMessage toolResponse = ToolResponseMessage.builder()
+                .responses(List.of(new ToolResponseMessage.ToolResponse("call_1", "get_weather", "晴")))
+                .build();
+        conversation.addToolCallChain(toolCall, toolResponse);
+        conversation.add(new AssistantMessage("今天晴"));
+    }
+
+    private static UserMessage userMessage(String text) {
+        UserMessage message = new UserMessage(text);
+        MessageTimeMetadata.setTimeMillis(message, Instant.parse("2026-01-01T00:00:00Z"));
+        return message;
+    }
+}
@@ -0,0 +1,138 @@
+package com.xiaozhi.ai.tool;
+
+import com.xiaozhi.ai.llm.factory.ChatModelFactory;
+import com.xiaozhi.common.model.bo.ConfigBO;
+import com.xiaozhi.common.port.ConfigLookup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ToolPreFilterTest {
+
+    @Mock
+    private ConfigLookup configLookup;
+
+    @Mock
+    private ChatModelFactory chatModelFactory;
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    private ToolPreFilter toolPreFilter;
+
+    @BeforeEach
+    void setUp() {
+        toolPreFilter = new ToolPreFilter();
+        ReflectionTestUtils.setField(toolPreFilter, "configLookup", configLookup);
+        ReflectionTestUtils.setField(toolPreFilter, "chatModelFactory", chatModelFactory);
+        ReflectionTestUtils.setField(toolPreFilter, "enabled", true);
+        ReflectionTestUtils.setField(toolPreFilter, "minTools", 3);
+        ReflectionTestUtils.setField(toolPreFilter, "topK", 2);
+        ReflectionTestUtils.setField(toolPreFilter, "threshold", 0.5);
+        ReflectionTestUtils.setField(toolPreFilter, "pinned", Set.of("exit_session"));
+        ReflectionTestUtils.setField(toolPreFilter, "timeoutMs", 5000L);
+    }
+
+    @Test
+    void keepsAllToolsWhenListIsSmall() {
+        List<ToolCallback> tools = tools("play_music", "exit_session");
+
+        assertSame(tools, toolPreFilter.filter("放首歌", tools));
+        verifyNoInteractions(configLookup, chatModelFactory);
+    }
+
+    @Test
+    void keepsAllToolsWhenEmbeddingModelNotConfigured() {
+        List<ToolCallback> tools = tools("play_music", "get_playlist", "update_eink", "exit_session");
+
+        assertSame(tools, toolPreFilter.filter("放首歌", tools));
+        verifyNoInteractions(chatModelFactory);
+    }
+
+    @Test
+    void selectsTopKAboveThresholdPlusPinnedAndCachesToolVectors() {
+        List<ToolCallback> tools = tools("play_music", "get_playlist", "update_eink", "exit_session", "play_huiben");
+        ConfigBO config = new ConfigBO().setConfigId(5).setProvider("openai").setConfigName("embed");
+        when(configLookup.getDefaultConfig("llm", ConfigBO.ModelType.embedding.getValue())).thenReturn(config);
+        when(chatModelFactory.getEmbeddingModel(config)).thenReturn(embeddingModel);
+        when(embeddingModel.embed(anyList())).thenReturn(List.of(
+                new float[]{1f, 0f, 0f},
+                new float[]{0.8f, 0.6f, 0f},
+                new float[]{0f, 0f, 1f},
+                new float[]{0f, 1f, 0f},
+                new float[]{0.9f, 0.1f, 0f}));
+        when(embeddingModel.embed(anyString())).thenReturn(new float[]{1f, 0f, 0f});
+
+        List<String> first = names(toolPreFilter.filter("放首歌", tools));
+        List<String> second = names(toolPreFilter.filter("换一首", tools));
+
+        assertEquals(List.of("play_music", "exit_session", "play_huiben"), first);
+        assertEquals(first, second);
+        verify(embeddingModel, times(1)).embed(anyList());
+        verify(embeddingModel, times(2)).embed(anyString());
+    }
+
+    @Test
+    void keepsAllToolsWhenNoToolPassesThreshold() {
+        List<ToolCallback> tools = tools("play_music", "get_playlist", "update_eink", "exit_session");
+        ConfigBO config = new ConfigBO().setConfigId(5).setProvider("openai").setConfigName("embed");
+        when(configLookup.getDefaultConfig("llm", ConfigBO.ModelType.embedding.getValue())).thenReturn(config);
+        when(chatModelFactory.getEmbeddingModel(config)).thenReturn(embeddingModel);
+        when(embeddingModel.embed(anyList())).thenReturn(List.of(
+                new float[]{1f, 0f, 0f},
+                new float[]{1f, 0f, 0f},
+                new float[]{1f, 0f, 0f},
+                new float[]{0f, 1f, 0f}));
+        when(embeddingModel.embed(anyString())).thenReturn(new float[]{0f, 0f, 1f});
+
+        assertSame(tools, toolPreFilter.filter("今天天气怎么样", tools));
+    }
+
+    @Test
+    void fallsBackToAllToolsWhenEmbeddingFails() {
+        List<ToolCallback> tools = tools("play_music", "get_playlist", "update_eink", "exit_session");
+        ConfigBO config = new ConfigBO().setConfigId(5).setProvider("openai").setConfigName("embed");
+        when(configLookup.getDefaultConfig("llm", ConfigBO.ModelType.embedding.getValue())).thenReturn(config);
+        when(chatModelFactory.getEmbeddingModel(config)).thenReturn(embeddingModel);
+        when(embeddingModel.embed(anyList())).thenThrow(new IllegalStateException("unavailable"));
+
+        assertSame(tools, toolPreFilter.filter("放首歌", tools));
+    }
+
+    private static List<ToolCallback> tools(String... names) {
+        List<ToolCallback> tools = new ArrayList<>();
+        for (String name : names) {
+            ToolCallback tool = mock(ToolCallback.class);
+            lenient().when(tool.getToolDefinition()).thenReturn(ToolDefinition.builder()
+                    .name(name).description(name + " tool").inputSchema("{}").build());
+            tools.add(tool);
+        }
+        return tools;
+    }
+
+    private static List<String> names(List<ToolCallback> tools) {
+        return tools.stream().map(t -> t.getToolDefinition().name()).toList();
+    }
+}
@@ -0,0 +1,213 @@
+package com.xiaozhi.ai.tool;
+
+import com.xiaozhi.ai.llm.tool.XiaozhiToolMetadata;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XiaoZhiToolCallingManagerTest {
+
+    private final XiaoZhiToolCallingManager manager = XiaoZhiToolCallingManager.builder().build();
+
+    @Test
+    void runsIndependentToolCallsConcurrentlyAndKeepsCallOrder() {
+        // 两个工具互相等待对方开始，串行执行会一直阻塞
+        CountDownLatch started = new CountDownLatch(2);
+        ToolCallback weather = tool("get_weather", ToolMetadata.builder().build(), () -> {
+            started.countDown();
+            awaitQuietly(started);
+            return "晴";
+        });
+        ToolCallback music = tool("get_playlist", ToolMetadata.builder().build(), () -> {
+            started.countDown();
+            awaitQuietly(started);
+            return "歌单";
+        });
+
+        ToolExecutionResult result = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> manager.executeToolCalls(prompt(weather, music), response("get_weather", "get_playlist")));
+
+        assertEquals(List.of("get_weather:晴", "get_playlist:歌单"), responses(result));
+    }
+
+    @Test
+    void runsSerialToolsOneAfterAnotherInCallOrder() {
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        ToolMetadata serial = new XiaozhiToolMetadata(false, true);
+        ToolCallback first = tool("first", serial, () -> {
+            sleepQuietly(100);
+            executed.add("first");
+            return "1";
+        });
+        ToolCallback second = tool("second", serial, () -> {
+            executed.add("second");
+            return "2";
+        });
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(first, second), response("first", "second"));
+
+        assertEquals(List.of("first", "second"), executed);
+        assertEquals(List.of("first:1", "second:2"), responses(result));
+    }
+
+    @Test
+    void runsSerialToolsInlineAfterConcurrentCallsFinish() {
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        Thread caller = Thread.currentThread();
+        ToolCallback serial = tool("serial", new XiaozhiToolMetadata(false, true), () -> {
+            executed.add("serial:" + (Thread.currentThread() == caller));
+            return "s";
+        });
+        ToolCallback slow = tool("slow", ToolMetadata.builder().build(), () -> {
+            sleepQuietly(100);
+            executed.add("slow");
+            return "1";
+        });
+        ToolCallback fast = tool("fast", ToolMetadata.builder().build(), () -> "2");
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(serial, slow, fast), response("serial", "slow", "fast"));
+
+        assertEquals(List.of("slow", "serial:true"), executed);
+        assertEquals(List.of("serial:s", "slow:1", "fast:2"), responses(result));
+    }
+
+    @Test
+    void runsSingleToolCallOnCallerThread() {
+        Thread caller = Thread.currentThread();
+        ToolCallback weather = tool("get_weather", ToolMetadata.builder().build(),
+                () -> Thread.currentThread() == caller ? "inline" : "pooled");
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(weather), response("get_weather"));
+
+        assertEquals(List.of("get_weather:inline"), responses(result));
+    }
+
+    @Test
+    void timedOutToolReturnsTimeoutResultWithoutBlockingOthers() {
+        manager.setToolTimeout(Duration.ofMillis(200));
+        ToolCallback slow = tool("slow", ToolMetadata.builder().build(), () -> {
+            sleepQuietly(5000);
+            return "done";
+        });
+        ToolCallback fast = tool("fast", ToolMetadata.builder().build(), () -> "ok");
+
+        ToolExecutionResult result = assertTimeoutPreemptively(Duration.ofSeconds(2),
+                () -> manager.executeToolCalls(prompt(slow, fast), response("slow", "fast", "missing")));
+
+        List<String> responses = responses(result);
+        assertEquals(3, responses.size());
+        assertTrue(responses.get(0).startsWith("slow:") && responses.get(0).contains("超时"));
+        assertEquals("fast:ok", responses.get(1));
+        assertTrue(responses.get(2).startsWith("missing:") && responses.get(2).contains("不存在"));
+    }
+
+    @Test
+    void slowConcurrentToolsShareOneDeadline() {
+        manager.setToolTimeout(Duration.ofMillis(300));
+        ToolCallback slowA = tool("slow_a", ToolMetadata.builder().build(), () -> {
+            sleepQuietly(5000);
+            return "done";
+        });
+        ToolCallback slowB = tool("slow_b", ToolMetadata.builder().build(), () -> {
+            sleepQuietly(5000);
+            return "done";
+        });
+        ToolCallback slowC = tool("slow_c", ToolMetadata.builder().build(), () -> {
+            sleepQuietly(5000);
+            return "done";
+        });
+
+        // 三个调用逐个等待满超时需要 900ms 以上，共用截止时间时整轮在一个超时内结束
+        ToolExecutionResult result = assertTimeoutPreemptively(Duration.ofMillis(700),
+                () -> manager.executeToolCalls(prompt(slowA, slowB, slowC), response("slow_a", "slow_b", "slow_c")));
+
+        assertTrue(responses(result).stream().allMatch(r -> r.contains("超时")));
+    }
+
+    @Test
+    void conversationHistoryAppendsToolCallAndResponse() {
+        ToolCallback weather = tool("get_weather", ToolMetadata.builder().build(), () -> "晴");
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(weather), response("get_weather"));
+
+        List<Message> history = result.conversationHistory();
+        assertEquals(3, history.size());
+        assertInstanceOf(UserMessage.class, history.get(0));
+        AssistantMessage toolCallMessage = assertInstanceOf(AssistantMessage.class, history.get(1));
+        assertEquals("get_weather", toolCallMessage.getMetadata().get("toolName"));
+        assertInstanceOf(ToolResponseMessage.class, history.get(2));
+    }
+
+    private static ToolCallback tool(String name, ToolMetadata metadata, java.util.function.Supplier<String> body) {
+        return FunctionToolCallback.builder(name, (Map<String, Object> params, ToolContext context) -> body.get())
+                .description(name)
+                .inputSchema("{\"type\":\"object\",\"properties\":{}}")
+                .inputType(Map.class)
+                .toolMetadata(metadata)
+                .toolCallResultConverter((result, type) -> String.valueOf(result))
+                .build();
+    }
+
+    private static Prompt prompt(ToolCallback... tools) {
+        ToolCallingChatOptions options = ToolCallingChatOptions.builder()
+                .toolCallbacks(tools)
+                .toolContext("sessionId", "s1")
+                .build();
+        return new Prompt(List.of(new UserMessage("你好")), options);
+    }
+
+    private static ChatResponse response(String... toolNames) {
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        for (int i = 0; i < toolNames.length; i++) {
+            toolCalls.add(new AssistantMessage.ToolCall("call_" + i, "function", toolNames[i], "{}"));
+        }
+        AssistantMessage message = AssistantMessage.builder().content("").toolCalls(toolCalls).build();
+        return new ChatResponse(List.of(new Generation(message)));
+    }
+
+    private static List<String> responses(ToolExecutionResult result) {
+        List<Message> history = result.conversationHistory();
+        ToolResponseMessage message = (ToolResponseMessage) history.get(history.size() - 1);
+        return message.getResponses().stream().map(r -> r.name() + ":" + r.responseData()).toList();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(3, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
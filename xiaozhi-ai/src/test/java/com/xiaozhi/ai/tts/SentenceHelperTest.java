@@ -0,0 +1,132 @@
+package com.xiaozhi.ai.tts;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class SentenceHelperTest {
+
+    @Test
+    void splitsChineseSentencesOnPunctuation() {
+        assertSentences("你好！今天天气真不错，我们一起去公园散步吧。你觉得怎么样？",
+                "你好！今天天气真不错，|null",
+                "我们一起去公园散步吧。|null",
+                "你觉得怎么样？|null");
+    }
+
+    @Test
+    void splitsEnglishSentences() {
+        assertSentences("Hello there! How are you doing today? I hope everything is fine.",
+                "Hello there!|null",
+                "How are you doing today?|null",
+                "I hope everything is fine.|null");
+    }
+
+    @Test
+    void extractsMoodFromEmoji() {
+        assertSentences("我很开心😊能和你聊天，有什么想问的尽管说吧",
+                "我很开心能和你聊天，|happy",
+                "有什么想问的尽管说吧|null");
+        assertSentences("哈哈哈🤣这个笑话太好笑了！再讲一个吧👋",
+                "哈哈哈这个笑话太好笑了！|funny",
+                "再讲一个吧|winking");
+    }
+
+    @Test
+    void removesKaomoji() {
+        assertSentences("好的呀(^_^)我们开始学习今天的内容吧，准备好了吗",
+                "好的呀我们开始学|null",
+                "习今天的内容吧，|null",
+                "准备好了吗|null");
+    }
+
+    @Test
+    void keepsDecimalsInsideSentence() {
+        assertSentences("圆周率大约是3.14159，这是一个无理数。",
+                "圆周率大约是3.14159，|null",
+                "这是一个无理数。|null");
+    }
+
+    @Test
+    void splitsOnNewlines() {
+        assertSentences("第一行内容比较长一些\n第二行内容也比较长一些\r\n第三行",
+                "第一行内容比较长一些|null",
+                "第二行内容也比较长一些|null",
+                "第三行|null");
+    }
+
+    @Test
+    void splitsOnSpecialPunctuation() {
+        assertSentences("注意：以下内容非常重要，请仔细阅读",
+                "注意：以下内容非常重要，|null",
+                "请仔细阅读|null");
+        assertSentences("I said: \"this is a quote\" and then left; nobody followed, sadly.",
+                "I said: \"|null",
+                "this is a quote\"|null",
+                "and then left;|null",
+                "nobody followed,|null",
+                "sadly.|null");
+    }
+
+    @Test
+    void keepsShortAndPunctuationOnlyTextTogether() {
+        assertSentences("短句。好。嗯！", "短句。好。嗯！|null");
+        assertSentences("，，，，，，，，，，，，。。。。。", "，，，，，，，，，，，，。。。。。|null");
+        assertSentences("这是一个很长的句子没有任何标点符号但是包含了很多内容需要在最后一起输出",
+                "这是一个很长的句子没有任何标点符号但是包含了很多内容需要在最后一起输出|null");
+    }
+
+    @Test
+    void convertMatchesImperativeApi() {
+        String text = "你好！今天天气真不错，我们一起去公园散步吧。你觉得怎么样？";
+        List<String> converted = new SentenceHelper().convert(Flux.fromArray(text.split("")))
+                .map(r -> r.text() + "|" + r.mood())
+                .collectList()
+                .block();
+        assertEquals(split(text, 1), converted);
+    }
+
+    @Test
+    void longUnpunctuatedStreamIsLinear() {
+        // 长时间不出现标点的输出，旧实现每个字符都会重扫整个缓冲
+        String text = "这是一段没有停顿的很长的输出 and some English words ".repeat(500);
+        List<String> sentences = assertTimeoutPreemptively(java.time.Duration.ofSeconds(2), () -> split(text, 1));
+        assertEquals(1, sentences.size());
+    }
+
+    /**
+     * 同一输入按不同的 token 切分方式输入，分句结果应完全一致
+     */
+    private static void assertSentences(String text, String... expected) {
+        for (int tokenSize : new int[]{1, 2, 3, 7, text.length()}) {
+            assertEquals(List.of(expected), split(text, tokenSize), "tokenSize=" + tokenSize);
+        }
+    }
+
+    private static List<String> split(String text, int tokenSize) {
+        SentenceHelper helper = new SentenceHelper();
+        List<String> out = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            int end = Math.min(text.length(), i + tokenSize);
+            // 不在代理对中间切分，LLM 的 token 不会拆开一个码点
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end++;
+            }
+            for (SentenceHelper.SentenceResult r : helper.take(text.substring(i, end))) {
+                out.add(r.text() + "|" + r.mood());
+            }
+            i = end;
+        }
+        SentenceHelper.SentenceResult tail = helper.take();
+        if (!tail.text().isEmpty()) {
+            out.add(tail.text() + "|" + tail.mood());
+        }
+        return out;
+    }
+}
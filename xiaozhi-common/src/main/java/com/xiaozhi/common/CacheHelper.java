@@ -5,6 +5,9 @@ import org.redisson.api.RedissonClient;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -12,6 +15,7 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * 缓存助手类
  * 提供带分布式锁的缓存查询,防止缓存击穿
+ * 同一实例内对同一 key 的并发未命中先在本地合并，只有一个线程去竞争 Redisson 锁
  *
  * @author Joey
  */
@@ -22,6 +26,9 @@ public class CacheHelper {
     @Resource
     private RedissonClient redissonClient;
 
+    /** 本实例正在回源的 key，后到的线程等待先到线程的结果 */
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
     /**
      * 带分布式锁的缓存查询
      * 防止缓存击穿 - 当缓存失效时,只有一个请求去查询数据库
@@ -32,6 +39,7 @@ public class CacheHelper {
      * @param <T> 数据类型
      * @return 数据
      */
+    @SuppressWarnings("unchecked")
     public <T> T getWithLock(String lockKey, Supplier<T> cacheGetter, Supplier<T> dbGetter) {
         // 1. 先尝试从缓存获取
         T cached = cacheGetter.get();
@@ -39,25 +47,55 @@ public class CacheHelper {
             return cached;
         }
 
-        // 2. 缓存未命中,使用分布式锁
+        // 2. 本实例已有线程在回源,等待其结果
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(lockKey, loading);
+        if (existing != null) {
+            try {
+                return (T) existing.get(13, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("等待回源结果被中断: {}", lockKey, e);
+                return dbGetter.get();
+            } catch (Exception e) {
+                log.warn("等待回源结果失败,直接查询数据库: {}", lockKey);
+                return dbGetter.get();
+            }
+        }
+
+        try {
+            T result = loadWithLock(lockKey, cacheGetter, dbGetter);
+            loading.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(lockKey, loading);
+        }
+    }
+
+    private <T> T loadWithLock(String lockKey, Supplier<T> cacheGetter, Supplier<T> dbGetter) {
+        T cached;
+        // 3. 缓存未命中,使用分布式锁
         RLock lock = redissonClient.getLock("lock:" + lockKey);
 
         try {
             // 尝试获取锁,最多等待3秒,锁10秒后自动释放
             if (lock.tryLock(3, 10, TimeUnit.SECONDS)) {
                 try {
-                    // 3. 双重检查,避免重复查询数据库
+                    // 4. 双重检查,避免重复查询数据库
                     cached = cacheGetter.get();
                     if (cached != null) {
                         log.debug("获取锁后从缓存命中: {}", lockKey);
                         return cached;
                     }
 
-                    // 4. 查询数据库
+                    // 5. 查询数据库
                     log.debug("从数据库查询: {}", lockKey);
                     T result = dbGetter.get();
 
-                    // 5. 结果会通过@Cacheable自动写入缓存
+                    // 6. 结果由 dbGetter 写入缓存
                     return result;
 
                 } finally {
@@ -4,7 +4,9 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import org.springframework.cache.CacheManager;
+import com.xiaozhi.communication.common.RedisBroadcast;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -25,6 +27,9 @@ import java.util.concurrent.ThreadLocalRandom;
  * <p>
  * 防雪崩策略：每个缓存名的 TTL = 基础时长 + 随机偏移（基础时长的 10%，最多 1 小时）。
  * 随机值在每个 JVM 实例启动时独立生成，多实例部署时同类 key 的 TTL 自然错开。
+ * <p>
+ * Redis 之前有一层本地 L1（{@link TwoLevelCacheManager}），条数与 TTL 有上限，
+ * 写操作通过 {@link RedisBroadcast} 广播失效，热点读取（角色、设备、配置）不再每次访问 Redis。
  *
  * @author Joey
  */
@@ -36,7 +41,10 @@ public class RedisCacheConfig {
     private static final int MAX_JITTER_SECONDS = 3600;
 
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory factory) {
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory factory,
+                                             ObjectProvider<RedisBroadcast> redisBroadcast,
+                                             @Value("${cache.local.ttl-seconds:60}") long localTtlSeconds,
+                                             @Value("${cache.local.max-entries:10000}") int localMaxEntries) {
         GenericJackson2JsonRedisSerializer serializer = createSerializer();
 
         // 默认配置: 1天 + 随机偏移
@@ -49,11 +57,18 @@ public class RedisCacheConfig {
         cacheConfigurations.put("XiaoZhi:SysConfig",     buildConfig(serializer, Duration.ofDays(7)));
         cacheConfigurations.put("XiaoZhi:McpToolExclude",buildConfig(serializer, Duration.ofDays(7)));
 
-        return RedisCacheManager.builder(factory)
+        // 事务感知由 TwoLevelCacheManager 在两级缓存外层统一处理
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(factory)
             .cacheDefaults(defaultConfig)
             .withInitialCacheConfigurations(cacheConfigurations)
-            .transactionAware()
             .build();
+        redisCacheManager.afterPropertiesSet();
+
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(
+            redisCacheManager, serializer, Duration.ofSeconds(localTtlSeconds), localMaxEntries);
+        cacheManager.setPublisher((cacheName, key, origin) ->
+            redisBroadcast.ifAvailable(broadcast -> broadcast.cacheEvicted(cacheName, key, origin)));
+        return cacheManager;
     }
 
     /**
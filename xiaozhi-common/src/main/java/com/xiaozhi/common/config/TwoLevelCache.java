@@ -0,0 +1,211 @@
+package com.xiaozhi.common.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 本地 + Redis 两级缓存。
+ * <p>
+ * 读：先查本实例 L1，未命中再查 Redis 并回填 L1。
+ * 写/删：先写 Redis，再删本地 L1，并通过 invalidator 广播让其他实例删除各自的 L1。
+ * <p>
+ * L1 保存与 Redis 相同的序列化字节，每次读取都反序列化出新对象，
+ * 调用方修改返回值（如 {@code DeviceBO.setSessionId}）不会污染缓存，语义与直接读 Redis 一致。
+ * L1 条数与 TTL 均有上限，TTL 是广播消息丢失时的兜底。
+ *
+ * @author Joey
+ */
+public class TwoLevelCache implements Cache {
+
+    /**
+     * 失效通知，参数为缓存名与 key，key 为 null 表示整个缓存
+     */
+    @FunctionalInterface
+    public interface Invalidator {
+        void invalidate(String cacheName, String key);
+    }
+
+    private record Entry(byte[] bytes, long expiresAt) {}
+
+    private final Cache redisCache;
+    private final RedisSerializer<Object> serializer;
+    private final long ttlMillis;
+    private final Invalidator invalidator;
+
+    private final Map<String, Entry> local;
+
+    // 每次失效递增；回填前比较，避免读 Redis 期间发生的失效被旧值覆盖
+    private final AtomicLong generation = new AtomicLong();
+
+    public TwoLevelCache(Cache redisCache, RedisSerializer<Object> serializer,
+                         long ttlMillis, int maxEntries, Invalidator invalidator) {
+        this.redisCache = redisCache;
+        this.serializer = serializer;
+        this.ttlMillis = ttlMillis;
+        this.invalidator = invalidator;
+        this.local = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return redisCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = String.valueOf(key);
+        Object value = getLocal(localKey);
+        if (value != null) {
+            return new SimpleValueWrapper(value);
+        }
+        long gen = generation.get();
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper != null && wrapper.get() != null) {
+            putLocal(localKey, wrapper.get(), gen);
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = String.valueOf(key);
+        Object value = getLocal(localKey);
+        if (value != null) {
+            return (T) value;
+        }
+        long gen = generation.get();
+        T loaded = redisCache.get(key, valueLoader);
+        if (loaded != null) {
+            putLocal(localKey, loaded, gen);
+        }
+        return loaded;
+    }
+
+    @Override
+    public CompletableFuture<?> retrieve(Object key) {
+        return redisCache.retrieve(key);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        return redisCache.retrieve(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        invalidate(String.valueOf(key));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = redisCache.putIfAbsent(key, value);
+        invalidate(String.valueOf(key));
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        invalidate(String.valueOf(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = redisCache.evictIfPresent(key);
+        invalidate(String.valueOf(key));
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        invalidate(null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = redisCache.invalidate();
+        invalidate(null);
+        return present;
+    }
+
+    /**
+     * 只删除本实例 L1，用于处理其他实例的失效广播
+     *
+     * @param key 缓存 key，null 表示清空
+     */
+    public void evictLocal(String key) {
+        generation.incrementAndGet();
+        synchronized (local) {
+            if (key == null) {
+                local.clear();
+            } else {
+                local.remove(key);
+            }
+        }
+    }
+
+    private void invalidate(String key) {
+        evictLocal(key);
+        invalidator.invalidate(getName(), key);
+    }
+
+    private Object getLocal(String key) {
+        byte[] bytes;
+        synchronized (local) {
+            Entry entry = local.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() <= System.currentTimeMillis()) {
+                local.remove(key);
+                return null;
+            }
+            bytes = entry.bytes();
+        }
+        return serializer.deserialize(bytes);
+    }
+
+    private void putLocal(String key, Object value, long gen) {
+        byte[] bytes = serializer.serialize(value);
+        if (bytes == null) {
+            return;
+        }
+        synchronized (local) {
+            if (generation.get() == gen) {
+                local.put(key, new Entry(bytes, System.currentTimeMillis() + ttlMillis));
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.xiaozhi.common.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+/**
+ * 在 Redis 缓存管理器前加一层本地 L1 的缓存管理器。
+ * <p>
+ * 每个缓存都包装为 {@link TwoLevelCache}，外层再套 {@link TransactionAwareCacheDecorator}，
+ * 保持原先 {@code transactionAware()} 的语义：事务内的 put/evict 在提交后才同时作用于两级缓存。
+ * 本实例的写操作通过 {@link Publisher} 广播失效消息，其他实例收到后调用 {@link #evictLocal} 删除 L1。
+ *
+ * @author Joey
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager {
+
+    /**
+     * 失效消息发布方，参数为 缓存名、key（null 表示整个缓存）、来源实例
+     */
+    @FunctionalInterface
+    public interface Publisher {
+        void publish(String cacheName, String key, String origin);
+    }
+
+    /**
+     * 本实例标识，用于忽略自己发出的失效广播
+     */
+    private final String origin = UUID.randomUUID().toString();
+
+    private final CacheManager redisCacheManager;
+    private final RedisSerializer<Object> serializer;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private volatile Publisher publisher;
+
+    private final Map<String, TwoLevelCache> localCaches = new ConcurrentHashMap<>();
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager redisCacheManager, RedisSerializer<Object> serializer,
+                                Duration localTtl, int maxEntries) {
+        this.redisCacheManager = redisCacheManager;
+        this.serializer = serializer;
+        this.ttlMillis = localTtl.toMillis();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 设置失效广播发布方，未设置时仅本实例生效（单实例部署）
+     */
+    public void setPublisher(Publisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache redisCache = redisCacheManager.getCache(name);
+        if (redisCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> {
+            TwoLevelCache twoLevel = new TwoLevelCache(redisCache, serializer, ttlMillis, maxEntries, this::broadcast);
+            localCaches.put(n, twoLevel);
+            return new TransactionAwareCacheDecorator(twoLevel);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    /**
+     * 处理其他实例的失效广播，只删除本实例 L1
+     *
+     * @param cacheName 缓存名
+     * @param key       缓存 key，null 表示整个缓存
+     * @param from      来源实例，与本实例相同时忽略
+     */
+    public void evictLocal(String cacheName, String key, String from) {
+        if (origin.equals(from)) {
+            return;
+        }
+        TwoLevelCache cache = localCaches.get(cacheName);
+        if (cache != null) {
+            cache.evictLocal(key);
+            log.debug("已删除本地缓存（来自跨实例广播） - cache: {}, key: {}", cacheName, key);
+        }
+    }
+
+    /**
+     * 删除本实例 L1 中的一个 key，不检查来源。
+     * 用于业务广播先于对应的 cacheEvicted 广播到达时，保证随后的重新加载不读到本地旧值
+     */
+    public void evictLocal(String cacheName, String key) {
+        TwoLevelCache cache = localCaches.get(cacheName);
+        if (cache != null) {
+            cache.evictLocal(key);
+        }
+    }
+
+    private void broadcast(String cacheName, String key) {
+        Publisher p = publisher;
+        if (p != null) {
+            p.publish(cacheName, key, origin);
+        }
+    }
+}
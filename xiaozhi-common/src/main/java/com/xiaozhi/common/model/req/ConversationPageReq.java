@@ -14,4 +14,7 @@ public class ConversationPageReq extends BasePageReq {
 
     @Schema(description = "消息来源: web|device")
     private String source;
+
+    @Schema(description = "游标：上一页最后一个会话ID，传入后按游标翻页且不返回总数")
+    private String lastSessionId;
 }
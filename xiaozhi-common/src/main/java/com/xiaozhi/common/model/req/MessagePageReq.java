@@ -43,4 +43,7 @@ public class MessagePageReq extends BasePageReq {
 
     @Schema(description = "消息来源: web|device")
     private String source;
+
+    @Schema(description = "游标：上一页最后一条消息ID，传入后按游标翻页且不返回总数")
+    private Long lastMessageId;
 }
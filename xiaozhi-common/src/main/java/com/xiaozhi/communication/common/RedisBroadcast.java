@@ -11,7 +11,10 @@ import jakarta.annotation.Resource;
 import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +25,7 @@ import lombok.extern.slf4j.Slf4j;
  *   <li>clearConversation：清除指定设备的对话历史</li>
  *   <li>roleChanged：设备角色变更，重新加载 Persona</li>
  *   <li>configChanged：配置变更，清除对应工厂缓存</li>
+ *   <li>cacheEvicted：缓存写入/删除，其他实例删除本地 L1 缓存</li>
  * </ul>
  */
 @Slf4j
@@ -34,6 +38,7 @@ public class RedisBroadcast {
     public static final String CHANNEL_CLOSE_SESSION = "xiaozhi:close-session";
     public static final String CHANNEL_ROLE_UPDATED = "xiaozhi:role-updated";
     public static final String CHANNEL_DEVICE_UPDATED = "xiaozhi:device-updated";
+    public static final String CHANNEL_CACHE_EVICTED = "xiaozhi:cache-evicted";
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
@@ -61,7 +66,12 @@ public class RedisBroadcast {
         configChanged(event.getConfigType(), event.getConfigId());
     }
 
-    @EventListener
+    /**
+     * 角色保存在事务内发布事件，广播推迟到提交之后：
+     * 接收方据此重新加载角色（如 VAD 阈值快照），提交前广播会读到旧数据并一直沿用。
+     * 保存时先登记的缓存失效（TransactionAwareCacheDecorator）同样在提交后执行，且排在本广播之前。
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
     public void onRoleUpdated(RoleUpdatedEvent event) {
         roleUpdated(event.getRoleId());
     }
@@ -98,6 +108,18 @@ public class RedisBroadcast {
         publish(CHANNEL_CONFIG_CHANGED, payload);
     }
 
+    /**
+     * @param key    缓存 key，null 表示整个缓存
+     * @param origin 发出广播的实例，接收方据此忽略自己的消息
+     */
+    public void cacheEvicted(String cacheName, String key, String origin) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("cacheName", cacheName);
+        payload.put("key", key);
+        payload.put("origin", origin);
+        publish(CHANNEL_CACHE_EVICTED, JsonUtil.toJson(payload));
+    }
+
     private void publish(String channel, String message) {
         try {
             stringRedisTemplate.convertAndSend(channel, message);
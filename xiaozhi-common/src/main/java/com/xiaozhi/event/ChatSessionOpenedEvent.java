@@ -7,7 +7,9 @@ import lombok.Getter;
  * 会话连接打开（注册）事件。
  * 在 SessionManager.registerSession() 中，设备 WebSocket 连接注册后发布。
  *
- * <p>扩展点（当前无监听器）：
+ * <p>监听器：InactiveSessionChecker 据此把会话挂入不活跃检查时间轮。
+ *
+ * <p>扩展点：
  * <ul>
  *   <li>连接审计日志：记录设备上线时间、来源 IP</li>
  *   <li>在线状态推送：通知管理后台实时刷新设备状态</li>
@@ -171,6 +171,21 @@ public class EmojiUtils {
         return matcher.find();
     }
 
+    /**
+     * 检查文本的指定区间内是否包含颜文字，不生成中间字符串，供逐字符增量检测使用
+     *
+     * @param text  要检查的文本
+     * @param start 区间起始位置（包含）
+     * @param end   区间结束位置（不包含）
+     * @return 如果区间内包含颜文字返回true，否则返回false
+     */
+    public static boolean containsKaomoji(CharSequence text, int start, int end) {
+        if (text == null || start >= end) {
+            return false;
+        }
+        return KAOMOJI_PATTERN.matcher(text).region(start, end).find();
+    }
+
     /**
      * 过滤文本中的颜文字
      *
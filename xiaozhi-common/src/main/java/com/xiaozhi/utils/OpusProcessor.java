@@ -3,7 +3,6 @@ package com.xiaozhi.utils;
 import io.github.jaredmdobson.concentus.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -25,12 +24,20 @@ public class OpusProcessor {
     // 残留数据状态缓存
     private final LeftoverState leftoverStates = new LeftoverState();
 
+    // 编解码复用缓冲：实例通常按会话长期持有，逐包编解码不再分配临时数组
+    private final short[] decodeBuffer = new short[MAX_DECODE_SAMPLES];
+    private final short[] frameBuffer = new short[FRAME_SIZE];
+    private final byte[] encodeBuffer = new byte[MAX_SIZE];
+    private short[] pcmScratch = new short[FRAME_SIZE];
+
     // 常量
     private static final int FRAME_SIZE = AudioUtils.FRAME_SIZE;
     private static final int SAMPLE_RATE = AudioUtils.SAMPLE_RATE;
     private static final int CHANNELS = AudioUtils.CHANNELS;
     public static final int OPUS_FRAME_DURATION_MS = AudioUtils.OPUS_FRAME_DURATION_MS;
     private static final int MAX_SIZE = 1275;
+    // 单个 Opus 包最长 120ms，留足余量
+    public static final int MAX_DECODE_SAMPLES = FRAME_SIZE * 12;
 
     /**
      * 残留数据状态类
@@ -51,43 +58,60 @@ public class OpusProcessor {
         }
     }
 
+    /**
+     * 编码帧回调。
+     * buffer 为编码器内部复用的缓冲区，仅在回调期间有效，需要保留时由调用方自行拷贝。
+     */
+    @FunctionalInterface
+    public interface FrameConsumer {
+        void accept(byte[] buffer, int length);
+    }
+
+    /**
+     * 调整编码参数。每个 OpusProcessor 持有独立的编码器，可按会话分别设置。
+     *
+     * @param bitrate    比特率（bps）
+     * @param complexity 编码复杂度 0-10，越低越省 CPU
+     */
+    public void setEncoderOptions(int bitrate, int complexity) {
+        encoders.setBitrate(bitrate);
+        encoders.setComplexity(complexity);
+    }
+
     /**
      * 刷新残留数据，生成最后一帧
      */
     public List<byte[]> flushLeftover() {
-        LeftoverState state = leftoverStates;
         List<byte[]> frames = new ArrayList<>();
+        flushLeftover((buffer, length) -> frames.add(Arrays.copyOf(buffer, length)));
+        return frames;
+    }
 
+    /**
+     * 刷新残留数据，不足一帧的部分补静音后编码为最后一帧，交给回调
+     */
+    public void flushLeftover(FrameConsumer consumer) {
+        LeftoverState state = leftoverStates;
         if (state.leftoverCount <= 0) {
-            return frames;
+            return;
         }
 
-        // 获取编码器
-        OpusEncoder encoder = encoders;
-
-        // 准备缓冲区
-        short[] shortBuf = new short[FRAME_SIZE];
-        byte[] opusBuf = new byte[MAX_SIZE];
-
         // 复制残留数据并填充静音
-        System.arraycopy(state.leftoverBuffer, 0, shortBuf, 0, state.leftoverCount);
-        Arrays.fill(shortBuf, state.leftoverCount, FRAME_SIZE, (short) 0);
+        System.arraycopy(state.leftoverBuffer, 0, frameBuffer, 0, state.leftoverCount);
+        Arrays.fill(frameBuffer, state.leftoverCount, FRAME_SIZE, (short) 0);
 
         try {
             // 编码最后一帧
-            int opusLen = encoder.encode(shortBuf, 0, FRAME_SIZE, opusBuf, 0, opusBuf.length);
+            int opusLen = encoders.encode(frameBuffer, 0, FRAME_SIZE, encodeBuffer, 0, encodeBuffer.length);
             if (opusLen > 0) {
-                byte[] frame = new byte[opusLen];
-                System.arraycopy(opusBuf, 0, frame, 0, opusLen);
-                frames.add(frame);
+                consumer.accept(encodeBuffer, opusLen);
             }
-        } catch (OpusException e) {
+        } catch (Exception | AssertionError e) {
             log.warn("残留数据编码失败: {}", e.getMessage());
         }
 
         // 清空缓存
         state.clear();
-        return frames;
     }
 
     /**
@@ -98,18 +122,24 @@ public class OpusProcessor {
             return new byte[0];
         }
 
-        try {
-            OpusDecoder decoder = decoders;
-            short[] buf = new short[FRAME_SIZE * 12];
-            int samples = decoder.decode(data, 0, data.length, buf, 0, buf.length, false);
-
-            byte[] pcm = new byte[samples * 2];
-            for (int i = 0; i < samples; i++) {
-                pcm[i * 2] = (byte) (buf[i] & 0xFF);
-                pcm[i * 2 + 1] = (byte) ((buf[i] >> 8) & 0xFF);
-            }
+        int samples = decode(data, 0, data.length, decodeBuffer, 0);
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            pcm[i * 2] = (byte) (decodeBuffer[i] & 0xFF);
+            pcm[i * 2 + 1] = (byte) ((decodeBuffer[i] >> 8) & 0xFF);
+        }
+        return pcm;
+    }
 
-            return pcm;
+    /**
+     * 解码一个 Opus 包到调用方提供的 short 数组
+     *
+     * @return 解码得到的样本数
+     */
+    public int decode(byte[] data, int offset, int length, short[] out, int outOffset) throws OpusException {
+        try {
+            int maxSamples = Math.min(out.length - outOffset, MAX_DECODE_SAMPLES);
+            return decoders.decode(data, offset, length, out, outOffset, maxSamples, false);
         } catch (OpusException e) {
             log.warn("解码失败: {}", e.getMessage());
             // 重置解码器
@@ -118,127 +148,124 @@ public class OpusProcessor {
         }
     }
 
+    /**
+     * 解码一个 Opus 包，以 16bit 小端 PCM 写入调用方提供的 ByteBuffer（从当前位置开始，写入后位置前移）。
+     * 中间结果使用实例内复用的缓冲区。
+     *
+     * @return 解码得到的样本数
+     */
+    public int decode(byte[] data, ByteBuffer out) throws OpusException {
+        if (data == null || data.length == 0) {
+            return 0;
+        }
+        int samples = decode(data, 0, data.length, decodeBuffer, 0);
+        for (int i = 0; i < samples; i++) {
+            out.put((byte) (decodeBuffer[i] & 0xFF));
+            out.put((byte) ((decodeBuffer[i] >> 8) & 0xFF));
+        }
+        return samples;
+    }
+
     /**
      * PCM转Opus
      */
     public List<byte[]> pcmToOpus(byte[] pcm, boolean isStream) {
+        List<byte[]> frames = new ArrayList<>();
         if (pcm == null || pcm.length == 0) {
-            return new ArrayList<>();
+            return frames;
         }
+        encode(ByteBuffer.wrap(pcm), isStream, (buffer, length) -> frames.add(Arrays.copyOf(buffer, length)));
+        return frames;
+    }
 
+    /**
+     * 编码 16bit 小端 PCM（ByteBuffer 剩余部分，忽略其字节序设置），每编码出一帧即交给回调。
+     * 读取后 ByteBuffer 位置前移到末尾。
+     */
+    public void encode(ByteBuffer pcm, boolean isStream, FrameConsumer consumer) {
         // 确保PCM长度是偶数
-        int pcmLen = pcm.length;
-        if (pcmLen % 2 != 0) {
-            pcmLen--;
+        int samples = pcm.remaining() / 2;
+        if (samples == 0) {
+            return;
         }
+        if (pcmScratch.length < samples) {
+            pcmScratch = new short[Math.max(samples, pcmScratch.length * 2)];
+        }
+        pcm.duplicate().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(pcmScratch, 0, samples);
+        pcm.position(pcm.limit());
+        encode(pcmScratch, 0, samples, isStream, consumer);
+    }
 
-        // 每帧样本数
-        int frameSize = FRAME_SIZE;
-
-        // 获取编码器
-        OpusEncoder encoder = encoders;
-
-        // 处理PCM
-        List<byte[]> frames = new ArrayList<>();
-
-        // 获取残留数据状态
+    /**
+     * 编码 PCM 样本，每编码出一帧即交给回调，不构建中间数组与列表。
+     * 流式模式下，不足一帧的尾部样本缓存到下次调用或 {@link #flushLeftover(FrameConsumer)}；
+     * 非流式模式下丢弃尾部样本，并对首帧做淡入处理。
+     */
+    public void encode(short[] pcm, int offset, int length, boolean isStream, FrameConsumer consumer) {
         LeftoverState state = leftoverStates;
-
-        // 字节序处理
-        ByteBuffer pcmBuf = ByteBuffer.wrap(pcm, 0, pcmLen).order(ByteOrder.LITTLE_ENDIAN);
-        ShortBuffer inputShorts = pcmBuf.asShortBuffer();
-        int totalInputSamples = inputShorts.remaining();
-
-        // 合并残留数据与当前输入
-        short[] combined;
-        // 缓冲区
-        short[] shortBuf = new short[frameSize];
-        byte[] opusBuf = new byte[MAX_SIZE];
+        int pos = offset;
+        int end = offset + length;
+        // 非流式编码的新音频段，首帧应用淡入效果
+        boolean fadeIn = !isStream && state.isFirst;
+        int frameIndex = 0;
 
         if (isStream) {
-            if (state.leftoverCount > 0 || !state.isFirst) {
-                combined = new short[state.leftoverCount + totalInputSamples];
-                System.arraycopy(state.leftoverBuffer, 0, combined, 0, state.leftoverCount);
-                inputShorts.get(combined, state.leftoverCount, totalInputSamples);
-            } else {
-                combined = new short[totalInputSamples];
-                inputShorts.get(combined);
-                state.isFirst = false;
+            state.isFirst = false;
+            // 先用本次输入补齐上次残留的半帧
+            if (state.leftoverCount > 0) {
+                int need = FRAME_SIZE - state.leftoverCount;
+                if (length < need) {
+                    System.arraycopy(pcm, pos, state.leftoverBuffer, state.leftoverCount, length);
+                    state.leftoverCount += length;
+                    return;
+                }
+                System.arraycopy(state.leftoverBuffer, 0, frameBuffer, 0, state.leftoverCount);
+                System.arraycopy(pcm, pos, frameBuffer, state.leftoverCount, need);
+                pos += need;
+                state.leftoverCount = 0;
+                encodeFrame(frameIndex++, false, consumer);
             }
-        } else {
-            combined = new short[totalInputSamples];
-            inputShorts.get(combined);
         }
 
-        int availableSamples = combined.length;
-        int frameCount = availableSamples / frameSize;
-        int remainingSamples = availableSamples % frameSize;
+        while (end - pos >= FRAME_SIZE) {
+            System.arraycopy(pcm, pos, frameBuffer, 0, FRAME_SIZE);
+            pos += FRAME_SIZE;
+            encodeFrame(frameIndex++, fadeIn, consumer);
+            fadeIn = false;
+        }
 
-        // 处理第一帧 - 如果是新的音频段，应用淡入效果
-        if (frameCount > 0 && state.isFirst) {
-            System.arraycopy(combined, 0, shortBuf, 0, frameSize);
+        if (isStream) {
+            // 缓存剩余样本
+            state.leftoverCount = end - pos;
+            if (state.leftoverCount > 0) {
+                System.arraycopy(pcm, pos, state.leftoverBuffer, 0, state.leftoverCount);
+            }
+        }
+    }
 
+    /**
+     * 编码 frameBuffer 中的一帧
+     */
+    private void encodeFrame(int frameIndex, boolean fadeIn, FrameConsumer consumer) {
+        if (fadeIn) {
             // 应用淡入效果 - 前20毫秒（大约320个样本）
-            int fadeInSamples = Math.min(320, frameSize);
+            int fadeInSamples = Math.min(320, FRAME_SIZE);
             for (int i = 0; i < fadeInSamples; i++) {
                 // 线性淡入
                 float gain = (float) i / fadeInSamples;
-                shortBuf[i] = (short) (shortBuf[i] * gain);
-            }
-
-            try {
-                int opusLen = encoder.encode(shortBuf, 0, frameSize, opusBuf, 0, opusBuf.length);
-                if (opusLen > 0) {
-                    frames.add(Arrays.copyOf(opusBuf, opusLen));
-                }
-            } catch (Exception | AssertionError e) {
-                log.warn("淡入帧编码失败: {}", e.getMessage());
-            }
-
-            // 处理剩余的完整帧
-            for (int i = 1; i < frameCount; i++) {
-                int start = i * frameSize;
-                System.arraycopy(combined, start, shortBuf, 0, frameSize);
-                try {
-                    int opusLen = encoder.encode(shortBuf, 0, frameSize, opusBuf, 0, opusBuf.length);
-                    if (opusLen > 0) {
-                        frames.add(Arrays.copyOf(opusBuf, opusLen));
-                    }
-                } catch (Exception | AssertionError e) {
-                    log.warn("帧 #{} 编码失败: {}", i, e.getMessage());
-                }
-            }
-        } else {
-            // 处理所有完整帧
-            for (int i = 0; i < frameCount; i++) {
-                int start = i * frameSize;
-                System.arraycopy(combined, start, shortBuf, 0, frameSize);
-                try {
-                    int opusLen = encoder.encode(shortBuf, 0, frameSize, opusBuf, 0, opusBuf.length);
-                    if (opusLen > 0) {
-                        frames.add(Arrays.copyOf(opusBuf, opusLen));
-                    }
-                } catch (Exception | AssertionError e) {
-                    log.warn("帧 #{} 编码失败: {}", i, e.getMessage());
-                }
+                frameBuffer[i] = (short) (frameBuffer[i] * gain);
             }
         }
-
-        if (isStream) {
-            // 缓存剩余样本
-            state.leftoverCount = remainingSamples;
-            if (remainingSamples > 0) {
-                if (state.leftoverBuffer.length < remainingSamples) {
-                    state.leftoverBuffer = new short[frameSize]; // 确保缓冲区足够大
-                }
-                System.arraycopy(combined, frameCount * frameSize, state.leftoverBuffer, 0, remainingSamples);
-            } else {
-                Arrays.fill(state.leftoverBuffer, (short) 0); // 清空
+        try {
+            int opusLen = encoders.encode(frameBuffer, 0, FRAME_SIZE, encodeBuffer, 0, encodeBuffer.length);
+            if (opusLen > 0) {
+                consumer.accept(encodeBuffer, opusLen);
             }
+        } catch (Exception | AssertionError e) {
+            log.warn("帧 #{} 编码失败: {}", frameIndex, e.getMessage());
         }
-        return frames;
     }
-    
+
     /**
      * 获取解码器
      */
@@ -0,0 +1,138 @@
+package com.xiaozhi.common.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TwoLevelCacheManagerTest {
+
+    private static final String CACHE_NAME = "role";
+    private static final String KEY = "1";
+    private static final String OTHER_INSTANCE = "other-instance";
+
+    private final Cache redisCache = mock(Cache.class);
+    private final List<String> published = new ArrayList<>();
+    private final List<String> publishedOrigins = new ArrayList<>();
+    private TwoLevelCacheManager manager;
+    private Cache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(redisCache.getName()).thenReturn(CACHE_NAME);
+        CacheManager redisCacheManager = mock(CacheManager.class);
+        when(redisCacheManager.getCache(CACHE_NAME)).thenReturn(redisCache);
+
+        manager = new TwoLevelCacheManager(redisCacheManager, RedisSerializer.java(), Duration.ofMinutes(5), 100);
+        manager.setPublisher((cacheName, key, origin) -> {
+            published.add(cacheName + ":" + key);
+            publishedOrigins.add(origin);
+        });
+        cache = manager.getCache(CACHE_NAME);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void readServedFromLocalAfterFirstLoad() {
+        when(redisCache.get(KEY)).thenReturn(new SimpleValueWrapper("v1"));
+
+        assertThat(cache.get(KEY).get()).isEqualTo("v1");
+        assertThat(cache.get(KEY).get()).isEqualTo("v1");
+
+        verify(redisCache, times(1)).get(KEY);
+    }
+
+    @Test
+    void evictDuringRedisReadDoesNotRepopulateLocal() {
+        // 读 Redis 期间收到失效广播：读到的旧值不能回填 L1
+        when(redisCache.get(KEY)).thenAnswer(invocation -> {
+            manager.evictLocal(CACHE_NAME, KEY, OTHER_INSTANCE);
+            return new SimpleValueWrapper("stale");
+        }).thenReturn(new SimpleValueWrapper("fresh"));
+
+        assertThat(cache.get(KEY).get()).isEqualTo("stale");
+        assertThat(cache.get(KEY).get()).isEqualTo("fresh");
+        assertThat(cache.get(KEY).get()).isEqualTo("fresh");
+
+        verify(redisCache, times(2)).get(KEY);
+    }
+
+    @Test
+    void remoteEvictDropsLocalEntry() {
+        when(redisCache.get(KEY))
+                .thenReturn(new SimpleValueWrapper("v1"))
+                .thenReturn(new SimpleValueWrapper("v2"));
+        assertThat(cache.get(KEY).get()).isEqualTo("v1");
+
+        manager.evictLocal(CACHE_NAME, KEY, OTHER_INSTANCE);
+
+        assertThat(cache.get(KEY).get()).isEqualTo("v2");
+        verify(redisCache, times(2)).get(KEY);
+        verify(redisCache, never()).evict(any());
+    }
+
+    @Test
+    void selfOriginatedBroadcastIsIgnored() {
+        // 本实例的写操作会广播，借此拿到本实例标识
+        cache.put("2", "other");
+        assertThat(published).containsExactly(CACHE_NAME + ":2");
+        String self = publishedOrigins.get(0);
+
+        when(redisCache.get(KEY)).thenReturn(new SimpleValueWrapper("v1"));
+        assertThat(cache.get(KEY).get()).isEqualTo("v1");
+
+        manager.evictLocal(CACHE_NAME, KEY, self);
+
+        assertThat(cache.get(KEY).get()).isEqualTo("v1");
+        verify(redisCache, times(1)).get(KEY);
+    }
+
+    @Test
+    void evictInsideTransactionAppliesAfterCommit() {
+        when(redisCache.get(KEY))
+                .thenReturn(new SimpleValueWrapper("v1"))
+                .thenReturn(new SimpleValueWrapper("v2"));
+        assertThat(cache.get(KEY).get()).isEqualTo("v1");
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.evict(KEY);
+
+        // 提交前两级缓存都不动，也不广播
+        verify(redisCache, never()).evict(any());
+        assertThat(published).isEmpty();
+        assertThat(cache.get(KEY).get()).isEqualTo("v1");
+        verify(redisCache, times(1)).get(KEY);
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        verify(redisCache).evict(KEY);
+        assertThat(published).containsExactly(CACHE_NAME + ":" + KEY);
+        assertThat(cache.get(KEY).get()).isEqualTo("v2");
+        verify(redisCache, times(2)).get(KEY);
+    }
+}
@@ -210,6 +210,19 @@ public abstract class ChatSession {
 
     public abstract void sendBinaryMessage(byte[] message);
 
+    /**
+     * 发送与播放顺序无关的文本消息（如 MCP 请求）。
+     * 带发送队列的实现可让它越过排队中的播放消息，默认与 {@link #sendTextMessage} 相同。
+     */
+    public void sendIndependentTextMessage(String message) {
+        sendTextMessage(message);
+    }
+
+    /**
+     * 丢弃已排队但尚未发出的音频帧，播放被打断时调用。没有发送队列的实现无需处理。
+     */
+    public void clearQueuedAudio() {}
+
     public boolean isTimeoutDisconnect()            { return timeoutDisconnect; }
     public void setTimeoutDisconnect(boolean flag)  { this.timeoutDisconnect = flag; }
 
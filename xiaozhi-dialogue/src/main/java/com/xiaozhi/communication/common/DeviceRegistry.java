@@ -1,13 +1,17 @@
 package com.xiaozhi.communication.common;
 
 import jakarta.annotation.Resource;
-import org.springframework.data.redis.core.Cursor;
-import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -16,16 +20,36 @@ import java.util.Set;
  * <ul>
  *   <li>设备上线时绑定到当前实例</li>
  *   <li>设备下线时解绑</li>
- *   <li>心跳刷新 TTL，防止映射过期</li>
+ *   <li>心跳续租，一次调用覆盖本实例所有设备</li>
  *   <li>启动时查询属于本实例的设备（用于精准重置状态）</li>
  * </ul>
+ * <p>
+ * 存储结构：
+ * <ul>
+ *   <li>{@code xiaozhi:device:instance}：Hash，deviceId → instanceId</li>
+ *   <li>{@code xiaozhi:instance:devices:{instanceId}}：Set，本实例持有的设备</li>
+ *   <li>{@code xiaozhi:instance:lease:{instanceId}}：实例租约，带 TTL</li>
+ * </ul>
+ * 归属以实例租约为准：租约过期的实例不再视为设备所有者，心跳只需续租，不再逐设备 EXPIRE。
+ * <p>
+ * 实例异常退出后，它在 {@code xiaozhi:device:instance} 中留下的映射不会随租约过期：
+ * 查询时发现租约已过期会顺带删除该映射；设备重新上线也会覆盖映射。
+ * 之后既不上线也未被查询的设备会各残留一个字段，总量以设备数为上限，不会随实例重启累积。
  */
 @Component
 public class DeviceRegistry {
 
-    private static final String KEY_PREFIX = "xiaozhi:device:instance:";
+    private static final String DEVICE_INSTANCE_KEY = "xiaozhi:device:instance";
+    private static final String INSTANCE_DEVICES_PREFIX = "xiaozhi:instance:devices:";
+    private static final String INSTANCE_LEASE_PREFIX = "xiaozhi:instance:lease:";
     private static final Duration TTL = Duration.ofSeconds(300); // 5 分钟
 
+    // 仍归本实例时才删除映射，避免设备迁移到其他实例后被旧实例误删
+    private static final DefaultRedisScript<Long> UNBIND_SCRIPT = createUnbindScript();
+
+    // 映射仍指向租约已过期的实例时才删除，避免与设备重新绑定并发时删掉新映射
+    private static final DefaultRedisScript<Long> PRUNE_SCRIPT = createPruneScript();
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
@@ -36,46 +60,79 @@ public class DeviceRegistry {
      * 设备上线：绑定到本实例
      */
     public void bind(String deviceId) {
-        stringRedisTemplate.opsForValue().set(
-                KEY_PREFIX + deviceId, instanceIdHolder.getInstanceId(), TTL);
+        String instanceId = instanceIdHolder.getInstanceId();
+        String devicesKey = INSTANCE_DEVICES_PREFIX + instanceId;
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForHash().put(DEVICE_INSTANCE_KEY, deviceId, instanceId);
+                operations.opsForSet().add(devicesKey, deviceId);
+                operations.expire(devicesKey, TTL);
+                operations.opsForValue().set(INSTANCE_LEASE_PREFIX + instanceId, "1", TTL);
+                return null;
+            }
+        });
     }
 
     /**
      * 设备下线：解绑
      */
     public void unbind(String deviceId) {
-        stringRedisTemplate.delete(KEY_PREFIX + deviceId);
+        String instanceId = instanceIdHolder.getInstanceId();
+        stringRedisTemplate.execute(UNBIND_SCRIPT,
+                List.of(DEVICE_INSTANCE_KEY, INSTANCE_DEVICES_PREFIX + instanceId), deviceId, instanceId);
     }
 
     /**
-     * 刷新心跳（由 InactiveSessionChecker 定期调用）
+     * 续租（由 InactiveSessionChecker 定期调用），一次往返刷新实例租约和设备集合的 TTL
      */
-    public void refresh(String deviceId) {
-        stringRedisTemplate.expire(KEY_PREFIX + deviceId, TTL);
+    public void refresh() {
+        String instanceId = instanceIdHolder.getInstanceId();
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForValue().set(INSTANCE_LEASE_PREFIX + instanceId, "1", TTL);
+                operations.expire(INSTANCE_DEVICES_PREFIX + instanceId, TTL);
+                return null;
+            }
+        });
     }
 
     /**
-     * 查询设备所在实例
+     * 查询设备所在实例，所在实例租约已过期时删除该映射并返回 null
      */
     public String getInstance(String deviceId) {
-        return stringRedisTemplate.opsForValue().get(KEY_PREFIX + deviceId);
+        Object value = stringRedisTemplate.opsForHash().get(DEVICE_INSTANCE_KEY, deviceId);
+        if (value == null) {
+            return null;
+        }
+        String instanceId = value.toString();
+        if (instanceId.equals(instanceIdHolder.getInstanceId())
+                || Boolean.TRUE.equals(stringRedisTemplate.hasKey(INSTANCE_LEASE_PREFIX + instanceId))) {
+            return instanceId;
+        }
+        stringRedisTemplate.execute(PRUNE_SCRIPT, List.of(DEVICE_INSTANCE_KEY), deviceId, instanceId);
+        return null;
     }
 
     /**
      * 查询属于本实例的所有设备 ID。
-     * 通过 SCAN 遍历 {@code xiaozhi:device:instance:*}，筛选 value 等于本实例 ID 的 key。
+     * 读取本实例的设备集合，并过滤掉映射已指向其他实例的设备，复杂度与本实例设备数成正比。
      */
     public Set<String> getOwnDeviceIds() {
-        Set<String> ownDeviceIds = new HashSet<>();
         String ownInstanceId = instanceIdHolder.getInstanceId();
-        ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(100).build();
-        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
-            while (cursor.hasNext()) {
-                String key = cursor.next();
-                String instanceId = stringRedisTemplate.opsForValue().get(key);
-                if (ownInstanceId.equals(instanceId)) {
-                    ownDeviceIds.add(key.substring(KEY_PREFIX.length()));
-                }
+        Set<String> members = stringRedisTemplate.opsForSet().members(INSTANCE_DEVICES_PREFIX + ownInstanceId);
+        if (members == null || members.isEmpty()) {
+            return new HashSet<>();
+        }
+        List<Object> deviceIds = new ArrayList<>(members);
+        List<Object> owners = stringRedisTemplate.opsForHash().multiGet(DEVICE_INSTANCE_KEY, deviceIds);
+        Set<String> ownDeviceIds = new HashSet<>();
+        for (int i = 0; i < deviceIds.size(); i++) {
+            if (ownInstanceId.equals(owners.get(i))) {
+                ownDeviceIds.add((String) deviceIds.get(i));
             }
         }
         return ownDeviceIds;
@@ -87,4 +144,19 @@ public class DeviceRegistry {
     public boolean isOwned(String deviceId) {
         return instanceIdHolder.getInstanceId().equals(getInstance(deviceId));
     }
+
+    private static DefaultRedisScript<Long> createUnbindScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setScriptText("redis.call('srem', KEYS[2], ARGV[1]) "
+                + "if redis.call('hget', KEYS[1], ARGV[1]) == ARGV[2] then return redis.call('hdel', KEYS[1], ARGV[1]) else return 0 end");
+        return script;
+    }
+
+    private static DefaultRedisScript<Long> createPruneScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setScriptText("if redis.call('hget', KEYS[1], ARGV[1]) == ARGV[2] then return redis.call('hdel', KEYS[1], ARGV[1]) else return 0 end");
+        return script;
+    }
 }
@@ -1,31 +1,50 @@
 package com.xiaozhi.communication.common;
 
 import com.xiaozhi.communication.server.websocket.WebSocketSession;
+import com.xiaozhi.event.ChatSessionOpenedEvent;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import com.xiaozhi.enums.DeviceState;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import lombok.extern.slf4j.Slf4j;
 /**
- * 不活跃会话检查器，定期检查并关闭超时未活动的会话。
+ * 不活跃会话检查器，检查并关闭超时未活动的会话。
  * 从 SessionManager 拆分出来，职责单一化。
+ * <p>
+ * 每个会话在时间轮上只有一个到期任务，按 lastActivityTime + 超时时间 到期。
+ * 会话活动只更新 {@link ChatSession#setLastActivityTime}，不操作时间轮；到期时若期间有过活动，按新的截止时间重新挂入。
+ * 因此每次 tick 只访问真正到期的会话，开销不随连接数增长。
+ * 超时处理（发送告别语、关闭连接）按 sessionId 分片到多个线程执行，单个会话关闭缓慢不影响其他分片。
+ * 设备-实例租约续期与会话数无关，仍由独立的定时任务每 10 秒执行一次。
  */
 @Slf4j
 @Component
 public class InactiveSessionChecker {
 
+    /** 超时处理后会话仍存活（或正在说话）时，再次检查的间隔 */
+    private static final long RECHECK_MILLIS = 10_000;
+
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
+    private HashedWheelTimer wheel;
+
+    private ExecutorService[] shards;
+
     @Resource
     private SessionManager sessionManager;
 
@@ -38,17 +57,37 @@ public class InactiveSessionChecker {
     @Value("${inactive.timeout.seconds:60}")
     private int inactiveTimeOutSeconds;
 
+    @Value("${inactive.timeout.shards:4}")
+    private int shardCount;
+
     @PostConstruct
     public void init() {
         if (checkInactiveSession) {
-            scheduler.scheduleAtFixedRate(this::checkInactiveSessions, 10, 10, TimeUnit.SECONDS);
+            wheel = new HashedWheelTimer(Thread.ofPlatform().name("inactive-session-wheel").daemon(true).factory(),
+                    100, TimeUnit.MILLISECONDS, 1024);
+            shards = new ExecutorService[Math.max(1, shardCount)];
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = Executors.newSingleThreadExecutor(
+                        Thread.ofPlatform().name("inactive-session-" + i).daemon(true).factory());
+            }
+            // 启动前已注册的会话
+            sessionManager.getAllSessions().forEach(this::track);
             log.info("不活跃会话检查任务已启动，超时时间: {}秒", inactiveTimeOutSeconds);
         }
+        scheduler.scheduleAtFixedRate(this::refreshRegistry, 10, 10, TimeUnit.SECONDS);
     }
 
     @PreDestroy
     public void destroy() {
         scheduler.shutdown();
+        if (wheel != null) {
+            wheel.stop();
+        }
+        if (shards != null) {
+            for (ExecutorService shard : shards) {
+                shard.shutdownNow();
+            }
+        }
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
                 scheduler.shutdownNow();
@@ -60,35 +99,97 @@ public class InactiveSessionChecker {
         log.info("不活跃会话检查任务已关闭");
     }
 
-    private void checkInactiveSessions() {
-        Instant now = Instant.now();
-        sessionManager.getAllSessions().forEach(session -> {
-            // 刷新设备-实例心跳
-            if (session.getDevice() != null) {
-                deviceRegistry.refresh(session.getDevice().getDeviceId());
-            }
-            if (session instanceof WebSocketSession || session.isAudioChannelOpen()) {
-                Instant lastActivity = session.getLastActivityTime();
-                if (lastActivity != null) {
-                    Duration inactiveDuration = Duration.between(lastActivity, now);
-                    if (inactiveDuration.getSeconds() > inactiveTimeOutSeconds) {
-                        // 正在说话或思考时不触发超时（SPEAKING/THINKING 有活跃处理）
-                        // IDLE 和 LISTENING 均可触发（设备连接中但用户长时间没说话）
-                        if (session.getDeviceState() != DeviceState.SPEAKING
-                                && session.getDeviceState() != DeviceState.THINKING) {
-                            log.info("会话 {} 已经 {} 秒没有有效活动，发送超时提示并自动关闭",
-                                    session.getSessionId(), inactiveDuration.getSeconds());
-                            session.clearAudioSinks();
-                            if (session.getPersona() != null) {
-                                session.getPersona().sendGoodbyeMessage();
-                            }
-                            if (session instanceof WebSocketSession) {
-                                sessionManager.closeSession(session);
-                            }
-                        }
-                    }
+    /**
+     * 会话注册后挂入时间轮
+     */
+    @EventListener
+    public void onSessionOpened(ChatSessionOpenedEvent event) {
+        ChatSession session = sessionManager.getSession(event.getSessionId());
+        if (session != null) {
+            track(session);
+        }
+    }
+
+    private void track(ChatSession session) {
+        if (wheel != null) {
+            schedule(session, remainingMillis(session, System.currentTimeMillis()));
+        }
+    }
+
+    private void schedule(ChatSession session, long delayMillis) {
+        try {
+            wheel.newTimeout((Timeout timeout) -> onDeadline(session), Math.max(delayMillis, 0), TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // 时间轮已停止（应用关闭中）
+        }
+    }
+
+    /**
+     * 时间轮线程上执行，只做判断与重新挂入，真正的超时处理交给分片线程
+     */
+    private void onDeadline(ChatSession session) {
+        if (sessionManager.getSession(session.getSessionId()) != session) {
+            // 会话已移除或被同 ID 的新会话替换
+            return;
+        }
+        long remaining = remainingMillis(session, System.currentTimeMillis());
+        if (remaining > 0) {
+            schedule(session, remaining);
+            return;
+        }
+        ExecutorService shard = shards[Math.floorMod(session.getSessionId().hashCode(), shards.length)];
+        try {
+            shard.execute(() -> {
+                try {
+                    handleTimeout(session);
+                } catch (Exception e) {
+                    log.error("处理会话超时失败 - SessionId: {}", session.getSessionId(), e);
+                }
+                if (sessionManager.getSession(session.getSessionId()) == session) {
+                    schedule(session, Math.max(remainingMillis(session, System.currentTimeMillis()), RECHECK_MILLIS));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 应用关闭中
+        }
+    }
+
+    private long remainingMillis(ChatSession session, long now) {
+        Instant lastActivity = session.getLastActivityTime();
+        if (lastActivity == null) {
+            return RECHECK_MILLIS;
+        }
+        return lastActivity.toEpochMilli() + TimeUnit.SECONDS.toMillis(inactiveTimeOutSeconds) - now;
+    }
+
+    private void handleTimeout(ChatSession session) {
+        if (session instanceof WebSocketSession || session.isAudioChannelOpen()) {
+            Duration inactiveDuration = Duration.between(session.getLastActivityTime(), Instant.now());
+            // 正在说话或思考时不触发超时（SPEAKING/THINKING 有活跃处理）
+            // IDLE 和 LISTENING 均可触发（设备连接中但用户长时间没说话）
+            if (session.getDeviceState() != DeviceState.SPEAKING
+                    && session.getDeviceState() != DeviceState.THINKING) {
+                log.info("会话 {} 已经 {} 秒没有有效活动，发送超时提示并自动关闭",
+                        session.getSessionId(), inactiveDuration.getSeconds());
+                session.clearAudioSinks();
+                if (session.getPersona() != null) {
+                    session.getPersona().sendGoodbyeMessage();
+                }
+                if (session instanceof WebSocketSession) {
+                    sessionManager.closeSession(session);
                 }
             }
-        });
+        }
+    }
+
+    /**
+     * 续租设备-实例映射，一次调用覆盖本实例所有设备
+     */
+    private void refreshRegistry() {
+        try {
+            deviceRegistry.refresh();
+        } catch (Exception e) {
+            log.error("刷新设备-实例租约失败", e);
+        }
     }
 }
@@ -18,6 +18,8 @@ import com.xiaozhi.ai.tool.ToolsGlobalRegistry;
 import com.xiaozhi.ai.tool.ToolsSessionHolder;
 import com.xiaozhi.dialogue.llm.tool.device.IotService;
 import com.xiaozhi.dialogue.audio.VadService;
+import com.xiaozhi.dialogue.playback.PhraseCache;
+import com.xiaozhi.dialogue.playback.PlaybackScheduler;
 import com.xiaozhi.dialogue.playback.Player;
 import com.xiaozhi.dialogue.playback.ScheduledPlayer;
 import com.xiaozhi.ai.tts.TtsServiceFactory;
@@ -63,6 +65,12 @@ public class MessageHandler {
     @Resource
     private TtsServiceFactory ttsFactory;
 
+    @Resource
+    private PhraseCache phraseCache;
+
+    @Resource
+    private PlaybackScheduler playbackScheduler;
+
     @Resource
     private PersonaFactory personaFactory;
 
@@ -302,14 +310,13 @@ public class MessageHandler {
         Thread.startVirtualThread(() -> {
             try {
                 // 对于未绑定设备， 播放器是一次性用途，不需要绑定到ChatSession。
-                Player player = new ScheduledPlayer(chatSession, messageService);
+                Player player = new ScheduledPlayer(chatSession, messageService, playbackScheduler);
                 // 设备已注册但未配置模型
                 if (device.getDeviceName() != null && device.getRoleId() == null) {
                     String message = "设备未配置角色，请到角色配置页面完成配置后开始对话";
 
-                    Path audioFilePath = ttsFactory.getDefaultTtsService().textToSpeech(message);
-
-                    player.play(message, audioFilePath);
+                    // 固定提示语，优先从短语缓存读取预编码的 Opus 帧
+                    player.play(phraseCache.speech(ttsFactory.getDefaultTtsService(), message, null, true));
 
                     // 延迟一段时间后再解除标记
                     try {
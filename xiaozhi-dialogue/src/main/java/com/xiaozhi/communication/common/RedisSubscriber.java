@@ -1,15 +1,20 @@
 package com.xiaozhi.communication.common;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.xiaozhi.common.config.TwoLevelCacheManager;
 import com.xiaozhi.common.model.bo.DeviceBO;
+import com.xiaozhi.dialogue.audio.VadService;
 import com.xiaozhi.dialogue.runtime.Persona;
+import com.xiaozhi.ai.llm.factory.ChatModelFactory;
 import com.xiaozhi.ai.stt.SttServiceFactory;
 import com.xiaozhi.token.TokenService;
 import com.xiaozhi.ai.tts.TtsServiceFactory;
 import com.xiaozhi.common.model.bo.ConfigBO;
 import com.xiaozhi.config.service.ConfigService;
 import com.xiaozhi.device.service.DeviceService;
+import com.xiaozhi.role.service.RoleService;
 import com.xiaozhi.utils.JsonUtil;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,11 +24,20 @@ import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
 
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import lombok.extern.slf4j.Slf4j;
 /**
  * Redis 消息订阅配置。
  * 监听跨实例广播，在本实例执行对应操作。
+ * <p>
+ * 订阅线程只做内存操作；需要查库的处理交给有界工作线程池，同一对象的重复事件在执行前合并为一次，
+ * 避免单次后台编辑阻塞其他频道的消息投递。
  */
 @Slf4j
 @Configuration
@@ -41,6 +55,9 @@ public class RedisSubscriber {
     @Resource
     private TtsServiceFactory ttsServiceFactory;
 
+    @Resource
+    private ChatModelFactory chatModelFactory;
+
     @Resource
     private TokenService tokenService;
 
@@ -50,6 +67,18 @@ public class RedisSubscriber {
     @Resource
     private DeviceService deviceService;
 
+    @Resource
+    private VadService vadService;
+
+    @Resource
+    private TwoLevelCacheManager cacheManager;
+
+    private final ThreadPoolExecutor reloadExecutor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(1000), Thread.ofPlatform().name("redis-subscriber-", 0).daemon(true).factory());
+
+    /** 已排队未执行的任务键，用于合并重复事件 */
+    private final Set<String> pendingReloads = ConcurrentHashMap.newKeySet();
+
     @Bean
     public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
@@ -61,6 +90,7 @@ public class RedisSubscriber {
         addListener(container, "onCloseSession", RedisBroadcast.CHANNEL_CLOSE_SESSION);
         addListener(container, "onRoleUpdated", RedisBroadcast.CHANNEL_ROLE_UPDATED);
         addListener(container, "onDeviceUpdated", RedisBroadcast.CHANNEL_DEVICE_UPDATED);
+        addListener(container, "onCacheEvicted", RedisBroadcast.CHANNEL_CACHE_EVICTED);
 
         return container;
     }
@@ -71,6 +101,34 @@ public class RedisSubscriber {
         container.addMessageListener(adapter, new ChannelTopic(channel));
     }
 
+    @PreDestroy
+    public void shutdown() {
+        reloadExecutor.shutdownNow();
+    }
+
+    /**
+     * 提交需要查库的处理。同一个键已在排队时直接合并；任务开始执行前移除键，执行期间的新事件会再排一次，保证读到最新数据
+     */
+    private void dispatch(String key, Runnable task) {
+        if (!pendingReloads.add(key)) {
+            log.debug("合并重复广播事件 - key: {}", key);
+            return;
+        }
+        try {
+            reloadExecutor.execute(() -> {
+                pendingReloads.remove(key);
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("处理广播事件失败 - key: {}", key, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingReloads.remove(key);
+            log.warn("广播事件处理队列已满，丢弃 - key: {}", key);
+        }
+    }
+
     /**
      * 清除对话历史
      */
@@ -82,42 +140,50 @@ public class RedisSubscriber {
     }
 
     /**
-     * 设备角色变更：清理 Persona，下次唤醒时重新构建
+     * 设备角色变更：清理 Persona，下次唤醒时重新构建；VAD 阈值快照同时失效
      */
     public void onRoleChanged(String deviceId) {
+        if (sessionManager.getSessionByDeviceId(deviceId) != null) {
+            dispatch("roleChanged:" + deviceId, () -> reloadRole(deviceId));
+        }
+    }
+
+    private void reloadRole(String deviceId) {
         ChatSession session = sessionManager.getSessionByDeviceId(deviceId);
         if (session != null) {
             // 先从 DB 刷新 device（含新 roleId），否则重建 Persona 时仍用旧角色
             DeviceBO freshDevice = deviceService.getBO(deviceId);
             if (freshDevice != null) {
                 freshDevice.setSessionId(session.getSessionId());
-                session.setDevice(freshDevice);
+                sessionManager.updateDevice(session, freshDevice);
             }
             Persona persona = session.getPersona();
             if (persona != null) {
                 persona.getConversation().clear();
                 session.setPersona(null);
             }
+            // 角色已切换，VAD 阈值快照按新角色重新加载
+            vadService.refreshConfig(session.getSessionId());
             log.info("已清理设备 Persona（来自跨实例广播） - deviceId: {}", deviceId);
         }
     }
 
     /**
-     * 角色属性变更（如音色）：遍历本实例 session，清理使用该角色的 Persona
+     * 角色属性变更（如音色、VAD 阈值）：按角色索引找到使用该角色的 session，清理 Persona 与 VAD 阈值快照
      */
     public void onRoleUpdated(String message) {
         try {
             Integer roleId = Integer.parseInt(message.trim());
+            // 两个频道的消息分别派发，cacheEvicted 可能晚到：先删本地 L1，保证重新加载读到提交后的角色
+            cacheManager.evictLocal(RoleService.CACHE_NAME, String.valueOf(roleId));
+            vadService.refreshConfigForRole(roleId);
             int count = 0;
-            for (ChatSession session : sessionManager.getAllSessions()) {
-                DeviceBO device = session.getDevice();
-                if (device != null && roleId.equals(device.getRoleId())) {
-                    Persona persona = session.getPersona();
-                    if (persona != null) {
-                        persona.getConversation().clear();
-                        session.setPersona(null);
-                        count++;
-                    }
+            for (ChatSession session : sessionManager.getSessionsByRoleId(roleId)) {
+                Persona persona = session.getPersona();
+                if (persona != null) {
+                    persona.getConversation().clear();
+                    session.setPersona(null);
+                    count++;
                 }
             }
             if (count > 0) {
@@ -143,39 +209,63 @@ public class RedisSubscriber {
      * 设备信息变更：刷新本实例中该设备的 session 数据
      */
     public void onDeviceUpdated(String deviceId) {
+        if (sessionManager.getSessionByDeviceId(deviceId) != null) {
+            dispatch("deviceUpdated:" + deviceId, () -> reloadDevice(deviceId));
+        }
+    }
+
+    private void reloadDevice(String deviceId) {
         ChatSession session = sessionManager.getSessionByDeviceId(deviceId);
         if (session != null) {
             DeviceBO freshDevice = deviceService.getBO(deviceId);
             if (freshDevice != null) {
                 freshDevice.setSessionId(session.getSessionId());
-                session.setDevice(freshDevice);
+                sessionManager.updateDevice(session, freshDevice);
                 log.info("已刷新设备信息（来自跨实例广播） - deviceId: {}", deviceId);
             }
         }
     }
 
     /**
-     * 配置变更：清除对应工厂缓存（STT/TTS/Token）
+     * 配置变更：清除对应工厂缓存（STT/TTS/LLM/Token）
      */
     public void onConfigChanged(String message) {
         try {
             Map<String, Object> payload = JsonUtil.fromJson(message, new TypeReference<>() {});
             String configType = (String) payload.get("configType");
             Integer configId = (Integer) payload.get("configId");
+            dispatch("configChanged:" + configType + ":" + configId, () -> reloadConfig(configType, configId));
+        } catch (Exception e) {
+            log.error("处理 configChanged 广播失败", e);
+        }
+    }
 
-            ConfigBO config = configService.getBO(configId);
-            if (config != null) {
-                if ("stt".equals(configType)) {
-                    sttServiceFactory.removeCache(config);
-                } else if ("tts".equals(configType)) {
-                    ttsServiceFactory.removeCache(config);
-                }
-                // Token 缓存（Coze OAuth、阿里云 Token 等）与 configType 无关，统一清除
-                tokenService.removeCache(config);
-                log.info("已清除工厂缓存 - configType: {}, configId: {}", configType, configId);
+    private void reloadConfig(String configType, Integer configId) {
+        ConfigBO config = configService.getBO(configId);
+        if (config != null) {
+            if ("stt".equals(configType)) {
+                sttServiceFactory.removeCache(config);
+            } else if ("tts".equals(configType)) {
+                ttsServiceFactory.removeCache(config);
+            } else if ("llm".equals(configType)) {
+                chatModelFactory.removeCache(config);
             }
+            // Token 缓存（Coze OAuth、阿里云 Token 等）与 configType 无关，统一清除
+            tokenService.removeCache(config);
+            log.info("已清除工厂缓存 - configType: {}, configId: {}", configType, configId);
+        }
+    }
+
+    /**
+     * 其他实例写入/删除了缓存：删除本实例对应的本地 L1 缓存
+     */
+    public void onCacheEvicted(String message) {
+        try {
+            Map<String, Object> payload = JsonUtil.fromJson(message, new TypeReference<>() {});
+            cacheManager.evictLocal((String) payload.get("cacheName"), (String) payload.get("key"),
+                    (String) payload.get("origin"));
         } catch (Exception e) {
-            log.error("处理 configChanged 广播失败", e);
+            log.error("处理 cacheEvicted 广播失败", e);
         }
     }
 }
@@ -19,13 +19,17 @@ import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import lombok.extern.slf4j.Slf4j;
 /**
@@ -43,6 +47,17 @@ public class SessionManager {
     /** deviceId → sessionId 反向索引，O(1) 查找设备所在会话 */
     private final ConcurrentHashMap<String, String> deviceIdToSessionId = new ConcurrentHashMap<>();
 
+    /** roleId → sessionId 集合，角色变更广播只处理受影响的会话 */
+    private final ConcurrentHashMap<Integer, Set<String>> roleIdToSessionIds = new ConcurrentHashMap<>();
+
+    /** userId → sessionId 集合 */
+    private final ConcurrentHashMap<Integer, Set<String>> userIdToSessionIds = new ConcurrentHashMap<>();
+
+    /** sessionId → 已写入二级索引的 roleId/userId，重建索引时据此移除旧项 */
+    private final ConcurrentHashMap<String, IndexKeys> indexedKeys = new ConcurrentHashMap<>();
+
+    private record IndexKeys(Integer roleId, Integer userId) {}
+
     // 存储验证码生成状态
     private final ConcurrentHashMap<String, Boolean> captchaState = new ConcurrentHashMap<>();
 
@@ -132,7 +147,71 @@ public class SessionManager {
                     device.setRoleName(currentDevice.getRoleName());
                 }
             }
-            session.setDevice(device);
+            updateDevice(session, device);
+        }
+    }
+
+    /**
+     * 替换会话的设备信息并同步二级索引。外部更新 session 设备时应调用此方法而不是直接 setDevice
+     */
+    public void updateDevice(ChatSession session, DeviceBO device) {
+        session.setDevice(device);
+        reindex(session);
+    }
+
+    /**
+     * 按会话当前设备的 roleId/userId 重建二级索引，设备信息被原地修改（如切换角色）后调用
+     */
+    public void reindex(ChatSession session) {
+        String sessionId = session.getSessionId();
+        if (!sessions.containsKey(sessionId)) {
+            return;
+        }
+        DeviceBO device = session.getDevice();
+        IndexKeys keys = device == null ? new IndexKeys(null, null) : new IndexKeys(device.getRoleId(), device.getUserId());
+        indexedKeys.compute(sessionId, (id, old) -> {
+            if (old != null) {
+                if (!Objects.equals(old.roleId(), keys.roleId())) {
+                    removeFromIndex(roleIdToSessionIds, old.roleId(), id);
+                }
+                if (!Objects.equals(old.userId(), keys.userId())) {
+                    removeFromIndex(userIdToSessionIds, old.userId(), id);
+                }
+            }
+            addToIndex(roleIdToSessionIds, keys.roleId(), id);
+            addToIndex(userIdToSessionIds, keys.userId(), id);
+            return keys;
+        });
+        // 与 removeSession 并发时，会话可能已移除，补一次清理
+        if (!sessions.containsKey(sessionId)) {
+            unindex(sessionId);
+        }
+    }
+
+    private void unindex(String sessionId) {
+        IndexKeys old = indexedKeys.remove(sessionId);
+        if (old != null) {
+            removeFromIndex(roleIdToSessionIds, old.roleId(), sessionId);
+            removeFromIndex(userIdToSessionIds, old.userId(), sessionId);
+        }
+    }
+
+    private static void addToIndex(ConcurrentHashMap<Integer, Set<String>> index, Integer key, String sessionId) {
+        if (key != null) {
+            index.compute(key, (k, ids) -> {
+                Set<String> set = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                set.add(sessionId);
+                return set;
+            });
+        }
+    }
+
+    private static void removeFromIndex(ConcurrentHashMap<Integer, Set<String>> index, Integer key, String sessionId) {
+        if (key != null) {
+            index.computeIfPresent(key, (k, ids) -> {
+                ids.remove(sessionId);
+                return ids.isEmpty() ? null : ids;
+            });
         }
     }
 
@@ -150,6 +229,7 @@ public class SessionManager {
         if (removed != null && removed.getDevice() != null) {
             deviceIdToSessionId.remove(removed.getDevice().getDeviceId());
         }
+        unindex(sessionId);
     }
 
     public ChatSession getSession(String sessionId) {
@@ -169,6 +249,39 @@ public class SessionManager {
         return null;
     }
 
+    /**
+     * 使用指定角色的会话，只遍历索引中的会话；返回前按设备当前 roleId 复核
+     */
+    public List<ChatSession> getSessionsByRoleId(Integer roleId) {
+        return lookup(roleIdToSessionIds, roleId, device -> roleId.equals(device.getRoleId()));
+    }
+
+    /**
+     * 指定用户名下设备的会话，语义同 {@link #getSessionsByRoleId}
+     */
+    public List<ChatSession> getSessionsByUserId(Integer userId) {
+        return lookup(userIdToSessionIds, userId, device -> userId.equals(device.getUserId()));
+    }
+
+    private List<ChatSession> lookup(ConcurrentHashMap<Integer, Set<String>> index, Integer key,
+                                     Predicate<DeviceBO> matches) {
+        if (key == null) {
+            return List.of();
+        }
+        Set<String> ids = index.get(key);
+        if (ids == null) {
+            return List.of();
+        }
+        List<ChatSession> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            ChatSession session = sessions.get(id);
+            if (session != null && session.getDevice() != null && matches.test(session.getDevice())) {
+                result.add(session);
+            }
+        }
+        return result;
+    }
+
     /**
      * 获取所有会话（供 InactiveSessionChecker 等遍历使用）
      */
@@ -221,6 +334,7 @@ public class SessionManager {
         if (chatSession != null) {
             chatSession.setDevice(device);
             deviceIdToSessionId.put(device.getDeviceId(), sessionId);
+            reindex(chatSession);
             updateLastActivity(sessionId);
             deviceRegistry.bind(device.getDeviceId());
             log.debug("设备配置已注册 - SessionId: {}, DeviceId: {}", sessionId, device.getDeviceId());
@@ -6,6 +6,7 @@ import com.xiaozhi.common.model.bo.DeviceBO;
 import com.xiaozhi.dialogue.llm.tool.mcp.device.DeviceMcpService;
 import com.xiaozhi.utils.JsonUtil;
 import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
@@ -32,6 +33,15 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
     @Resource
     private DeviceMcpService deviceMcpService;
 
+    @Value("${websocket.send.max-queued-bytes:65536}")
+    private int sendMaxQueuedBytes;
+
+    @Value("${websocket.send.max-delay-ms:3000}")
+    private long sendMaxDelayMillis;
+
+    @Value("${websocket.send.slow-consumer-policy:DROP_AUDIO}")
+    private WebSocketSendQueue.SlowConsumerPolicy slowConsumerPolicy;
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
         Map<String, String> headers = getHeadersFromSession(session);
@@ -48,7 +58,8 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
         }
 
         com.xiaozhi.communication.server.websocket.WebSocketSession xiaoZhiSession
-                = new com.xiaozhi.communication.server.websocket.WebSocketSession(session);
+                = new com.xiaozhi.communication.server.websocket.WebSocketSession(session,
+                new WebSocketSendQueue.Options(sendMaxQueuedBytes, sendMaxDelayMillis, slowConsumerPolicy));
         messageHandler.afterConnection(xiaoZhiSession, deviceIdAuth);
         sessionManager.openAudioChannel(xiaoZhiSession.getSessionId(), deviceIdAuth);
 
@@ -159,10 +170,15 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
                 .setAudioParams(AudioParams.Opus);
 
         try {
-            session.sendMessage(new TextMessage(JsonUtil.toJson(resp)));
+            ChatSession chatSession = sessionManager.getSession(sessionId);
+            // 与其他出站消息走同一发送队列，避免并发写同一连接
+            if (chatSession != null) {
+                chatSession.sendTextMessage(JsonUtil.toJson(resp));
+            } else {
+                session.sendMessage(new TextMessage(JsonUtil.toJson(resp)));
+            }
             if(message.getFeatures() != null && message.getFeatures().getMcp()) {
                 //如果客户端开启mcp协议，异步初始化MCP工具
-                ChatSession chatSession = sessionManager.getSession(sessionId);
                 Thread.startVirtualThread(() -> {
                     DeviceBO device = chatSession != null ? chatSession.getDevice() : null;
                     if (device != null && device.getRoleId() != null) {
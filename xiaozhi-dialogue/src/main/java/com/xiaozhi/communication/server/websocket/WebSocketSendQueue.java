@@ -0,0 +1,309 @@
+package com.xiaozhi.communication.server.websocket;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 单个 WebSocket 连接的发送队列。
+ * <p>
+ * 播放器音频帧、TTS/情绪 JSON、MCP 请求等来自不同线程，统一入队后由一个虚拟线程串行写出，
+ * 生产者不再被慢设备阻塞，也不会并发调用底层 session.sendMessage。
+ * <ul>
+ *   <li>顺序：与播放相关的消息（tts start/sentence_start/stop、情绪、音频帧）共用一个 FIFO，严格按入队顺序发送；
+ *       只有与播放无关的消息（MCP 请求）走优先通道，越过排队中的播放消息</li>
+ *   <li>字节上限：排队字节超过 maxQueuedBytes 时按策略处理</li>
+ *   <li>时间上限：排队超过 maxDelayMillis 的音频帧已失去实时意义，直接丢弃</li>
+ *   <li>打断：{@link #clearAudio()} 丢弃尚未发出的旧回复音频</li>
+ *   <li>关闭：{@link #closeGracefully()} 不再接收新消息，发送线程在 maxDelayMillis 内发完排队消息后关闭底层连接，
+ *       底层连接只由发送线程关闭，不会与进行中的 sendMessage 重叠</li>
+ * </ul>
+ */
+@Slf4j
+public class WebSocketSendQueue {
+
+    /**
+     * 慢消费者处理策略
+     */
+    public enum SlowConsumerPolicy {
+        /** 丢弃最旧的音频帧腾出空间，文本消息照常发送 */
+        DROP_AUDIO,
+        /** 关闭连接，由设备重连 */
+        CLOSE
+    }
+
+    public record Options(int maxQueuedBytes, long maxDelayMillis, SlowConsumerPolicy policy) {
+        public static final Options DEFAULT = new Options(64 * 1024, 3000, SlowConsumerPolicy.DROP_AUDIO);
+    }
+
+    private record Pending(WebSocketMessage<?> message, int bytes, long enqueuedAt) {
+        boolean isAudio() {
+            return message instanceof BinaryMessage;
+        }
+    }
+
+    private final org.springframework.web.socket.WebSocketSession session;
+    private final Options options;
+
+    // 以下字段由 this 保护
+    private final ArrayDeque<Pending> independent = new ArrayDeque<>();
+    private final ArrayDeque<Pending> ordered = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean draining;
+    private boolean closed;
+    // 已请求优雅关闭：不再接收新消息，排空后由发送线程关闭底层连接
+    private boolean closing;
+    private long closeDeadline;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong droppedAudio = new AtomicLong();
+    private final AtomicLong sendNanos = new AtomicLong();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+
+    public WebSocketSendQueue(org.springframework.web.socket.WebSocketSession session, Options options) {
+        this.session = session;
+        this.options = options;
+    }
+
+    /**
+     * 发送与播放顺序相关的文本消息，与音频帧保持入队顺序
+     */
+    public void sendText(String text) {
+        offer(text(text), false);
+    }
+
+    /**
+     * 发送与播放无关的文本消息，优先于排队中的播放消息
+     */
+    public void sendIndependentText(String text) {
+        offer(text(text), true);
+    }
+
+    public void sendBinary(byte[] data) {
+        offer(new Pending(new BinaryMessage(data), data.length, System.nanoTime()), false);
+    }
+
+    /**
+     * 丢弃排队中的音频帧，文本消息保留（设备状态依赖 tts start/stop 配对）
+     */
+    public synchronized void clearAudio() {
+        Iterator<Pending> it = ordered.iterator();
+        while (it.hasNext()) {
+            Pending pending = it.next();
+            if (pending.isAudio()) {
+                it.remove();
+                queuedBytes -= pending.bytes();
+            }
+        }
+    }
+
+    /**
+     * 优雅关闭：不再接收新消息，已排队的消息（如告别语的 tts stop、背压下的音频尾部）继续发送，
+     * 排空或超过 maxDelayMillis 后由发送线程关闭底层连接，到期仍未发出的消息丢弃。
+     */
+    public void closeGracefully() {
+        boolean startWriter = false;
+        synchronized (this) {
+            if (closed || closing) {
+                return;
+            }
+            closing = true;
+            closeDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.maxDelayMillis());
+            if (!draining) {
+                draining = true;
+                startWriter = true;
+            }
+        }
+        if (startWriter) {
+            Thread.startVirtualThread(this::drain);
+        }
+    }
+
+    /**
+     * 关闭队列并丢弃未发送的消息
+     */
+    public synchronized void close() {
+        closed = true;
+        independent.clear();
+        ordered.clear();
+        queuedBytes = 0;
+    }
+
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDroppedAudio() {
+        return droppedAudio.get();
+    }
+
+    /**
+     * 平均发送耗时（微秒）
+     */
+    public long getAvgSendMicros() {
+        long count = sent.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(sendNanos.get() / count);
+    }
+
+    /**
+     * 最大发送耗时（微秒）
+     */
+    public long getMaxSendMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxSendNanos.get());
+    }
+
+    private static Pending text(String text) {
+        TextMessage message = new TextMessage(text);
+        return new Pending(message, message.getPayloadLength(), System.nanoTime());
+    }
+
+    private void offer(Pending pending, boolean priority) {
+        boolean startWriter = false;
+        String overflow = null;
+        synchronized (this) {
+            if (closed || closing) {
+                return;
+            }
+            long limit = options.maxQueuedBytes();
+            if (queuedBytes + pending.bytes() > limit) {
+                if (options.policy() == SlowConsumerPolicy.DROP_AUDIO) {
+                    dropOldestAudio(limit - pending.bytes());
+                    if (pending.isAudio() && queuedBytes + pending.bytes() > limit) {
+                        droppedAudio.incrementAndGet();
+                        return;
+                    }
+                    // 文本消息体积小且丢失会破坏协议状态，允许超出上限，但超过两倍说明连接已不可用
+                    if (queuedBytes + pending.bytes() > 2L * limit) {
+                        overflow = "文本消息积压 " + queuedBytes + " 字节";
+                    }
+                } else {
+                    overflow = "发送队列积压 " + queuedBytes + " 字节";
+                }
+            }
+            if (overflow == null) {
+                (priority ? independent : ordered).addLast(pending);
+                queuedBytes += pending.bytes();
+                if (!draining) {
+                    draining = true;
+                    startWriter = true;
+                }
+            }
+        }
+        if (overflow != null) {
+            closeSlowConsumer(overflow);
+        } else if (startWriter) {
+            Thread.startVirtualThread(this::drain);
+        }
+    }
+
+    /**
+     * 从最旧的开始丢弃音频帧，直到排队字节不超过 target。在 this 锁内调用
+     */
+    private void dropOldestAudio(long target) {
+        Iterator<Pending> it = ordered.iterator();
+        while (queuedBytes > target && it.hasNext()) {
+            Pending pending = it.next();
+            if (pending.isAudio()) {
+                it.remove();
+                queuedBytes -= pending.bytes();
+                droppedAudio.incrementAndGet();
+            }
+        }
+    }
+
+    private void drain() {
+        long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(options.maxDelayMillis());
+        while (true) {
+            Pending pending;
+            boolean closeSession = false;
+            synchronized (this) {
+                if (closing && !closed && System.nanoTime() - closeDeadline > 0) {
+                    log.warn("关闭前未能在 {}ms 内发完排队消息，丢弃剩余 {} 字节 - SessionId: {}",
+                            options.maxDelayMillis(), queuedBytes, session.getId());
+                    independent.clear();
+                    ordered.clear();
+                    queuedBytes = 0;
+                }
+                pending = closed ? null : independent.pollFirst();
+                if (pending == null && !closed) {
+                    pending = ordered.pollFirst();
+                }
+                if (pending == null) {
+                    draining = false;
+                    if (!closing || closed) {
+                        return;
+                    }
+                    closed = true;
+                    closeSession = true;
+                } else {
+                    queuedBytes -= pending.bytes();
+                }
+            }
+            if (closeSession) {
+                try {
+                    session.close();
+                } catch (IOException e) {
+                    log.error("关闭WebSocket会话时发生错误 - SessionId: {}", session.getId(), e);
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            if (start - pending.enqueuedAt() > maxDelayNanos) {
+                if (options.policy() == SlowConsumerPolicy.CLOSE) {
+                    closeSlowConsumer("消息排队超过 " + options.maxDelayMillis() + "ms");
+                    continue;
+                }
+                if (pending.isAudio()) {
+                    droppedAudio.incrementAndGet();
+                    continue;
+                }
+            }
+            try {
+                session.sendMessage(pending.message());
+                long elapsed = System.nanoTime() - start;
+                sent.incrementAndGet();
+                sendNanos.addAndGet(elapsed);
+                maxSendNanos.accumulateAndGet(elapsed, Math::max);
+            } catch (IOException | IllegalStateException e) {
+                if (!session.isOpen()) {
+                    // 连接已断开，剩余消息无需再发
+                    close();
+                    continue;
+                }
+                log.error("发送WebSocket消息失败 - SessionId: {}", session.getId(), e);
+            }
+        }
+    }
+
+    private void closeSlowConsumer(String reason) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        close();
+        log.warn("设备接收过慢，关闭连接 - SessionId: {}, 原因: {}, 平均发送耗时: {}μs",
+                session.getId(), reason, getAvgSendMicros());
+        // 关闭握手同样可能被慢连接阻塞，不占用生产者线程
+        Thread.startVirtualThread(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.error("关闭WebSocket会话时发生错误 - SessionId: {}", session.getId(), e);
+            }
+        });
+    }
+}
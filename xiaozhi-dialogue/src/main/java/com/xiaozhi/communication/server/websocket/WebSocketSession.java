@@ -1,9 +1,6 @@
 package com.xiaozhi.communication.server.websocket;
 
 import com.xiaozhi.communication.common.ChatSession;
-import org.springframework.web.socket.BinaryMessage;
-import org.springframework.web.socket.TextMessage;
-
 import java.io.IOException;
 
 import lombok.extern.slf4j.Slf4j;
@@ -15,13 +12,23 @@ public class WebSocketSession extends ChatSession {
      */
     protected org.springframework.web.socket.WebSocketSession session;
 
+    /**
+     * 出站发送队列，所有发送经由它串行写出
+     */
+    protected WebSocketSendQueue sendQueue;
+
     public WebSocketSession(String sessionId) {
         super(sessionId);
     }
 
     public WebSocketSession(org.springframework.web.socket.WebSocketSession session) {
+        this(session, WebSocketSendQueue.Options.DEFAULT);
+    }
+
+    public WebSocketSession(org.springframework.web.socket.WebSocketSession session, WebSocketSendQueue.Options sendOptions) {
         super(session.getId());
         this.session = session;
+        this.sendQueue = new WebSocketSendQueue(session, sendOptions);
     }
 
     @Override
@@ -35,7 +42,15 @@ public class WebSocketSession extends ChatSession {
 
     @Override
     public void close() {
-        if(session != null){
+        if (sendQueue != null) {
+            if (sendQueue.getDroppedAudio() > 0) {
+                log.info("WebSocket发送统计 - SessionId: {}, 已发送: {}, 丢弃音频帧: {}, 平均发送耗时: {}μs, 最大: {}μs",
+                        getSessionId(), sendQueue.getSent(), sendQueue.getDroppedAudio(),
+                        sendQueue.getAvgSendMicros(), sendQueue.getMaxSendMicros());
+            }
+            // 告别语等已排队的消息发完后，由发送线程关闭底层连接
+            sendQueue.closeGracefully();
+        } else if (session != null) {
             try {
                 session.close();
             } catch (IOException e) {
@@ -56,19 +71,21 @@ public class WebSocketSession extends ChatSession {
 
     @Override
     public void sendTextMessage(String message) {
-        try {
-            session.sendMessage(new TextMessage(message));
-        } catch (IOException e) {
-            log.error("发送Text消息失败, message: {}", message, e);
-        }
+        sendQueue.sendText(message);
     }
 
     @Override
     public void sendBinaryMessage(byte[] message) {
-        try {
-            session.sendMessage(new BinaryMessage(message));
-        } catch (IOException e) {
-            log.error("发送Binary消息失败", e);
-        }
+        sendQueue.sendBinary(message);
+    }
+
+    @Override
+    public void sendIndependentTextMessage(String message) {
+        sendQueue.sendIndependentText(message);
+    }
+
+    @Override
+    public void clearQueuedAudio() {
+        sendQueue.clearAudio();
     }
 }
@@ -9,6 +9,7 @@ import com.xiaozhi.dialogue.audio.VadService;
 import com.xiaozhi.dialogue.llm.factory.PersonaFactory;
 import com.xiaozhi.ai.llm.memory.MessageTimeMetadata;
 import com.xiaozhi.ai.llm.service.IntentService;
+import com.xiaozhi.ai.stt.SttPartialResult;
 import com.xiaozhi.ai.stt.SttResult;
 import com.xiaozhi.common.model.bo.MessageMetadataBO;
 import org.springframework.ai.chat.messages.UserMessage;
@@ -19,8 +20,9 @@ import com.xiaozhi.enums.DeviceState;
 import com.xiaozhi.event.ChatAbortedEvent;
 import com.xiaozhi.event.SpeechRecognizedEvent;
 
-import com.xiaozhi.storage.service.StorageServiceFactory;
+import com.xiaozhi.storage.service.AudioUploadQueue;
 import com.xiaozhi.utils.AudioUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
@@ -68,7 +70,13 @@ public class DialogueService{
     private ApplicationEventPublisher eventPublisher;
 
     @Resource
-    private StorageServiceFactory storageServiceFactory;
+    private AudioUploadQueue audioUploadQueue;
+
+    /**
+     * 是否基于稳定的中间识别结果推测执行 LLM 请求（需 STT Provider 支持中间结果）
+     */
+    @Value("${xiaozhi.dialogue.speculative-llm.enabled:false}")
+    private boolean speculativeLlmEnabled;
 
     @org.springframework.context.event.EventListener
     public void onApplicationEvent(ChatAbortedEvent event) {
@@ -176,9 +184,11 @@ public class DialogueService{
                     return;
                 }
 
-                var sttResult = persona.getSttService().stream(session.getAudioSinks().asFlux());
+                var sttResult = persona.getSttService().stream(session.getAudioSinks().asFlux(),
+                        partial -> onPartialResult(persona, partial));
 
                 if (sttResult == null || !StringUtils.hasText(sttResult.text())) {
+                    persona.cancelSpeculation();
                     return;
                 }
 
@@ -203,6 +213,21 @@ public class DialogueService{
         });
     }
 
+    /**
+     * 处理STT中间识别结果：稳定假设到达时推测执行 LLM 请求，
+     * 最终识别结果一致时 Persona 直接复用该请求，节省从识别完成到首个 Token 的等待时间。
+     */
+    private void onPartialResult(Persona persona, SttPartialResult partial) {
+        if (!speculativeLlmEnabled || !partial.stable() || !StringUtils.hasText(partial.text())) {
+            return;
+        }
+        try {
+            persona.speculate(buildUserMessage(partial.text(), SttResult.textOnly(partial.text())));
+        } catch (Exception e) {
+            log.warn("推测LLM请求失败: {}", e.getMessage());
+        }
+    }
+
     /**
      * 处理语音唤醒
      */
@@ -239,6 +264,7 @@ public class DialogueService{
 
             // 意图检测
             if (intentService.detect(text) == IntentService.Intent.EXIT) {
+                persona.cancelSpeculation();
                 sendGoodbyeMessage(session);
                 return;
             }
@@ -320,6 +346,9 @@ public class DialogueService{
 
             // 先取消语音合成器的上游Flux订阅，停止产生新的音频数据
             Persona persona = session.getPersona();
+            if (persona != null) {
+                persona.cancelSpeculation();
+            }
             if (persona != null && persona.getSynthesizer() != null) {
                 persona.getSynthesizer().cancel();
             }
@@ -360,12 +389,8 @@ public class DialogueService{
         AudioUtils.saveAsWav(path, fullPcmData);
         log.debug("用户音频已保存: {}", path);
 
-        try {
-            String storedPath = storageServiceFactory.getStorageService().upload(path, path.toString());
-            session.setUserAudioPath(Path.of(storedPath));
-        } catch (Exception e) {
-            log.warn("上传用户音频失败，保留本地路径: {}", path, e);
-        }
+        // 消息先以本地路径入库，上传完成后由队列回填
+        audioUploadQueue.enqueue(session.getSessionId(), path);
     }
 
 }
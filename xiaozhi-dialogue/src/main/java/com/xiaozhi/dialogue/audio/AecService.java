@@ -1,6 +1,8 @@
 package com.xiaozhi.dialogue.audio;
 
+import com.xiaozhi.event.ChatSessionClosedEvent;
 import com.xiaozhi.event.TtsPlaybackCompletedEvent;
+import com.xiaozhi.utils.AudioUtils;
 import com.xiaozhi.utils.OpusProcessor;
 
 import dev.onvoid.webrtc.media.audio.AudioProcessing;
@@ -25,6 +27,8 @@ import lombok.extern.slf4j.Slf4j;
  * - 两者都直接驱动 AEC3，保持各自的实时时间线；AEC3 内置延迟估计器
  *   自动找到参考信号与回声之间的延迟，无需手动对齐。
  * - setStreamDelayMs 仅作为初始提示加速收敛。
+ * - 每会话一个长期存活的 APM 实例与预分配的子帧缓冲；播放结束时只软重置回声消除器，
+ *   APM 原生资源仅在会话关闭时释放。
  */
 @Slf4j
 @Service
@@ -43,6 +47,7 @@ public class AecService {
 
     // 10ms 帧参数 (16kHz mono, 16-bit)
     private static final int FRAME_BYTES_10MS = 320;      // bytes
+    private static final int SAMPLES_10MS = FRAME_BYTES_10MS / 2;
 
     /**
      * 确保会话的 AEC 状态已初始化。
@@ -52,16 +57,14 @@ public class AecService {
         if (!enabled) return;
         if (states.containsKey(sessionId)) return;
         try {
-            AecState existing = states.putIfAbsent(sessionId, new AecState());
-            if (existing == null) {
-            }
+            states.computeIfAbsent(sessionId, k -> new AecState());
         } catch (Exception e) {
             log.error("AEC会话初始化失败: {}", sessionId, e);
         }
     }
 
     /**
-     * 重置（销毁）会话的 AEC 状态
+     * 销毁会话的 AEC 状态，释放 APM 原生资源。仅在会话关闭时调用。
      */
     public void resetSession(String sessionId) {
         AecState state = states.remove(sessionId);
@@ -74,32 +77,33 @@ public class AecService {
     }
 
     /**
-     * TTS 播放结束时重建 AEC 实例。
+     * 会话关闭时释放 AEC 资源（覆盖超时关闭等未经 MessageHandler 清理的路径）
+     */
+    @EventListener
+    public void onSessionClosed(ChatSessionClosedEvent event) {
+        resetSession(event.getSessionId());
+    }
+
+    /**
+     * TTS 播放结束时软重置回声消除器。
      * AEC3 在 TTS 停止后仍保留旧的回声滤波器，会把用户说话当回声消除（过度消除）。
-     * 重建 APM 实例可以清除旧滤波器，避免误消除用户声音。
+     * 软重置只重建 APM 内部的回声消除器（滤波器、延迟估计器与参考信号缓冲），
+     * 复用 APM 实例及降噪、增益控制状态，不再每轮播放都重建完整的原生实例。
      */
     @EventListener
     public void onTtsPlaybackEnd(TtsPlaybackCompletedEvent event) {
         if (!enabled) return;
         String sessionId = event.getSessionId();
-        AecState old = states.get(sessionId);
-        if (old == null) return;
+        AecState state = states.get(sessionId);
+        if (state == null) return;
         try {
-            AecState fresh = new AecState();
-            // 原子替换：用新实例替换旧实例
-            if (states.replace(sessionId, old, fresh)) {
-                // 在 apmLock 内 dispose，确保等待正在进行的 processStream/processReverseStream 完成
-                synchronized (old.apmLock) {
-                    old.dispose();
-                }
-            } else {
-                // 并发竞争，新实例被抢先替换，释放刚创建的
-                synchronized (fresh.apmLock) {
-                    fresh.dispose();
-                }
+            // 在 apmLock 内重置，确保等待正在进行的 processStream/processReverseStream 完成
+            synchronized (state.apmLock) {
+                if (state.disposed) return;
+                state.softReset();
             }
         } catch (Exception e) {
-            log.warn("AEC重建失败: {}: {}", sessionId, e.getMessage());
+            log.warn("AEC重置失败: {}: {}", sessionId, e.getMessage());
         }
     }
 
@@ -114,20 +118,20 @@ public class AecService {
         if (state == null) return;
 
         try {
-            // 用独立解码器解码参考 Opus 帧
-            byte[] pcm = state.refDecoder.opusToPcm(opusFrame);
-            if (pcm == null || pcm.length == 0) return;
-
             // 立即逐子帧调用 processReverseStream，以 TTS 实时节奏驱动参考通道
             synchronized (state.apmLock) {
                 if (state.disposed) return;
+                // 用独立解码器解码参考 Opus 帧到预分配的样本缓冲
+                int samples = state.refDecoder.decode(opusFrame, 0, opusFrame.length, state.refPcm, 0);
                 int offset = 0;
-                while (offset + FRAME_BYTES_10MS <= pcm.length) {
-                    byte[] subFrame = new byte[FRAME_BYTES_10MS];
-                    System.arraycopy(pcm, offset, subFrame, 0, FRAME_BYTES_10MS);
-                    byte[] refOutput = new byte[FRAME_BYTES_10MS];
-                    state.apm.processReverseStream(subFrame, state.streamConfig, state.streamConfig, refOutput);
-                    offset += FRAME_BYTES_10MS;
+                while (offset + SAMPLES_10MS <= samples) {
+                    for (int i = 0; i < SAMPLES_10MS; i++) {
+                        short sample = state.refPcm[offset + i];
+                        state.refInFrame[i * 2] = (byte) sample;
+                        state.refInFrame[i * 2 + 1] = (byte) (sample >> 8);
+                    }
+                    state.apm.processReverseStream(state.refInFrame, state.streamConfig, state.streamConfig, state.refOutFrame);
+                    offset += SAMPLES_10MS;
                 }
             }
 
@@ -137,43 +141,29 @@ public class AecService {
     }
 
     /**
-     * 处理麦克风 PCM 数据，消除回声。
-     * 以麦克风到达的实时节奏逐子帧调用 processStream。
+     * 原地处理麦克风 PCM 数据，消除回声：micPcm 的前 length 字节被替换为处理结果。
+     * 以麦克风到达的实时节奏逐子帧调用 processStream，子帧经预分配的输入/输出缓冲中转，不产生新的堆分配。
+     * 不足 10ms 的尾部数据保持原样。
      * AEC3 内部延迟估计器自动将参考通道与麦克风通道对齐。
      */
-    public byte[] process(String sessionId, byte[] micPcm) {
-        if (!enabled) return micPcm;
+    public void process(String sessionId, byte[] micPcm, int length) {
+        if (!enabled) return;
         AecState state = states.get(sessionId);
-        if (state == null) return micPcm;
+        if (state == null) return;
 
         try {
-            int totalBytes = micPcm.length;
-            byte[] aecOutput = new byte[totalBytes];
             int offset = 0;
-            int outOffset = 0;
-
             synchronized (state.apmLock) {
-                if (state.disposed) return micPcm;
-                while (offset + FRAME_BYTES_10MS <= totalBytes) {
-                    byte[] micSubFrame = new byte[FRAME_BYTES_10MS];
-                    System.arraycopy(micPcm, offset, micSubFrame, 0, FRAME_BYTES_10MS);
-                    byte[] outputFrame = new byte[FRAME_BYTES_10MS];
-                    state.apm.processStream(micSubFrame, state.streamConfig, state.streamConfig, outputFrame);
-                    System.arraycopy(outputFrame, 0, aecOutput, outOffset, FRAME_BYTES_10MS);
+                if (state.disposed) return;
+                while (offset + FRAME_BYTES_10MS <= length) {
+                    System.arraycopy(micPcm, offset, state.micInFrame, 0, FRAME_BYTES_10MS);
+                    state.apm.processStream(state.micInFrame, state.streamConfig, state.streamConfig, state.micOutFrame);
+                    System.arraycopy(state.micOutFrame, 0, micPcm, offset, FRAME_BYTES_10MS);
                     offset += FRAME_BYTES_10MS;
-                    outOffset += FRAME_BYTES_10MS;
                 }
             }
-
-            // 处理不足 10ms 的尾部数据
-            if (offset < totalBytes) {
-                System.arraycopy(micPcm, offset, aecOutput, outOffset, totalBytes - offset);
-            }
-
-            return aecOutput;
         } catch (Exception e) {
             log.warn("AEC process 失败 - SessionId: {}: {}", sessionId, e.getMessage());
-            return micPcm;
         }
     }
 
@@ -182,19 +172,27 @@ public class AecService {
     }
 
     /**
-     * 每会话的 AEC 状态。
+     * 每会话的 AEC 状态，会话存续期间长期复用。
+     * 子帧输入/输出缓冲预分配，只在 apmLock 内使用。
      */
     private class AecState {
         final AudioProcessing apm;
         final OpusProcessor refDecoder;
         final AudioProcessingStreamConfig streamConfig;
+        final AudioProcessingConfig config;
+        // 参考帧解码缓冲，按单包最长 120ms 预分配
+        final short[] refPcm = new short[AudioUtils.FRAME_SIZE * 2];
+        final byte[] refInFrame = new byte[FRAME_BYTES_10MS];
+        final byte[] refOutFrame = new byte[FRAME_BYTES_10MS];
+        final byte[] micInFrame = new byte[FRAME_BYTES_10MS];
+        final byte[] micOutFrame = new byte[FRAME_BYTES_10MS];
         final Object apmLock = new Object();  // feedReference 和 process 共用同一把锁，保证 APM 调用线程安全
         volatile boolean disposed = false;     // dispose 标志，在 apmLock 内设置和检查
 
         AecState() {
             apm = new AudioProcessing();
 
-            AudioProcessingConfig config = new AudioProcessingConfig();
+            config = new AudioProcessingConfig();
             config.echoCanceller.enabled = true;
             config.echoCanceller.enforceHighPassFiltering = false;
 
@@ -224,6 +222,18 @@ public class AecService {
             streamConfig = new AudioProcessingStreamConfig(16000, 1);
         }
 
+        /**
+         * 软重置：先关闭再开启回声消除，APM 会重新创建回声消除器，
+         * 清除已收敛的滤波器、延迟估计与参考信号缓冲；其余处理模块保持不变
+         */
+        void softReset() {
+            config.echoCanceller.enabled = false;
+            apm.applyConfig(config);
+            config.echoCanceller.enabled = true;
+            apm.applyConfig(config);
+            apm.setStreamDelayMs(streamDelayMs);
+        }
+
         void dispose() {
             disposed = true;
             try {
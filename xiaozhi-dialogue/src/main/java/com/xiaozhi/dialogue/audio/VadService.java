@@ -4,7 +4,6 @@ import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.communication.common.SessionManager;
 import com.xiaozhi.common.model.bo.DeviceBO;
 import com.xiaozhi.common.model.bo.RoleBO;
-import com.xiaozhi.dialogue.audio.vad.VadModel.InferenceResult;
 import com.xiaozhi.dialogue.audio.vad.SileroVadModel;
 import com.xiaozhi.role.service.RoleService;
 import com.xiaozhi.utils.AudioUtils;
@@ -19,10 +18,13 @@ import com.xiaozhi.event.TtsPlaybackCompletedEvent;
 import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 
+import io.github.jaredmdobson.concentus.OpusException;
+
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import lombok.extern.slf4j.Slf4j;
 /**
@@ -32,7 +34,7 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class VadService {
     private final ConcurrentHashMap<String, VadState> states = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
 
     @Value("${vad.prebuffer.ms:500}")
     private int preBufferMs;
@@ -45,6 +47,13 @@ public class VadService {
     private static final int VAD_CONTEXT_SIZE = SileroVadModel.CONTEXT_SIZE;
     // 连续静音帧数阈值，超过时重置GRU状态，防止长时间静音后GRU深度收敛（30帧 ≈ 约2秒）
     private static final int SILENCE_RESET_FRAMES = 30;
+    // 语音概率滑动窗口大小
+    private static final int PROB_WINDOW_SIZE = 10;
+    // 一帧 60ms PCM 的字节数
+    private static final int FRAME_BYTES = AudioUtils.OPUS_FRAME_DURATION_MS * 32;
+    // 语音 PCM 缓冲初始容量（约 4 秒），超过保留上限（约 30 秒）的缓冲在会话重置时回收
+    private static final int SPEECH_PCM_INITIAL_CAPACITY = FRAME_BYTES * 64;
+    private static final int SPEECH_PCM_RETAIN_CAPACITY = 30_000 * 32;
 
     @Autowired
     private SileroVadModel vadModel;
@@ -65,7 +74,40 @@ public class VadService {
         locks.clear();
     }
 
+    /**
+     * VAD 阈值配置快照（不可变）。
+     * 每个会话首次处理音频时从角色加载一次，此后逐帧复用，仅在角色变更/角色属性变更时失效重载，
+     * 避免每 60ms 一帧都经 CacheHelper 访问 Redis。
+     */
+    public record VadConfig(float speechThreshold, float silenceThreshold, float energyThreshold, int silenceTimeoutMs) {
+
+        public static final VadConfig DEFAULT = new VadConfig(0.4f, 0.3f, 0.001f, 800);
+
+        public static VadConfig from(RoleBO role) {
+            if (role == null) {
+                return DEFAULT;
+            }
+            return new VadConfig(
+                    Optional.ofNullable(role.getVadSpeechTh()).orElse(DEFAULT.speechThreshold),
+                    Optional.ofNullable(role.getVadSilenceTh()).orElse(DEFAULT.silenceThreshold),
+                    Optional.ofNullable(role.getVadEnergyTh()).orElse(DEFAULT.energyThreshold),
+                    Optional.ofNullable(role.getVadSilenceMs()).orElse(DEFAULT.silenceTimeoutMs));
+        }
+    }
+
+    /**
+     * 会话 VAD 状态。
+     * 所有缓冲区在创建时预分配为基本类型数组并跨帧复用，稳态逐帧处理不产生新的堆分配：
+     * - 预缓冲：固定容量的字节环形缓冲
+     * - 概率窗口：固定大小的 float 环形数组
+     * - 模型输入/隐状态：跨帧复用，上下文原地滚动
+     * - 语音 PCM：按需倍增的字节缓冲，记录每帧长度以便 SPEECH_END 时裁剪尾部静音
+     * - 解码帧：Opus 解码与 AEC 原地写入同一缓冲，只有交给 STT 的帧才复制出去
+     */
     private class VadState {
+        // 阈值配置快照，config 为 null 表示尚未加载或已失效；每次失效递增版本
+        private final AtomicReference<ConfigSlot> config = new AtomicReference<>(new ConfigSlot(0, null));
+
         private boolean speaking = false;
         private long silenceTime = 0;
 
@@ -75,23 +117,34 @@ public class VadService {
         // 静音期间累计帧数，用于SPEECH_END时按比例移除静音帧
         private int silenceFrameCount = 0;
 
-        private final List<Float> originalProbs = new ArrayList<>();
-        private float[][][] sileroState = new float[2][1][128];
-        // 跨帧样本拼接缓冲
-        private float[] sampleCarryOver = new float[0];
-        private float[] vadContext = new float[VAD_CONTEXT_SIZE];
+        private final float[] probWindow = new float[PROB_WINDOW_SIZE];
+        private int probCount = 0;
+        private int probPos = 0;
+
+        private final float[] sileroState = new float[SileroVadModel.STATE_SIZE];
+        // 模型输入：[0, VAD_CONTEXT_SIZE) 为上一窗口尾部上下文，其后为当前窗口样本，inputFill 为已填充的样本数
+        private final float[] modelInput = new float[VAD_CONTEXT_SIZE + VAD_SAMPLE_SIZE];
+        private int inputFill = 0;
 
-        private final LinkedList<byte[]> preBuffer = new LinkedList<>();
+        private final byte[] preBuffer;
+        private int preBufferStart = 0;
         private int preBufferSize = 0;
-        private final int maxPreBufferSize;
 
-        private final List<byte[]> pcmData = new ArrayList<>();
+        private byte[] speechPcm = new byte[SPEECH_PCM_INITIAL_CAPACITY];
+        private int speechPcmSize = 0;
+        private int[] frameLengths = new int[SPEECH_PCM_INITIAL_CAPACITY / FRAME_BYTES];
+        private int frameCount = 0;
 
         // 每个 session 复用同一个 OpusProcessor，避免每帧重新创建 native 编解码器
         private final OpusProcessor opusProcessor = new OpusProcessor();
 
+        // 当前帧解码后的 PCM，按单包最长时长预分配，frameSize 为有效字节数
+        private final byte[] frame = new byte[OpusProcessor.MAX_DECODE_SAMPLES * 2];
+        private final ByteBuffer frameBuffer = ByteBuffer.wrap(frame);
+        private int frameSize = 0;
+
         public VadState() {
-            this.maxPreBufferSize = preBufferMs * 32; // 16kHz, 16bit, mono = 32 bytes/ms
+            this.preBuffer = new byte[preBufferMs * 32]; // 16kHz, 16bit, mono = 32 bytes/ms
         }
 
         public boolean isSpeaking() { return speaking; }
@@ -135,38 +188,103 @@ public class VadService {
         public void resetSilenceFrameCount() { silenceFrameCount = 0; }
 
         public void addOriginalProb(float prob) {
-            originalProbs.add(prob);
-            if (originalProbs.size() > 10) originalProbs.remove(0);
+            probWindow[probPos] = prob;
+            probPos = (probPos + 1) % PROB_WINDOW_SIZE;
+            if (probCount < PROB_WINDOW_SIZE) probCount++;
+        }
+
+        /**
+         * 重置模型隐状态、上下文与概率窗口，缓冲区原地清零
+         */
+        public void resetModelState() {
+            Arrays.fill(sileroState, 0f);
+            Arrays.fill(modelInput, 0f);
+            inputFill = 0;
+            probCount = 0;
+            probPos = 0;
+        }
+
+        /**
+         * 解码一个 Opus 包到复用的帧缓冲
+         *
+         * @return 有效字节数
+         */
+        int decode(byte[] opusData) throws OpusException {
+            frameBuffer.clear();
+            frameSize = opusProcessor.decode(opusData, frameBuffer) * 2;
+            return frameSize;
+        }
+
+        /**
+         * 当前帧的独立副本，交给 STT 等下游持有
+         */
+        byte[] copyFrame() {
+            return Arrays.copyOf(frame, frameSize);
         }
 
-        public void addToPreBuffer(byte[] data) {
-            if (speaking) return;
-            preBuffer.add(data.clone());
-            preBufferSize += data.length;
-            while (preBufferSize > maxPreBufferSize && !preBuffer.isEmpty()) {
-                byte[] removed = preBuffer.removeFirst();
-                preBufferSize -= removed.length;
+        public void addToPreBuffer(byte[] data, int dataLength) {
+            if (speaking || preBuffer.length == 0) return;
+            int capacity = preBuffer.length;
+            // 超出容量时只保留最新的部分
+            int offset = Math.max(0, dataLength - capacity);
+            int length = dataLength - offset;
+            int writePos = (preBufferStart + preBufferSize) % capacity;
+            int firstPart = Math.min(length, capacity - writePos);
+            System.arraycopy(data, offset, preBuffer, writePos, firstPart);
+            System.arraycopy(data, offset + firstPart, preBuffer, 0, length - firstPart);
+            int overflow = preBufferSize + length - capacity;
+            if (overflow > 0) {
+                preBufferStart = (preBufferStart + overflow) % capacity;
+                preBufferSize = capacity;
+            } else {
+                preBufferSize += length;
             }
         }
 
         public byte[] drainPreBuffer() {
-            if (preBuffer.isEmpty()) return new byte[0];
+            if (preBufferSize == 0) return new byte[0];
             byte[] result = new byte[preBufferSize];
-            int offset = 0;
-            for (byte[] chunk : preBuffer) {
-                System.arraycopy(chunk, 0, result, offset, chunk.length);
-                offset += chunk.length;
-            }
-            preBuffer.clear();
+            int firstPart = Math.min(preBufferSize, preBuffer.length - preBufferStart);
+            System.arraycopy(preBuffer, preBufferStart, result, 0, firstPart);
+            System.arraycopy(preBuffer, 0, result, firstPart, preBufferSize - firstPart);
+            preBufferStart = 0;
             preBufferSize = 0;
             return result;
         }
 
-        public void addPcm(byte[] pcm) {
-            if (pcm != null && pcm.length > 0) pcmData.add(pcm.clone());
+        public void addPcm(byte[] pcm, int length) {
+            if (pcm == null || length == 0) return;
+            if (speechPcmSize + length > speechPcm.length) {
+                speechPcm = Arrays.copyOf(speechPcm, Math.max(speechPcm.length * 2, speechPcmSize + length));
+            }
+            if (frameCount == frameLengths.length) {
+                frameLengths = Arrays.copyOf(frameLengths, frameLengths.length * 2);
+            }
+            System.arraycopy(pcm, 0, speechPcm, speechPcmSize, length);
+            speechPcmSize += length;
+            frameLengths[frameCount++] = length;
+        }
+
+        /**
+         * 移除最后 count 帧 PCM
+         */
+        public void removeLastPcm(int count) {
+            for (int i = 0; i < count && frameCount > 0; i++) {
+                speechPcmSize -= frameLengths[--frameCount];
+            }
         }
 
-        public List<byte[]> getPcmData() { return new ArrayList<>(pcmData); }
+        public void clearPcm() {
+            speechPcmSize = 0;
+            frameCount = 0;
+        }
+
+        public List<byte[]> getPcmData() {
+            if (speechPcmSize == 0) return new ArrayList<>();
+            List<byte[]> result = new ArrayList<>(1);
+            result.add(Arrays.copyOf(speechPcm, speechPcmSize));
+            return result;
+        }
 
         public void reset() {
             speaking = false;
@@ -174,19 +292,22 @@ public class VadService {
             consecutiveSilenceFrames = 0;
             consecutiveSpeechFrames = 0;
             silenceFrameCount = 0;
-            originalProbs.clear();
-            sileroState = new float[2][1][128];
-            sampleCarryOver = new float[0];
-            vadContext = new float[VAD_CONTEXT_SIZE];
-            preBuffer.clear();
+            resetModelState();
+            preBufferStart = 0;
             preBufferSize = 0;
-            pcmData.clear();
+            clearPcm();
+            // 超长语音撑大的缓冲在重置时回收，避免长期占用
+            if (speechPcm.length > SPEECH_PCM_RETAIN_CAPACITY) {
+                speechPcm = new byte[SPEECH_PCM_INITIAL_CAPACITY];
+                frameLengths = new int[SPEECH_PCM_INITIAL_CAPACITY / FRAME_BYTES];
+            }
         }
     }
 
     public void initSession(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
+        ReentrantLock lock = getLock(sessionId);
+        lock.lock();
+        try {
             VadState state = states.get(sessionId);
             if (state == null) {
                 states.put(sessionId, new VadState());
@@ -194,186 +315,226 @@ public class VadService {
                 state.reset();
             }
             log.info("VAD会话已初始化: {}", sessionId);
+        } finally {
+            lock.unlock();
         }
     }
 
     public boolean isSessionInitialized(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
+        ReentrantLock lock = getLock(sessionId);
+        lock.lock();
+        try {
             return states.containsKey(sessionId);
+        } finally {
+            lock.unlock();
         }
     }
 
-    private Object getLock(String sessionId) {
-        return locks.computeIfAbsent(sessionId, k -> new Object());
+    /**
+     * 会话锁使用 ReentrantLock 而非 synchronized：VAD 推理在批量推理线程上执行，
+     * 虚拟线程持锁等待结果时不会钉住载体线程
+     */
+    private ReentrantLock getLock(String sessionId) {
+        return locks.computeIfAbsent(sessionId, k -> new ReentrantLock());
     }
 
     public VadResult processAudio(String sessionId, byte[] opusData) {
         if (!isSessionInitialized(sessionId)) return null;
 
-        Object lock = getLock(sessionId);
+        ReentrantLock lock = getLock(sessionId);
 
-        ChatSession chatSession = sessionManager.getSession(sessionId);
-        DeviceBO device = chatSession != null ? chatSession.getDevice() : null;
-        float speechThreshold = 0.4f;
-        float silenceThreshold = 0.3f;
-        float energyThreshold = 0.001f;
-        int silenceTimeoutMs = 800;
-
-        if (device != null && device.getRoleId() != null) {
-            RoleBO role = roleService.getBO(device.getRoleId());
-            if (role != null) {
-                speechThreshold = Optional.ofNullable(role.getVadSpeechTh()).orElse(speechThreshold);
-                silenceThreshold = Optional.ofNullable(role.getVadSilenceTh()).orElse(silenceThreshold);
-                energyThreshold = Optional.ofNullable(role.getVadEnergyTh()).orElse(energyThreshold);
-                silenceTimeoutMs = Optional.ofNullable(role.getVadSilenceMs()).orElse(silenceTimeoutMs);
-            }
-        }
-
-        synchronized (lock) {
-            try {
-                VadState state = states.computeIfAbsent(sessionId, k -> new VadState());
+        VadConfig config = getConfig(sessionId);
+        float speechThreshold = config.speechThreshold();
+        float silenceThreshold = config.silenceThreshold();
+        float energyThreshold = config.energyThreshold();
+        int silenceTimeoutMs = config.silenceTimeoutMs();
 
-                byte[] pcmData;
-                try {
-                    pcmData = state.opusProcessor.opusToPcm(opusData);
-                    if (pcmData == null || pcmData.length == 0) {
-                        return new VadResult(VadStatus.NO_SPEECH, null);
-                    }
-                } catch (Exception e) {
-                    log.error("Opus解码失败: {}", e.getMessage());
-                    return new VadResult(VadStatus.ERROR, null);
-                }
+        lock.lock();
+        try {
+            VadState state = states.computeIfAbsent(sessionId, k -> new VadState());
 
-                // AEC 处理：消除麦克风中的扬声器回声
-                if (aecService != null && aecService.isEnabled()) {
-                    pcmData = aecService.process(sessionId, pcmData);
+            // 解码、AEC、能量与推理都在会话复用的帧缓冲上进行，静音帧不产生堆分配
+            byte[] pcmData = state.frame;
+            int pcmLength;
+            try {
+                pcmLength = opusData == null || opusData.length == 0 ? 0 : state.decode(opusData);
+                if (pcmLength == 0) {
+                    return VadResult.NO_SPEECH_RESULT;
                 }
+            } catch (Exception e) {
+                log.error("Opus解码失败: {}", e.getMessage());
+                return VadResult.ERROR_RESULT;
+            }
 
-                float[] samples = bytesToFloats(pcmData);
-                float energy = calcEnergy(samples);
-
-                float speechProb = Math.min(1.0f, detectSpeech(state, samples));
-
-                state.addOriginalProb(speechProb);
-                state.addToPreBuffer(pcmData);
+            // AEC 处理：消除麦克风中的扬声器回声
+            if (aecService != null && aecService.isEnabled()) {
+                aecService.process(sessionId, pcmData, pcmLength);
+            }
 
-                boolean hasEnergy = energy > energyThreshold;
+            float energy = calcEnergy(pcmData, pcmLength);
 
-                // 播放和静听使用完全相同的判断逻辑
-                boolean isSpeech = speechProb > speechThreshold && hasEnergy;
-                boolean isSilence = speechProb < silenceThreshold || !hasEnergy;
+            float speechProb = Math.min(1.0f, detectSpeech(state, pcmData, pcmLength));
 
-                state.updateSilence(isSilence);
+            state.addOriginalProb(speechProb);
+            state.addToPreBuffer(pcmData, pcmLength);
 
-                // 连续静音超过阈值时自动重置GRU状态，防止GRU深度收敛，导致在长时间静音状态下VAD无法被拉起
-                if (state.getConsecutiveSilenceFrames() >= SILENCE_RESET_FRAMES) {
-                    state.sileroState = new float[2][1][128];
-                    state.sampleCarryOver = new float[0];
-                    state.vadContext = new float[VAD_CONTEXT_SIZE];
-                    state.originalProbs.clear();
-                    state.consecutiveSilenceFrames = 0;
-                }
+            boolean hasEnergy = energy > energyThreshold;
 
-                boolean speechStartAllowed = state.getConsecutiveSpeechFrames() >= 2;
+            // 播放和静听使用完全相同的判断逻辑
+            boolean isSpeech = speechProb > speechThreshold && hasEnergy;
+            boolean isSilence = speechProb < silenceThreshold || !hasEnergy;
 
-                // log.debug("VAD[{}] prob:{} nrg:{} sil:{}ms({}) {}{}",
-                //         sessionId,
-                //         String.format("%.3f", speechProb),
-                //         String.format("%.4f", energy),
-                //         state.getSilenceDuration(), state.getConsecutiveSilenceFrames(),
-                //         isSilence ? "sil" : "SPK",
-                //         hasEnergy ? "+E" : "");
+            state.updateSilence(isSilence);
 
-                if (!state.isSpeaking() && isSpeech && speechStartAllowed) {
-                    state.pcmData.clear();
-                    state.setSpeaking(true);
-                    state.resetSilenceFrameCount();
+            // 连续静音超过阈值时自动重置GRU状态，防止GRU深度收敛，导致在长时间静音状态下VAD无法被拉起
+            if (state.getConsecutiveSilenceFrames() >= SILENCE_RESET_FRAMES) {
+                state.resetModelState();
+                state.consecutiveSilenceFrames = 0;
+            }
 
-                    log.debug("检测到语音开始 - SessionId: {}, 概率: {}, 能量: {}, 阈值: {}",
-                            sessionId, String.format("%.4f", speechProb),
-                            String.format("%.6f", energy), String.format("%.4f", speechThreshold));
-
-                    byte[] preBufferData = state.drainPreBuffer();
-                    byte[] result = preBufferData.length > 0 ? preBufferData : pcmData;
-                    state.addPcm(result);
-                    return new VadResult(VadStatus.SPEECH_START, result);
-
-                } else if (state.isSpeaking() && isSilence) {
-                    int silenceDuration = state.getSilenceDuration();
-                    if (silenceDuration > silenceTimeoutMs) {
-                        state.setSpeaking(false);
-
-                        int silenceToRemoveMs = silenceDuration - tailKeepMs;
-                        if (silenceToRemoveMs > 0) {
-                            int totalSilenceFrames = state.getSilenceFrameCount();
-                            if (totalSilenceFrames > 0) {
-                                int framesToRemove = Math.min(
-                                    (int) Math.ceil((double) totalSilenceFrames * silenceToRemoveMs / silenceDuration),
-                                    totalSilenceFrames
-                                );
-                                for (int i = 0; i < framesToRemove && !state.pcmData.isEmpty(); i++) {
-                                    state.pcmData.remove(state.pcmData.size() - 1);
-                                }
-                            }
+            boolean speechStartAllowed = state.getConsecutiveSpeechFrames() >= 2;
+
+            // log.debug("VAD[{}] prob:{} nrg:{} sil:{}ms({}) {}{}",
+            //         sessionId,
+            //         String.format("%.3f", speechProb),
+            //         String.format("%.4f", energy),
+            //         state.getSilenceDuration(), state.getConsecutiveSilenceFrames(),
+            //         isSilence ? "sil" : "SPK",
+            //         hasEnergy ? "+E" : "");
+
+            if (!state.isSpeaking() && isSpeech && speechStartAllowed) {
+                state.clearPcm();
+                state.setSpeaking(true);
+                state.resetSilenceFrameCount();
+
+                log.debug("检测到语音开始 - SessionId: {}, 概率: {}, 能量: {}, 阈值: {}",
+                        sessionId, String.format("%.4f", speechProb),
+                        String.format("%.6f", energy), String.format("%.4f", speechThreshold));
+
+                byte[] preBufferData = state.drainPreBuffer();
+                byte[] result = preBufferData.length > 0 ? preBufferData : state.copyFrame();
+                state.addPcm(result, result.length);
+                return new VadResult(VadStatus.SPEECH_START, result);
+
+            } else if (state.isSpeaking() && isSilence) {
+                int silenceDuration = state.getSilenceDuration();
+                if (silenceDuration > silenceTimeoutMs) {
+                    state.setSpeaking(false);
+
+                    int silenceToRemoveMs = silenceDuration - tailKeepMs;
+                    if (silenceToRemoveMs > 0) {
+                        int totalSilenceFrames = state.getSilenceFrameCount();
+                        if (totalSilenceFrames > 0) {
+                            int framesToRemove = Math.min(
+                                (int) Math.ceil((double) totalSilenceFrames * silenceToRemoveMs / silenceDuration),
+                                totalSilenceFrames
+                            );
+                            state.removeLastPcm(framesToRemove);
                         }
-                        log.debug("语音结束: {}, 静音: {}ms", sessionId, silenceDuration);
-
-                        state.resetSilenceFrameCount();
-
-                        return new VadResult(VadStatus.SPEECH_END, pcmData);
-                    } else {
-                        state.addPcm(pcmData);
-                        state.incrementSilenceFrameCount();
-                        return new VadResult(VadStatus.SPEECH_CONTINUE, pcmData);
                     }
-                } else if (state.isSpeaking()) {
-                    state.addPcm(pcmData);
+                    log.debug("语音结束: {}, 静音: {}ms", sessionId, silenceDuration);
+
                     state.resetSilenceFrameCount();
-                    return new VadResult(VadStatus.SPEECH_CONTINUE, pcmData);
+
+                    return new VadResult(VadStatus.SPEECH_END, state.copyFrame());
                 } else {
-                    return new VadResult(VadStatus.NO_SPEECH, null);
+                    state.addPcm(pcmData, pcmLength);
+                    state.incrementSilenceFrameCount();
+                    return new VadResult(VadStatus.SPEECH_CONTINUE, state.copyFrame());
                 }
-            } catch (Exception e) {
-                log.error("处理音频失败: {}, 错误: {}", sessionId, e.getMessage(), e);
-                return new VadResult(VadStatus.ERROR, null);
+            } else if (state.isSpeaking()) {
+                state.addPcm(pcmData, pcmLength);
+                state.resetSilenceFrameCount();
+                return new VadResult(VadStatus.SPEECH_CONTINUE, state.copyFrame());
+            } else {
+                return VadResult.NO_SPEECH_RESULT;
             }
+        } catch (Exception e) {
+            log.error("处理音频失败: {}, 错误: {}", sessionId, e.getMessage(), e);
+            return VadResult.ERROR_RESULT;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 会话 VAD 配置快照及其版本
+     */
+    private record ConfigSlot(long version, VadConfig config) {
+    }
+
+    /**
+     * 获取会话的 VAD 配置快照，未加载时从角色读取一次并保存到 VadState。
+     * 角色查询放在会话锁外，避免 Redis 访问阻塞同一会话的音频处理。
+     * 加载期间若配置被 {@link #refreshConfig(String)} 失效，CAS 失败，不保存加载结果，下一帧重新加载。
+     */
+    private VadConfig getConfig(String sessionId) {
+        VadState state = states.get(sessionId);
+        ConfigSlot slot = state != null ? state.config.get() : null;
+        if (slot != null && slot.config() != null) {
+            return slot.config();
+        }
+        VadConfig config = loadConfig(sessionId);
+        if (slot != null) {
+            state.config.compareAndSet(slot, new ConfigSlot(slot.version(), config));
+        }
+        return config;
+    }
+
+    private VadConfig loadConfig(String sessionId) {
+        ChatSession chatSession = sessionManager.getSession(sessionId);
+        DeviceBO device = chatSession != null ? chatSession.getDevice() : null;
+        if (device == null || device.getRoleId() == null) {
+            return VadConfig.DEFAULT;
         }
+        return VadConfig.from(roleService.getBO(device.getRoleId()));
     }
 
     /**
-     * 将上一帧剩余样本（sampleCarryOver）与本帧拼接，按VAD_SAMPLE_SIZE逐块推理。
+     * 使会话的 VAD 配置快照失效，下一帧音频到达时按当前角色重新加载。
+     * 设备切换角色时调用。
+     */
+    public void refreshConfig(String sessionId) {
+        VadState state = states.get(sessionId);
+        if (state != null) {
+            state.config.updateAndGet(slot -> new ConfigSlot(slot.version() + 1, null));
+        }
+    }
+
+    /**
+     * 角色属性变更时，使所有使用该角色的会话的 VAD 配置快照失效
+     */
+    public void refreshConfigForRole(Integer roleId) {
+        if (roleId == null) {
+            return;
+        }
+        for (ChatSession session : sessionManager.getSessionsByRoleId(roleId)) {
+            refreshConfig(session.getSessionId());
+        }
+    }
+
+    /**
+     * 将本帧样本逐个写入模型输入窗口，窗口填满即推理一次，未满的部分留到下一帧继续填充。
      * 始终使用有状态推理，通过连续静音定期重置GRU防止深度收敛。
      */
-    private float detectSpeech(VadState state, float[] samples) {
-        if (vadModel == null || samples == null || samples.length == 0) {
+    private float detectSpeech(VadState state, byte[] pcmData, int pcmLength) {
+        if (vadModel == null || pcmData == null || pcmLength < 2) {
             log.warn("VAD模型为空或样本为空");
             return 0.0f;
         }
         try {
-            float[] all;
-            if (state.sampleCarryOver.length > 0) {
-                all = new float[state.sampleCarryOver.length + samples.length];
-                System.arraycopy(state.sampleCarryOver, 0, all, 0, state.sampleCarryOver.length);
-                System.arraycopy(samples, 0, all, state.sampleCarryOver.length, samples.length);
-            } else {
-                all = samples;
-            }
-
+            float[] input = state.modelInput;
             float maxProb = 0.0f;
-            int offset = 0;
-            while (offset + VAD_SAMPLE_SIZE <= all.length) {
-                float[] chunk = Arrays.copyOfRange(all, offset, offset + VAD_SAMPLE_SIZE);
-                InferenceResult r = vadModel.infer(chunk, state.vadContext, state.sileroState);
-                state.vadContext = Arrays.copyOfRange(chunk, chunk.length - VAD_CONTEXT_SIZE, chunk.length);
-                state.sileroState = r.state;
-                maxProb = Math.max(maxProb, r.probability);
-                offset += VAD_SAMPLE_SIZE;
+            int sampleCount = pcmLength / 2;
+            for (int i = 0; i < sampleCount; i++) {
+                input[VAD_CONTEXT_SIZE + state.inputFill++] = toSample(pcmData, i);
+                if (state.inputFill == VAD_SAMPLE_SIZE) {
+                    maxProb = Math.max(maxProb, vadModel.infer(input, state.sileroState));
+                    // 当前窗口尾部作为下一窗口的上下文
+                    System.arraycopy(input, input.length - VAD_CONTEXT_SIZE, input, 0, VAD_CONTEXT_SIZE);
+                    state.inputFill = 0;
+                }
             }
-
-            int remaining = all.length - offset;
-            state.sampleCarryOver = remaining > 0 ? Arrays.copyOfRange(all, offset, all.length) : new float[0];
-
             return maxProb;
         } catch (Exception e) {
             log.error("VAD推断失败: {}", e.getMessage());
@@ -381,20 +542,20 @@ public class VadService {
         }
     }
 
-    private float[] bytesToFloats(byte[] pcmData) {
-        int sampleCount = pcmData.length / 2;
-        float[] samples = new float[sampleCount];
-        ByteBuffer buffer = ByteBuffer.wrap(pcmData).order(ByteOrder.LITTLE_ENDIAN);
-        for (int i = 0; i < sampleCount; i++) {
-            samples[i] = buffer.getShort() / 32768.0f;
-        }
-        return samples;
+    /**
+     * 读取第 index 个 16bit 小端样本并归一化到 [-1, 1)
+     */
+    private static float toSample(byte[] pcmData, int index) {
+        int pos = index * 2;
+        return (short) ((pcmData[pos] & 0xff) | (pcmData[pos + 1] << 8)) / 32768.0f;
     }
 
-    private float calcEnergy(float[] samples) {
+    private float calcEnergy(byte[] pcmData, int pcmLength) {
+        int sampleCount = pcmLength / 2;
+        if (sampleCount == 0) return 0;
         float sum = 0;
-        for (float sample : samples) sum += Math.abs(sample);
-        return sum / samples.length;
+        for (int i = 0; i < sampleCount; i++) sum += Math.abs(toSample(pcmData, i));
+        return sum / sampleCount;
     }
 
     /**
@@ -406,33 +567,39 @@ public class VadService {
     }
 
     public void resetVadModelState(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
+        ReentrantLock lock = getLock(sessionId);
+        lock.lock();
+        try {
             VadState state = states.get(sessionId);
             if (state != null) {
-                state.sileroState = new float[2][1][128];
-                state.sampleCarryOver = new float[0];
-                state.vadContext = new float[VAD_CONTEXT_SIZE];
-                state.originalProbs.clear();
+                state.resetModelState();
             }
+        } finally {
+            lock.unlock();
         }
     }
 
     public void resetSession(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
+        ReentrantLock lock = getLock(sessionId);
+        lock.lock();
+        try {
             VadState state = states.get(sessionId);
             if (state != null) state.reset();
             states.remove(sessionId);
             locks.remove(sessionId);
+        } finally {
+            lock.unlock();
         }
     }
 
     public List<byte[]> getPcmData(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
+        ReentrantLock lock = getLock(sessionId);
+        lock.lock();
+        try {
             VadState state = states.get(sessionId);
             return state != null ? state.getPcmData() : new ArrayList<>();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -441,6 +608,10 @@ public class VadService {
     }
 
     public static class VadResult {
+        // 不携带数据的结果不可变，逐帧复用
+        static final VadResult NO_SPEECH_RESULT = new VadResult(VadStatus.NO_SPEECH, null);
+        static final VadResult ERROR_RESULT = new VadResult(VadStatus.ERROR, null);
+
         private final VadStatus status;
         private final byte[] data;
 
@@ -13,24 +13,81 @@ import com.xiaozhi.utils.AudioUtils;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import lombok.extern.slf4j.Slf4j;
 /**
  * Silero VAD模型实现
+ *
+ * 推理模式：
+ * - 批量（默认）：各会话提交的 512 样本窗口进入共享队列，由专用推理线程在批处理窗口内收集后合并为一次 ONNX 调用，
+ *   各会话的 GRU 隐状态按批次维度堆叠，推理完成后分发回各会话。每个推理线程独占一个 OrtSession。
+ * - 内联：xiaozhi.vad.batch.enabled=false 时在调用线程上逐个推理
  */
 @Slf4j
 @Component
 public class SileroVadModel implements VadModel {
     public static final int CONTEXT_SIZE = 64;
+    /**
+     * 隐状态展平后的长度，对应形状 [2][1][128]
+     */
+    public static final int STATE_SIZE = 2 * 128;
+    private static final long[] STATE_SHAPE = { 2, 1, 128 };
 
     @Value("${xiaozhi.vad.model.path:models/silero_vad.onnx}")
     private String modelPath;
 
+    @Value("${xiaozhi.vad.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    /**
+     * 单次批量推理的最大窗口数
+     */
+    @Value("${xiaozhi.vad.batch.max-size:32}")
+    private int batchMaxSize;
+
+    /**
+     * 批处理收集窗口（微秒）：取到第一个请求后最多再等待该时长凑批
+     */
+    @Value("${xiaozhi.vad.batch.window-us:2000}")
+    private long batchWindowUs;
+
+    /**
+     * OrtSession 池大小，即推理线程数
+     */
+    @Value("${xiaozhi.vad.batch.session-pool-size:2}")
+    private int sessionPoolSize;
+
+    /**
+     * 批量模式下等待推理结果的最长时间（毫秒），超时按静音处理
+     */
+    @Value("${xiaozhi.vad.batch.timeout-ms:1000}")
+    private long inferTimeoutMs;
+
     private OrtEnvironment env;
     private OrtSession session;
+    private final List<OrtSession> sessionPool = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final BlockingQueue<InferenceRequest> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private volatile boolean closed;
     private final int windowSize = AudioUtils.BUFFER_SIZE;
     private final int effectiveWindowSize = windowSize + CONTEXT_SIZE;
+    private final long[] inputShape = { 1, effectiveWindowSize };
+    // 采样率张量内容固定，所有推理复用同一个
+    private OnnxTensor srTensor;
 
     @PostConstruct
     @Override
@@ -44,9 +101,26 @@ public class SileroVadModel implements VadModel {
                 opts.addCPU(true);
 
                 session = env.createSession(modelPath, opts);
+                if (batchEnabled) {
+                    sessionPool.add(session);
+                    for (int i = 1; i < sessionPoolSize; i++) {
+                        sessionPool.add(env.createSession(modelPath, opts));
+                    }
+                }
             }
+            srTensor = OnnxTensor.createTensor(env, LongBuffer.wrap(new long[] { AudioUtils.SAMPLE_RATE }), new long[] { 1 });
 
-            log.info("Silero VAD模型初始化成功, windowSize={}, contextSize={}, effectiveWindowSize={}", windowSize, CONTEXT_SIZE, effectiveWindowSize);
+            if (batchEnabled) {
+                running = true;
+                for (int i = 0; i < sessionPool.size(); i++) {
+                    OrtSession pooled = sessionPool.get(i);
+                    workers.add(Thread.ofPlatform().name("vad-inference-" + i).daemon(true)
+                            .start(() -> runWorker(pooled)));
+                }
+            }
+
+            log.info("Silero VAD模型初始化成功, windowSize={}, contextSize={}, effectiveWindowSize={}, 批量推理: {}, batchMaxSize={}, sessionPool={}",
+                    windowSize, CONTEXT_SIZE, effectiveWindowSize, batchEnabled, batchMaxSize, sessionPool.size());
         } catch (UnsatisfiedLinkError e) {
             log.error("ONNX Runtime native libraries加载失败，请安装Visual C++ Redistributable: {}", e.getMessage());
             log.error("下载地址: https://aka.ms/vs/17/release/vc_redist.x64.exe");
@@ -74,7 +148,6 @@ public class SileroVadModel implements VadModel {
 
             OnnxTensor inputTensor = OnnxTensor.createTensor(env, x);
             OnnxTensor stateTensor = OnnxTensor.createTensor(env, localState);
-            OnnxTensor srTensor = OnnxTensor.createTensor(env, new long[] { AudioUtils.SAMPLE_RATE });
 
             try {
                 try (OrtSession.Result result = session.run(Map.of(
@@ -90,7 +163,6 @@ public class SileroVadModel implements VadModel {
             } finally {
                 inputTensor.close();
                 stateTensor.close();
-                srTensor.close();
             }
         } catch (OrtException e) {
             log.error("VAD模型推理失败", e);
@@ -98,6 +170,235 @@ public class SileroVadModel implements VadModel {
         }
     }
 
+    /**
+     * 原地推理：输入与隐状态均由调用方预分配并跨帧复用。
+     * 批量模式下提交到推理线程并等待结果，调用线程（虚拟线程）在等待期间让出载体线程。
+     * 调用方持有会话锁，等待最多 xiaozhi.vad.batch.timeout-ms；超时、失败或模型已关闭时返回 0（按静音处理）。
+     *
+     * @param input 长度为 CONTEXT_SIZE + 窗口大小，前 CONTEXT_SIZE 个为上一窗口尾部上下文
+     * @param state 展平的隐状态，长度为 {@link #STATE_SIZE}，推理后被更新为新状态
+     * @return 语音概率
+     */
+    public float infer(float[] input, float[] state) {
+        if (input.length != effectiveWindowSize || state.length != STATE_SIZE) {
+            throw new IllegalArgumentException("输入长度必须是" + effectiveWindowSize + "，状态长度必须是" + STATE_SIZE);
+        }
+        if (closed) {
+            return 0.0f;
+        }
+        if (!running) {
+            return inferInline(input, state);
+        }
+        InferenceRequest request = enqueue(input, state);
+        try {
+            return request.future().get(inferTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            request.abandon();
+            queue.remove(request);
+            log.warn("VAD推理等待超时({}ms)，按静音处理", inferTimeoutMs);
+            return 0.0f;
+        } catch (ExecutionException e) {
+            log.warn("VAD推理失败，按静音处理: {}", e.getCause().getMessage());
+            return 0.0f;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.abandon();
+            queue.remove(request);
+            return 0.0f;
+        }
+    }
+
+    /**
+     * 异步提交一个窗口。推理完成后 state 被更新为新状态，返回的 Future 以语音概率完成。
+     * 完成前调用方不得修改 input 与 state。模型已关闭时 Future 以 IllegalStateException 失败。
+     */
+    public CompletableFuture<Float> submit(float[] input, float[] state) {
+        return enqueue(input, state).future();
+    }
+
+    private InferenceRequest enqueue(float[] input, float[] state) {
+        InferenceRequest request = new InferenceRequest(input, state);
+        if (closed) {
+            request.future().completeExceptionally(new IllegalStateException("VAD模型已关闭"));
+            return request;
+        }
+        queue.add(request);
+        // 与 close() 并发时，入队可能晚于 close() 清空队列，由提交方自行撤回
+        if (closed && queue.remove(request)) {
+            request.future().completeExceptionally(new IllegalStateException("VAD模型已关闭"));
+        }
+        return request;
+    }
+
+    private float inferInline(float[] input, float[] state) {
+        try (OnnxTensor inputTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(input), inputShape);
+             OnnxTensor stateTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(state), STATE_SHAPE);
+             OrtSession.Result result = session.run(Map.of(
+                     "input", inputTensor,
+                     "sr", srTensor,
+                     "state", stateTensor
+             ))) {
+            float probability = ((OnnxTensor) result.get(0)).getFloatBuffer().get(0);
+            ((OnnxTensor) result.get(1)).getFloatBuffer().get(state);
+            return probability;
+        } catch (OrtException e) {
+            log.error("VAD模型推理失败", e);
+            return 0.0f;
+        }
+    }
+
+    /**
+     * 推理线程主循环：阻塞取第一个请求，在批处理窗口内继续收集，凑满或超时后执行一次批量推理
+     */
+    private void runWorker(OrtSession ortSession) {
+        List<InferenceRequest> batch = new ArrayList<>(batchMaxSize);
+        // 按最大批次预分配的直接缓冲，ONNX Runtime 可直接引用无需再拷贝
+        FloatBuffer inputBuffer = allocateDirect(batchMaxSize * effectiveWindowSize);
+        FloatBuffer stateBuffer = allocateDirect(batchMaxSize * STATE_SIZE);
+        float[] stateScratch = new float[batchMaxSize * STATE_SIZE];
+        float[] probabilities = new float[batchMaxSize];
+        while (running) {
+            try {
+                InferenceRequest first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(batchWindowUs);
+                while (batch.size() < batchMaxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, batchMaxSize - batch.size());
+                        break;
+                    }
+                    InferenceRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                runBatch(ortSession, batch, inputBuffer, stateBuffer, stateScratch, probabilities);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // 凑批期间被中断，已取出的请求不再推理
+                for (InferenceRequest request : batch) {
+                    request.future().completeExceptionally(new IllegalStateException("VAD模型已关闭"));
+                }
+                break;
+            } catch (Exception e) {
+                log.error("VAD批量推理失败", e);
+                for (InferenceRequest request : batch) {
+                    request.future().complete(0.0f);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 执行一次批量推理。输入形状 [n, effectiveWindowSize]，隐状态形状 [2, n, 128]：
+     * 第 j 个请求的第 l 层状态位于偏移 (l * n + j) * 128。
+     * 输入、状态与输出概率均写入工作线程复用的缓冲。
+     * 调用方已放弃等待的请求不参与推理；推理期间放弃的请求不写回隐状态（见 {@link InferenceRequest}）。
+     */
+    private void runBatch(OrtSession ortSession, List<InferenceRequest> batch, FloatBuffer inputBuffer,
+                          FloatBuffer stateBuffer, float[] stateScratch, float[] probabilities) throws OrtException {
+        int layerSize = STATE_SIZE / 2;
+        inputBuffer.clear();
+        stateBuffer.clear();
+        int n = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            InferenceRequest request = batch.get(i);
+            if (request.claim(inputBuffer, stateScratch, n * STATE_SIZE)) {
+                batch.set(n++, request);
+            }
+        }
+        while (batch.size() > n) {
+            batch.remove(batch.size() - 1);
+        }
+        if (n == 0) {
+            return;
+        }
+        for (int layer = 0; layer < 2; layer++) {
+            for (int j = 0; j < n; j++) {
+                stateBuffer.put(stateScratch, j * STATE_SIZE + layer * layerSize, layerSize);
+            }
+        }
+        inputBuffer.flip();
+        stateBuffer.flip();
+
+        try (OnnxTensor inputTensor = OnnxTensor.createTensor(env, inputBuffer, new long[] { n, effectiveWindowSize });
+             OnnxTensor stateTensor = OnnxTensor.createTensor(env, stateBuffer, new long[] { 2, n, layerSize });
+             OrtSession.Result result = ortSession.run(Map.of(
+                     "input", inputTensor,
+                     "sr", srTensor,
+                     "state", stateTensor
+             ))) {
+            ((OnnxTensor) result.get(0)).getFloatBuffer().get(probabilities, 0, n);
+            FloatBuffer nextState = ((OnnxTensor) result.get(1)).getFloatBuffer();
+            for (int j = 0; j < n; j++) {
+                batch.get(j).writeBack(nextState, n, j);
+            }
+        }
+        for (int j = 0; j < n; j++) {
+            batch.get(j).future().complete(probabilities[j]);
+        }
+    }
+
+    private static FloatBuffer allocateDirect(int floats) {
+        return ByteBuffer.allocateDirect(floats * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * 一个待推理窗口。input 与 state 是调用方跨帧复用的数组：
+     * 调用方超时或被中断后放弃请求并继续处理下一帧，推理线程此后不得再读写这两个数组。
+     * 放弃、读取（claim）与写回（writeBack）都在请求自身的锁内进行，三者互斥。
+     */
+    private static final class InferenceRequest {
+        private final float[] input;
+        private final float[] state;
+        private final CompletableFuture<Float> future = new CompletableFuture<>();
+        private boolean abandoned;
+
+        InferenceRequest(float[] input, float[] state) {
+            this.input = input;
+            this.state = state;
+        }
+
+        CompletableFuture<Float> future() {
+            return future;
+        }
+
+        synchronized void abandon() {
+            abandoned = true;
+        }
+
+        /**
+         * 未被放弃时把输入追加到 inputBuffer、隐状态复制到 stateScratch[offset]
+         *
+         * @return 是否参与本批推理
+         */
+        synchronized boolean claim(FloatBuffer inputBuffer, float[] stateScratch, int offset) {
+            if (abandoned) {
+                return false;
+            }
+            inputBuffer.put(input);
+            System.arraycopy(state, 0, stateScratch, offset, STATE_SIZE);
+            return true;
+        }
+
+        /**
+         * 未被放弃时写回批次中第 j 个请求的新隐状态，形状 [2, n, 128]
+         */
+        synchronized void writeBack(FloatBuffer nextState, int n, int j) {
+            if (abandoned) {
+                return;
+            }
+            int layerSize = STATE_SIZE / 2;
+            for (int layer = 0; layer < 2; layer++) {
+                nextState.get((layer * n + j) * layerSize, state, layer * layerSize, layerSize);
+            }
+        }
+    }
+
     private float[] buildInput(float[] samples, float[] context) {
         float[] input = new float[effectiveWindowSize];
         if (context != null && context.length > 0) {
@@ -111,7 +412,29 @@ public class SileroVadModel implements VadModel {
     @PreDestroy
     @Override
     public void close() {
+        closed = true;
+        running = false;
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            try {
+                worker.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        InferenceRequest pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().completeExceptionally(new IllegalStateException("VAD模型已关闭"));
+        }
         try {
+            for (OrtSession pooled : sessionPool) {
+                if (pooled != session) {
+                    pooled.close();
+                }
+            }
+            if (srTensor != null) {
+                srTensor.close();
+            }
             if (session != null) {
                 session.close();
             }
@@ -8,6 +8,8 @@ import com.xiaozhi.ai.llm.memory.Conversation;
 import com.xiaozhi.ai.llm.memory.ConversationFactory;
 import com.xiaozhi.dialogue.audio.AecService;
 import com.xiaozhi.dialogue.playback.OpusRecorder;
+import com.xiaozhi.dialogue.playback.PhraseCache;
+import com.xiaozhi.dialogue.playback.PlaybackScheduler;
 import com.xiaozhi.dialogue.playback.Player;
 import com.xiaozhi.dialogue.playback.ScheduledPlayer;
 import com.xiaozhi.dialogue.playback.Synthesizer;
@@ -22,14 +24,16 @@ import com.xiaozhi.ai.tts.TtsServiceFactory;
 import com.xiaozhi.common.model.bo.ConfigBO;
 import com.xiaozhi.common.model.bo.RoleBO;
 import com.xiaozhi.role.service.RoleService;
+import com.xiaozhi.ai.tool.ToolPreFilter;
 import com.xiaozhi.ai.tool.ToolRegistrationService;
 import com.xiaozhi.dialogue.adapter.ChatSessionToolAdapter;
 import com.xiaozhi.config.service.ConfigService;
 import com.xiaozhi.dialogue.llm.handler.DialogueListener;
 import com.xiaozhi.message.service.MessageService;
-import com.xiaozhi.storage.service.StorageServiceFactory;
+import com.xiaozhi.storage.service.AudioUploadQueue;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.util.Assert;
 import org.springframework.stereotype.Component;
 
@@ -40,8 +44,6 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 @Component
 public class PersonaFactory {
-    @Resource
-    private MessageService chatMessageService;
     @Resource
     private ConfigService configService;
     @Resource
@@ -68,7 +70,23 @@ public class PersonaFactory {
     @Resource
     private DialogueListener dialogueListener;
     @Resource
-    private StorageServiceFactory storageServiceFactory;
+    private AudioUploadQueue audioUploadQueue;
+    @Resource
+    private MessageService messageService;
+    @Resource
+    private PhraseCache phraseCache;
+    @Resource
+    private PlaybackScheduler playbackScheduler;
+    @Resource
+    private ToolPreFilter toolPreFilter;
+
+    /**
+     * 下发音频的 Opus 编码参数，作用于每个会话独立的编码器；CPU 紧张时可降低复杂度
+     */
+    @Value("${xiaozhi.audio.opus.bitrate:48000}")
+    private int opusBitrate;
+    @Value("${xiaozhi.audio.opus.complexity:10}")
+    private int opusComplexity;
 
     /**
      * 构建完整的 Persona 实例。
@@ -92,8 +110,9 @@ public class PersonaFactory {
         // Player应该是可以独立于Persona而存在的，同时也可以看作是角色的嘴巴/声带。
         Player player = session.getPlayer();
         if(player == null){
-            player = new ScheduledPlayer(session, sessionMessageService);
-            player.setOpusRecorder(new OpusRecorder(session, chatMessageService, aecService, storageServiceFactory));
+            player = new ScheduledPlayer(session, sessionMessageService, playbackScheduler);
+            player.getOpusProcessor().setEncoderOptions(opusBitrate, opusComplexity);
+            player.setOpusRecorder(new OpusRecorder(session, aecService, audioUploadQueue, messageService));
             session.setPlayer(player);
         }
         // 初始化Conversation(相当于角色的记忆）
@@ -127,6 +146,7 @@ public class PersonaFactory {
                 .toolCallbacks(toolCallbacks)
                 .listener(dialogueListener)
                 .goodbyeMessages(goodbyeMessages)
+                .toolPreFilter(toolPreFilter)
                 .build();
         session.setPersona(persona);
         return persona;
@@ -180,7 +200,7 @@ public class PersonaFactory {
         String voiceName = role.getVoiceName();
         TtsService ttsService = ttsFactory.getTtsService(ttsConfig, voiceName, role.getTtsPitch(), role.getTtsSpeed());
 
-        return SynthesizerFactory.create(session, ttsService, player);
+        return SynthesizerFactory.create(session, ttsService, player, phraseCache);
 
     }
 
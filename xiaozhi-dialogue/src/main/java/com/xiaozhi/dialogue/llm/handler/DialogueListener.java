@@ -25,7 +25,7 @@ public class DialogueListener implements PersonaListener {
     @Override
     public void onDialogueTurn(DialogueTurn turn) {
         try {
-            messageService.saveAll(dialogueTurnConverter.toMessages(turn));
+            messageService.saveAllAsync(dialogueTurnConverter.toMessages(turn));
         } catch (Exception e) {
             log.error("对话持久化失败", e);
         }
@@ -4,12 +4,12 @@ import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.dialogue.runtime.Persona;
 import com.xiaozhi.ai.llm.memory.Conversation;
 import com.xiaozhi.ai.llm.tool.ToolCallStringResultConverter;
+import com.xiaozhi.ai.llm.tool.XiaozhiToolMetadata;
 import com.xiaozhi.ai.tool.ToolsGlobalRegistry;
 import com.xiaozhi.ai.tool.session.ToolSession;
 import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.function.FunctionToolCallback;
-import org.springframework.ai.tool.metadata.ToolMetadata;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
@@ -32,7 +32,7 @@ public class NewChatFunction implements ToolsGlobalRegistry.GlobalFunction {
                 }
                 return sayNewChat;
             })
-            .toolMetadata(ToolMetadata.builder().returnDirect(true).build())
+            .toolMetadata(new XiaozhiToolMetadata(true, true))
             .description("当用户想开启新的对话调用function：new_chat")
             .inputSchema("""
                         {
@@ -5,6 +5,7 @@ import cn.hutool.core.util.RandomUtil;
 import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.dialogue.runtime.Persona;
 import com.xiaozhi.ai.llm.tool.ToolCallStringResultConverter;
+import com.xiaozhi.ai.llm.tool.XiaozhiToolMetadata;
 import com.xiaozhi.ai.tool.ToolsGlobalRegistry;
 import com.xiaozhi.ai.tool.session.ToolSession;
 import com.xiaozhi.dialogue.llm.tool.media.HuiBenPlayer;
@@ -12,7 +13,6 @@ import com.xiaozhi.utils.AudioUtils;
 import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.function.FunctionToolCallback;
-import org.springframework.ai.tool.metadata.ToolMetadata;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
@@ -51,7 +51,7 @@ public class PlayHuiBenFunction implements ToolsGlobalRegistry.GlobalFunction {
                     return "绘本播放失败";
                 }
             })
-            .toolMetadata(ToolMetadata.builder().returnDirect(true).build())
+            .toolMetadata(new XiaozhiToolMetadata(true, true))
             .description("绘本播放助手，需要用户提供绘本数字编号")
             .inputSchema("""
                         {
@@ -5,13 +5,13 @@ import com.xiaozhi.dialogue.runtime.Persona;
 import com.xiaozhi.ai.tool.ToolsGlobalRegistry;
 import com.xiaozhi.ai.tool.session.ToolSession;
 import com.xiaozhi.ai.llm.tool.ToolCallStringResultConverter;
+import com.xiaozhi.ai.llm.tool.XiaozhiToolMetadata;
 import com.xiaozhi.communication.message.MessageSender;
 import com.xiaozhi.dialogue.llm.tool.media.MusicPlayer;
 
 import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.function.FunctionToolCallback;
-import org.springframework.ai.tool.metadata.ToolMetadata;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -53,7 +53,7 @@ public class PlayMusicFunction implements ToolsGlobalRegistry.GlobalFunction {
                     return "音乐播放失败";
                 }
             })
-            .toolMetadata(ToolMetadata.builder().returnDirect(true).build())
+            .toolMetadata(new XiaozhiToolMetadata(true, true))
             .description("音乐播放助手,需要用户提供歌曲的名称")
             .inputSchema("""
                         {
@@ -295,8 +295,9 @@ public class DeviceMcpService {
     public DeviceMcpMessage sendMcpRequest(ChatSession chatSession, DeviceMcpMessage mcpMessage) {
         Long id = mcpMessage.getPayload().getId();
         CompletableFuture<DeviceMcpMessage> future = new CompletableFuture<>();
-        chatSession.sendTextMessage(JsonUtil.toJson(mcpMessage));
+        // 先登记再发送，避免响应先于登记到达
         chatSession.getDeviceMcpHolder().getMcpPendingRequests().put(id, future);
+        chatSession.sendIndependentTextMessage(JsonUtil.toJson(mcpMessage));
 
         DeviceMcpMessage response = null;
         try {
@@ -52,6 +52,11 @@ public class FileSynthesizer extends Synthesizer {
         llmDisposable = new SentenceHelper().convert(stringFlux).subscribe(result -> {
             String text = result.text();
             String mood = result.mood();
+            // 短句优先走短语缓存，命中时直接播放预编码的 Opus 帧
+            if (phraseCache != null && phraseCache.isCacheable(text)) {
+                player.play(phraseCache.speech(ttsService, text, mood));
+                return;
+            }
             Flux<Speech> lazyTtsFlux = Flux.create(sink -> {
                 try {
                     Path audioPath = ttsService.textToSpeech(text);
@@ -2,14 +2,10 @@ package com.xiaozhi.dialogue.playback;
 
 import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.dialogue.audio.AecService;
-import com.xiaozhi.ai.llm.memory.Conversation;
-import com.xiaozhi.dialogue.runtime.Persona;
 import com.xiaozhi.message.service.MessageService;
-import com.xiaozhi.storage.service.StorageServiceFactory;
+import com.xiaozhi.storage.service.AudioUploadQueue;
 import com.xiaozhi.utils.AudioUtils;
-import io.jsonwebtoken.lang.Assert;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.gagravarr.opus.OpusAudioData;
 import org.gagravarr.opus.OpusFile;
@@ -17,62 +13,118 @@ import org.gagravarr.opus.OpusInfo;
 import org.gagravarr.opus.OpusTags;
 import com.xiaozhi.common.model.bo.MessageBO;
 
-import java.io.FileNotFoundException;
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Opus 音频录制组件：将播放器发送给设备的 Opus 帧同时写入 OGG/Opus 文件。
  *
  * 通过组合模式注入 Player，替代原 PlayerWithOpusFile 的继承方式。
  * Player 在 sendOpusFrame/sendStart/sendStop 中回调本组件的对应方法。
+ *
+ * 发送线程只做登记，文件的创建、写入、关闭和上传都在每个会话各自的后台写线程中按顺序执行，
+ * 磁盘与存储服务的延迟不会阻塞音频帧下发。时长按写入帧的采样数（即 granule position）累加，关闭时无需重读文件。
+ * 消息入库时已带上录音路径（见 {@link #audioPathFor(Instant)}），收尾时只需登记上传。
+ * 录音可能打开失败、没有写入任何帧或关闭失败，此时消息上的路径指向不存在的文件：
+ * 消息入库与录音结果两者都到达后（见 {@link #onMessagePersisted(Path)}），录音失败则清除消息的录音路径。
  */
 @Slf4j
 public class OpusRecorder {
 
     private final ChatSession session;
-    private final MessageService messageService;
     private final AecService aecService;
-    private final StorageServiceFactory storageServiceFactory;
+    private final AudioUploadQueue audioUploadQueue;
+    private final MessageService messageService;
+
+    // 后台写任务，按提交顺序串行执行
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
 
-    private Path audioPath;
-    private OpusFile opusFile;
-    private Instant opusFileCreatedAt;
+    // 当前录制，由发送线程切换
+    private volatile Recording current;
 
     @Getter
-    @Setter
-    private Instant assistantMessageCreatedAt;
+    private volatile Instant assistantMessageCreatedAt;
 
-    public OpusRecorder(ChatSession session, MessageService messageService, AecService aecService, StorageServiceFactory storageServiceFactory) {
+    // 已经开始录制的回复时间，用于发现整轮没有音频帧的回复
+    private volatile Instant recordedAt;
+
+    // 消息入库与录音结果先到的一方，等待另一方，由 this 保护
+    private final Map<Path, Outcome> outcomes = new HashMap<>();
+
+    private enum Outcome { PERSISTED, SUCCEEDED, FAILED }
+
+    public OpusRecorder(ChatSession session, AecService aecService, AudioUploadQueue audioUploadQueue,
+            MessageService messageService) {
         this.session = session;
-        this.messageService = messageService;
         this.aecService = aecService;
-        this.storageServiceFactory = storageServiceFactory;
+        this.audioUploadQueue = audioUploadQueue;
+        this.messageService = messageService;
     }
 
-    public void onSendStart() {
-        if (opusFile != null) {
-            closeOpusFile();
+    /**
+     * 设置本轮回复的创建时间，录音文件按此命名；为 null 时不录制。
+     * 上一轮回复若始终没有音频帧，其录音视为失败
+     */
+    public void setAssistantMessageCreatedAt(Instant createdAt) {
+        Instant previous = assistantMessageCreatedAt;
+        assistantMessageCreatedAt = createdAt;
+        if (previous != null && !previous.equals(createdAt) && !previous.equals(recordedAt)) {
+            complete(audioPathFor(previous), false);
+        }
+    }
+
+    /**
+     * 带录音路径的回复消息已提交入库。录音已失败时立即清除路径，否则等录音收尾时决定
+     */
+    public void onMessagePersisted(Path audioPath) {
+        Outcome outcome;
+        synchronized (this) {
+            outcome = outcomes.remove(audioPath);
+            if (outcome == null) {
+                outcomes.put(audioPath, Outcome.PERSISTED);
+            }
+        }
+        if (outcome == Outcome.FAILED) {
+            clearMessageAudioPath(audioPath);
         }
     }
 
+    /**
+     * 指定回复时间对应的录音文件路径，与录制时使用的路径一致
+     */
+    public Path audioPathFor(Instant createdAt) {
+        return session.getAudioPath(MessageBO.SENDER_ASSISTANT, createdAt);
+    }
+
+    public void onSendStart() {
+        closeOpusFile();
+    }
+
     public void onSendOpusFrame(byte[] opusFrame) {
         if (aecService != null && aecService.isEnabled()) {
             aecService.feedReference(session.getSessionId(), opusFrame);
         }
 
-        if (opusFile == null && assistantMessageCreatedAt != null) {
-            openOpusFile();
+        Instant createdAt = assistantMessageCreatedAt;
+        if (current == null && createdAt != null) {
+            Recording recording = new Recording(audioPathFor(createdAt));
+            current = recording;
+            recordedAt = createdAt;
+            submit(recording::open);
         }
-        if (opusFile != null) {
-            opusFile.writeAudioData(new OpusAudioData(opusFrame));
+        Recording recording = current;
+        if (recording != null) {
+            submit(() -> recording.write(opusFrame));
         }
     }
 
@@ -80,13 +132,82 @@ public class OpusRecorder {
         closeOpusFile();
     }
 
-    private void openOpusFile() {
-        opusFileCreatedAt = assistantMessageCreatedAt;
-        audioPath = session.getAudioPath(MessageBO.SENDER_ASSISTANT, opusFileCreatedAt);
-        try {
-            Files.createDirectories(audioPath.getParent());
+    public void closeOpusFile() {
+        Recording recording = current;
+        if (recording == null) {
+            return;
+        }
+        current = null;
+        submit(recording::finish);
+    }
+
+    /**
+     * 登记录音结果，对应消息已入库且录音失败时清除其录音路径
+     */
+    private void complete(Path audioPath, boolean succeeded) {
+        Outcome outcome;
+        synchronized (this) {
+            outcome = outcomes.remove(audioPath);
+            if (outcome == null) {
+                outcomes.put(audioPath, succeeded ? Outcome.SUCCEEDED : Outcome.FAILED);
+            }
+        }
+        if (outcome == Outcome.PERSISTED && !succeeded) {
+            clearMessageAudioPath(audioPath);
+        }
+    }
+
+    private void clearMessageAudioPath(Path audioPath) {
+        // 需等待消息写入缓冲落库，不占用录音写线程
+        Thread.startVirtualThread(() -> {
             try {
-                FileOutputStream fos = new FileOutputStream(audioPath.toFile());
+                messageService.clearAudioPath(session.getSessionId(), audioPath.toString());
+            } catch (Exception e) {
+                log.error("清除消息录音路径失败 - SessionId: {}, 路径: {}", session.getSessionId(), audioPath, e);
+            }
+        });
+    }
+
+    private void submit(Runnable task) {
+        tasks.add(task);
+        if (draining.compareAndSet(false, true)) {
+            Thread.startVirtualThread(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("Opus录音写入失败 - SessionId: {}", session.getSessionId(), e);
+                }
+            }
+            draining.set(false);
+            // 释放标记后再检查一次，避免与并发提交的任务错过
+            if (tasks.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 一次录制，只在后台写线程上访问
+     */
+    private final class Recording {
+        private final Path audioPath;
+        private OpusFile opusFile;
+        private long samples;
+
+        Recording(Path audioPath) {
+            this.audioPath = audioPath;
+        }
+
+        void open() {
+            try {
+                Files.createDirectories(audioPath.getParent());
                 OpusInfo oi = new OpusInfo();
                 oi.setSampleRate(AudioUtils.SAMPLE_RATE);
                 oi.setNumChannels(AudioUtils.CHANNELS);
@@ -96,53 +217,53 @@ public class OpusRecorder {
                 ot.addComment("TITLE", "Xiaozhi TTS Audio");
                 ot.addComment("ARTIST", "Xiaozhi ESP32 Server");
 
-                opusFile = new OpusFile(fos, oi, ot);
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException(e);
+                opusFile = new OpusFile(new BufferedOutputStream(new FileOutputStream(audioPath.toFile())), oi, ot);
+            } catch (IOException e) {
+                log.error("无法创建保存Opus音频文件 - SessionId: {}", session.getSessionId(), e);
             }
-        } catch (IOException ex) {
-            log.error("无法创建保存Opus音频文件的目录 - SessionId: {}", session.getSessionId());
-            log.error("无法创建保存Opus音频文件的目录", ex);
         }
-    }
 
-    public void closeOpusFile() {
-        if (opusFile == null) {
-            return;
-        }
-        try {
-            opusFile.close();
-            log.info("Opus音频文件已生成: {}", audioPath);
-            opusFile = null;
-            updateMessage();
-        } catch (IOException e) {
-            log.error("无法关闭Opus音频文件!", e);
+        void write(byte[] opusFrame) {
+            if (opusFile == null) {
+                return;
+            }
+            OpusAudioData data = new OpusAudioData(opusFrame);
+            samples += data.getNumberOfSamples();
+            opusFile.writeAudioData(data);
         }
-    }
 
-    private void updateMessage() {
-        Persona persona = session.getPersona();
-        if (persona == null || opusFileCreatedAt == null || audioPath == null) {
-            return;
+        void finish() {
+            if (opusFile == null) {
+                // 文件创建失败
+                complete(audioPath, false);
+                return;
+            }
+            try {
+                opusFile.close();
+            } catch (IOException e) {
+                log.error("无法关闭Opus音频文件!", e);
+                complete(audioPath, false);
+                return;
+            } finally {
+                opusFile = null;
+            }
+            if (samples == 0) {
+                deleteQuietly();
+                complete(audioPath, false);
+                return;
+            }
+            complete(audioPath, true);
+            double duration = (double) samples / OpusAudioData.OPUS_GRANULE_RATE;
+            log.info("Opus音频文件已生成: {}, 时长: {}s", audioPath, String.format("%.2f", duration));
+            audioUploadQueue.enqueue(session.getSessionId(), audioPath);
         }
-        Conversation conversation = persona.getConversation();
-        Assert.notNull(conversation);
-
-        BigDecimal duration = BigDecimal.valueOf(AudioUtils.getAudioDuration(audioPath));
 
-        String storedPath = audioPath.toString();
-        try {
-            storedPath = storageServiceFactory.getStorageService().upload(audioPath, audioPath.toString());
-        } catch (Exception e) {
-            log.warn("上传AI回复音频失败，保留本地路径: {}", audioPath, e);
+        private void deleteQuietly() {
+            try {
+                Files.deleteIfExists(audioPath);
+            } catch (IOException e) {
+                log.warn("删除空的Opus音频文件失败: {}", audioPath, e);
+            }
         }
-
-        messageService.updateAssistantAudio(
-            conversation.getOwnerId(),
-            conversation.getRoleId(),
-            LocalDateTime.ofInstant(opusFileCreatedAt.truncatedTo(ChronoUnit.SECONDS), ZoneId.systemDefault()),
-            storedPath,
-            duration
-        );
     }
 }
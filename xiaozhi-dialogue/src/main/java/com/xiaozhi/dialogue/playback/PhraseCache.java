@@ -0,0 +1,301 @@
+package com.xiaozhi.dialogue.playback;
+
+import com.xiaozhi.ai.tts.TtsService;
+import com.xiaozhi.common.Speech;
+import com.xiaozhi.common.config.RuntimePathConfig;
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.CommonUtils;
+import com.xiaozhi.utils.OpusProcessor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+/**
+ * 短语音频缓存：缓存高频短句（问候语、验证码提示、告别语、错误提示等）的 Opus 帧。
+ *
+ * 缓存键为（规范化文本, Provider, 音色, 音调, 语速, 编码参数），值为 60ms 的 Opus 帧列表，可直接以
+ * {@link Speech#ofOpus(byte[])} 交给播放器发送，命中时既不调用 TTS Provider，也不再做 PCM→Opus 编码。
+ * 缓存帧按 xiaozhi.audio.opus.* 编码，与会话下发音频使用相同的参数。
+ *
+ * 准入：LLM 输出的短句大多只出现一次，同一短语被请求达到 admit-after 次后才写入缓存，
+ * 之前的请求按普通 TTS 流式播放；固定提示语可跳过准入。
+ * 缓存读写或合成失败只影响本句，不会中断播放流。
+ *
+ * 两级存储：
+ * - 内存 LRU：按条目数限制，命中后直接返回
+ * - 本地磁盘：Ogg Opus 文件，按文件数限制，淘汰最久未访问的文件；命中后回填内存
+ */
+@Slf4j
+@Component
+public class PhraseCache {
+
+    private static final String FILE_SUFFIX = ".opus";
+
+    @Value("${xiaozhi.tts.phrase-cache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 只缓存不超过该长度的文本，长句复用率低，缓存只会挤占空间
+     */
+    @Value("${xiaozhi.tts.phrase-cache.max-text-length:32}")
+    private int maxTextLength;
+
+    @Value("${xiaozhi.tts.phrase-cache.memory-entries:256}")
+    private int memoryEntries;
+
+    @Value("${xiaozhi.tts.phrase-cache.disk-entries:2048}")
+    private int diskEntries;
+
+    /**
+     * 同一短语被请求达到该次数后才写入缓存
+     */
+    @Value("${xiaozhi.tts.phrase-cache.admit-after:2}")
+    private int admitAfter;
+
+    @Value("${xiaozhi.audio.opus.bitrate:48000}")
+    private int opusBitrate;
+
+    @Value("${xiaozhi.audio.opus.complexity:10}")
+    private int opusComplexity;
+
+    @Resource
+    private RuntimePathConfig runtimePathConfig;
+
+    private Path cacheDir;
+
+    private final AtomicInteger diskCount = new AtomicInteger(0);
+
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    private final Map<String, List<byte[]>> memory = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<byte[]>> eldest) {
+            return size() > memoryEntries;
+        }
+    };
+
+    // 未缓存短语的请求次数，只保留最近的若干条
+    private final Map<String, Integer> requests = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > memoryEntries * 4;
+        }
+    };
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        cacheDir = runtimePathConfig.resolveAudioDir().resolve("phrase-cache");
+        try {
+            Files.createDirectories(cacheDir);
+            File[] files = cacheDir.toFile().listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+            diskCount.set(files == null ? 0 : files.length);
+            log.info("短语音频缓存已启用 - 目录: {}, 磁盘条目: {}", cacheDir, diskCount.get());
+        } catch (IOException e) {
+            log.warn("创建短语音频缓存目录失败，仅使用内存缓存: {}", e.getMessage());
+            cacheDir = null;
+        }
+    }
+
+    /**
+     * 判断文本是否适合走短语缓存
+     */
+    public boolean isCacheable(String text) {
+        if (!enabled || !StringUtils.hasText(text)) {
+            return false;
+        }
+        return normalize(text).length() <= maxTextLength;
+    }
+
+    /**
+     * 获取 LLM 短句的音频流，按请求次数准入缓存，见 {@link #speech(TtsService, String, String, boolean)}
+     */
+    public Flux<Speech> speech(TtsService ttsService, String text, String mood) {
+        return speech(ttsService, text, mood, false);
+    }
+
+    /**
+     * 获取短语的音频流。命中缓存时直接返回预编码的 Opus 帧；
+     * 未命中且满足准入条件时调用 TTS 合成并编码，完整合成成功后写入缓存；否则按普通 TTS 流式返回 PCM。
+     * 第一帧附带文本与情绪，供播放器下发 sentence_start 与表情。
+     *
+     * @param ttsService TTS 服务
+     * @param text       待合成文本
+     * @param mood       情绪，可为空
+     * @param fixed      固定提示语，首次合成即写入缓存
+     */
+    public Flux<Speech> speech(TtsService ttsService, String text, String mood, boolean fixed) {
+        String key = buildKey(ttsService, text);
+        AtomicBoolean first = new AtomicBoolean(true);
+        return Flux.defer(() -> {
+                    List<byte[]> frames = get(key);
+                    if (frames != null) {
+                        log.debug("短语音频缓存命中: {}", text);
+                        return Flux.fromIterable(frames).map(frame -> opus(frame, text, mood, first));
+                    }
+                    if (fixed || admit(key)) {
+                        return synthesize(ttsService, text, key).map(frame -> opus(frame, text, mood, first));
+                    }
+                    return ttsService.streamTextToSpeech(text)
+                            .map(pcm -> first.compareAndSet(true, false)
+                                    ? new Speech(pcm, text).withMood(mood)
+                                    : new Speech(pcm));
+                })
+                .onErrorResume(e -> {
+                    log.error("短语音频合成出错: {} - 文本: {}", e.getMessage(), text);
+                    return Flux.empty();
+                });
+    }
+
+    private static Speech opus(byte[] frame, String text, String mood, AtomicBoolean first) {
+        return first.compareAndSet(true, false)
+                ? Speech.ofOpus(frame, text).withMood(mood)
+                : Speech.ofOpus(frame);
+    }
+
+    /**
+     * 记录一次未命中的请求，达到准入次数时返回 true
+     */
+    private boolean admit(String key) {
+        synchronized (requests) {
+            int count = requests.merge(key, 1, Integer::sum);
+            if (count < admitAfter) {
+                return false;
+            }
+            requests.remove(key);
+            return true;
+        }
+    }
+
+    /**
+     * 调用 TTS 合成并编码为 Opus 帧，合成完整结束后写入缓存
+     */
+    private Flux<byte[]> synthesize(TtsService ttsService, String text, String key) {
+        OpusProcessor opusProcessor = new OpusProcessor();
+        opusProcessor.setEncoderOptions(opusBitrate, opusComplexity);
+        List<byte[]> collected = new ArrayList<>();
+        return ttsService.streamTextToSpeech(text)
+                .concatMapIterable(pcm -> opusProcessor.pcmToOpus(pcm, true))
+                .concatWith(Flux.defer(() -> Flux.fromIterable(opusProcessor.flushLeftover())))
+                .doOnNext(collected::add)
+                .doOnComplete(() -> put(key, collected));
+    }
+
+    private List<byte[]> get(String key) {
+        synchronized (memory) {
+            List<byte[]> frames = memory.get(key);
+            if (frames != null) {
+                return frames;
+            }
+        }
+        if (cacheDir == null) {
+            return null;
+        }
+        File file = cacheDir.resolve(key + FILE_SUFFIX).toFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        List<byte[]> frames;
+        try {
+            frames = AudioUtils.readOpus(file);
+        } catch (Exception e) {
+            log.warn("读取短语音频缓存失败，按未命中处理: {}", e.getMessage());
+            return null;
+        }
+        if (frames.isEmpty()) {
+            return null;
+        }
+        // 刷新访问时间，磁盘淘汰按最久未访问处理
+        file.setLastModified(System.currentTimeMillis());
+        synchronized (memory) {
+            memory.put(key, frames);
+        }
+        return frames;
+    }
+
+    private void put(String key, List<byte[]> frames) {
+        if (frames.isEmpty()) {
+            return;
+        }
+        List<byte[]> immutable = List.copyOf(frames);
+        synchronized (memory) {
+            memory.put(key, immutable);
+        }
+        if (cacheDir == null) {
+            return;
+        }
+        Thread.startVirtualThread(() -> {
+            Path path = cacheDir.resolve(key + FILE_SUFFIX);
+            try {
+                boolean existed = Files.exists(path);
+                AudioUtils.saveAsOpus(immutable, path.toString());
+                if (!existed && diskCount.incrementAndGet() > diskEntries) {
+                    evictDisk();
+                }
+            } catch (IOException e) {
+                log.warn("写入短语音频缓存失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 磁盘条目超限时，删除最久未访问的文件，回落到上限的 90%
+     */
+    private void evictDisk() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            File[] files = cacheDir.toFile().listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+            if (files == null) {
+                return;
+            }
+            int target = diskEntries * 9 / 10;
+            int toDelete = files.length - target;
+            if (toDelete > 0) {
+                Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+                for (int i = 0; i < toDelete; i++) {
+                    files[i].delete();
+                }
+            }
+            File[] remaining = cacheDir.toFile().listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+            diskCount.set(remaining == null ? 0 : remaining.length);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private String buildKey(TtsService ttsService, String text) {
+        String raw = ttsService.getProviderName() + "|" + ttsService.getVoiceName() + "|"
+                + ttsService.getPitch() + "|" + ttsService.getSpeed() + "|"
+                + AudioUtils.SAMPLE_RATE + "|" + AudioUtils.CHANNELS + "|" + opusBitrate + "|" + opusComplexity + "|"
+                + normalize(text);
+        return CommonUtils.md5(raw);
+    }
+
+    /**
+     * 文本规范化：去除首尾空白并合并连续空白，避免仅空白不同的文本重复缓存
+     */
+    private static String normalize(String text) {
+        return text.strip().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,57 @@
+package com.xiaozhi.dialogue.playback;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+/**
+ * 所有播放器共享的音频帧调度器。
+ *
+ * 播放器不再各自占用一个轮询线程，而是把"下一帧的发送时间"登记到这里：
+ * - 到期时才唤醒，对应播放器发送所有已到期的帧后再登记下一个截止时间
+ * - 空闲或等待 TTS 数据的播放器不登记任务，没有任何唤醒
+ * - 少量平台线程承载全部会话，按截止时间排序唤醒，帧间隔不受会话数影响
+ */
+@Slf4j
+@Component
+public class PlaybackScheduler {
+
+    /**
+     * 调度线程数，0 表示使用 CPU 核数
+     */
+    @Value("${xiaozhi.playback.scheduler-threads:0}")
+    private int threads;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = new ScheduledThreadPoolExecutor(size,
+                Thread.ofPlatform().name("playback-scheduler-", 0).daemon(true).factory());
+        // 被打断的播放会取消已登记的任务，及时从队列移除
+        executor.setRemoveOnCancelPolicy(true);
+        log.info("播放调度器已启动 - 线程数: {}", size);
+    }
+
+    /**
+     * 在指定的绝对时间（System.nanoTime 基准）执行任务，时间已过则立即执行
+     */
+    public ScheduledFuture<?> scheduleAt(long deadlineNanos, Runnable task) {
+        long delay = Math.max(0, deadlineNanos - System.nanoTime());
+        return executor.schedule(task, delay, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
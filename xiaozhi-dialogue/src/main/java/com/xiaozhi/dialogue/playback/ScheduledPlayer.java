@@ -7,28 +7,32 @@ import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.communication.message.MessageSender;
 import com.xiaozhi.utils.AudioUtils;
 import io.jsonwebtoken.lang.Assert;
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.scheduler.Schedulers;
 
+import java.nio.ByteBuffer;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Queue;
-import java.util.concurrent.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import lombok.extern.slf4j.Slf4j;
 /**
- * 基于虚拟线程的音频流播放器。
+ * 基于共享调度器的音频流播放器。
  *
  * 核心特性：
- * 1. 虚拟线程：每个播放器独立虚拟线程，支持无限并发
+ * 1. 事件驱动：不占用独立线程，由 {@link PlaybackScheduler} 在下一帧到期时唤醒；
+ *    等待 TTS 数据时不登记任务，数据到达、工具调用结束或生成结束时才重新唤醒
  * 2. Burst模式：前2帧预缓冲（-120ms），避免首帧破音/丢字
  * 3. 精确调度：纳秒级时间控制，保证60ms精确间隔
  * 4. 绝对时间：基于startTimestamp的绝对时间调度，避免累积误差
+ * 5. 调度与发送分离：调度线程只判断哪些帧到期，发送、录制等 I/O 交给本会话的虚拟线程按序执行，
+ *    慢设备不会拖慢共享调度线程上其他会话的帧节奏
  *
  * Burst模式原理：
  * - playPosition初始为-120ms（2帧）
@@ -67,12 +71,27 @@ public class ScheduledPlayer extends Player {
     // 当前正在订阅的Flux
     private AtomicReference<Disposable> fluxDisposable = new AtomicReference<>(null);
 
-    // 虚拟线程控制
-    private volatile boolean running = false;
-    private Thread senderThread;
+    private final PlaybackScheduler scheduler;
 
-    public ScheduledPlayer(ChatSession session, MessageSender messageService) {
+    // 调度状态，均在 scheduleLock 内读写
+    private final Object scheduleLock = new Object();
+    private volatile boolean running = false;
+    // 已登记的下一次唤醒任务
+    private ScheduledFuture<?> scheduledTick;
+    // 队列已空且 TTS 仍在生成，等待数据到达时唤醒
+    private boolean parked = false;
+    // 队列已空且生成结束，已登记延迟的结束检查
+    private boolean awaitingStop = false;
+
+    // 待执行的发送动作（start/帧/stop），由本会话的虚拟线程按入队顺序执行
+    private final Queue<Runnable> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    // stop() 时递增，丢弃打断前已入队但尚未执行的发送动作
+    private volatile int epoch = 0;
+
+    public ScheduledPlayer(ChatSession session, MessageSender messageService, PlaybackScheduler scheduler) {
         super(session, messageService);
+        this.scheduler = scheduler;
     }
 
     /**
@@ -87,13 +106,19 @@ public class ScheduledPlayer extends Player {
             if (fluxDisposable.get() == null) {
                 subscribe(speechFlux);
 
-                // 启动发送线程（只启动一次）
-                if (!running) {
-                    running = true;
-                    sendStart();
-
-                    // 使用虚拟线程，轻量级，可以创建成千上万个
-                    senderThread = Thread.startVirtualThread(this::sendFramesLoop);
+                // 启动发送调度（只启动一次）
+                boolean start = false;
+                synchronized (scheduleLock) {
+                    if (!running) {
+                        running = true;
+                        parked = true;
+                        start = true;
+                        // 与 tick() 的 sendStop 同在 scheduleLock 内入队，保证上一轮的 stop 先于本轮的 start
+                        dispatch(this::sendStart);
+                    }
+                }
+                if (start) {
+                    wake();
                 }
             } else {
                 // 当前已有TTS在工作，加入队列排队
@@ -124,6 +149,7 @@ public class ScheduledPlayer extends Player {
                         // 预编码的 Opus 帧（来自缓存直读），直接入队无需转换
                         if (speech.isOpusEncoded()) {
                             allOpusFrames.add(speech);
+                            wake();
                             return;
                         }
 
@@ -131,66 +157,46 @@ public class ScheduledPlayer extends Player {
                         byte[] pcmData = speech.getOutput();
                         String text = speech.getText();
 
-                        // 当前帧无文本，尝试取上次因PCM不足一帧而未能附加的文本
-                        if (!StringUtils.hasText(text)) {
-                            text = pendingText.getAndSet(null);
-                        }
-
-                        List<byte[]> opusFrames = opusProcessor.pcmToOpus(pcmData, true);
-
-                        if (!CollectionUtils.isEmpty(opusFrames)) {
-                            // 创建Speech列表，第一帧附带文本
-                            List<Speech> speechList = opusFrames.stream()
-                                    .map(Speech::new)
-                                    .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
-
-                            if (StringUtils.hasText(text)) {
-                                // 将第一帧替换为带文本的Speech
-                                Speech firstSpeech = speechList.remove(0);
-                                speechList.add(0, new Speech(firstSpeech.getOutput(), text));
-                                pendingText.set(null);
-                            }
-
-                            allOpusFrames.addAll(speechList);
-                        } else if (StringUtils.hasText(text)) {
-                            // PCM不足一个Opus帧（已进入编码器内部缓冲），暂存文本等待下一帧
+                        // 本句文本附加到下一个编码出的帧；PCM不足一个Opus帧（已进入编码器内部缓冲）时，文本保留到下一帧
+                        if (StringUtils.hasText(text)) {
                             pendingText.set(text);
                         }
+                        if (pcmData != null) {
+                            opusProcessor.encode(ByteBuffer.wrap(pcmData), true, (buffer, length) -> enqueueFrame(buffer, length, pendingText));
+                        }
+                        wake();
                     },
                     throwable -> {
                         log.error("TTS模型生成输出内容时发生错误：{}", throwable.getMessage());
                         // 当前TTS抛出异常，尝试订阅下一个Flux
                         subscribeNext();
+                        wake();
                     },
                     () -> {
-                        // 当前Flux完成，flush剩余数据
-                        List<byte[]> opusFrames = opusProcessor.flushLeftover();
-                        if (!CollectionUtils.isEmpty(opusFrames)) {
-                            List<Speech> speechList = opusFrames.stream()
-                                    .map(Speech::new)
-                                    .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
-
-                            // 若有暂存文本（最后一句的第一帧太小），附加到flush出来的第一帧
-                            String pt = pendingText.getAndSet(null);
-                            if (pt != null) {
-                                Speech firstSpeech = speechList.remove(0);
-                                speechList.add(0, new Speech(firstSpeech.getOutput(), pt));
-                            }
-
-                            allOpusFrames.addAll(speechList);
-                        }
+                        // 当前Flux完成，flush剩余数据；若有暂存文本（最后一句的第一帧太小），附加到flush出来的帧
+                        opusProcessor.flushLeftover((buffer, length) -> enqueueFrame(buffer, length, pendingText));
 
                         // 添加句子间隔标记，避免句子粘连
                         allOpusFrames.add(SENTENCE_GAP_MARKER);
 
                         // 尝试订阅下一个Flux
                         subscribeNext();
+                        wake();
                     }
                 );
 
         fluxDisposable.set(disposable);
     }
 
+    /**
+     * 将编码器输出的帧拷贝后入队，有暂存文本时附加到该帧
+     */
+    private void enqueueFrame(byte[] buffer, int length, AtomicReference<String> pendingText) {
+        byte[] frame = Arrays.copyOf(buffer, length);
+        String text = pendingText.getAndSet(null);
+        allOpusFrames.add(text != null ? new Speech(frame, text) : new Speech(frame));
+    }
+
     /**
      * 订阅队列中的下一个Flux
      */
@@ -206,72 +212,143 @@ public class ScheduledPlayer extends Player {
     }
 
     /**
-     * 音频帧发送循环（虚拟线程）
-     *
-     * 采用Burst模式 + 绝对时间调度：
+     * 工具调用结束时唤醒播放器，以便检查是否可以结束播放
+     */
+    @Override
+    public void setToolCalling(boolean toolCalling) {
+        super.setToolCalling(toolCalling);
+        if (!toolCalling) {
+            wake();
+        }
+    }
+
+    /**
+     * 新数据到达或生成状态变化时调用：播放器处于等待状态则立即登记一次唤醒。
+     * 正在按帧调度时不做任何事，到期的唤醒会自然处理新数据。
+     */
+    private void wake() {
+        synchronized (scheduleLock) {
+            if (!running || !(parked || awaitingStop)) {
+                return;
+            }
+            if (awaitingStop && scheduledTick != null) {
+                scheduledTick.cancel(false);
+            }
+            parked = false;
+            awaitingStop = false;
+            scheduledTick = scheduler.scheduleAt(System.nanoTime(), this::tick);
+        }
+    }
+
+    /**
+     * 调度器唤醒时执行，采用Burst模式 + 绝对时间调度：
      * 1. 第一帧时设置startTimestamp
-     * 2. 根据playPosition计算目标发送时间
+     * 2. 根据playPosition计算目标发送时间，发送所有已到期的帧
      * 3. playPosition初始为-120ms，前2帧立即发送（预缓冲）
-     * 4. 后续帧精确按60ms间隔发送
+     * 4. 下一帧未到期时登记其截止时间；队列为空时挂起或登记结束检查
      */
-    private void sendFramesLoop() {
-        while (running) {
-            Speech speech = allOpusFrames.poll();
-
-            if (speech != null) {
+    private void tick() {
+        synchronized (scheduleLock) {
+            if (!running) {
+                return;
+            }
+            scheduledTick = null;
+            while (true) {
+                Speech speech = allOpusFrames.peek();
+                if (speech == null) {
+                    if (onQueueEmpty()) {
+                        // 在锁内入队：running 置为 false 后，并发的 play() 只能在 stop 之后入队 start
+                        dispatch(this::sendStop);
+                    }
+                    break;
+                }
                 if (speech == SENTENCE_GAP_MARKER) {
                     // 句子间隔：推进playPosition，不发送音频
+                    allOpusFrames.poll();
                     playPosition += SENTENCE_GAP_NS;
                     continue;
                 }
-                // 有数据，发送音频帧
-                sendSpeechWithBurstMode(speech);
-            } else {
-                // 队列为空，检查是否播放结束
-                if (fluxDisposable.get() == null && !isToolCalling()) {
-                    // 没有新的Flux在生成数据，准备结束
-                    try {
-                        Thread.sleep(WAIT_TIME_MS_TO_SEND_STOP);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
+                // 设置开始时间戳（只在第一帧时）
+                if (startTimestamp == 0) {
+                    startTimestamp = System.nanoTime();
+                }
+                // playPosition初始为-120ms，前2帧会立即通过（targetSendTime < currentTime）
+                long targetSendTime = startTimestamp + playPosition;
+                if (targetSendTime > System.nanoTime()) {
+                    scheduledTick = scheduler.scheduleAt(targetSendTime, this::tick);
+                    break;
+                }
+                allOpusFrames.poll();
+                dispatch(() -> sendSpeech(speech));
+                // 更新播放位置（每帧增加60ms）
+                playPosition += OPUS_FRAME_SEND_INTERVAL_NS;
+            }
+        }
+    }
 
-                    // 再次检查，确保没有新数据
-                    if (allOpusFrames.isEmpty() && fluxDisposable.get() == null && !isToolCalling()) {
-                        running = false;
-                        // 重置Burst模式状态，避免下次play()时因旧的startTimestamp导致所有帧以零延迟发送
-                        startTimestamp = 0;
-                        playPosition = BURST_PREBUFFER_NS;
-                        sendStop();
-                        break;
-                    }
-                } else {
-                    // 还有Flux在生成数据，短暂休眠等待
-                    try {
-                        Thread.sleep(10);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
+    /**
+     * 把发送动作交给本会话的发送线程。没有在运行的发送线程时启动一个虚拟线程，排空后退出
+     */
+    private void dispatch(Runnable action) {
+        int current = epoch;
+        outbox.add(() -> {
+            if (current == epoch) {
+                action.run();
+            }
+        });
+        if (sending.compareAndSet(false, true)) {
+            Thread.startVirtualThread(this::drainOutbox);
+        }
+    }
+
+    private void drainOutbox() {
+        while (true) {
+            Runnable action;
+            while ((action = outbox.poll()) != null) {
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    log.error("播放器发送失败 - SessionId: {}", session.getSessionId(), e);
                 }
             }
+            sending.set(false);
+            // 退出前再检查一次，避免与 dispatch 竞争导致动作滞留
+            if (outbox.isEmpty() || !sending.compareAndSet(false, true)) {
+                return;
+            }
         }
     }
 
     /**
-     * 使用Burst模式发送单个Speech
+     * 队列为空时的处理，在 scheduleLock 内调用
      *
-     * Burst模式时序：
-     * - 第1帧：playPosition = -120ms → 立即发送（预缓冲）
-     * - 第2帧：playPosition = -60ms  → 立即发送（预缓冲）
-     * - 第3帧：playPosition = 0ms    → 等待到startTimestamp后发送
-     * - 第4帧：playPosition = 60ms   → 等待到startTimestamp+60ms后发送
-     * - ...
+     * @return true 表示播放已结束，需要发送停止消息
      */
-    private void sendSpeechWithBurstMode(Speech speech) {
-        byte[] frame = speech.getOutput();
+    private boolean onQueueEmpty() {
+        if (fluxDisposable.get() != null || isToolCalling()) {
+            // 还有Flux在生成数据，挂起等待数据到达
+            parked = true;
+            return false;
+        }
+        if (!awaitingStop) {
+            // 没有新的Flux在生成数据，等待设备播放完剩余音频后再确认结束
+            awaitingStop = true;
+            scheduledTick = scheduler.scheduleAt(System.nanoTime() + WAIT_TIME_MS_TO_SEND_STOP * 1_000_000L, this::tick);
+            return false;
+        }
+        // 结束检查到期，确认没有新数据
+        awaitingStop = false;
+        running = false;
+        // 重置Burst模式状态，避免下次play()时因旧的startTimestamp导致所有帧以零延迟发送
+        startTimestamp = 0;
+        playPosition = BURST_PREBUFFER_NS;
+        return true;
+    }
 
+    /**
+     * 发送单个Speech：先发送文本和表情（如果有），再发送音频帧
+     */
+    private void sendSpeech(Speech speech) {
         // 更新活跃时间
         session.setLastActivityTime(Instant.now());
 
@@ -289,38 +366,8 @@ public class ScheduledPlayer extends Player {
             sendStart();
         }
 
-        // 设置开始时间戳（只在第一帧时）
-        if (startTimestamp == 0) {
-            startTimestamp = System.nanoTime();
-        }
-
-        // 计算目标发送时间（绝对时间戳）
-        // playPosition初始为-120ms，前2帧会立即通过（targetSendTime < currentTime）
-        long targetSendTime = startTimestamp + playPosition;
-
-        // 等待到目标时间
-        long currentTime = System.nanoTime();
-        long delay = targetSendTime - currentTime;
-
-        if (delay > 0) {
-            // 需要等待
-            try {
-                long delayMs = delay / 1_000_000L;
-                int delayNs = (int) (delay % 1_000_000L);
-                Thread.sleep(delayMs, delayNs);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                running = false;
-                return;
-            }
-        }
-        // else: delay <= 0，立即发送（预缓冲阶段）
-
         // 发送音频帧
-        sendOpusFrame(frame);
-
-        // 更新播放位置（每帧增加60ms）
-        playPosition += OPUS_FRAME_SEND_INTERVAL_NS;
+        sendOpusFrame(speech.getOutput());
     }
 
     /**
@@ -329,16 +376,23 @@ public class ScheduledPlayer extends Player {
     @Override
     public void stop() {
         super.stop();
-        running = false;
-
-        // 中断发送线程
-        if (senderThread != null) {
-            senderThread.interrupt();
+        synchronized (scheduleLock) {
+            running = false;
+            parked = false;
+            awaitingStop = false;
+            epoch++;
+            // 取消已登记的唤醒
+            if (scheduledTick != null) {
+                scheduledTick.cancel(false);
+                scheduledTick = null;
+            }
         }
 
-        // 清空队列
+        // 清空队列，包括连接发送队列中尚未发出的旧回复音频
         fluxQueue.clear();
         allOpusFrames.clear();
+        outbox.clear();
+        session.clearQueuedAudio();
 
         // 取消Flux订阅
         Disposable disposable = fluxDisposable.getAndSet(null);
@@ -347,8 +401,10 @@ public class ScheduledPlayer extends Player {
         }
 
         // 重置Burst模式状态
-        startTimestamp = 0;
-        playPosition = BURST_PREBUFFER_NS;
+        synchronized (scheduleLock) {
+            startTimestamp = 0;
+            playPosition = BURST_PREBUFFER_NS;
+        }
 
         // 中断时主动关闭文件，避免产生损坏的 Opus 文件
         if (getOpusRecorder() != null) {
@@ -363,6 +419,7 @@ public class ScheduledPlayer extends Player {
      * @return true 如果正在播放、有队列数据、有Flux在生成、或有Flux等待播放
      */
     public boolean hasContent() {
-        return isPlaying() || !fluxQueue.isEmpty() || !allOpusFrames.isEmpty() || fluxDisposable.get() != null;
+        return isPlaying() || !fluxQueue.isEmpty() || !allOpusFrames.isEmpty() || !outbox.isEmpty()
+                || fluxDisposable.get() != null;
     }
 }
@@ -0,0 +1,81 @@
+package com.xiaozhi.dialogue.playback;
+
+import com.xiaozhi.common.Speech;
+
+import com.xiaozhi.communication.common.ChatSession;
+import com.xiaozhi.ai.tts.SentenceHelper;
+import com.xiaozhi.ai.tts.TtsService;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.extern.slf4j.Slf4j;
+/**
+ * 流式语音合成器，用于支持流式输出的TTS Provider（边合成边播放）。
+ * 与 FileSynthesizer 不同，音频不经过中间文件，Provider 每输出一块PCM就交给播放器编码发送，
+ * 每句话的首帧延迟从"整句合成耗时 + 磁盘读写"缩短为 Provider 的首包耗时。
+ *
+ * 数据流：LLM token流 → SentenceHelper分句 → 逐句调用 TtsService.streamTextToSpeech → PCM块 → 交给播放器播放
+ */
+@Slf4j
+public class StreamingSynthesizer extends Synthesizer {
+
+    // 保存LLM输出流的订阅引用，以便在cancel时取消上游订阅
+    private volatile Disposable llmDisposable;
+
+    public StreamingSynthesizer(ChatSession session, TtsService ttsService, Player player) {
+        super(session, ttsService, player);
+    }
+
+    @Override
+    public void cancel() {
+        if (llmDisposable != null && !llmDisposable.isDisposed()) {
+            llmDisposable.dispose();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return llmDisposable != null && !llmDisposable.isDisposed();
+    }
+
+    /**
+     * 将LLM输出的token流转化为语音并推送到播放器。
+     * 每句话对应一个惰性的音频流，播放器订阅时才开始合成，被打断时随订阅取消一并停止合成。
+     *
+     * @param stringFlux LLM输出的token流
+     */
+    @Override
+    public void synthesize(Flux<String> stringFlux) {
+        llmDisposable = new SentenceHelper().convert(stringFlux).subscribe(result -> {
+            String text = result.text();
+            String mood = result.mood();
+            // 短句优先走短语缓存，命中时直接播放预编码的 Opus 帧
+            if (phraseCache != null && phraseCache.isCacheable(text)) {
+                player.play(phraseCache.speech(ttsService, text, mood));
+                return;
+            }
+            AtomicBoolean first = new AtomicBoolean(true);
+            Flux<Speech> speechFlux = ttsService.streamTextToSpeech(text)
+                    .map(chunk -> first.compareAndSet(true, false)
+                            ? new Speech(chunk, text).withMood(mood)
+                            : new Speech(chunk))
+                    .onErrorResume(e -> {
+                        log.error("TTS流式合成出错: {} - SessionId: {}", e.getMessage(), chatSession.getSessionId());
+                        return Flux.empty();
+                    });
+            player.play(speechFlux);
+        });
+    }
+
+    /**
+     * 直接合成单个文本
+     * @param text 待合成的文本
+     */
+    @Override
+    public void synthesize(String text) {
+        synthesize(Flux.just(text));
+    }
+
+}
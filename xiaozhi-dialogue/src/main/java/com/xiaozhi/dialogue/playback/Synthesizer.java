@@ -22,7 +22,8 @@ import reactor.core.publisher.Flux;
  * - Player：终端音频播放，接收 Flux<Speech>，转换为设备协议格式（Opus）发送
  *
  * 合成模式：
- * text → Path（FileSynthesizer + TtsService）
+ * text → Path（FileSynthesizer + TtsService#textToSpeech）
+ * text → Flux<PCM>（StreamingSynthesizer + TtsService#streamTextToSpeech，边合成边播放，不落盘）
  *
  * 生命周期：Synthesizer 在一轮对话的 AI 响应合成完毕后即可回收，Player 可能仍在播放。
  * 同一个 Synthesizer 可组合不同的 Player，因此 Player 不在 Synthesizer 内部创建。
@@ -36,6 +37,11 @@ public abstract class Synthesizer {
 
     private int firstChatDurationMillis = 0;
 
+    /**
+     * 短语音频缓存，可为空。短句优先从缓存读取预编码的 Opus 帧
+     */
+    protected PhraseCache phraseCache;
+
     /**
      * @param chatSession  当前会话
      * @param ttsService   底层 TTS Provider（由 TtsServiceFactory 创建）
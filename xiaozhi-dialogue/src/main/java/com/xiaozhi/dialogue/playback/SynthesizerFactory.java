@@ -5,10 +5,15 @@ import com.xiaozhi.ai.tts.TtsService;
 
 /**
  * Synthesizer 工厂，创建对应的 Synthesizer 实现。
+ * 原生支持流式合成的 Provider 使用 StreamingSynthesizer，其余使用 FileSynthesizer。
  */
 public class SynthesizerFactory {
 
-    public static Synthesizer create(ChatSession session, TtsService ttsService, Player player) {
-        return new FileSynthesizer(session, ttsService, player);
+    public static Synthesizer create(ChatSession session, TtsService ttsService, Player player, PhraseCache phraseCache) {
+        Synthesizer synthesizer = ttsService.supportsStreaming()
+                ? new StreamingSynthesizer(session, ttsService, player)
+                : new FileSynthesizer(session, ttsService, player);
+        synthesizer.setPhraseCache(phraseCache);
+        return synthesizer;
     }
 }
@@ -39,6 +39,11 @@ public class DialogueTurn {
     private List<DialogueContext.ToolCallInfo> toolCallDetails;
     private Path userSpeechPath;
 
+    /**
+     * 本轮回复的录音文件路径，未开启录音时为 null
+     */
+    private Path assistantSpeechPath;
+
     /**
      * 一轮内按时间顺序排列的工具调用链（可能为空）
      */
@@ -53,6 +58,7 @@ public class DialogueTurn {
             ChatResponse chatResponse,
             Conversation conversation,
             Path userSpeechPath,
+            Path assistantSpeechPath,
             Instant userMessageCreatedAt,
             Instant assistantMessageCreatedAt,
             List<DialogueContext.ToolCallInfo> toolCallDetails,
@@ -66,6 +72,7 @@ public class DialogueTurn {
         this.chatResponse = chatResponse;
         this.conversation = conversation;
         this.userSpeechPath = userSpeechPath;
+        this.assistantSpeechPath = assistantSpeechPath;
         this.timeToFirstToken = Duration.between(userMessageCreatedAt, assistantMessageCreatedAt);
         this.userMessageCreatedAt = userMessageCreatedAt.truncatedTo(ChronoUnit.SECONDS);
         this.assistantMessageCreatedAt = assistantMessageCreatedAt.truncatedTo(ChronoUnit.SECONDS);
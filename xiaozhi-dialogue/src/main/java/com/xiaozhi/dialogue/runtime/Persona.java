@@ -5,9 +5,13 @@ import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.communication.common.SessionManager;
 import com.xiaozhi.ai.llm.memory.Conversation;
 import com.xiaozhi.ai.llm.memory.ConversationContext;
+import com.xiaozhi.ai.llm.memory.UserMessageAssembler;
+import com.xiaozhi.dialogue.playback.OpusRecorder;
 import com.xiaozhi.dialogue.playback.Player;
 import com.xiaozhi.dialogue.playback.Synthesizer;
 import com.xiaozhi.ai.stt.SttService;
+import com.xiaozhi.ai.tool.ToolPreFilter;
+import com.xiaozhi.common.model.bo.MessageMetadataBO;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
@@ -23,12 +27,19 @@ import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import lombok.extern.slf4j.Slf4j;
@@ -80,6 +91,11 @@ public class Persona {
     private ChatModel chatModel;
     private GoodbyeMessageSupplier goodbyeMessages;
 
+    /**
+     * 按用户输入预筛选工具子集，未设置时发送全部工具
+     */
+    private ToolPreFilter toolPreFilter;
+
     @Getter
     private Synthesizer synthesizer;
 
@@ -100,6 +116,12 @@ public class Persona {
     @Builder.Default
     private List<ToolCallback> toolCallbacks = new ArrayList<>();
 
+    /**
+     * 推测 LLM 请求状态，见 {@link #speculate(UserMessage)}
+     */
+    @Builder.Default
+    private final SpeculationSlot speculation = new SpeculationSlot();
+
 
     // PersonaListener 回调实现了核心与辅助的分离：Persona 只通知"发生了什么"，持久化和监控由外部实现。
 
@@ -124,31 +146,23 @@ public class Persona {
         // 播放器生成文件时也需要用到一个关联到AssistantMessage的ID，不能在sendStart时创建磁盘音频文件。
         AtomicReference<Instant> ttft = new AtomicReference<>(null);
 
-        String ownerId = conversation.getOwnerId();
-
-        // 从 ToolsSessionHolder 获取实时工具列表（包含后注册的设备 MCP 工具）
-        List<ToolCallback> liveTools = getSession().getToolsSessionHolder().getAllFunction();
-
-        // Layer 3: Embedding 预筛选工具子集
-        List<ToolCallback> effectiveTools = useFunctionCall ? liveTools : new ArrayList<>();
-
-        ChatOptions chatOptions = ToolCallingChatOptions.builder()
-                .toolCallbacks(effectiveTools)
-                .toolContext(TOOL_CONTEXT_SESSION_ID_KEY, sessionId)
-                .toolContext("deviceId", ownerId)
-                .toolContext("conversationTimestamp", now.toEpochMilli())
-                .build();
+        // 最终识别结果与推测请求一致时，直接复用已在进行中的推测响应
+        Speculation speculative = useFunctionCall ? takeSpeculation(userMessage) : null;
+        if (!useFunctionCall) {
+            cancelSpeculation();
+        }
 
         conversation.add(userMessage);
 
-        // 构建运行时上下文
-        ChatSession currentSession = getSession();
-        String location = currentSession.getDevice() != null ? currentSession.getDevice().getLocation() : null;
-        ConversationContext ctx = new ConversationContext(location);
-        List<Message> messages = conversation.messages(ctx);
-        Prompt prompt = new Prompt(messages, chatOptions);
-
-        Flux<ChatResponse> chatFlux = chatModel.stream(prompt)
+        Flux<ChatResponse> chatFlux;
+        if (speculative != null) {
+            log.info("复用推测LLM请求 - SessionId: {}", sessionId);
+            chatFlux = adoptSpeculation(speculative,
+                    Flux.defer(() -> streamChat(now, userMessage.getText(), true)));
+        } else {
+            chatFlux = streamChat(now, userMessage.getText(), useFunctionCall);
+        }
+        chatFlux = chatFlux
             .doOnError(error -> {
                 listener.onError(error);
             });
@@ -173,12 +187,15 @@ public class Persona {
                 allChains.add(new ToolChainPair(toolCallAssistantMsg, toolResponseMsg));
             }
 
+            OpusRecorder recorder = player.getOpusRecorder();
+            Path assistantSpeechPath = recorder != null && ttft.get() != null ? recorder.audioPathFor(ttft.get()) : null;
             DialogueTurn dialogueTurn = DialogueTurn.builder()
                     .userMessage(userMessage)
                     .chatResponse(chatResponse)
                     .conversation(conversation)
                     .userMessageCreatedAt(now)
                     .userSpeechPath(userSpeechPath)
+                    .assistantSpeechPath(assistantSpeechPath)
                     .assistantMessageCreatedAt(ttft.get())
                     .toolCallDetails(toolCallDetails)
                     .toolChains(allChains)
@@ -186,6 +203,10 @@ public class Persona {
             // UserMessage 的时间戳应在 DialogueTurn 中注入，与 Conversation 持有的是同一个 UserMessage。
             dialogueTurn.injectInstants();
             listener.onDialogueTurn(dialogueTurn);
+            if (assistantSpeechPath != null) {
+                // 录音失败时由录音组件清除消息上的路径
+                recorder.onMessagePersisted(assistantSpeechPath);
+            }
 
             // 模型真实调用的工具链注入 Conversation
             if (toolCallAssistantMsg != null && toolResponseMsg != null) {
@@ -196,6 +217,222 @@ public class Persona {
         });
     }
 
+    /**
+     * 以当前 Conversation 发起正常的 LLM 请求，工具调用由 ChatModel 内部的 ToolCallingManager 执行
+     */
+    private Flux<ChatResponse> streamChat(Instant now, String userText, boolean useFunctionCall) {
+        ChatOptions chatOptions = buildChatOptions(now, userText, useFunctionCall, true);
+        Prompt prompt = new Prompt(conversation.messages(conversationContext()), chatOptions);
+        return chatModel.stream(prompt);
+    }
+
+    /**
+     * 构建对话参数
+     * @param userText 用户输入，用于预筛选工具
+     * @param internalToolExecution 是否由 ChatModel 内部执行工具调用，推测请求需关闭以避免副作用
+     */
+    private ChatOptions buildChatOptions(Instant now, String userText, boolean useFunctionCall, boolean internalToolExecution) {
+        String ownerId = conversation.getOwnerId();
+
+        // 从 ToolsSessionHolder 获取实时工具列表（包含后注册的设备 MCP 工具）
+        List<ToolCallback> liveTools = getSession().getToolsSessionHolder().getAllFunction();
+
+        // Layer 3: Embedding 预筛选工具子集
+        List<ToolCallback> effectiveTools;
+        if (!useFunctionCall) {
+            effectiveTools = new ArrayList<>();
+        } else if (toolPreFilter != null) {
+            effectiveTools = toolPreFilter.filter(userText, liveTools);
+        } else {
+            effectiveTools = liveTools;
+        }
+
+        return ToolCallingChatOptions.builder()
+                .toolCallbacks(effectiveTools)
+                .internalToolExecutionEnabled(internalToolExecution)
+                .toolContext(TOOL_CONTEXT_SESSION_ID_KEY, sessionId)
+                .toolContext("deviceId", ownerId)
+                .toolContext("conversationTimestamp", now.toEpochMilli())
+                .build();
+    }
+
+    /**
+     * 构建运行时上下文
+     */
+    private ConversationContext conversationContext() {
+        ChatSession currentSession = getSession();
+        String location = currentSession.getDevice() != null ? currentSession.getDevice().getLocation() : null;
+        return new ConversationContext(location);
+    }
+
+    /**
+     * 推测执行：基于稳定的中间识别结果提前发起 LLM 请求，缩短最终识别结果到首个 Token 的等待时间。
+     * 推测请求不写入 Conversation，且关闭内部工具执行，避免识别结果变化时产生工具副作用。
+     * 相同文本的推测只发起一次，新的推测会取消旧的推测。
+     * 构建请求时的工具预筛选需要一次 Embedding 请求，放在虚拟线程上进行，不阻塞 STT 中间结果回调。
+     *
+     * @param userMessage 基于中间识别结果构造的用户消息
+     */
+    public void speculate(UserMessage userMessage) {
+        if (getSession() == null) {
+            return;
+        }
+        long seq;
+        synchronized (speculation) {
+            if (userMessage.getText().equals(speculation.text)) {
+                return;
+            }
+            speculation.text = userMessage.getText();
+            seq = ++speculation.seq;
+        }
+        Thread.startVirtualThread(() -> {
+            try {
+                startSpeculation(seq, userMessage);
+            } catch (Exception e) {
+                log.warn("发起推测LLM请求失败 - SessionId: {}: {}", sessionId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 构建推测请求并发起。构建期间有更新的推测、最终识别结果或取消时放弃本次推测
+     */
+    private void startSpeculation(long seq, UserMessage userMessage) {
+        Instant now = Instant.now();
+        List<Message> messages = new ArrayList<>(conversation.messages(conversationContext()));
+        messages.add(UserMessageAssembler.assemble(userMessage));
+        Prompt prompt = new Prompt(messages, buildChatOptions(now, userMessage.getText(), true, false));
+
+        Speculation previous;
+        synchronized (speculation) {
+            if (speculation.seq != seq) {
+                return;
+            }
+            ConnectableFlux<ChatResponse> responses = chatModel.stream(prompt).replay();
+            previous = speculation.current;
+            speculation.current = new Speculation(userMessage.getText(), emotionOf(userMessage), responses, responses.connect());
+        }
+        if (previous != null) {
+            previous.cancel();
+        }
+        log.debug("发起推测LLM请求 - SessionId: {}, Text: {}", sessionId, userMessage.getText());
+    }
+
+    /**
+     * 取消进行中的推测请求，构建中的推测随之作废
+     */
+    public void cancelSpeculation() {
+        Speculation previous = clearSpeculation();
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * 取出当前推测请求并使构建中的推测作废
+     */
+    private Speculation clearSpeculation() {
+        synchronized (speculation) {
+            speculation.seq++;
+            speculation.text = null;
+            Speculation current = speculation.current;
+            speculation.current = null;
+            return current;
+        }
+    }
+
+    /**
+     * 取出与最终识别结果一致的推测请求。文本或情绪等元数据不一致时放弃推测（推测 Prompt 与最终消息不同）。
+     *
+     * @return 可复用的推测请求，不可复用时返回 null
+     */
+    private Speculation takeSpeculation(UserMessage userMessage) {
+        Speculation current = clearSpeculation();
+        if (current == null) {
+            return null;
+        }
+        if (!current.text().equals(userMessage.getText())
+                || !Objects.equals(current.emotion(), emotionOf(userMessage))) {
+            log.debug("推测请求与最终识别结果不一致，放弃推测 - SessionId: {}", sessionId);
+            current.cancel();
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * 复用推测响应：已缓冲的响应块先重放，之后随上游实时转发，TTS 从第一个 Token 起即可开始合成。
+     * 推测请求未执行工具，出现工具调用时断开推测、改走正常请求，由 ToolCallingManager 执行工具；
+     * 工具调用前若已转发过文本，这部分文本已交给 TTS，正常请求的回复会再次包含类似开头。
+     * 推测请求在产出任何内容前失败或没有任何输出时，同样改走正常请求。
+     *
+     * @param fallback 放弃推测时的正常请求，延迟到需要时才发起
+     */
+    private Flux<ChatResponse> adoptSpeculation(Speculation current, Flux<ChatResponse> fallback) {
+        return Flux.defer(() -> {
+            // emitted：已转发推测输出；fellBack：已切换到正常请求
+            AtomicBoolean emitted = new AtomicBoolean();
+            AtomicBoolean fellBack = new AtomicBoolean();
+            Flux<ChatResponse> live = current.responses()
+                    .takeUntil(ChatResponse::hasToolCalls)
+                    .concatMap(response -> {
+                        if (response.hasToolCalls()) {
+                            log.info("推测响应中包含工具调用，改走正常请求 - SessionId: {}", sessionId);
+                            current.cancel();
+                            fellBack.set(true);
+                            return fallback;
+                        }
+                        if (hasOutput(response)) {
+                            emitted.set(true);
+                        }
+                        return Mono.just(response);
+                    })
+                    .onErrorResume(error -> {
+                        if (emitted.get() || fellBack.get()) {
+                            return Flux.error(error);
+                        }
+                        log.warn("推测LLM请求失败，改走正常请求 - SessionId: {}: {}", sessionId, error.getMessage());
+                        fellBack.set(true);
+                        return fallback;
+                    });
+            return live.concatWith(Flux.defer(() -> emitted.get() || fellBack.get() ? Flux.empty() : fallback));
+        }).doOnCancel(current::cancel);
+    }
+
+    private static String emotionOf(UserMessage userMessage) {
+        Map<String, Object> metadata = userMessage.getMetadata();
+        return metadata != null && metadata.get(MessageMetadataBO.METADATA_KEY) instanceof MessageMetadataBO bo
+                ? bo.getEmotion() : null;
+    }
+
+    private static boolean hasOutput(ChatResponse response) {
+        if (response.hasToolCalls()) {
+            return true;
+        }
+        Generation result = response.getResult();
+        return result != null && result.getOutput() != null && StringUtils.hasText(result.getOutput().getText());
+    }
+
+    /**
+     * 推测请求：推测文本与情绪 + 可重放的响应流 + 上游连接
+     */
+    private record Speculation(String text, String emotion, ConnectableFlux<ChatResponse> responses,
+                               Disposable connection) {
+        void cancel() {
+            connection.dispose();
+        }
+    }
+
+    /**
+     * 推测状态，字段均由自身锁保护。
+     * seq 每次请求、取出或取消推测时递增，虚拟线程构建完成时序号已变化则放弃；text 为最近一次请求推测的文本，用于去重
+     */
+    private static final class SpeculationSlot {
+        private long seq;
+        private String text;
+        private Speculation current;
+    }
+
     /**
      * 默认情况下，启用工具调用。
      * @param userMessage 纯文本用户消息（便利方法，不带结构化元数据）
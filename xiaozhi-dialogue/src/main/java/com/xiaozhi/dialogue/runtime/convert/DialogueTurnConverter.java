@@ -95,6 +95,10 @@ public class DialogueTurnConverter {
                 }
                 break;
             case ASSISTANT:
+                // 录音路径随消息一起入库，录音收尾时不再回查消息
+                if (turn.getAssistantSpeechPath() != null) {
+                    messageBO.setAudioPath(turn.getAssistantSpeechPath().toString());
+                }
                 messageBO.setCreateTime(LocalDateTime.ofInstant(turn.getAssistantMessageCreatedAt(), ZoneId.systemDefault()));
                 if (!toolCallDetails.isEmpty()) {
                     try {
@@ -0,0 +1,120 @@
+package com.xiaozhi.communication.common;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeviceRegistryTest {
+
+    private static final String INSTANCE_ID = "instance-a";
+    private static final String OTHER_INSTANCE_ID = "instance-b";
+    private static final String DEVICE_INSTANCE_KEY = "xiaozhi:device:instance";
+    private static final String DEVICES_KEY = "xiaozhi:instance:devices:" + INSTANCE_ID;
+
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final HashOperations<String, Object, Object> hashOps = mock(HashOperations.class);
+    @SuppressWarnings("unchecked")
+    private final SetOperations<String, String> setOps = mock(SetOperations.class);
+    private final Map<String, String> owners = new HashMap<>();
+    private DeviceRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        doReturn(hashOps).when(stringRedisTemplate).opsForHash();
+        when(stringRedisTemplate.opsForSet()).thenReturn(setOps);
+        // multiGet 按传入顺序返回映射，缺失的为 null
+        when(hashOps.multiGet(eq(DEVICE_INSTANCE_KEY), anyCollection())).thenAnswer(invocation -> {
+            Collection<?> fields = invocation.getArgument(1);
+            return fields.stream().map(field -> (Object) owners.get(field)).toList();
+        });
+
+        registry = new DeviceRegistry();
+        ReflectionTestUtils.setField(registry, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(registry, "instanceIdHolder", new InstanceIdHolder(INSTANCE_ID));
+    }
+
+    @Test
+    void ownDeviceIdsSkipDevicesMovedToOtherInstances() {
+        when(setOps.members(DEVICES_KEY)).thenReturn(new LinkedHashSet<>(List.of("d1", "d2", "d3")));
+        owners.put("d1", INSTANCE_ID);
+        owners.put("d2", OTHER_INSTANCE_ID);
+
+        assertEquals(Set.of("d1"), registry.getOwnDeviceIds());
+    }
+
+    @Test
+    void ownDeviceIdsEmptyWithoutReadingMappings() {
+        when(setOps.members(DEVICES_KEY)).thenReturn(Set.of());
+
+        assertTrue(registry.getOwnDeviceIds().isEmpty());
+        verify(hashOps, never()).multiGet(any(), anyCollection());
+    }
+
+    @Test
+    void unbindRemovesMappingOnlyIfStillOwned() {
+        registry.unbind("d1");
+
+        ArgumentCaptor<RedisScript<Long>> script = scriptCaptor();
+        verify(stringRedisTemplate).execute(script.capture(),
+                eq(List.of(DEVICE_INSTANCE_KEY, DEVICES_KEY)), eq("d1"), eq(INSTANCE_ID));
+        // 设备已迁移到其他实例时 hget 与本实例不等，不能 hdel
+        String text = script.getValue().getScriptAsString();
+        assertTrue(text.contains("redis.call('hget', KEYS[1], ARGV[1]) == ARGV[2] then return redis.call('hdel'"));
+        assertTrue(text.indexOf("hget") < text.indexOf("hdel"));
+    }
+
+    @Test
+    void expiredLeasePrunesStaleMapping() {
+        when(hashOps.get(DEVICE_INSTANCE_KEY, "d1")).thenReturn(OTHER_INSTANCE_ID);
+        when(stringRedisTemplate.hasKey("xiaozhi:instance:lease:" + OTHER_INSTANCE_ID)).thenReturn(false);
+
+        assertNull(registry.getInstance("d1"));
+
+        ArgumentCaptor<RedisScript<Long>> script = scriptCaptor();
+        verify(stringRedisTemplate).execute(script.capture(),
+                eq(List.of(DEVICE_INSTANCE_KEY)), eq("d1"), eq(OTHER_INSTANCE_ID));
+        // 期间设备已重新绑定时映射已变，不能删
+        assertTrue(script.getValue().getScriptAsString()
+                .startsWith("if redis.call('hget', KEYS[1], ARGV[1]) == ARGV[2] then"));
+    }
+
+    @Test
+    void liveLeaseKeepsMapping() {
+        when(hashOps.get(DEVICE_INSTANCE_KEY, "d1")).thenReturn(OTHER_INSTANCE_ID);
+        when(stringRedisTemplate.hasKey("xiaozhi:instance:lease:" + OTHER_INSTANCE_ID)).thenReturn(true);
+
+        assertEquals(OTHER_INSTANCE_ID, registry.getInstance("d1"));
+        verify(stringRedisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArgumentCaptor<RedisScript<Long>> scriptCaptor() {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(RedisScript.class);
+    }
+}
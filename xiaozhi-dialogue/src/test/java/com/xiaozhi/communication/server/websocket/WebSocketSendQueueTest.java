@@ -0,0 +1,178 @@
+package com.xiaozhi.communication.server.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebSocketSendQueueTest {
+
+    private WebSocketSession session;
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    // 第一条消息发送时阻塞，模拟慢设备，让后续消息在队列中排队
+    private final CountDownLatch firstSendStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstSend = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            if (sent.isEmpty() && firstSendStarted.getCount() > 0) {
+                firstSendStarted.countDown();
+                releaseFirstSend.await(5, TimeUnit.SECONDS);
+            }
+            sent.add(describe(message));
+            return null;
+        }).when(session).sendMessage(any());
+    }
+
+    @Test
+    void keepsPlaybackOrderAndLetsIndependentMessagesAhead() throws Exception {
+        WebSocketSendQueue queue = new WebSocketSendQueue(session, WebSocketSendQueue.Options.DEFAULT);
+
+        queue.sendText("start");
+        assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+        queue.sendText("sentence_start");
+        queue.sendBinary(new byte[]{1});
+        queue.sendBinary(new byte[]{2});
+        queue.sendText("stop");
+        queue.sendIndependentText("mcp");
+        releaseFirstSend.countDown();
+
+        awaitSent(6);
+        assertEquals(List.of("start", "mcp", "sentence_start", "bin:1", "bin:2", "stop"), sent);
+    }
+
+    @Test
+    void dropsOldestAudioWhenByteLimitExceeded() throws Exception {
+        WebSocketSendQueue queue = new WebSocketSendQueue(session,
+                new WebSocketSendQueue.Options(10, 10_000, WebSocketSendQueue.SlowConsumerPolicy.DROP_AUDIO));
+
+        queue.sendText("start");
+        assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+        queue.sendBinary(new byte[]{1, 1, 1, 1});
+        queue.sendBinary(new byte[]{2, 2, 2, 2});
+        queue.sendBinary(new byte[]{3, 3, 3, 3});
+
+        assertEquals(1, queue.getDroppedAudio());
+        assertEquals(8, queue.getQueuedBytes());
+        releaseFirstSend.countDown();
+
+        awaitSent(3);
+        assertEquals(List.of("start", "bin:2", "bin:3"), sent);
+        verify(session, never()).close(any());
+    }
+
+    @Test
+    void closesSlowConsumerUnderClosePolicy() throws Exception {
+        WebSocketSendQueue queue = new WebSocketSendQueue(session,
+                new WebSocketSendQueue.Options(10, 10_000, WebSocketSendQueue.SlowConsumerPolicy.CLOSE));
+
+        queue.sendText("start");
+        assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+        queue.sendBinary(new byte[8]);
+        queue.sendBinary(new byte[8]);
+
+        verify(session, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(0, queue.getQueuedBytes());
+
+        // 关闭后不再发送排队或新入队的消息
+        queue.sendText("late");
+        releaseFirstSend.countDown();
+        awaitSent(1);
+        Thread.sleep(100);
+        assertEquals(List.of("start"), sent);
+    }
+
+    @Test
+    void clearAudioKeepsTextMessages() throws Exception {
+        WebSocketSendQueue queue = new WebSocketSendQueue(session, WebSocketSendQueue.Options.DEFAULT);
+
+        queue.sendText("start");
+        assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+        queue.sendBinary(new byte[]{1});
+        queue.sendText("sentence_start");
+        queue.sendBinary(new byte[]{2});
+        queue.clearAudio();
+        queue.sendText("stop");
+        releaseFirstSend.countDown();
+
+        awaitSent(3);
+        Thread.sleep(100);
+        verify(session, times(3)).sendMessage(any());
+        assertEquals(List.of("start", "sentence_start", "stop"), sent);
+        assertEquals(0, queue.getQueuedBytes());
+    }
+
+    @Test
+    void closeGracefullySendsQueuedMessagesBeforeClosingSession() throws Exception {
+        WebSocketSendQueue queue = new WebSocketSendQueue(session, WebSocketSendQueue.Options.DEFAULT);
+
+        queue.sendText("start");
+        assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+        queue.sendBinary(new byte[]{1});
+        queue.sendText("stop");
+        queue.closeGracefully();
+        // 关闭后入队的消息不再发送
+        queue.sendText("late");
+        verify(session, never()).close();
+        releaseFirstSend.countDown();
+
+        verify(session, timeout(5000)).close();
+        assertEquals(List.of("start", "bin:1", "stop"), sent);
+    }
+
+    @Test
+    void closeGracefullyDropsMessagesPastDeadline() throws Exception {
+        WebSocketSendQueue queue = new WebSocketSendQueue(session,
+                new WebSocketSendQueue.Options(64 * 1024, 50, WebSocketSendQueue.SlowConsumerPolicy.DROP_AUDIO));
+
+        queue.sendText("start");
+        assertTrue(firstSendStarted.await(5, TimeUnit.SECONDS));
+        queue.sendText("stop");
+        queue.closeGracefully();
+        Thread.sleep(100);
+        releaseFirstSend.countDown();
+
+        verify(session, timeout(5000)).close();
+        assertEquals(List.of("start"), sent);
+        assertEquals(0, queue.getQueuedBytes());
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static String describe(WebSocketMessage<?> message) {
+        if (message instanceof BinaryMessage binary) {
+            return "bin:" + binary.getPayload().get(0);
+        }
+        return new String(((TextMessage) message).asBytes(), StandardCharsets.UTF_8);
+    }
+}
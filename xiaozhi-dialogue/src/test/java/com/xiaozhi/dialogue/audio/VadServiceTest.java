@@ -0,0 +1,124 @@
+package com.xiaozhi.dialogue.audio;
+
+import com.xiaozhi.communication.common.SessionManager;
+import com.xiaozhi.dialogue.audio.vad.SileroVadModel;
+import com.xiaozhi.role.service.RoleService;
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.OpusProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class VadServiceTest {
+
+    private static final String SESSION_ID = "session-1";
+    private static final int FRAME_BYTES = AudioUtils.FRAME_SIZE * 2;
+
+    private VadService vadService;
+
+    @BeforeEach
+    void setUp() {
+        // 模型按窗口内是否有明显信号给出概率，不加载 ONNX
+        SileroVadModel vadModel = mock(SileroVadModel.class);
+        when(vadModel.infer(any(float[].class), any(float[].class))).thenAnswer(invocation -> {
+            float[] input = invocation.getArgument(0);
+            for (int i = SileroVadModel.CONTEXT_SIZE; i < input.length; i++) {
+                if (Math.abs(input[i]) > 0.1f) {
+                    return 0.9f;
+                }
+            }
+            return 0.0f;
+        });
+
+        vadService = new VadService();
+        ReflectionTestUtils.setField(vadService, "vadModel", vadModel);
+        ReflectionTestUtils.setField(vadService, "roleService", mock(RoleService.class));
+        ReflectionTestUtils.setField(vadService, "sessionManager", mock(SessionManager.class));
+        ReflectionTestUtils.setField(vadService, "preBufferMs", 500);
+        ReflectionTestUtils.setField(vadService, "tailKeepMs", 300);
+        vadService.initSession(SESSION_ID);
+    }
+
+    @Test
+    void silentFramesReuseDecodeBufferAndResult() {
+        List<byte[]> silence = encode(silence(10));
+        byte[] frame = frameBuffer();
+
+        VadService.VadResult first = vadService.processAudio(SESSION_ID, silence.get(0));
+        for (byte[] opus : silence.subList(1, silence.size())) {
+            VadService.VadResult result = vadService.processAudio(SESSION_ID, opus);
+            assertSame(first, result);
+        }
+
+        assertEquals(VadService.VadStatus.NO_SPEECH, first.getStatus());
+        assertNull(first.getProcessedData());
+        assertSame(frame, frameBuffer());
+    }
+
+    @Test
+    void handedOutSpeechFramesAreIndependentCopies() {
+        List<byte[]> speech = encode(tone(20));
+        List<byte[]> silence = encode(silence(5));
+
+        List<byte[]> handedOut = new ArrayList<>();
+        List<byte[]> snapshots = new ArrayList<>();
+        for (byte[] opus : speech) {
+            VadService.VadResult result = vadService.processAudio(SESSION_ID, opus);
+            if (result.getStatus() == VadService.VadStatus.SPEECH_CONTINUE) {
+                byte[] data = result.getProcessedData();
+                assertNotNull(data);
+                assertEquals(FRAME_BYTES, data.length);
+                assertNotSame(frameBuffer(), data);
+                handedOut.add(data);
+                snapshots.add(data.clone());
+            }
+        }
+        assertFalse(handedOut.isEmpty());
+
+        // 后续帧继续解码进同一缓冲，已交出的数据不受影响
+        for (byte[] opus : silence) {
+            vadService.processAudio(SESSION_ID, opus);
+        }
+        for (int i = 0; i < handedOut.size(); i++) {
+            assertArrayEquals(snapshots.get(i), handedOut.get(i));
+        }
+    }
+
+    private byte[] frameBuffer() {
+        Map<?, ?> states = (Map<?, ?>) ReflectionTestUtils.getField(vadService, "states");
+        return (byte[]) ReflectionTestUtils.getField(states.get(SESSION_ID), "frame");
+    }
+
+    private static List<byte[]> encode(byte[] pcm) {
+        return new OpusProcessor().pcmToOpus(pcm, false);
+    }
+
+    private static byte[] silence(int frames) {
+        return new byte[frames * FRAME_BYTES];
+    }
+
+    private static byte[] tone(int frames) {
+        byte[] pcm = new byte[frames * FRAME_BYTES];
+        for (int i = 0; i < pcm.length / 2; i++) {
+            short sample = (short) (Math.sin(2 * Math.PI * 440 * i / AudioUtils.SAMPLE_RATE) * 16000);
+            pcm[i * 2] = (byte) sample;
+            pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
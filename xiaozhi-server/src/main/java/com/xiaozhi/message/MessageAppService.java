@@ -32,12 +32,13 @@ public class MessageAppService {
         MessagePageReq r = req == null ? new MessagePageReq() : req;
         return messageService.page(r.getPageNo(), r.getPageSize(), r.getDeviceId(), r.getDeviceName(),
                 r.getSender(), r.getMessageType(), r.getRoleId(), r.getStartTime(), r.getEndTime(),
-                userId, r.getSessionId(), r.getSource());
+                userId, r.getSessionId(), r.getSource(), r.getLastMessageId());
     }
 
     public PageResp<ConversationResp> conversationPage(ConversationPageReq req, Integer userId) {
         ConversationPageReq r = req == null ? new ConversationPageReq() : req;
-        return messageService.conversationPage(r.getPageNo(), r.getPageSize(), userId, r.getRoleId(), r.getSource());
+        return messageService.conversationPage(r.getPageNo(), r.getPageSize(), userId, r.getRoleId(), r.getSource(),
+                r.getLastSessionId());
     }
 
     public void delete(Integer messageId) {
@@ -46,13 +46,16 @@ public class WebChatController {
      *
      * @param sessionId 会话ID
      * @param text      用户消息
+     * @param roleId    可选，当前角色；会话已过期且没有历史消息时用于续接
      * @return AI 回复文本流
      */
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @SaCheckPermission("system:chat:api:stream")
     @Operation(summary = "流式聊天", description = "通过 SSE 返回 AI 回复 Token 流，包含 thinking 和 content 两种类型")
-    public Flux<ChatToken> stream(@RequestParam String sessionId, @RequestParam String text) {
-        return webChatService.chatStream(sessionId, text);
+    public Flux<ChatToken> stream(@RequestParam String sessionId, @RequestParam String text,
+                                  @RequestParam(required = false) Integer roleId) {
+        Integer userId = StpUtil.getLoginIdAsInt();
+        return webChatService.chatStream(userId, roleId, sessionId, text);
     }
 
     /**
@@ -11,6 +11,12 @@ import com.xiaozhi.common.model.bo.MessageBO;
 import com.xiaozhi.common.model.bo.RoleBO;
 import com.xiaozhi.message.service.MessageService;
 import com.xiaozhi.role.service.RoleService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
@@ -30,16 +36,27 @@ import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.extern.slf4j.Slf4j;
 /**
  * Web 聊天服务：为纯文本 Web 客户端提供流式 AI 对话能力。
  * 轻量级实现，不涉及 STT/TTS/Player 等音频组件
+ * <p>
+ * 浏览器离开时通常不会调用关闭接口，因此会话按最近访问时间过期，并限制总数，超出时淘汰最久未访问的会话。
+ * 每轮对话完成即异步入库，淘汰只释放内存；之后再收到该会话的消息时按 sessionId 从数据库透明续接。
+ * ChatModel 不再按会话保存，每轮从 {@link ChatModelFactory} 获取，相同配置共享同一实例。
+ * 存活会话数与淘汰次数以 xiaozhi.webchat.* 指标暴露。
  */
 @Slf4j
 @Service
-public class WebChatService {
+public class WebChatService implements MeterBinder {
     @Resource
     private ChatModelFactory chatModelFactory;
     @Resource
@@ -52,11 +69,68 @@ public class WebChatService {
     @Value("${conversation.max-messages:16}")
     private int maxMessages;
 
+    @Value("${web.chat.max-sessions:1000}")
+    private int maxSessions;
+
+    @Value("${web.chat.idle-timeout-minutes:30}")
+    private int idleTimeoutMinutes;
+
     /**
-     * sessionId → Conversation 映射
+     * sessionId → 会话映射
      */
-    private final ConcurrentHashMap<String, Conversation> conversations = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, ChatModel> chatModels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, WebChatSession> sessions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("web-chat-evictor").daemon(true).factory());
+
+    private final AtomicLong idleEvicted = new AtomicLong();
+    private final AtomicLong overflowEvicted = new AtomicLong();
+
+    private static final class WebChatSession {
+        final Conversation conversation;
+        final RoleBO role;
+        // 正在进行的流式回复数，大于 0 时不淘汰
+        final AtomicInteger streaming = new AtomicInteger();
+        volatile long lastAccess = System.currentTimeMillis();
+
+        WebChatSession(Conversation conversation, RoleBO role) {
+            this.conversation = conversation;
+            this.role = role;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("xiaozhi.webchat.sessions", sessions, Map::size)
+                .description("内存中的 Web 聊天会话数").register(registry);
+        Gauge.builder("xiaozhi.webchat.sessions.streaming", this, WebChatService::countStreaming)
+                .description("正在流式回复的会话数").register(registry);
+        FunctionCounter.builder("xiaozhi.webchat.evictions", idleEvicted, AtomicLong::get)
+                .tag("reason", "idle").register(registry);
+        FunctionCounter.builder("xiaozhi.webchat.evictions", overflowEvicted, AtomicLong::get)
+                .tag("reason", "overflow").register(registry);
+    }
+
+    private int countStreaming() {
+        int streaming = 0;
+        for (WebChatSession session : sessions.values()) {
+            if (session.streaming.get() > 0) {
+                streaming++;
+            }
+        }
+        return streaming;
+    }
+
+    @PostConstruct
+    public void init() {
+        evictor.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        evictor.shutdownNow();
+        log.info("Web 聊天会话存储已关闭 - 会话数: {}", sessions.size());
+    }
 
     /**
      * 开启一个 Web 聊天会话。
@@ -95,11 +169,8 @@ public class WebChatService {
                 .sessionId(sessionId)
                 .sessionScoped(true)
                 .build();
-        conversations.put(sessionId, conversation);
-
-        // 初始化 ChatModel
-        ChatModel chatModel = chatModelFactory.getChatModel(role);
-        chatModels.put(sessionId, chatModel);
+        evictOverflow();
+        sessions.put(sessionId, new WebChatSession(conversation, role));
 
         log.info("Web 聊天会话已创建: sessionId={}, userId={}, roleId={}, resume={}",
                 sessionId, userId, roleId, StringUtils.hasText(resumeSessionId));
@@ -115,12 +186,13 @@ public class WebChatService {
 
     /**
      * 校验待续接的 sessionId 归属于当前用户的 Web 会话。
+     * 没有任何消息的会话（开启后未发言即被淘汰）没有可泄露的数据，按新会话处理。
      * 存在不匹配时抛出 IllegalArgumentException。
      */
     private void assertSessionOwnedByUser(String sessionId, Integer userId) {
         List<MessageBO> recent = messageService.listHistory(sessionId, 1);
         if (recent.isEmpty()) {
-            throw new IllegalArgumentException("会话不存在或已清除: " + sessionId);
+            return;
         }
         MessageBO first = recent.get(0);
         if (!MessageBO.SOURCE_WEB.equals(first.getSource())) {
@@ -135,16 +207,24 @@ public class WebChatService {
      * 流式聊天：接收用户文本，返回 AI 回复的 ChatToken 流（包含思考过程和正式回复），
      * 并在完成时持久化 user/assistant 两条消息。
      *
+     * 会话已被淘汰时按 sessionId 从数据库透明续接，前端无需重新开启。
+     *
+     * @param userId    当前登录用户ID
+     * @param roleId    前端当前角色，会话无历史消息时用于续接，可为 null
      * @param sessionId 会话 ID
      * @param text      用户输入文本
      * @return ChatToken 流，前端可根据 type 区分 thinking/content
      */
-    public Flux<ChatToken> chatStream(String sessionId, String text) {
-        Conversation conversation = conversations.get(sessionId);
-        ChatModel chatModel = chatModels.get(sessionId);
-        if (conversation == null || chatModel == null) {
-            return Flux.error(new IllegalStateException("会话不存在或已过期: " + sessionId));
+    public Flux<ChatToken> chatStream(Integer userId, Integer roleId, String sessionId, String text) {
+        WebChatSession session;
+        try {
+            session = getOrReopen(userId, roleId, sessionId);
+        } catch (IllegalArgumentException e) {
+            return Flux.error(e);
         }
+        session.lastAccess = System.currentTimeMillis();
+        Conversation conversation = session.conversation;
+        ChatModel chatModel = chatModelFactory.getChatModel(session.role);
 
         // Web 场景：裸文本 UserMessage + 时间戳 metadata；
         // Conversation 投影层会在送 LLM 前拼出 [时间戳] 文本 的前缀。
@@ -163,6 +243,8 @@ public class WebChatService {
         StringBuilder fullResponse = new StringBuilder();
 
         return chatModel.stream(prompt)
+                // 订阅时才计数，未订阅或订阅前取消的流不会让计数泄漏
+                .doOnSubscribe(subscription -> session.streaming.incrementAndGet())
                 .mapNotNull(ChatResponse::getResult)
                 .mapNotNull(Generation::getOutput)
                 .flatMap(message -> {
@@ -192,7 +274,36 @@ public class WebChatService {
                     // 持久化裸文本（元数据由 Conversation 投影层按需拼前缀，DB 保持干净）
                     persistTurn(conversation, text, userCreatedAt, reply, LocalDateTime.now());
                 })
-                .doOnError(e -> log.error("Web 聊天流式响应失败: sessionId={}", sessionId, e));
+                .doOnError(e -> log.error("Web 聊天流式响应失败: sessionId={}", sessionId, e))
+                .doFinally(signal -> {
+                    session.streaming.decrementAndGet();
+                    session.lastAccess = System.currentTimeMillis();
+                });
+    }
+
+    /**
+     * 取出内存中的会话；已被淘汰时续接：角色优先取历史消息中的角色，没有历史时使用前端传入的角色
+     */
+    private WebChatSession getOrReopen(Integer userId, Integer roleId, String sessionId) {
+        WebChatSession session = sessions.get(sessionId);
+        if (session != null) {
+            if (!userId.equals(session.conversation.getUserId())) {
+                throw new IllegalArgumentException("会话不属于当前用户: " + sessionId);
+            }
+            return session;
+        }
+        List<MessageBO> recent = messageService.listHistory(sessionId, 1);
+        Integer resumeRoleId = recent.isEmpty() ? roleId : recent.get(0).getRoleId();
+        if (resumeRoleId == null) {
+            throw new IllegalArgumentException("会话不存在或已过期: " + sessionId);
+        }
+        log.info("Web 聊天会话不在内存中，从数据库续接: sessionId={}", sessionId);
+        openSession(userId, resumeRoleId, sessionId);
+        session = sessions.get(sessionId);
+        if (session == null) {
+            throw new IllegalArgumentException("会话不存在或已过期: " + sessionId);
+        }
+        return session;
     }
 
     /**
@@ -204,7 +315,7 @@ public class WebChatService {
         try {
             MessageBO userBO = buildMessageBO(conversation, MessageBO.SENDER_USER, userText, userCreatedAt);
             MessageBO assistantBO = buildMessageBO(conversation, MessageBO.SENDER_ASSISTANT, assistantText, assistantCreatedAt);
-            messageService.saveAll(List.of(userBO, assistantBO));
+            messageService.saveAllAsync(List.of(userBO, assistantBO));
         } catch (Exception e) {
             log.error("Web 聊天消息持久化失败: sessionId={}", conversation.sessionId(), e);
         }
@@ -228,8 +339,7 @@ public class WebChatService {
      * 关闭 Web 聊天会话，释放资源
      */
     public void closeSession(String sessionId) {
-        conversations.remove(sessionId);
-        chatModels.remove(sessionId);
+        sessions.remove(sessionId);
         log.info("Web 聊天会话已关闭: sessionId={}", sessionId);
     }
 
@@ -237,6 +347,48 @@ public class WebChatService {
      * 检查会话是否存在
      */
     public boolean hasSession(String sessionId) {
-        return conversations.containsKey(sessionId);
+        return sessions.containsKey(sessionId);
+    }
+
+    /**
+     * 淘汰空闲超时的会话，正在流式回复的会话跳过
+     */
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+        int evicted = 0;
+        for (Map.Entry<String, WebChatSession> entry : sessions.entrySet()) {
+            WebChatSession session = entry.getValue();
+            if (session.streaming.get() == 0 && session.lastAccess < deadline
+                    && sessions.remove(entry.getKey(), session)) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            idleEvicted.addAndGet(evicted);
+            log.info("已淘汰 {} 个空闲 Web 聊天会话，剩余: {}", evicted, sessions.size());
+        }
+    }
+
+    /**
+     * 会话数达到上限时淘汰最久未访问的空闲会话，只在新建会话时执行
+     */
+    private void evictOverflow() {
+        while (sessions.size() >= maxSessions) {
+            Map.Entry<String, WebChatSession> oldest = null;
+            for (Map.Entry<String, WebChatSession> entry : sessions.entrySet()) {
+                if (entry.getValue().streaming.get() == 0
+                        && (oldest == null || entry.getValue().lastAccess < oldest.getValue().lastAccess)) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                // 全部会话都在回复中，暂时允许超出
+                return;
+            }
+            if (sessions.remove(oldest.getKey(), oldest.getValue())) {
+                overflowEvicted.incrementAndGet();
+                log.info("Web 聊天会话数达到上限 {}，淘汰最久未访问的会话: sessionId={}", maxSessions, oldest.getKey());
+            }
+        }
     }
 }
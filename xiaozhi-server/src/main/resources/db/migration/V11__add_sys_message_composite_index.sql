@@ -0,0 +1,14 @@
+-- sys_message 复合索引，消除按设备/会话/用户查询时的 filesort
+-- 历史上下文：WHERE deviceId=? AND roleId=? ORDER BY createTime DESC LIMIT n
+-- Web 会话历史、会话标题、音频路径回写：WHERE sessionId=? ORDER BY createTime
+-- 管理端消息/会话列表：WHERE userId=? ORDER BY createTime DESC, messageId DESC（游标翻页）
+-- InnoDB 二级索引隐式包含主键 messageId，(createTime, messageId) 的排序与游标比较都能走索引。
+-- 原单列索引 deviceId/sessionId/userId 是新索引的最左前缀，一并删除以减少写放大。
+
+ALTER TABLE `sys_message`
+    ADD INDEX `idx_device_role_time` (`deviceId`, `roleId`, `createTime`),
+    ADD INDEX `idx_session_time` (`sessionId`, `createTime`),
+    ADD INDEX `idx_user_time` (`userId`, `createTime`),
+    DROP INDEX `deviceId`,
+    DROP INDEX `sessionId`,
+    DROP INDEX `userId`;
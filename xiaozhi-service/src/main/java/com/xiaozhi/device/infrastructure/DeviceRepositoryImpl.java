@@ -1,7 +1,6 @@
 package com.xiaozhi.device.infrastructure;
 
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
-import com.xiaozhi.common.CacheHelper;
 import com.xiaozhi.common.model.bo.DeviceBO;
 import com.xiaozhi.common.model.bo.VerifyCodeBO;
 import com.xiaozhi.device.dal.mysql.dataobject.DeviceDO;
@@ -50,19 +49,13 @@ public class DeviceRepositoryImpl implements DeviceRepository {
     @Resource
     private CacheManager cacheManager;
 
-    @Resource
-    private CacheHelper cacheHelper;
-
     @Override
     public Optional<Device> findById(String deviceId) {
         if (deviceId == null || deviceId.isBlank()) return Optional.empty();
         String cacheKey = deviceId.replace(":", "-");
         Cache cache = cacheManager.getCache(DeviceService.CACHE_NAME);
-        DeviceBO cached = cacheHelper.getWithLock(
-                "device:" + cacheKey,
-                () -> cache == null ? null : cache.get(cacheKey, DeviceBO.class),
-                () -> null
-        );
+        // 未命中时直接查库，不写缓存，无需分布式锁
+        DeviceBO cached = cache == null ? null : cache.get(cacheKey, DeviceBO.class);
         if (cached != null) {
             return Optional.of(deviceConverter.toDomain(toDeviceDO(cached)));
         }
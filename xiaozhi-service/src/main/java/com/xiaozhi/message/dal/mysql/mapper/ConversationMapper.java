@@ -6,11 +6,24 @@ import com.xiaozhi.common.model.resp.ConversationResp;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
+
 @Mapper
 public interface ConversationMapper {
 
+    /**
+     * 按 sessionId 聚合的会话列表，按最近更新时间倒序。
+     * lastSessionId 与 lastUpdateTime 同时传入时按游标（keyset）翻页。
+     */
     IPage<ConversationResp> selectConversationPage(Page<ConversationResp> page,
                                                    @Param("userId") Integer userId,
                                                    @Param("roleId") Integer roleId,
-                                                   @Param("source") String source);
+                                                   @Param("source") String source,
+                                                   @Param("lastSessionId") String lastSessionId,
+                                                   @Param("lastUpdateTime") LocalDateTime lastUpdateTime);
+
+    /**
+     * 会话最近一条有效消息的时间，用于定位会话列表的翻页游标
+     */
+    LocalDateTime selectLastActiveTime(@Param("sessionId") String sessionId);
 }
@@ -8,11 +8,17 @@ import com.xiaozhi.message.dal.mysql.dataobject.MessageDO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.Date;
+import java.util.List;
 
 @Mapper
 public interface MessageMapper extends BaseMapper<MessageDO> {
 
+    /**
+     * 分页查询消息，按 createTime、messageId 倒序。
+     * lastMessageId 与 lastCreateTime 同时传入时按游标（keyset）翻页，只返回排在该消息之后的记录。
+     */
     IPage<MessageResp> selectPageResp(Page<MessageResp> page,
                                       @Param("deviceId") String deviceId,
                                       @Param("deviceName") String deviceName,
@@ -23,5 +29,12 @@ public interface MessageMapper extends BaseMapper<MessageDO> {
                                       @Param("endTime") Date endTime,
                                       @Param("userId") Integer userId,
                                       @Param("sessionId") String sessionId,
-                                      @Param("source") String source);
+                                      @Param("source") String source,
+                                      @Param("lastMessageId") Long lastMessageId,
+                                      @Param("lastCreateTime") LocalDateTime lastCreateTime);
+
+    /**
+     * 多行 VALUES 批量插入，一条语句写入一批消息
+     */
+    int insertBatch(@Param("list") List<MessageDO> list);
 }
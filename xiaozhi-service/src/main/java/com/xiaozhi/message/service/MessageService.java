@@ -12,12 +12,20 @@ import java.util.List;
 
 public interface MessageService {
 
+    /**
+     * 分页查询消息。传入 lastMessageId 时按游标翻页：返回排在该消息之后的 pageSize 条，
+     * 不做 OFFSET 也不统计总数（total 为 null），pageNo 被忽略。
+     */
     PageResp<MessageResp> page(int pageNo, int pageSize, String deviceId, String deviceName,
                                String sender, String messageType, Integer roleId,
                                Date startTime, Date endTime, Integer userId, String sessionId,
-                               String source);
+                               String source, Long lastMessageId);
 
-    PageResp<ConversationResp> conversationPage(int pageNo, int pageSize, Integer userId, Integer roleId, String source);
+    /**
+     * 会话列表。传入 lastSessionId 时按游标翻页，语义同 {@link #page}。
+     */
+    PageResp<ConversationResp> conversationPage(int pageNo, int pageSize, Integer userId, Integer roleId, String source,
+                                                String lastSessionId);
 
     void delete(Integer messageId);
 
@@ -27,6 +35,12 @@ public interface MessageService {
 
     int saveAll(List<MessageBO> messages);
 
+    /**
+     * 异步批量写入：消息进入写缓冲后立即返回，由后台跨会话合并成批插入。
+     * 本接口的历史查询与更新方法会先等待缓冲写完，仍能读到刚提交的消息。
+     */
+    void saveAllAsync(List<MessageBO> messages);
+
     /**
      * 按 ownerId（deviceId）+ roleId 查询最近 limit 条历史消息，按时间升序返回（即会话上下文顺序）。
      * 适用于设备场景（跨 session 聚合）。
@@ -42,9 +56,16 @@ public interface MessageService {
     List<MessageBO> listHistoryAfter(String deviceId, Integer roleId, Instant time);
 
     /**
-     * 更新 assistant 消息的音频路径，并更新关联的 metrics 记录中的 ttsDuration。
+     * 音频异步上传完成后，把会话内仍指向本地路径的消息替换为存储服务返回的路径。
+     *
+     * @return 更新的行数，消息尚未入库时为 0
+     */
+    int updateAudioPath(String sessionId, String localPath, String storedPath);
+
+    /**
+     * 录音未能生成时，清除会话内指向该本地路径的消息的录音路径。
+     *
+     * @return 更新的行数
      */
-    void updateAssistantAudio(String deviceId, Integer roleId,
-                              LocalDateTime createTime, String audioPath,
-                              java.math.BigDecimal ttsDuration);
+    int clearAudioPath(String sessionId, String localPath);
 }
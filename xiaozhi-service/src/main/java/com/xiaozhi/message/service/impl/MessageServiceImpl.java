@@ -22,7 +22,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
-import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.LocalDate;
@@ -50,21 +49,47 @@ public class MessageServiceImpl implements MessageService {
     @Resource
     private ConversationMapper conversationMapper;
 
+    @Resource
+    private MessageWriteBehind messageWriteBehind;
+
     @Override
     public PageResp<MessageResp> page(int pageNo, int pageSize, String deviceId, String deviceName,
                                       String sender, String messageType, Integer roleId,
                                       Date startTime, Date endTime, Integer userId, String sessionId,
-                                      String source) {
-        Page<MessageResp> page = new Page<>(pageNo, pageSize);
-        IPage<MessageResp> iPage = messageMapper.selectPageResp(page, deviceId, deviceName, sender, messageType, roleId, startTime, endTime, userId, sessionId, source);
-        return new PageResp<>(iPage.getRecords(), iPage.getTotal(), pageNo, pageSize);
+                                      String source, Long lastMessageId) {
+        if (lastMessageId == null) {
+            Page<MessageResp> page = new Page<>(pageNo, pageSize);
+            IPage<MessageResp> iPage = messageMapper.selectPageResp(page, deviceId, deviceName, sender, messageType,
+                roleId, startTime, endTime, userId, sessionId, source, null, null);
+            return new PageResp<>(iPage.getRecords(), iPage.getTotal(), pageNo, pageSize);
+        }
+        // 游标翻页：定位游标消息的 createTime，按 (createTime, messageId) 取之后的一页，不跑 COUNT
+        MessageDO cursor = messageMapper.selectById(lastMessageId);
+        if (cursor == null || cursor.getCreateTime() == null) {
+            return new PageResp<>(Collections.emptyList(), null, pageNo, pageSize);
+        }
+        Page<MessageResp> page = new Page<>(1, pageSize, false);
+        IPage<MessageResp> iPage = messageMapper.selectPageResp(page, deviceId, deviceName, sender, messageType,
+            roleId, startTime, endTime, userId, sessionId, source, lastMessageId, cursor.getCreateTime());
+        return new PageResp<>(iPage.getRecords(), null, pageNo, pageSize);
     }
 
     @Override
-    public PageResp<ConversationResp> conversationPage(int pageNo, int pageSize, Integer userId, Integer roleId, String source) {
-        Page<ConversationResp> page = new Page<>(pageNo, pageSize);
-        IPage<ConversationResp> iPage = conversationMapper.selectConversationPage(page, userId, roleId, source);
-        return new PageResp<>(iPage.getRecords(), iPage.getTotal(), pageNo, pageSize);
+    public PageResp<ConversationResp> conversationPage(int pageNo, int pageSize, Integer userId, Integer roleId, String source,
+                                                       String lastSessionId) {
+        if (!StringUtils.hasText(lastSessionId)) {
+            Page<ConversationResp> page = new Page<>(pageNo, pageSize);
+            IPage<ConversationResp> iPage = conversationMapper.selectConversationPage(page, userId, roleId, source, null, null);
+            return new PageResp<>(iPage.getRecords(), iPage.getTotal(), pageNo, pageSize);
+        }
+        LocalDateTime lastUpdateTime = conversationMapper.selectLastActiveTime(lastSessionId);
+        if (lastUpdateTime == null) {
+            return new PageResp<>(Collections.emptyList(), null, pageNo, pageSize);
+        }
+        Page<ConversationResp> page = new Page<>(1, pageSize, false);
+        IPage<ConversationResp> iPage = conversationMapper.selectConversationPage(page, userId, roleId, source,
+            lastSessionId, lastUpdateTime);
+        return new PageResp<>(iPage.getRecords(), null, pageNo, pageSize);
     }
 
     @Override
@@ -96,6 +121,8 @@ public class MessageServiceImpl implements MessageService {
         if (!StringUtils.hasText(deviceId)) {
             return 0;
         }
+        // 先写完该设备缓冲中的消息，避免删除后又被写入
+        messageWriteBehind.awaitFlushDevice(deviceId);
 
         String audioDeviceId = deviceId.replace(":", "-");
         LocalDate today = LocalDate.now();
@@ -131,10 +158,24 @@ public class MessageServiceImpl implements MessageService {
         if (messages == null || messages.isEmpty()) {
             return 0;
         }
+        return messageMapper.insertBatch(toInsertRows(messages));
+    }
+
+    @Override
+    public void saveAllAsync(List<MessageBO> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        messageWriteBehind.submit(toInsertRows(messages));
+    }
 
+    /**
+     * 补齐插入所需的默认值。批量插入会写入所有列，数据库列默认值不再生效，需在这里显式设置
+     */
+    private List<MessageDO> toInsertRows(List<MessageBO> messages) {
         LocalDateTime now = LocalDateTime.now();
         LocalDate today = LocalDate.now();
-        int rows = 0;
+        List<MessageDO> rows = new ArrayList<>(messages.size());
         for (MessageBO message : messages) {
             MessageDO messageDO = messageConvert.toDO(message);
             if (!StringUtils.hasText(messageDO.getState())) {
@@ -143,6 +184,9 @@ public class MessageServiceImpl implements MessageService {
             if (!StringUtils.hasText(messageDO.getMessageType())) {
                 messageDO.setMessageType(MessageBO.MESSAGE_TYPE_NORMAL);
             }
+            if (!StringUtils.hasText(messageDO.getSource())) {
+                messageDO.setSource(MessageBO.SOURCE_DEVICE);
+            }
             if (messageDO.getCreateTime() == null) {
                 messageDO.setCreateTime(now);
             }
@@ -152,9 +196,7 @@ public class MessageServiceImpl implements MessageService {
             if (messageDO.getStatDate() == null) {
                 messageDO.setStatDate(today);
             }
-            if (messageMapper.insert(messageDO) > 0) {
-                rows++;
-            }
+            rows.add(messageDO);
         }
         return rows;
     }
@@ -164,6 +206,8 @@ public class MessageServiceImpl implements MessageService {
         if (!StringUtils.hasText(deviceId) || roleId == null || limit <= 0) {
             return Collections.emptyList();
         }
+        // 先写完该设备缓冲中的消息，保证读到最近几轮对话
+        messageWriteBehind.awaitFlushDevice(deviceId);
         List<MessageBO> desc = messageMapper.selectList(new LambdaQueryWrapper<MessageDO>()
                 .eq(MessageDO::getState, MessageBO.STATE_ENABLED)
                 .eq(MessageDO::getDeviceId, deviceId)
@@ -183,6 +227,7 @@ public class MessageServiceImpl implements MessageService {
         if (!StringUtils.hasText(sessionId) || limit <= 0) {
             return Collections.emptyList();
         }
+        messageWriteBehind.awaitFlushSession(sessionId);
         List<MessageBO> desc = messageMapper.selectList(new LambdaQueryWrapper<MessageDO>()
                 .eq(MessageDO::getState, MessageBO.STATE_ENABLED)
                 .eq(MessageDO::getSessionId, sessionId)
@@ -201,6 +246,7 @@ public class MessageServiceImpl implements MessageService {
         if (!StringUtils.hasText(deviceId) || roleId == null || time == null) {
             return Collections.emptyList();
         }
+        messageWriteBehind.awaitFlushDevice(deviceId);
         LocalDateTime createTime = LocalDateTime.ofInstant(time, ZoneId.systemDefault());
         return messageMapper.selectList(new LambdaQueryWrapper<MessageDO>()
                 .eq(MessageDO::getState, MessageBO.STATE_ENABLED)
@@ -215,35 +261,31 @@ public class MessageServiceImpl implements MessageService {
     }
 
     @Override
-    @Transactional
-    public void updateAssistantAudio(String deviceId, Integer roleId,
-                                     LocalDateTime createTime, String audioPath,
-                                     BigDecimal ttsDuration) {
-        if (!StringUtils.hasText(deviceId) || roleId == null || createTime == null) {
-            return;
-        }
-
-        // 1. 找到 assistant 消息的 messageId
-        LambdaQueryWrapper<MessageDO> query = new LambdaQueryWrapper<MessageDO>()
-            .eq(MessageDO::getDeviceId, deviceId)
-            .eq(MessageDO::getRoleId, roleId)
-            .eq(MessageDO::getSender, MessageBO.SENDER_ASSISTANT)
-            .eq(MessageDO::getMessageType, MessageBO.MESSAGE_TYPE_NORMAL)
-            .eq(MessageDO::getCreateTime, createTime)
-            .select(MessageDO::getMessageId);
-        MessageDO messageDO = messageMapper.selectOne(query);
-        if (messageDO == null) {
-            return;
+    public int updateAudioPath(String sessionId, String localPath, String storedPath) {
+        if (!StringUtils.hasText(sessionId) || !StringUtils.hasText(localPath) || !StringUtils.hasText(storedPath)) {
+            return 0;
         }
+        // 等待该会话缓冲中的消息写入，上传可能在消息入库前完成
+        messageWriteBehind.awaitFlushSession(sessionId);
+        // sessionId 有索引，audioPath 只在单个会话内过滤
+        return messageMapper.update(null, new LambdaUpdateWrapper<MessageDO>()
+            .eq(MessageDO::getSessionId, sessionId)
+            .eq(MessageDO::getAudioPath, localPath)
+            .set(MessageDO::getAudioPath, storedPath)
+            .set(MessageDO::getUpdateTime, LocalDateTime.now()));
+    }
 
-        // 2. 更新 audioPath
-        if (StringUtils.hasText(audioPath)) {
-            LambdaUpdateWrapper<MessageDO> msgUpdate = new LambdaUpdateWrapper<MessageDO>()
-                .eq(MessageDO::getMessageId, messageDO.getMessageId())
-                .set(MessageDO::getAudioPath, audioPath)
-                .set(MessageDO::getUpdateTime, LocalDateTime.now());
-            messageMapper.update(null, msgUpdate);
+    @Override
+    public int clearAudioPath(String sessionId, String localPath) {
+        if (!StringUtils.hasText(sessionId) || !StringUtils.hasText(localPath)) {
+            return 0;
         }
+        messageWriteBehind.awaitFlushSession(sessionId);
+        return messageMapper.update(null, new LambdaUpdateWrapper<MessageDO>()
+            .eq(MessageDO::getSessionId, sessionId)
+            .eq(MessageDO::getAudioPath, localPath)
+            .set(MessageDO::getAudioPath, null)
+            .set(MessageDO::getUpdateTime, LocalDateTime.now()));
     }
 
 }
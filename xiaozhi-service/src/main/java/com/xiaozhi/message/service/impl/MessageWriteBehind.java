@@ -0,0 +1,266 @@
+package com.xiaozhi.message.service.impl;
+
+import com.xiaozhi.message.dal.mysql.dataobject.MessageDO;
+import com.xiaozhi.message.dal.mysql.mapper.MessageMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+/**
+ * 对话消息的异步批量写入（write-behind）。
+ *
+ * 各会话每轮对话结束时只把消息行放入缓冲，由单个写线程跨会话合并后以多行 VALUES 批量插入：
+ * - 缓冲达到 batch-size 或距上次写入超过 flush-interval-ms 时写入
+ * - 缓冲有界，MySQL 变慢时入队阻塞形成背压，超时后退回调用方线程同步写入
+ * - 缓冲中的行按 sessionId / deviceId 分别计数，需要读到最新消息的操作调用 {@link #awaitFlushSession} 或
+ *   {@link #awaitFlushDevice}，只等待同一会话/设备的消息写入；该会话/设备没有缓冲消息时立即返回
+ * - 关闭时写完剩余消息
+ */
+@Slf4j
+@Component
+public class MessageWriteBehind {
+
+    @Value("${xiaozhi.message.write-behind.enabled:true}")
+    private boolean enabled;
+
+    @Value("${xiaozhi.message.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${xiaozhi.message.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${xiaozhi.message.write-behind.capacity:10000}")
+    private int capacity;
+
+    /**
+     * 缓冲已满时入队的最长等待时间
+     */
+    @Value("${xiaozhi.message.write-behind.enqueue-timeout-ms:2000}")
+    private long enqueueTimeoutMs;
+
+    @Resource
+    private MessageMapper messageMapper;
+
+    private BlockingQueue<MessageDO> pending;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeup = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    // 以下状态只在 lock 内修改
+    // 缓冲中尚未写入的行数，键为 s:{sessionId} / d:{deviceId}，计数归零即移除
+    private final Map<String, Integer> pendingByKey = new HashMap<>();
+    private long writtenCount;
+    private boolean flushRequested;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        pending = new LinkedBlockingQueue<>(capacity);
+        running = true;
+        writer = Thread.ofPlatform().name("message-writer").daemon(true).start(this::writeLoop);
+        log.info("消息批量写入已启用 - 批量: {}, 间隔: {}ms, 容量: {}", batchSize, flushIntervalMs, capacity);
+    }
+
+    /**
+     * 提交待写入的消息行，立即返回。缓冲已满时阻塞等待，超时后在当前线程同步写入。
+     */
+    public void submit(List<MessageDO> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (!enabled || !running) {
+            write(rows);
+            return;
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            MessageDO row = rows.get(i);
+            // 先计数再入队：写线程扣减时计数一定已存在
+            track(row, 1);
+            boolean accepted;
+            try {
+                accepted = pending.offer(row, enqueueTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                accepted = false;
+            }
+            if (!accepted) {
+                track(row, -1);
+                log.warn("消息写入缓冲已满，同步写入剩余 {} 条", rows.size() - i);
+                write(rows.subList(i, rows.size()));
+                return;
+            }
+        }
+        if (pending.size() >= batchSize) {
+            lock.lock();
+            try {
+                wakeup.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 等待该会话缓冲中的消息写入，保证之后按 sessionId 的查询和更新能看到这些消息
+     */
+    public void awaitFlushSession(String sessionId) {
+        if (sessionId != null) {
+            awaitFlush(sessionKey(sessionId));
+        }
+    }
+
+    /**
+     * 等待该设备缓冲中的消息写入，保证之后按 deviceId 的查询和更新能看到这些消息
+     */
+    public void awaitFlushDevice(String deviceId) {
+        if (deviceId != null) {
+            awaitFlush(deviceKey(deviceId));
+        }
+    }
+
+    private void awaitFlush(String key) {
+        if (!enabled || !running) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (!pendingByKey.containsKey(key)) {
+                return;
+            }
+            flushRequested = true;
+            wakeup.signal();
+            long nanos = TimeUnit.SECONDS.toNanos(5);
+            while (pendingByKey.containsKey(key) && nanos > 0) {
+                nanos = flushed.awaitNanos(nanos);
+            }
+            Integer remaining = pendingByKey.get(key);
+            if (remaining != null) {
+                log.warn("等待消息写入超时 - {}，仍有 {} 条未写入", key, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void track(MessageDO row, int delta) {
+        lock.lock();
+        try {
+            trackLocked(row, delta);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void trackLocked(MessageDO row, int delta) {
+        if (row.getSessionId() != null) {
+            adjust(sessionKey(row.getSessionId()), delta);
+        }
+        if (row.getDeviceId() != null) {
+            adjust(deviceKey(row.getDeviceId()), delta);
+        }
+    }
+
+    private void adjust(String key, int delta) {
+        if (delta > 0) {
+            pendingByKey.merge(key, delta, Integer::sum);
+        } else {
+            pendingByKey.computeIfPresent(key, (k, count) -> count + delta > 0 ? count + delta : null);
+        }
+    }
+
+    private static String sessionKey(String sessionId) {
+        return "s:" + sessionId;
+    }
+
+    private static String deviceKey(String deviceId) {
+        return "d:" + deviceId;
+    }
+
+    private void writeLoop() {
+        List<MessageDO> batch = new ArrayList<>(batchSize);
+        while (running || !pending.isEmpty()) {
+            lock.lock();
+            try {
+                if (running && !flushRequested && pending.size() < batchSize) {
+                    wakeup.await(flushIntervalMs, TimeUnit.MILLISECONDS);
+                }
+                flushRequested = false;
+            } catch (InterruptedException e) {
+                // 关闭时被中断，继续写完剩余消息
+            } finally {
+                lock.unlock();
+            }
+            while (pending.drainTo(batch, batchSize) > 0) {
+                write(batch);
+                lock.lock();
+                try {
+                    writtenCount += batch.size();
+                    for (MessageDO row : batch) {
+                        trackLocked(row, -1);
+                    }
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 批量插入；整批失败时逐行重试，避免一条坏数据拖累整批
+     */
+    void write(List<MessageDO> rows) {
+        try {
+            messageMapper.insertBatch(rows);
+        } catch (Exception e) {
+            log.warn("批量写入消息失败，改为逐行写入 - 条数: {}, 原因: {}", rows.size(), e.getMessage());
+            for (MessageDO row : rows) {
+                try {
+                    messageMapper.insert(row);
+                } catch (Exception ex) {
+                    log.error("消息持久化失败 - SessionId: {}", row.getSessionId(), ex);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try {
+            wakeup.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("消息批量写入已停止 - 累计写入: {}", writtenCount);
+    }
+}
@@ -0,0 +1,413 @@
+package com.xiaozhi.storage.service;
+
+import com.xiaozhi.common.config.RuntimePathConfig;
+import com.xiaozhi.message.service.MessageService;
+import com.xiaozhi.storage.service.impl.LocalStorageService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+/**
+ * 对话音频异步上传队列。
+ *
+ * 对话链路只负责把本地音频登记到队列后立即返回，消息先以本地路径入库；
+ * 后台上传完成后，再把会话内引用该本地路径的消息替换为存储服务返回的路径。
+ *
+ * - 有界队列：队列满时任务不入队，清单保留在 spool 目录，由定期扫描重新入队
+ * - 固定数量的上传线程，限制对 COS/OSS 的并发
+ * - 失败按指数退避重试；消息尚未入库时同样退避后重新回填。达到最大次数后同样保留清单交给定期扫描，
+ *   只有清单超过 max-age 仍未完成才放弃，消息保留本地路径
+ * - 每个任务在本地 spool 目录落一份清单，进程重启后继续未完成的上传
+ * - 积压、处理中任务数与入队到回填完成的延迟以 xiaozhi.upload.* 指标暴露
+ */
+@Slf4j
+@Component
+public class AudioUploadQueue implements MeterBinder {
+
+    private static final String TASK_SUFFIX = ".task";
+    private static final String DATA_SUFFIX = ".data";
+
+    @Value("${xiaozhi.upload.queue.capacity:1000}")
+    private int capacity;
+
+    @Value("${xiaozhi.upload.queue.concurrency:4}")
+    private int concurrency;
+
+    /**
+     * 单个任务的最大尝试次数（上传与消息回填分别计数）
+     */
+    @Value("${xiaozhi.upload.queue.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${xiaozhi.upload.queue.backoff-ms:1000}")
+    private long backoffMs;
+
+    @Value("${xiaozhi.upload.queue.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    /**
+     * 扫描 spool 目录、重新入队滞留清单的间隔
+     */
+    @Value("${xiaozhi.upload.queue.rescan-ms:300000}")
+    private long rescanMs;
+
+    /**
+     * 清单的最长保留时间，超过后放弃上传
+     */
+    @Value("${xiaozhi.upload.queue.max-age-ms:86400000}")
+    private long maxAgeMs;
+
+    @Resource
+    private StorageServiceFactory storageServiceFactory;
+
+    @Resource
+    private MessageService messageService;
+
+    @Resource
+    private RuntimePathConfig runtimePathConfig;
+
+    private BlockingQueue<UploadTask> queue;
+    private ScheduledThreadPoolExecutor retryScheduler;
+    private final List<Thread> workers = new ArrayList<>();
+    private Path spoolDir;
+
+    // 已入队或等待重试的任务 ID，扫描时跳过
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong uploaded = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // 回填完成的任务数与创建到回填完成的累计时间
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+
+    private static final class UploadTask {
+        final String id;
+        final String sessionId;
+        final String localPath;
+        final String objectKey;
+        volatile String storedPath;
+        volatile int attempts;
+        final long createdAt;
+        final long enqueuedAt = System.currentTimeMillis();
+
+        UploadTask(String id, String sessionId, String localPath, String objectKey, long createdAt) {
+            this.id = id;
+            this.sessionId = sessionId;
+            this.localPath = localPath;
+            this.objectKey = objectKey;
+            this.createdAt = createdAt;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("xiaozhi.upload.queued", this, q -> q.queue == null ? 0 : q.queue.size())
+                .description("等待上传线程的任务数").register(registry);
+        Gauge.builder("xiaozhi.upload.in-flight", inFlight, Set::size)
+                .description("已入队或等待重试的任务数").register(registry);
+        FunctionCounter.builder("xiaozhi.upload.tasks", enqueued, AtomicLong::get)
+                .tag("result", "enqueued").register(registry);
+        FunctionCounter.builder("xiaozhi.upload.tasks", uploaded, AtomicLong::get)
+                .tag("result", "uploaded").register(registry);
+        FunctionCounter.builder("xiaozhi.upload.tasks", retried, AtomicLong::get)
+                .tag("result", "retried").register(registry);
+        FunctionCounter.builder("xiaozhi.upload.tasks", failed, AtomicLong::get)
+                .tag("result", "failed").register(registry);
+        FunctionCounter.builder("xiaozhi.upload.tasks", dropped, AtomicLong::get)
+                .tag("result", "queue-full").register(registry);
+        FunctionTimer.builder("xiaozhi.upload.latency", this,
+                        q -> q.completed.get(), q -> q.totalLatencyMs.get(), TimeUnit.MILLISECONDS)
+                .description("任务创建到消息回填完成的时间").register(registry);
+    }
+
+    @PostConstruct
+    public void init() {
+        queue = new LinkedBlockingQueue<>(capacity);
+        retryScheduler = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("upload-retry").daemon(true).factory());
+        spoolDir = runtimePathConfig.resolveAudioDir().resolve("upload-spool");
+        try {
+            Files.createDirectories(spoolDir);
+        } catch (IOException e) {
+            log.warn("创建上传 spool 目录失败，任务不会在重启后恢复: {}", e.getMessage());
+            spoolDir = null;
+        }
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(Thread.ofVirtual().name("audio-upload-" + i).start(this::workLoop));
+        }
+        int recovered = recover();
+        if (spoolDir != null) {
+            retryScheduler.scheduleWithFixedDelay(this::rescan, rescanMs, rescanMs, TimeUnit.MILLISECONDS);
+        }
+        log.info("音频上传队列已启动 - 容量: {}, 并发: {}, 恢复任务: {}", capacity, concurrency, recovered);
+    }
+
+    /**
+     * 登记一个待上传的本地音频文件，立即返回。
+     * 使用本地存储时文件已在最终位置，无需上传。
+     *
+     * @param sessionId 消息所属会话，用于上传完成后回填消息
+     * @param localFile 本地音频文件，同时作为对象键
+     */
+    public void enqueue(String sessionId, Path localFile) {
+        if (sessionId == null || localFile == null) {
+            return;
+        }
+        if (storageServiceFactory.getStorageService() instanceof LocalStorageService) {
+            return;
+        }
+        UploadTask task = new UploadTask(UUID.randomUUID().toString(), sessionId,
+                localFile.toString(), localFile.toString(), System.currentTimeMillis());
+        // 先标记处理中，避免扫描把刚写出的清单重复入队；先落清单再入队，避免任务已完成后才写出清单
+        inFlight.add(task.id);
+        writeManifest(task);
+        if (!offer(task)) {
+            dropped.incrementAndGet();
+            log.warn("音频上传队列已满，清单留待扫描时重新入队: {}", localFile);
+            return;
+        }
+        enqueued.incrementAndGet();
+    }
+
+    private boolean offer(UploadTask task) {
+        inFlight.add(task.id);
+        if (queue.offer(task)) {
+            return true;
+        }
+        inFlight.remove(task.id);
+        return false;
+    }
+
+    private void workLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                process(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("音频上传任务异常: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void process(UploadTask task) {
+        Path local = Path.of(task.localPath);
+        if (task.storedPath == null) {
+            if (!Files.exists(local)) {
+                log.warn("待上传的音频文件不存在，放弃上传: {}", local);
+                finish(task);
+                return;
+            }
+            // 云存储实现无论成败都会删除源文件，上传副本以便失败后重试
+            Path copy = spoolDir != null
+                    ? spoolDir.resolve(task.id + DATA_SUFFIX)
+                    : local.resolveSibling(local.getFileName() + DATA_SUFFIX);
+            try {
+                Files.copy(local, copy, StandardCopyOption.REPLACE_EXISTING);
+                task.storedPath = storageServiceFactory.getStorageService().upload(copy, task.objectKey);
+            } catch (Exception e) {
+                deleteQuietly(copy);
+                retry(task, "上传失败: " + e.getMessage());
+                return;
+            }
+            uploaded.incrementAndGet();
+            task.attempts = 0;
+            writeManifest(task);
+            log.debug("音频上传完成 - 耗时: {}ms, 路径: {}", System.currentTimeMillis() - task.enqueuedAt, task.storedPath);
+        }
+
+        int rows;
+        try {
+            rows = messageService.updateAudioPath(task.sessionId, task.localPath, task.storedPath);
+        } catch (Exception e) {
+            retry(task, "回填消息失败: " + e.getMessage());
+            return;
+        }
+        if (rows == 0) {
+            // 消息在一轮对话结束后才入库，上传可能先完成
+            retry(task, "消息尚未入库");
+            return;
+        }
+        deleteQuietly(local);
+        completed.incrementAndGet();
+        totalLatencyMs.addAndGet(System.currentTimeMillis() - task.createdAt);
+        finish(task);
+    }
+
+    private void retry(UploadTask task, String reason) {
+        int attempt = ++task.attempts;
+        if (attempt >= maxAttempts) {
+            failed.incrementAndGet();
+            inFlight.remove(task.id);
+            if (spoolDir == null || System.currentTimeMillis() - task.createdAt >= maxAgeMs) {
+                log.warn("音频上传任务放弃，消息保留本地路径 - 原因: {}, 文件: {}", reason, task.localPath);
+                finish(task);
+            } else {
+                log.warn("音频上传任务暂停重试，清单留待扫描 - 原因: {}, 文件: {}", reason, task.localPath);
+            }
+            return;
+        }
+        retried.incrementAndGet();
+        long delay = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+        log.debug("音频上传任务 {}ms 后重试 - 原因: {}, 文件: {}", delay, reason, task.localPath);
+        retryScheduler.schedule(() -> requeue(task), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void requeue(UploadTask task) {
+        if (!queue.offer(task)) {
+            retryScheduler.schedule(() -> requeue(task), backoffMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void finish(UploadTask task) {
+        inFlight.remove(task.id);
+        if (spoolDir != null) {
+            deleteQuietly(spoolDir.resolve(task.id + TASK_SUFFIX));
+            deleteQuietly(spoolDir.resolve(task.id + DATA_SUFFIX));
+        }
+    }
+
+    private void rescan() {
+        try {
+            int recovered = recover();
+            if (recovered > 0) {
+                log.info("重新入队滞留的音频上传任务: {}", recovered);
+            }
+        } catch (Exception e) {
+            log.error("扫描音频上传清单失败", e);
+        }
+    }
+
+    /**
+     * 把 spool 目录中不在处理中的清单重新入队：启动时恢复上次进程未完成的任务，
+     * 运行中由定期扫描接回队列满或重试次数用尽的任务。超出队列容量的清单留到下次扫描，超过 max-age 的清单放弃
+     */
+    int recover() {
+        if (spoolDir == null) {
+            return 0;
+        }
+        File[] files = spoolDir.toFile().listFiles((dir, name) -> name.endsWith(TASK_SUFFIX));
+        if (files == null) {
+            return 0;
+        }
+        int recovered = 0;
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            String name = file.getName();
+            if (inFlight.contains(name.substring(0, name.length() - TASK_SUFFIX.length()))) {
+                continue;
+            }
+            UploadTask task = readManifest(file.toPath());
+            if (task == null) {
+                deleteQuietly(file.toPath());
+                continue;
+            }
+            if (now - task.createdAt >= maxAgeMs) {
+                log.warn("音频上传清单过期，放弃上传，消息保留本地路径: {}", task.localPath);
+                finish(task);
+                continue;
+            }
+            if (!offer(task)) {
+                break;
+            }
+            recovered++;
+        }
+        return recovered;
+    }
+
+    private void writeManifest(UploadTask task) {
+        if (spoolDir == null) {
+            return;
+        }
+        Properties props = new Properties();
+        props.setProperty("sessionId", task.sessionId);
+        props.setProperty("localPath", task.localPath);
+        props.setProperty("objectKey", task.objectKey);
+        props.setProperty("createdAt", Long.toString(task.createdAt));
+        if (task.storedPath != null) {
+            props.setProperty("storedPath", task.storedPath);
+        }
+        try (Writer writer = Files.newBufferedWriter(spoolDir.resolve(task.id + TASK_SUFFIX))) {
+            props.store(writer, null);
+        } catch (IOException e) {
+            log.warn("写入上传任务清单失败: {}", e.getMessage());
+        }
+    }
+
+    private UploadTask readManifest(Path file) {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            props.load(reader);
+        } catch (IOException e) {
+            log.warn("读取上传任务清单失败: {}", file, e);
+            return null;
+        }
+        String sessionId = props.getProperty("sessionId");
+        String localPath = props.getProperty("localPath");
+        String objectKey = props.getProperty("objectKey");
+        String createdAtValue = props.getProperty("createdAt");
+        if (sessionId == null || localPath == null || objectKey == null || createdAtValue == null) {
+            return null;
+        }
+        long createdAt;
+        try {
+            createdAt = Long.parseLong(createdAtValue);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String name = file.getFileName().toString();
+        UploadTask task = new UploadTask(name.substring(0, name.length() - TASK_SUFFIX.length()),
+                sessionId, localPath, objectKey, createdAt);
+        task.storedPath = props.getProperty("storedPath");
+        return task;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("删除文件失败: {}", path);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 未完成的任务保留清单，下次启动时继续
+        workers.forEach(Thread::interrupt);
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+        log.info("音频上传队列已停止 - 待上传: {}, 入队: {}, 已上传: {}, 重试: {}, 失败: {}, 队列满: {}",
+                queue.size(), enqueued.get(), uploaded.get(), retried.get(), failed.get(), dropped.get());
+    }
+}
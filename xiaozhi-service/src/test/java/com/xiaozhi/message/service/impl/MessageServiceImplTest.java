@@ -2,21 +2,30 @@ package com.xiaozhi.message.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.xiaozhi.common.exception.ResourceNotFoundException;
 import com.xiaozhi.message.convert.MessageConvert;
 import com.xiaozhi.message.dal.mysql.dataobject.MessageDO;
+import com.xiaozhi.message.dal.mysql.mapper.ConversationMapper;
 import com.xiaozhi.message.dal.mysql.mapper.MessageMapper;
 import com.xiaozhi.support.MybatisPlusTestHelper;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.ApplicationEventPublisher;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -40,6 +49,12 @@ class MessageServiceImplTest {
     @Mock
     private ApplicationEventPublisher eventPublisher;
 
+    @Mock
+    private MessageWriteBehind messageWriteBehind;
+
+    @Mock
+    private ConversationMapper conversationMapper;
+
     @InjectMocks
     private MessageServiceImpl messageService;
 
@@ -78,4 +93,92 @@ class MessageServiceImplTest {
         verify(messageMapper).update(isNull(), any(LambdaUpdateWrapper.class));
         verifyNoInteractions(eventPublisher);
     }
+
+    @Test
+    void updateAudioPathSkipsWhenArgumentsMissing() {
+        assertThat(messageService.updateAudioPath("s1", "audio/a.wav", null)).isZero();
+
+        verifyNoInteractions(messageMapper);
+    }
+
+    @Test
+    void updateAudioPathReturnsUpdatedRows() {
+        when(messageMapper.update(isNull(), any(LambdaUpdateWrapper.class))).thenReturn(1);
+
+        assertThat(messageService.updateAudioPath("s1", "audio/a.wav", "https://cdn/audio/a.wav")).isEqualTo(1);
+    }
+
+    @Test
+    void saveAllInsertsRowsInOneBatchWithDefaults() {
+        var messageBO = new com.xiaozhi.common.model.bo.MessageBO();
+        when(messageConvert.toDO(messageBO)).thenReturn(new MessageDO());
+        when(messageMapper.insertBatch(anyList())).thenReturn(2);
+
+        assertThat(messageService.saveAll(List.of(messageBO, messageBO))).isEqualTo(2);
+
+        ArgumentCaptor<List<MessageDO>> rows = ArgumentCaptor.forClass(List.class);
+        verify(messageMapper).insertBatch(rows.capture());
+        assertThat(rows.getValue()).hasSize(2).allSatisfy(row -> {
+            assertThat(row.getState()).isEqualTo(com.xiaozhi.common.model.bo.MessageBO.STATE_ENABLED);
+            assertThat(row.getSource()).isEqualTo(com.xiaozhi.common.model.bo.MessageBO.SOURCE_DEVICE);
+            assertThat(row.getCreateTime()).isNotNull();
+            assertThat(row.getStatDate()).isNotNull();
+        });
+        verify(messageMapper, never()).insert(any(MessageDO.class));
+    }
+
+    @Test
+    void saveAllAsyncHandsRowsToWriteBehind() {
+        var messageBO = new com.xiaozhi.common.model.bo.MessageBO();
+        when(messageConvert.toDO(messageBO)).thenReturn(new MessageDO());
+
+        messageService.saveAllAsync(List.of(messageBO));
+
+        verify(messageWriteBehind).submit(anyList());
+        verifyNoInteractions(messageMapper);
+    }
+
+    @Test
+    void pageWithCursorSeeksPastCursorWithoutCount() {
+        LocalDateTime cursorTime = LocalDateTime.of(2026, 1, 1, 12, 0);
+        MessageDO cursor = new MessageDO();
+        cursor.setMessageId(100L);
+        cursor.setCreateTime(cursorTime);
+        when(messageMapper.selectById(100L)).thenReturn(cursor);
+        when(messageMapper.selectPageResp(any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(),
+            eq(100L), eq(cursorTime))).thenReturn(new Page<>(1, 20, false));
+
+        var result = messageService.page(3, 20, "dev-1", null, null, null, null, null, null, 7, null, null, 100L);
+
+        assertThat(result.getTotal()).isNull();
+        ArgumentCaptor<Page> page = ArgumentCaptor.forClass(Page.class);
+        verify(messageMapper).selectPageResp(page.capture(), eq("dev-1"), isNull(), isNull(), isNull(), isNull(),
+            isNull(), isNull(), eq(7), isNull(), isNull(), eq(100L), eq(cursorTime));
+        assertThat(page.getValue().getCurrent()).isEqualTo(1);
+        assertThat(page.getValue().searchCount()).isFalse();
+    }
+
+    @Test
+    void pageWithUnknownCursorReturnsEmpty() {
+        when(messageMapper.selectById(100L)).thenReturn(null);
+
+        var result = messageService.page(1, 20, null, null, null, null, null, null, null, 7, null, null, 100L);
+
+        assertThat(result.getList()).isEmpty();
+        verify(messageMapper, never()).selectPageResp(any(), any(), any(), any(), any(), any(), any(), any(), any(),
+            any(), any(), any(), any());
+    }
+
+    @Test
+    void conversationPageWithCursorUsesLastActiveTime() {
+        LocalDateTime lastActive = LocalDateTime.of(2026, 1, 1, 12, 0);
+        when(conversationMapper.selectLastActiveTime("s1")).thenReturn(lastActive);
+        when(conversationMapper.selectConversationPage(any(), eq(7), isNull(), isNull(), eq("s1"), eq(lastActive)))
+            .thenReturn(new Page<>(1, 10, false));
+
+        var result = messageService.conversationPage(1, 10, 7, null, null, "s1");
+
+        assertThat(result.getTotal()).isNull();
+        verify(conversationMapper).selectConversationPage(any(), eq(7), isNull(), isNull(), eq("s1"), eq(lastActive));
+    }
 }
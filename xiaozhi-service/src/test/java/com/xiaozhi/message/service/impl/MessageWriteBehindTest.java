@@ -0,0 +1,86 @@
+package com.xiaozhi.message.service.impl;
+
+import com.xiaozhi.message.dal.mysql.dataobject.MessageDO;
+import com.xiaozhi.message.dal.mysql.mapper.MessageMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class MessageWriteBehindTest {
+
+    private final MessageMapper messageMapper = mock(MessageMapper.class);
+    private final CountDownLatch writeStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseWrite = new CountDownLatch(1);
+    private MessageWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        // 模拟 MySQL 变慢：批量插入阻塞到测试放行
+        doAnswer(invocation -> {
+            writeStarted.countDown();
+            releaseWrite.await(5, TimeUnit.SECONDS);
+            return 1;
+        }).when(messageMapper).insertBatch(anyList());
+
+        writeBehind = new MessageWriteBehind();
+        ReflectionTestUtils.setField(writeBehind, "messageMapper", messageMapper);
+        ReflectionTestUtils.setField(writeBehind, "enabled", true);
+        ReflectionTestUtils.setField(writeBehind, "batchSize", 1);
+        ReflectionTestUtils.setField(writeBehind, "flushIntervalMs", 10L);
+        ReflectionTestUtils.setField(writeBehind, "capacity", 100);
+        ReflectionTestUtils.setField(writeBehind, "enqueueTimeoutMs", 100L);
+        writeBehind.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseWrite.countDown();
+        writeBehind.shutdown();
+    }
+
+    @Test
+    void awaitFlushDoesNotWaitForOtherSessions() throws Exception {
+        writeBehind.submit(List.of(row("session-a", "device-a")));
+        assertThat(writeStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        long start = System.nanoTime();
+        writeBehind.awaitFlushSession("session-b");
+        writeBehind.awaitFlushDevice("device-b");
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+    }
+
+    @Test
+    void awaitFlushWaitsForSameSessionUntilWritten() throws Exception {
+        writeBehind.submit(List.of(row("session-a", "device-a")));
+        assertThat(writeStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Thread waiter = Thread.ofVirtual().start(() -> writeBehind.awaitFlushSession("session-a"));
+        waiter.join(200);
+        assertThat(waiter.isAlive()).isTrue();
+
+        releaseWrite.countDown();
+        waiter.join(5000);
+        assertThat(waiter.isAlive()).isFalse();
+        verify(messageMapper, timeout(1000)).insertBatch(anyList());
+    }
+
+    private static MessageDO row(String sessionId, String deviceId) {
+        MessageDO row = new MessageDO();
+        row.setSessionId(sessionId);
+        row.setDeviceId(deviceId);
+        return row;
+    }
+}
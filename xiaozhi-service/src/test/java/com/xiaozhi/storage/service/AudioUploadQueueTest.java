@@ -0,0 +1,190 @@
+package com.xiaozhi.storage.service;
+
+import com.xiaozhi.common.config.RuntimePathConfig;
+import com.xiaozhi.message.service.MessageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AudioUploadQueueTest {
+
+    private static final String SESSION_ID = "session-1";
+    private static final String STORED_PATH = "https://cos.example.com/audio/a.opus";
+
+    @TempDir
+    Path tempDir;
+
+    private final StorageService storageService = mock(StorageService.class);
+    private final MessageService messageService = mock(MessageService.class);
+    private AudioUploadQueue uploadQueue;
+    private Path spoolDir;
+    private Path localFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StorageServiceFactory storageServiceFactory = mock(StorageServiceFactory.class);
+        when(storageServiceFactory.getStorageService()).thenReturn(storageService);
+        RuntimePathConfig runtimePathConfig = mock(RuntimePathConfig.class);
+        when(runtimePathConfig.resolveAudioDir()).thenReturn(tempDir);
+
+        uploadQueue = new AudioUploadQueue();
+        ReflectionTestUtils.setField(uploadQueue, "storageServiceFactory", storageServiceFactory);
+        ReflectionTestUtils.setField(uploadQueue, "messageService", messageService);
+        ReflectionTestUtils.setField(uploadQueue, "runtimePathConfig", runtimePathConfig);
+        ReflectionTestUtils.setField(uploadQueue, "capacity", 10);
+        ReflectionTestUtils.setField(uploadQueue, "concurrency", 1);
+        ReflectionTestUtils.setField(uploadQueue, "maxAttempts", 3);
+        ReflectionTestUtils.setField(uploadQueue, "backoffMs", 1L);
+        ReflectionTestUtils.setField(uploadQueue, "maxBackoffMs", 5L);
+        // 定期扫描由测试直接调用 recover() 模拟
+        ReflectionTestUtils.setField(uploadQueue, "rescanMs", 3_600_000L);
+        ReflectionTestUtils.setField(uploadQueue, "maxAgeMs", 3_600_000L);
+
+        spoolDir = tempDir.resolve("upload-spool");
+        localFile = tempDir.resolve("a.opus");
+        Files.write(localFile, new byte[]{1, 2, 3});
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadQueue.shutdown();
+    }
+
+    @Test
+    void uploadsBackfillsAndRemovesManifestAndLocalFile() throws Exception {
+        when(storageService.upload(any(Path.class), anyString())).thenReturn(STORED_PATH);
+        when(messageService.updateAudioPath(SESSION_ID, localFile.toString(), STORED_PATH)).thenReturn(1);
+        uploadQueue.init();
+
+        uploadQueue.enqueue(SESSION_ID, localFile);
+
+        verify(messageService, timeout(5000)).updateAudioPath(SESSION_ID, localFile.toString(), STORED_PATH);
+        await(() -> manifests() == 0 && !Files.exists(localFile));
+        assertThat(manifests()).isZero();
+        assertThat(localFile).doesNotExist();
+    }
+
+    @Test
+    void retriesBackfillWithoutUploadingAgain() throws Exception {
+        when(storageService.upload(any(Path.class), anyString())).thenReturn(STORED_PATH);
+        // 上传先于消息入库完成：第一次回填找不到消息
+        when(messageService.updateAudioPath(SESSION_ID, localFile.toString(), STORED_PATH)).thenReturn(0, 1);
+        uploadQueue.init();
+
+        uploadQueue.enqueue(SESSION_ID, localFile);
+
+        verify(messageService, timeout(5000).times(2)).updateAudioPath(SESSION_ID, localFile.toString(), STORED_PATH);
+        verify(storageService, times(1)).upload(any(Path.class), eq(localFile.toString()));
+        await(() -> manifests() == 0);
+        assertThat(manifests()).isZero();
+    }
+
+    @Test
+    void keepsManifestWhenQueueIsFullAndRequeuesOnRescan() throws Exception {
+        ReflectionTestUtils.setField(uploadQueue, "capacity", 1);
+        ReflectionTestUtils.setField(uploadQueue, "concurrency", 0);
+        uploadQueue.init();
+        Path second = tempDir.resolve("b.opus");
+        Files.write(second, new byte[]{4});
+
+        uploadQueue.enqueue(SESSION_ID, localFile);
+        uploadQueue.enqueue(SESSION_ID, second);
+
+        assertThat(manifests()).isEqualTo(2);
+
+        // 队列腾出空间后，扫描只接回未在处理中的清单
+        pendingQueue().clear();
+        assertThat(uploadQueue.recover()).isEqualTo(1);
+        assertThat(uploadQueue.recover()).isZero();
+        verify(storageService, never()).upload(any(Path.class), anyString());
+    }
+
+    @Test
+    void keepsManifestAfterRetriesAreExhausted() throws Exception {
+        when(storageService.upload(any(Path.class), anyString())).thenThrow(new IOException("COS 不可用"));
+        uploadQueue.init();
+
+        uploadQueue.enqueue(SESSION_ID, localFile);
+
+        verify(storageService, timeout(5000).times(3)).upload(any(Path.class), anyString());
+        await(() -> inFlight().isEmpty());
+        assertThat(inFlight()).isEmpty();
+        assertThat(manifests()).isEqualTo(1);
+        assertThat(localFile).exists();
+
+        // 扫描时重新入队，恢复后照常完成
+        doReturn(STORED_PATH).when(storageService).upload(any(Path.class), anyString());
+        when(messageService.updateAudioPath(SESSION_ID, localFile.toString(), STORED_PATH)).thenReturn(1);
+        assertThat(uploadQueue.recover()).isEqualTo(1);
+        verify(messageService, timeout(5000)).updateAudioPath(SESSION_ID, localFile.toString(), STORED_PATH);
+        await(() -> manifests() == 0);
+        assertThat(manifests()).isZero();
+    }
+
+    @Test
+    void dropsExpiredManifestOnRescan() throws Exception {
+        ReflectionTestUtils.setField(uploadQueue, "capacity", 1);
+        ReflectionTestUtils.setField(uploadQueue, "concurrency", 0);
+        uploadQueue.init();
+        Path second = tempDir.resolve("b.opus");
+        Files.write(second, new byte[]{4});
+        uploadQueue.enqueue(SESSION_ID, localFile);
+        uploadQueue.enqueue(SESSION_ID, second);
+
+        ReflectionTestUtils.setField(uploadQueue, "maxAgeMs", 0L);
+        pendingQueue().clear();
+
+        assertThat(uploadQueue.recover()).isZero();
+        // 处理中的任务不受扫描影响，只有滞留的清单被放弃
+        assertThat(manifests()).isEqualTo(1);
+        assertThat(second).exists();
+    }
+
+    @SuppressWarnings("unchecked")
+    private BlockingQueue<Object> pendingQueue() {
+        return (BlockingQueue<Object>) ReflectionTestUtils.getField(uploadQueue, "queue");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> inFlight() {
+        return (Set<String>) ReflectionTestUtils.getField(uploadQueue, "inFlight");
+    }
+
+    private long manifests() {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            return files.filter(path -> path.toString().endsWith(".task")).count();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}